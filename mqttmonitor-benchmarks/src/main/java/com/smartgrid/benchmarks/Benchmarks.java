@@ -0,0 +1,41 @@
+package com.smartgrid.benchmarks;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Punto de entrada de benchmarks.jar. Acepta las mismas opciones que JMH y añade siempre
+ * el perfilador de memoria ({@code -prof gc}) y, salvo que se indique otro con {@code -rff},
+ * guarda los resultados en {@code jmh-resultados.json} para compararlos entre versiones.
+ */
+public final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException {
+        CommandLineOptions lineaComandos = new CommandLineOptions(args);
+        OptionsBuilder opciones = new OptionsBuilder();
+        opciones.parent(lineaComandos).addProfiler(GCProfiler.class);
+        if (!lineaComandos.getResult().hasValue()) {
+            opciones.resultFormat(ResultFormatType.JSON).result("jmh-resultados.json");
+        }
+        Options construidas = opciones.build();
+
+        if (lineaComandos.shouldHelp() || lineaComandos.shouldList() || lineaComandos.shouldListProfilers()
+                || lineaComandos.shouldListResultFormats() || lineaComandos.shouldListWithParams()) {
+            Main.main(args);
+            return;
+        }
+        new Runner(construidas).run();
+    }
+}
@@ -0,0 +1,86 @@
+package com.smartgrid.benchmarks;
+
+import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.service.CarrilesIngesta;
+import com.smartgrid.service.MQTTSubscriberService;
+import com.smartgrid.service.OpcionesIngesta;
+import com.smartgrid.service.PoliticaContrapresion;
+import com.smartgrid.service.RegistroDispositivos;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Escalado de la ingesta con el número de carriles: 8 hilos productores (como 8 conexiones MQTT)
+ * encolan mensajes que los carriles procesan contra el motor. Con la política BLOQUEAR y un buffer
+ * pequeño, el ritmo al que se aceptan mensajes es el ritmo al que se procesan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Threads(8)
+public class CarrilesIngestaBenchmark {
+
+    private static final int MENSAJES = 4096;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    int dispositivos;
+
+    @Param({"1", "2", "4", "8"})
+    int carriles;
+
+    private CarrilesIngesta ingesta;
+    private SmartGridDecisionEngine motor;
+    private byte[][] payloads;
+
+    /**
+     * Posición de cada productor en la lista de mensajes.
+     */
+    @State(Scope.Thread)
+    public static class Productor {
+        int siguiente;
+    }
+
+    @Setup
+    public void preparar() {
+        List<Dispositivo> flota = Flota.mixta(dispositivos);
+        RegistroDispositivos registro = new RegistroDispositivos(RepositorioEnMemoria.de(flota), dispositivos, 30_000, 0);
+        registro.precargar();
+        motor = new SmartGridDecisionEngine();
+        MQTTSubscriberService service = new MQTTSubscriberService(null, motor, registro);
+
+        SplittableRandom random = new SplittableRandom(42);
+        double consumoMaximo = 4000.0 / dispositivos;
+        payloads = new byte[MENSAJES][];
+        for (int i = 0; i < MENSAJES; i++) {
+            payloads[i] = ("dispositivo" + random.nextInt(dispositivos) + ":" + random.nextDouble(consumoMaximo))
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+
+        ingesta = new CarrilesIngesta(carriles,
+                new OpcionesIngesta(8192, 512, 5, PoliticaContrapresion.BLOQUEAR, null),
+                payload -> null, service::hashDispositivo, service::procesarLote);
+        ingesta.iniciar();
+    }
+
+    @TearDown
+    public void detener() {
+        ingesta.detener();
+        motor.close();
+    }
+
+    @Benchmark
+    public boolean encolar(Productor productor) {
+        boolean aceptado = ingesta.encolar(payloads[productor.siguiente]);
+        productor.siguiente = (productor.siguiente + 1) & (MENSAJES - 1);
+        return aceptado;
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.smartgrid.benchmarks;
+
+import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.model.Dispositivo;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consultas del panel sobre el motor: el total de consumo (agregado incremental)
+ * y la copia de la lista de dispositivos activos (proporcional a la flota).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ConsultasEngineBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    int dispositivos;
+
+    private SmartGridDecisionEngine engine;
+
+    @Setup
+    public void preparar() {
+        engine = new SmartGridDecisionEngine();
+        // Por debajo del límite para que la flota quede entera conectada
+        Flota.noCriticos(dispositivos, engine.getLimiteConsumo() * 0.5 / dispositivos)
+                .forEach(engine::procesarDispositivo);
+    }
+
+    @Benchmark
+    public double getConsumoTotal() {
+        return engine.getConsumoTotal();
+    }
+
+    @Benchmark
+    public List<Dispositivo> getDispositivosActivos() {
+        return engine.getDispositivosActivos();
+    }
+}
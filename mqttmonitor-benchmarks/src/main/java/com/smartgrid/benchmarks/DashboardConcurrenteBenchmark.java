@@ -0,0 +1,112 @@
+package com.smartgrid.benchmarks;
+
+import com.smartgrid.logic.OpcionesMotor;
+import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.service.LimiteConcurrencia;
+import com.smartgrid.service.MQTTSubscriberService;
+import com.smartgrid.service.RegistroDispositivos;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latencia de la ingesta mientras muchos operadores cargan el dashboard a la vez. Un hilo aplica lotes de
+ * lecturas ({@code ingesta}) y 8 hilos renderizan la página de gestión ({@code operadores}): listar los
+ * dispositivos activos y ordenarlos. Con {@code maxOperadores=0} todos los operadores compiten a la vez por
+ * la CPU; con un límite, los que no caben esperan su turno como con {@code smartgrid.web.max-concurrentes}.
+ * La métrica a comparar es la de {@code ingesta} (percentiles por lote).
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class DashboardConcurrenteBenchmark {
+
+    private static final int MENSAJES = 4096;
+    private static final int TAMAÑO_LOTE = 64;
+
+    private static final Comparator<Dispositivo> POR_CONSUMO =
+            Comparator.comparingDouble(Dispositivo::getConsumo).reversed();
+
+    @Param({"1000", "100000"})
+    int dispositivos;
+
+    @Param({"0", "1", "2"})
+    int maxOperadores;
+
+    private SmartGridDecisionEngine motor;
+    private MQTTSubscriberService service;
+    private LimiteConcurrencia limite;
+    private List<List<byte[]>> lotes;
+
+    /**
+     * Lote siguiente del hilo de ingesta.
+     */
+    @State(Scope.Thread)
+    public static class Posicion {
+        int siguiente;
+    }
+
+    @Setup
+    public void preparar() {
+        List<Dispositivo> flota = Flota.mixta(dispositivos);
+        RegistroDispositivos registro = new RegistroDispositivos(RepositorioEnMemoria.de(flota), dispositivos, 30_000, 0);
+        registro.precargar();
+        motor = new SmartGridDecisionEngine(OpcionesMotor.conLimite(Double.MAX_VALUE));
+        service = new MQTTSubscriberService(null, motor, registro);
+        limite = new LimiteConcurrencia(maxOperadores, 60_000);
+
+        // Toda la flota activa: cada página lista todos los dispositivos
+        SplittableRandom random = new SplittableRandom(42);
+        for (Dispositivo dispositivo : flota) {
+            dispositivo.setConsumo(random.nextDouble(100));
+            motor.procesarDispositivo(dispositivo);
+        }
+
+        List<byte[]> payloads = new ArrayList<>(MENSAJES);
+        for (int i = 0; i < MENSAJES; i++) {
+            payloads.add(("dispositivo" + random.nextInt(dispositivos) + ":" + random.nextDouble(100))
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        lotes = new ArrayList<>();
+        for (int i = 0; i < MENSAJES; i += TAMAÑO_LOTE) {
+            lotes.add(payloads.subList(i, i + TAMAÑO_LOTE));
+        }
+    }
+
+    @TearDown
+    public void detener() {
+        motor.close();
+    }
+
+    @Benchmark
+    @Group("dashboard")
+    @GroupThreads(1)
+    public void ingesta(Posicion posicion) {
+        service.procesarLote(lotes.get(posicion.siguiente));
+        posicion.siguiente = (posicion.siguiente + 1) % lotes.size();
+    }
+
+    @Benchmark
+    @Group("dashboard")
+    @GroupThreads(8)
+    public void operadores(Blackhole blackhole) {
+        if (!limite.entrar()) return;
+        try {
+            List<Dispositivo> activos = motor.getDispositivosActivos();
+            activos.sort(POR_CONSUMO);
+            blackhole.consume(activos);
+        } finally {
+            limite.salir();
+        }
+    }
+}
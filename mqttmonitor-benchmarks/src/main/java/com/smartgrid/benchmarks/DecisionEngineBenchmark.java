@@ -0,0 +1,78 @@
+package com.smartgrid.benchmarks;
+
+import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste de {@code procesarDispositivo} con la flota ya conectada.
+ * <ul>
+ *     <li>NORMAL: el consumo total se mantiene por debajo del límite (camino rápido).</li>
+ *     <li>SOBRECARGA: cada lectura vuelve a conectar un dispositivo que supera el límite y
+ *     el motor tiene que desconectar el mayor consumidor para volver a él.</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class DecisionEngineBenchmark {
+
+    public enum Escenario { NORMAL, SOBRECARGA }
+
+    private static final int LECTURAS = 4096;
+    private static final int PICOS = 64;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    int dispositivos;
+
+    @Param({"NORMAL", "SOBRECARGA"})
+    Escenario escenario;
+
+    private SmartGridDecisionEngine engine;
+    private Dispositivo[] lecturas;
+    private double[] consumos;
+    private int siguiente;
+
+    @Setup
+    public void preparar() {
+        engine = new SmartGridDecisionEngine();
+        double margen = escenario == Escenario.NORMAL ? 0.5 : 0.98;
+        double consumoBase = engine.getLimiteConsumo() * margen / dispositivos;
+        List<Dispositivo> flota = Flota.noCriticos(dispositivos, consumoBase);
+        flota.forEach(engine::procesarDispositivo);
+
+        // El doble que cualquier dispositivo de la flota (con 10 dispositivos, el 5% del límite no lo sería)
+        double pico = Math.max(engine.getLimiteConsumo() * 0.05, 2 * consumoBase);
+        SplittableRandom random = new SplittableRandom(42);
+        lecturas = new Dispositivo[LECTURAS];
+        consumos = new double[LECTURAS];
+        for (int i = 0; i < LECTURAS; i++) {
+            if (escenario == Escenario.NORMAL) {
+                lecturas[i] = flota.get(random.nextInt(dispositivos));
+                consumos[i] = consumoBase * (0.5 + random.nextDouble());
+            } else {
+                // Un pico mayor que cualquier dispositivo de la flota: es el primero en desconectarse
+                lecturas[i] = Flota.dispositivo("pico" + (i % PICOS), "zona0", NivelCriticidad.BAJA, 0);
+                consumos[i] = pico;
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean procesarDispositivo() {
+        int i = siguiente;
+        siguiente = (i + 1) & (LECTURAS - 1);
+        Dispositivo lectura = lecturas[i];
+        lectura.setConsumo(consumos[i]);
+        engine.procesarDispositivo(lectura);
+        return engine.isAlertaCriticos();
+    }
+}
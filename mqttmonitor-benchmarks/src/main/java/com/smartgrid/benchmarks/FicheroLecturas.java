@@ -0,0 +1,274 @@
+package com.smartgrid.benchmarks;
+
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import com.smartgrid.service.ResultadoLectura;
+import com.smartgrid.service.TramaBinaria;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+/**
+ * Lectura y escritura de secuencias de lecturas grabadas, en dos formatos:
+ * <ul>
+ *     <li>CSV ({@code .csv}): una lectura por línea, {@code instante,nombre,consumo}, con el instante en
+ *     milisegundos desde epoch. Se ignoran las líneas vacías, las que empiezan por {@code #} y una cabecera.</li>
+ *     <li>Binario ({@code .bin}): tramas de {@link TramaBinaria} una detrás de otra, como llegan del broker.</li>
+ * </ul>
+ * Los dispositivos se describen aparte, en un CSV {@code nombre,zona,criticidad[,id]} con la criticidad
+ * por nombre o por ordinal (tal y como la guarda la tabla {@code dispositivos}).
+ */
+final class FicheroLecturas {
+
+    private FicheroLecturas() {
+    }
+
+    /**
+     * Secuencia leída de un fichero. Las lecturas cuyo dispositivo no se resuelve se saltan y se cuentan.
+     */
+    abstract static class Fuente implements Iterator<LecturaGrabada>, Closeable {
+
+        private final Queue<LecturaGrabada> pendientes = new ArrayDeque<>();
+        private long descartadas;
+        private boolean agotada;
+
+        /**
+         * Añade a {@code destino} las lecturas del siguiente registro del fichero.
+         *
+         * @return false al final del fichero
+         */
+        abstract boolean leerSiguiente(Queue<LecturaGrabada> destino) throws IOException;
+
+        void descartar() {
+            descartadas++;
+        }
+
+        long getDescartadas() {
+            return descartadas;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (pendientes.isEmpty() && !agotada) {
+                    agotada = !leerSiguiente(pendientes);
+                }
+                return !pendientes.isEmpty();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public LecturaGrabada next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return pendientes.poll();
+        }
+    }
+
+    /**
+     * Abre un fichero de lecturas según su extensión ({@code .bin} para tramas, cualquier otra para CSV).
+     *
+     * @param fichero     ruta del fichero
+     * @param porNombre   dispositivo de cada nombre de las lecturas CSV (null para saltarla)
+     * @param porId       dispositivo de cada id de las tramas binarias (null para saltarla)
+     */
+    static Fuente abrir(Path fichero, Function<String, Dispositivo> porNombre, LongFunction<Dispositivo> porId)
+            throws IOException {
+        return fichero.toString().endsWith(".bin") ? new Tramas(fichero, porId) : new Csv(fichero, porNombre);
+    }
+
+    private static final class Csv extends Fuente {
+
+        private final BufferedReader lector;
+        private final Function<String, Dispositivo> porNombre;
+        private long linea;
+
+        Csv(Path fichero, Function<String, Dispositivo> porNombre) throws IOException {
+            this.lector = Files.newBufferedReader(fichero, StandardCharsets.UTF_8);
+            this.porNombre = porNombre;
+        }
+
+        @Override
+        boolean leerSiguiente(Queue<LecturaGrabada> destino) throws IOException {
+            String texto = lector.readLine();
+            if (texto == null) return false;
+            linea++;
+
+            texto = texto.trim();
+            if (texto.isEmpty() || texto.startsWith("#") || (linea == 1 && texto.startsWith("instante"))) {
+                return true;
+            }
+            String[] campos = texto.split(",");
+            if (campos.length != 3) {
+                throw new IOException("Línea " + linea + " no válida, se esperaba instante,nombre,consumo: " + texto);
+            }
+            Dispositivo dispositivo = porNombre.apply(campos[1].trim().toLowerCase());
+            if (dispositivo == null) {
+                descartar();
+                return true;
+            }
+            destino.add(new LecturaGrabada(Long.parseLong(campos[0].trim()), dispositivo,
+                    Double.parseDouble(campos[2].trim())));
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            lector.close();
+        }
+    }
+
+    private static final class Tramas extends Fuente {
+
+        private final DataInputStream entrada;
+        private final LongFunction<Dispositivo> porId;
+
+        Tramas(Path fichero, LongFunction<Dispositivo> porId) throws IOException {
+            this.entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(fichero), 1 << 16));
+            this.porId = porId;
+        }
+
+        @Override
+        boolean leerSiguiente(Queue<LecturaGrabada> destino) throws IOException {
+            byte[] cabecera = new byte[TramaBinaria.TAMAÑO_CABECERA];
+            try {
+                entrada.readFully(cabecera);
+            } catch (EOFException e) {
+                return false;
+            }
+            int lecturas = TramaBinaria.numeroLecturas(cabecera);
+            byte[] trama = new byte[TramaBinaria.TAMAÑO_CABECERA + lecturas * TramaBinaria.TAMAÑO_LECTURA];
+            System.arraycopy(cabecera, 0, trama, 0, cabecera.length);
+            entrada.readFully(trama, cabecera.length, trama.length - cabecera.length);
+            if (TramaBinaria.validar(trama) != ResultadoLectura.OK) {
+                throw new IOException("Trama binaria no válida en el fichero");
+            }
+
+            for (int i = 0; i < lecturas; i++) {
+                Dispositivo dispositivo = porId.apply(TramaBinaria.id(trama, i));
+                if (dispositivo == null) {
+                    descartar();
+                    continue;
+                }
+                destino.add(new LecturaGrabada(TramaBinaria.instante(trama, i), dispositivo,
+                        TramaBinaria.consumo(trama, i)));
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            entrada.close();
+        }
+    }
+
+    /**
+     * Lee los dispositivos de un CSV {@code nombre,zona,criticidad[,id]}; una zona vacía es "sin zona".
+     *
+     * @return dispositivos por nombre normalizado
+     */
+    static Map<String, Dispositivo> leerDispositivos(Path fichero) throws IOException {
+        Map<String, Dispositivo> dispositivos = new HashMap<>();
+        NivelCriticidad[] niveles = NivelCriticidad.values();
+        try (BufferedReader lector = Files.newBufferedReader(fichero, StandardCharsets.UTF_8)) {
+            String texto;
+            while ((texto = lector.readLine()) != null) {
+                texto = texto.trim();
+                if (texto.isEmpty() || texto.startsWith("#") || texto.startsWith("nombre,")) continue;
+
+                String[] campos = texto.split(",", -1);
+                if (campos.length < 3) {
+                    throw new IOException("Dispositivo no válido, se esperaba nombre,zona,criticidad[,id]: " + texto);
+                }
+                String criticidad = campos[2].trim();
+                NivelCriticidad nivel = criticidad.chars().allMatch(Character::isDigit)
+                        ? niveles[Integer.parseInt(criticidad)]
+                        : NivelCriticidad.valueOf(criticidad.toUpperCase());
+                String nombre = campos[0].trim().toLowerCase();
+                Dispositivo dispositivo = Flota.dispositivo(nombre,
+                        campos[1].isBlank() ? null : campos[1].trim(), nivel, 0);
+                if (campos.length > 3 && !campos[3].isBlank()) {
+                    dispositivo.setId(Long.parseLong(campos[3].trim()));
+                }
+                dispositivos.put(nombre, dispositivo);
+            }
+        }
+        return dispositivos;
+    }
+
+    /**
+     * Escribe una secuencia en el formato que indique la extensión del fichero.
+     *
+     * @param lecturasPorTrama lecturas por trama en el formato binario
+     * @return número de lecturas escritas
+     */
+    static long escribir(Path fichero, Iterator<LecturaGrabada> lecturas, int lecturasPorTrama) throws IOException {
+        return fichero.toString().endsWith(".bin")
+                ? escribirTramas(fichero, lecturas, lecturasPorTrama)
+                : escribirCsv(fichero, lecturas);
+    }
+
+    private static long escribirCsv(Path fichero, Iterator<LecturaGrabada> lecturas) throws IOException {
+        long escritas = 0;
+        try (BufferedWriter escritor = Files.newBufferedWriter(fichero, StandardCharsets.UTF_8)) {
+            escritor.write("instante,nombre,consumo");
+            escritor.newLine();
+            while (lecturas.hasNext()) {
+                LecturaGrabada lectura = lecturas.next();
+                escritor.write(lectura.instante() + "," + lectura.dispositivo().getNombre() + "," + lectura.consumo());
+                escritor.newLine();
+                escritas++;
+            }
+        }
+        return escritas;
+    }
+
+    private static long escribirTramas(Path fichero, Iterator<LecturaGrabada> lecturas, int lecturasPorTrama)
+            throws IOException {
+        int porTrama = Math.min(Math.max(1, lecturasPorTrama), TramaBinaria.MAX_LECTURAS);
+        long[] ids = new long[porTrama];
+        float[] consumos = new float[porTrama];
+        long[] instantes = new long[porTrama];
+        long escritas = 0;
+
+        try (OutputStream salida = new BufferedOutputStream(Files.newOutputStream(fichero), 1 << 16)) {
+            while (lecturas.hasNext()) {
+                int n = 0;
+                while (n < porTrama && lecturas.hasNext()) {
+                    LecturaGrabada lectura = lecturas.next();
+                    ids[n] = lectura.dispositivo().getId();
+                    consumos[n] = (float) lectura.consumo();
+                    instantes[n] = lectura.instante();
+                    n++;
+                }
+                salida.write(n == porTrama
+                        ? TramaBinaria.codificar(ids, consumos, instantes)
+                        : TramaBinaria.codificar(Arrays.copyOf(ids, n), Arrays.copyOf(consumos, n),
+                                Arrays.copyOf(instantes, n)));
+                escritas += n;
+            }
+        }
+        return escritas;
+    }
+}
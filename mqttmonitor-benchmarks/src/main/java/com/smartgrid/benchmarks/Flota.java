@@ -0,0 +1,67 @@
+package com.smartgrid.benchmarks;
+
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Flotas sintéticas de dispositivos para los benchmarks.
+ * Por defecto se miden flotas de 10 a 1.000.000 de dispositivos, de una casa a una red de distribución
+ * (cada benchmark lo declara en su {@code @Param}, que no admite constantes de tipo array).
+ */
+final class Flota {
+
+    private static final int ZONAS = 64;
+
+    private Flota() {
+    }
+
+    /**
+     * Flota de dispositivos no críticos repartidos en zonas.
+     *
+     * @param tamaño               número de dispositivos
+     * @param consumoPorDispositivo consumo inicial de cada uno, en Watts
+     */
+    static List<Dispositivo> noCriticos(int tamaño, double consumoPorDispositivo) {
+        NivelCriticidad[] niveles = {NivelCriticidad.BAJA, NivelCriticidad.MEDIA};
+        List<Dispositivo> flota = new ArrayList<>(tamaño);
+        for (int i = 0; i < tamaño; i++) {
+            flota.add(dispositivo(i, "zona" + (i % ZONAS), niveles[i % niveles.length], consumoPorDispositivo));
+        }
+        return flota;
+    }
+
+    /**
+     * Flota con todos los niveles de criticidad.
+     *
+     * @param tamaño número de dispositivos
+     */
+    static List<Dispositivo> mixta(int tamaño) {
+        NivelCriticidad[] niveles = NivelCriticidad.values();
+        List<Dispositivo> flota = new ArrayList<>(tamaño);
+        for (int i = 0; i < tamaño; i++) {
+            flota.add(dispositivo(i, "zona" + (i % ZONAS), niveles[i % niveles.length], 0));
+        }
+        return flota;
+    }
+
+    /**
+     * Dispositivo "dispositivo{i}" con id i, para las tramas binarias.
+     */
+    private static Dispositivo dispositivo(int i, String zona, NivelCriticidad criticidad, double consumo) {
+        Dispositivo d = dispositivo("dispositivo" + i, zona, criticidad, consumo);
+        d.setId((long) i);
+        return d;
+    }
+
+    static Dispositivo dispositivo(String nombre, String zona, NivelCriticidad criticidad, double consumo) {
+        Dispositivo d = new Dispositivo();
+        d.setNombre(nombre);
+        d.setZona(zona);
+        d.setCriticidad(criticidad);
+        d.setConsumo(consumo);
+        return d;
+    }
+}
@@ -0,0 +1,140 @@
+package com.smartgrid.benchmarks;
+
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+
+/**
+ * Secuencia sintética de lecturas de N dispositivos repartidos en zonas.
+ * <p>
+ * Cada dispositivo tiene un consumo base tal que, en reposo, la flota completa consume la fracción
+ * {@code carga} del límite indicado; cada lectura varía un ±20 % sobre esa base. Las lecturas llegan a un
+ * ritmo fijo sobre dispositivos elegidos al azar y, cada {@code rafagaCadaMs}, durante {@code rafagaDuracionMs}
+ * todas se multiplican por {@code rafagaFactor} para provocar sobrecargas y desconexiones.
+ * Con la misma semilla la secuencia es siempre la misma.
+ */
+final class GeneradorCarga implements Iterator<LecturaGrabada> {
+
+    /**
+     * Parámetros del generador.
+     *
+     * @param lecturas           número total de lecturas
+     * @param lecturasPorSegundo ritmo de las lecturas en el tiempo simulado
+     * @param limite             límite de referencia en Watts
+     * @param carga              fracción del límite que consume la flota en reposo
+     * @param rafagaCadaMs       periodo de las ráfagas de sobrecarga (0 = sin ráfagas)
+     * @param rafagaDuracionMs   duración de cada ráfaga
+     * @param rafagaFactor       multiplicador del consumo durante una ráfaga
+     * @param semilla            semilla del generador aleatorio
+     */
+    record Parametros(long lecturas, double lecturasPorSegundo, double limite, double carga,
+                      long rafagaCadaMs, long rafagaDuracionMs, double rafagaFactor, long semilla) {
+    }
+
+    private final List<Dispositivo> flota;
+    private final double[] base;
+    private final Parametros parametros;
+    private final SplittableRandom random;
+    private final long inicio;
+    private long generadas;
+
+    GeneradorCarga(List<Dispositivo> flota, Parametros parametros, long inicio) {
+        this.flota = flota;
+        this.parametros = parametros;
+        this.random = new SplittableRandom(parametros.semilla());
+        this.inicio = inicio;
+        this.base = new double[flota.size()];
+        double media = parametros.limite() * parametros.carga() / flota.size();
+        for (int i = 0; i < base.length; i++) {
+            base[i] = media * (0.5 + random.nextDouble());
+        }
+    }
+
+    /**
+     * Flota de dispositivos "dispositivo{i}" con id i, repartidos por turno en las zonas "zona{j}"
+     * y con la criticidad según los pesos de la mezcla (p. ej. CRITICA:10,MEDIA:30,BAJA:60).
+     *
+     * @param tamaño número de dispositivos
+     * @param zonas  número de zonas
+     * @param mezcla peso de cada nivel de criticidad
+     * @param semilla semilla para asignar las criticidades
+     */
+    static List<Dispositivo> flota(int tamaño, int zonas, Map<NivelCriticidad, Integer> mezcla, long semilla) {
+        NivelCriticidad[] porPeso = repartir(mezcla);
+        SplittableRandom random = new SplittableRandom(semilla);
+        List<Dispositivo> flota = new ArrayList<>(tamaño);
+        for (int i = 0; i < tamaño; i++) {
+            Dispositivo d = Flota.dispositivo("dispositivo" + i, "zona" + (i % zonas),
+                    porPeso[random.nextInt(porPeso.length)], 0);
+            d.setId((long) i);
+            flota.add(d);
+        }
+        return flota;
+    }
+
+    /**
+     * Interpreta una mezcla "NIVEL:peso,NIVEL:peso"; los niveles que no aparecen tienen peso 0.
+     *
+     * @throws IllegalArgumentException si el formato no es válido o todos los pesos son 0
+     */
+    static Map<NivelCriticidad, Integer> mezcla(String texto) {
+        Map<NivelCriticidad, Integer> mezcla = new EnumMap<>(NivelCriticidad.class);
+        for (String parte : texto.split(",")) {
+            String[] nivelPeso = parte.trim().split(":");
+            if (nivelPeso.length != 2) {
+                throw new IllegalArgumentException("Mezcla no válida '" + texto + "', se esperaba NIVEL:peso,...");
+            }
+            mezcla.put(NivelCriticidad.valueOf(nivelPeso[0].trim().toUpperCase()),
+                    Integer.parseInt(nivelPeso[1].trim()));
+        }
+        if (mezcla.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("La mezcla '" + texto + "' no tiene ningún peso");
+        }
+        return mezcla;
+    }
+
+    /**
+     * Niveles repetidos según su peso, para elegir uno al azar con la proporción de la mezcla.
+     */
+    static NivelCriticidad[] repartir(Map<NivelCriticidad, Integer> mezcla) {
+        List<NivelCriticidad> porPeso = new ArrayList<>();
+        mezcla.forEach((nivel, peso) -> {
+            for (int i = 0; i < peso; i++) {
+                porPeso.add(nivel);
+            }
+        });
+        return porPeso.toArray(NivelCriticidad[]::new);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return generadas < parametros.lecturas();
+    }
+
+    @Override
+    public LecturaGrabada next() {
+        if (!hasNext()) throw new NoSuchElementException();
+
+        long desfase = (long) (generadas * 1000 / parametros.lecturasPorSegundo());
+        generadas++;
+
+        int i = random.nextInt(flota.size());
+        double consumo = base[i] * (0.8 + 0.4 * random.nextDouble());
+        if (enRafaga(desfase)) {
+            consumo *= parametros.rafagaFactor();
+        }
+        return new LecturaGrabada(inicio + desfase, flota.get(i), consumo);
+    }
+
+    private boolean enRafaga(long desfase) {
+        long cada = parametros.rafagaCadaMs();
+        return cada > 0 && desfase % cada >= cada - parametros.rafagaDuracionMs();
+    }
+}
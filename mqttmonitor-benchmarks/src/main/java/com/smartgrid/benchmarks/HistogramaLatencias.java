@@ -0,0 +1,74 @@
+package com.smartgrid.benchmarks;
+
+/**
+ * Histograma de latencias con precisión relativa fija, al estilo de HdrHistogram.
+ * <p>
+ * Los valores por debajo de 128 ns se cuentan uno a uno; por encima, cada potencia de dos se divide
+ * en 64 cubos iguales, así que el error de cualquier percentil es inferior al 1,6 %. Ocupa unos 30 KB
+ * sea cual sea el número de muestras, y registrar es una cuenta sobre un array.
+ */
+final class HistogramaLatencias {
+
+    private static final int BITS_CUBO = 6;
+    private static final int CUBOS = 1 << BITS_CUBO;
+    private static final int LINEALES = CUBOS << 1;
+
+    private final long[] cuentas = new long[(Long.SIZE - BITS_CUBO) * CUBOS + LINEALES];
+    private long total;
+    private long maximo;
+
+    /**
+     * Cuenta una muestra; los valores negativos cuentan como 0.
+     *
+     * @param nanos latencia en nanosegundos
+     */
+    void registrar(long nanos) {
+        long valor = Math.max(0, nanos);
+        cuentas[indice(valor)]++;
+        total++;
+        if (valor > maximo) {
+            maximo = valor;
+        }
+    }
+
+    long getTotal() {
+        return total;
+    }
+
+    long getMaximo() {
+        return maximo;
+    }
+
+    /**
+     * Valor por debajo del cual queda la fracción {@code p} de las muestras.
+     *
+     * @param p percentil entre 0 y 1 (p. ej. 0.99)
+     * @return latencia en nanosegundos, o 0 si no hay muestras
+     */
+    long percentil(double p) {
+        if (total == 0) return 0;
+
+        long rango = Math.max(1, (long) Math.ceil(p * total));
+        long acumulado = 0;
+        for (int i = 0; i < cuentas.length; i++) {
+            acumulado += cuentas[i];
+            if (acumulado >= rango) {
+                return Math.min(limiteSuperior(i), maximo);
+            }
+        }
+        return maximo;
+    }
+
+    private static int indice(long valor) {
+        if (valor < LINEALES) return (int) valor;
+        int desplazamiento = (Long.SIZE - 1 - Long.numberOfLeadingZeros(valor)) - BITS_CUBO;
+        return desplazamiento * CUBOS + (int) (valor >>> desplazamiento);
+    }
+
+    private static long limiteSuperior(int indice) {
+        if (indice < LINEALES) return indice;
+        int desplazamiento = indice / CUBOS - 1;
+        long cubo = indice - (long) desplazamiento * CUBOS;
+        return ((cubo + 1) << desplazamiento) - 1;
+    }
+}
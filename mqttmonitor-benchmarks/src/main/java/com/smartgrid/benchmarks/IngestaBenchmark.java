@@ -0,0 +1,73 @@
+package com.smartgrid.benchmarks;
+
+import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.service.MQTTSubscriberService;
+import com.smartgrid.service.RegistroDispositivos;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Camino completo de un mensaje MQTT con el registro precargado: interpretar el payload,
+ * resolver el dispositivo y aplicar la lectura al motor. Se mide el mensaje suelto
+ * ({@code procesarMensaje}) y el lote de la etapa de ingesta ({@code procesarLote}), por mensaje.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class IngestaBenchmark {
+
+    private static final int MENSAJES = 4096;
+    private static final int TAMAÑO_LOTE = 512;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    int dispositivos;
+
+    private MQTTSubscriberService service;
+    private String[] textos;
+    private List<List<byte[]>> lotes;
+    private int siguiente;
+
+    @Setup
+    public void preparar() {
+        List<Dispositivo> flota = Flota.mixta(dispositivos);
+        RegistroDispositivos registro = new RegistroDispositivos(RepositorioEnMemoria.de(flota), dispositivos, 30_000, 0);
+        registro.precargar();
+        service = new MQTTSubscriberService(null, new SmartGridDecisionEngine(), registro);
+
+        // Consumos pequeños: se mide la ingesta, no la desconexión
+        SplittableRandom random = new SplittableRandom(42);
+        double consumoMaximo = 4000.0 / dispositivos;
+        textos = new String[MENSAJES];
+        List<byte[]> payloads = new ArrayList<>(MENSAJES);
+        for (int i = 0; i < MENSAJES; i++) {
+            textos[i] = "dispositivo" + random.nextInt(dispositivos) + ":" + random.nextDouble(consumoMaximo);
+            payloads.add(textos[i].getBytes(StandardCharsets.UTF_8));
+        }
+        lotes = new ArrayList<>();
+        for (int i = 0; i < MENSAJES; i += TAMAÑO_LOTE) {
+            lotes.add(payloads.subList(i, i + TAMAÑO_LOTE));
+        }
+    }
+
+    @Benchmark
+    public void procesarMensaje() {
+        service.procesarMensaje(textos[siguiente]);
+        siguiente = (siguiente + 1) & (MENSAJES - 1);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TAMAÑO_LOTE)
+    public void procesarLote() {
+        service.procesarLote(lotes.get(siguiente));
+        siguiente = (siguiente + 1) % lotes.size();
+    }
+}
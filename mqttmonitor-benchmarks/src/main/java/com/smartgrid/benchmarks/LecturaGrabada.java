@@ -0,0 +1,13 @@
+package com.smartgrid.benchmarks;
+
+import com.smartgrid.model.Dispositivo;
+
+/**
+ * Lectura de una secuencia grabada o sintética, con el instante en que se midió.
+ *
+ * @param instante    instante de la medida en milisegundos desde epoch
+ * @param dispositivo dispositivo al que pertenece la lectura
+ * @param consumo     consumo leído en Watts
+ */
+record LecturaGrabada(long instante, Dispositivo dispositivo, double consumo) {
+}
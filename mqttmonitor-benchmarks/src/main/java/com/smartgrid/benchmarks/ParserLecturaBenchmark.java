@@ -0,0 +1,108 @@
+package com.smartgrid.benchmarks;
+
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.service.ParserLectura;
+import com.smartgrid.service.RegistroDispositivos;
+import com.smartgrid.service.ResultadoLectura;
+import com.smartgrid.service.SondaNombre;
+import com.smartgrid.service.TramaBinaria;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara la interpretación de payloads "nombre:consumo" con cadenas (como hacía
+ * {@code procesarMensaje}: String, contains, split, trim/toLowerCase y parseDouble)
+ * con el parser sobre bytes y la búsqueda por sonda en el registro, y con las tramas
+ * binarias de una lectura ({@link TramaBinaria}) resueltas por id.
+ * <p>
+ * Con {@code -prof gc} se ve la memoria reservada por mensaje de cada camino.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ParserLecturaBenchmark {
+
+    private static final int MENSAJES = 4096;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    int dispositivos;
+
+    private byte[][] payloads;
+    private byte[][] tramas;
+    private RegistroDispositivos registro;
+    private final ParserLectura parser = new ParserLectura();
+    private final SondaNombre sonda = new SondaNombre();
+    private int siguiente;
+
+    @Setup
+    public void preparar() {
+        List<Dispositivo> flota = Flota.mixta(dispositivos);
+        registro = new RegistroDispositivos(RepositorioEnMemoria.de(flota), dispositivos, 30_000, 0);
+        registro.precargar();
+
+        SplittableRandom random = new SplittableRandom(42);
+        payloads = new byte[MENSAJES][];
+        tramas = new byte[MENSAJES][];
+        long ahora = System.currentTimeMillis();
+        for (int i = 0; i < MENSAJES; i++) {
+            int id = random.nextInt(dispositivos);
+            double valor = random.nextDouble(5000);
+            String consumo = String.format("%.2f", valor).replace(',', '.');
+            payloads[i] = ("dispositivo" + id + ":" + consumo).getBytes(StandardCharsets.UTF_8);
+            tramas[i] = TramaBinaria.codificar(new long[]{id}, new float[]{(float) valor}, new long[]{ahora});
+        }
+    }
+
+    private byte[] siguientePayload() {
+        byte[] payload = payloads[siguiente];
+        siguiente = (siguiente + 1) & (MENSAJES - 1);
+        return payload;
+    }
+
+    private byte[] siguienteTrama() {
+        byte[] trama = tramas[siguiente];
+        siguiente = (siguiente + 1) & (MENSAJES - 1);
+        return trama;
+    }
+
+    @Benchmark
+    public void rutaTexto(Blackhole bh) {
+        String payload = new String(siguientePayload());
+        if (!payload.contains(":")) return;
+        String[] partes = payload.split(":");
+        if (partes.length != 2) return;
+        String nombre = RegistroDispositivos.normalizar(partes[0]);
+        double consumo = Double.parseDouble(partes[1].trim());
+        Optional<Dispositivo> dispositivo = registro.buscar(nombre);
+        bh.consume(dispositivo.orElse(null));
+        bh.consume(consumo);
+    }
+
+    @Benchmark
+    public void rutaBytes(Blackhole bh) {
+        byte[] payload = siguientePayload();
+        if (parser.interpretar(payload) != ResultadoLectura.OK) return;
+        sonda.apuntar(payload, parser.getInicioNombre(), parser.getFinNombre());
+        bh.consume(registro.resolver(sonda));
+        bh.consume(sonda.getDispositivo());
+        bh.consume(parser.getConsumo());
+    }
+
+    @Benchmark
+    public void rutaBinaria(Blackhole bh) {
+        byte[] trama = siguienteTrama();
+        if (TramaBinaria.validar(trama) != ResultadoLectura.OK) return;
+        bh.consume(registro.buscarCargadoPorId(TramaBinaria.id(trama, 0)));
+        bh.consume(TramaBinaria.consumo(trama, 0));
+        bh.consume(TramaBinaria.instante(trama, 0));
+    }
+}
@@ -0,0 +1,411 @@
+package com.smartgrid.benchmarks;
+
+import com.smartgrid.logic.CambiosMotorListener;
+import com.smartgrid.logic.ErrorPronostico;
+import com.smartgrid.logic.Lectura;
+import com.smartgrid.logic.OpcionesMotor;
+import com.smartgrid.logic.Pronostico;
+import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import com.smartgrid.service.MQTTSubscriberService;
+import com.smartgrid.service.RegistroDispositivos;
+import com.smartgrid.service.ResultadoLectura;
+import com.smartgrid.service.TramaBinaria;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Repite una secuencia de lecturas (grabada o sintética) directamente contra el motor de decisiones
+ * o contra {@link MQTTSubscriberService}, sin broker ni base de datos, y resume el rendimiento y las
+ * decisiones: lecturas por segundo, percentiles de latencia, desconexiones por zona y alertas.
+ * <p>
+ * Se ejecuta desde el jar de benchmarks con opciones {@code --clave=valor}:
+ * <pre>
+ * java -cp mqttmonitor-benchmarks/target/benchmarks.jar com.smartgrid.benchmarks.Repeticion --dispositivos=100000
+ * </pre>
+ * Con {@code --velocidad=max} las lecturas se aplican tan rápido como se puede y la latencia es la de
+ * cada llamada. Con un factor (1 = tiempo real, 10 = diez veces más rápido) se respetan los instantes
+ * de la secuencia y la latencia se cuenta desde el instante en que tocaba aplicar cada lectura, de modo
+ * que los retrasos acumulados por un motor saturado aparecen en los percentiles.
+ * Las opciones se describen en el README de los benchmarks.
+ */
+public final class Repeticion {
+
+    // Cada cuántos lotes se muestrea el consumo total (recorre todas las zonas)
+    private static final int MUESTREO_LOTES = 64;
+
+    private Repeticion() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> opciones = opciones(args);
+        double limite = Double.parseDouble(opciones.getOrDefault("limite", "5000"));
+        long semilla = Long.parseLong(opciones.getOrDefault("semilla", "42"));
+        Map<NivelCriticidad, Integer> mezcla = GeneradorCarga.mezcla(
+                opciones.getOrDefault("mezcla", "CRITICA:10,MEDIA:30,BAJA:60"));
+
+        // Dispositivos: los del fichero indicado, la flota sintética o los que vayan apareciendo
+        Map<String, Dispositivo> porNombre = new HashMap<>();
+        Map<Long, Dispositivo> porId = new HashMap<>();
+        String fuente = opciones.getOrDefault("fuente", "sintetica");
+        boolean sintetica = fuente.equals("sintetica");
+        List<Dispositivo> flota = List.of();
+        if (opciones.containsKey("dispositivos-fichero")) {
+            flota = List.copyOf(FicheroLecturas.leerDispositivos(Path.of(opciones.get("dispositivos-fichero"))).values());
+        } else if (sintetica) {
+            flota = GeneradorCarga.flota(Integer.parseInt(opciones.getOrDefault("dispositivos", "10000")),
+                    Integer.parseInt(opciones.getOrDefault("zonas", "16")), mezcla, semilla);
+        }
+        for (Dispositivo d : flota) {
+            porNombre.put(d.getNombre(), d);
+            if (d.getId() != null) {
+                porId.put(d.getId(), d);
+            }
+        }
+        boolean inventar = !sintetica && !opciones.containsKey("dispositivos-fichero");
+        NivelCriticidad[] niveles = GeneradorCarga.repartir(mezcla);
+
+        Iterator<LecturaGrabada> lecturas;
+        FicheroLecturas.Fuente fichero = null;
+        if (sintetica) {
+            GeneradorCarga.Parametros parametros = new GeneradorCarga.Parametros(
+                    Long.parseLong(opciones.getOrDefault("lecturas", "1000000")),
+                    Double.parseDouble(opciones.getOrDefault("lecturas-por-segundo", "100000")),
+                    limite,
+                    Double.parseDouble(opciones.getOrDefault("carga", "0.8")),
+                    Long.parseLong(opciones.getOrDefault("rafaga-cada-ms", "10000")),
+                    Long.parseLong(opciones.getOrDefault("rafaga-duracion-ms", "2000")),
+                    Double.parseDouble(opciones.getOrDefault("rafaga-factor", "1.5")),
+                    semilla);
+            lecturas = new GeneradorCarga(flota, parametros, System.currentTimeMillis());
+        } else {
+            // Sin fichero de dispositivos, cada nombre (o id, en las tramas) nuevo se da de alta sin zona
+            // y con la mezcla indicada
+            fichero = FicheroLecturas.abrir(Path.of(fuente),
+                    nombre -> porNombre.computeIfAbsent(nombre, n -> inventar
+                            ? inventado(n, niveles, porNombre.size(), porId) : null),
+                    id -> {
+                        Dispositivo d = porId.get(id);
+                        if (d == null && inventar) {
+                            d = inventado("dispositivo" + id, niveles, id, porId);
+                            porNombre.put(d.getNombre(), d);
+                        }
+                        return d;
+                    });
+            lecturas = fichero;
+        }
+
+        if (opciones.containsKey("guardar")) {
+            long escritas = FicheroLecturas.escribir(Path.of(opciones.get("guardar")), lecturas,
+                    Integer.parseInt(opciones.getOrDefault("lecturas-por-trama", "64")));
+            System.out.printf("💾 %,d lecturas guardadas en %s%n", escritas, opciones.get("guardar"));
+            return;
+        }
+
+        // La previsión avanza con los instantes de la secuencia, no con el reloj, para poder ajustarla sobre grabaciones
+        Pronostico pronostico = new Pronostico(
+                Long.parseLong(opciones.getOrDefault("pronostico-horizonte-ms", "0")),
+                Long.parseLong(opciones.getOrDefault("pronostico-periodo-ms", "1000")),
+                Double.parseDouble(opciones.getOrDefault("pronostico-alfa", "0.5")),
+                Double.parseDouble(opciones.getOrDefault("pronostico-beta", "0.1")),
+                Boolean.parseBoolean(opciones.getOrDefault("anticipar", "false")));
+        SmartGridDecisionEngine motor = new SmartGridDecisionEngine(OpcionesMotor.conLimite(limite)
+                .conLimitesZona(limitesZona(opciones.getOrDefault("limites-zona", "")))
+                .conParalelismo(Integer.parseInt(opciones.getOrDefault("paralelismo", "1")))
+                .conPronostico(pronostico));
+        ObservadorDesconexiones observador = new ObservadorDesconexiones();
+        motor.añadirListener(observador);
+
+        String destino = opciones.getOrDefault("destino", "motor");
+        boolean binario = opciones.getOrDefault("formato", "texto").equals("binario");
+        int lote = Math.max(1, Integer.parseInt(opciones.getOrDefault("lote", "1")));
+        MQTTSubscriberService servicio = null;
+        Consumer<List<LecturaGrabada>> aplicar;
+        if (destino.equals("servicio")) {
+            RegistroDispositivos registro = new RegistroDispositivos(RepositorioEnMemoria.sobre(porNombre, porId),
+                    Math.max(porNombre.size(), 100_000), 30_000, 0);
+            registro.precargar();
+            servicio = new MQTTSubscriberService(null, motor, registro);
+            aplicar = aplicadorServicio(servicio, binario, lote);
+        } else {
+            aplicar = aplicadorMotor(motor, lote);
+        }
+
+        String velocidad = opciones.getOrDefault("velocidad", "max");
+        Resultado resultado = repetir(lecturas, aplicar, motor, lote,
+                velocidad.equals("max") ? 0 : Double.parseDouble(velocidad),
+                Long.parseLong(opciones.getOrDefault("calentamiento", "0")),
+                pronostico.isActivo() ? pronostico.periodoMs() : 0);
+        if (fichero != null) {
+            fichero.close();
+        }
+
+        informar(resultado, motor, observador, servicio, fichero == null ? 0 : fichero.getDescartadas(),
+                destino + (destino.equals("servicio") ? "/" + (binario ? "binario" : "texto") : "")
+                        + ", lote " + lote + ", velocidad " + velocidad);
+        motor.close();
+    }
+
+    /**
+     * Dispositivo para un nombre que no estaba descrito: sin zona, con un id nuevo y una criticidad
+     * de la mezcla elegida por el nombre (la misma en todas las repeticiones).
+     */
+    private static Dispositivo inventado(String nombre, NivelCriticidad[] niveles, long id, Map<Long, Dispositivo> porId) {
+        Dispositivo d = Flota.dispositivo(nombre, null, niveles[Math.floorMod(nombre.hashCode(), niveles.length)], 0);
+        d.setId(id);
+        porId.put(d.getId(), d);
+        return d;
+    }
+
+    /**
+     * Aplica los lotes al motor: lectura a lectura como {@code procesarDispositivo} o en bloque como {@code procesarLecturas}.
+     */
+    private static Consumer<List<LecturaGrabada>> aplicadorMotor(SmartGridDecisionEngine motor, int lote) {
+        if (lote == 1) {
+            return lecturas -> {
+                LecturaGrabada lectura = lecturas.get(0);
+                lectura.dispositivo().setConsumo(lectura.consumo());
+                motor.procesarDispositivo(lectura.dispositivo());
+            };
+        }
+        return lecturas -> {
+            List<Lectura> lecturasMotor = new ArrayList<>(lecturas.size());
+            for (LecturaGrabada lectura : lecturas) {
+                lecturasMotor.add(new Lectura(lectura.dispositivo(), lectura.consumo(), lectura.instante()));
+            }
+            motor.procesarLecturas(lecturasMotor);
+        };
+    }
+
+    /**
+     * Aplica los lotes al servicio como llegarían del broker: texto "nombre:consumo" (uno a uno con
+     * {@code procesarMensaje} o en bloque con {@code procesarLote}) o una trama binaria por lote.
+     */
+    private static Consumer<List<LecturaGrabada>> aplicadorServicio(MQTTSubscriberService servicio, boolean binario,
+                                                                    int lote) {
+        if (binario) {
+            return lecturas -> {
+                int n = lecturas.size();
+                long[] ids = new long[n];
+                float[] consumos = new float[n];
+                long[] instantes = new long[n];
+                for (int i = 0; i < n; i++) {
+                    LecturaGrabada lectura = lecturas.get(i);
+                    ids[i] = lectura.dispositivo().getId();
+                    consumos[i] = (float) lectura.consumo();
+                    instantes[i] = lectura.instante();
+                }
+                servicio.procesarLote(List.of(TramaBinaria.codificar(ids, consumos, instantes)));
+            };
+        }
+        if (lote == 1) {
+            return lecturas -> {
+                LecturaGrabada lectura = lecturas.get(0);
+                servicio.procesarMensaje(lectura.dispositivo().getNombre() + ":" + lectura.consumo());
+            };
+        }
+        return lecturas -> {
+            List<byte[]> payloads = new ArrayList<>(lecturas.size());
+            for (LecturaGrabada lectura : lecturas) {
+                payloads.add((lectura.dispositivo().getNombre() + ":" + lectura.consumo())
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+            servicio.procesarLote(payloads);
+        };
+    }
+
+    /**
+     * Medidas de una repetición, sin contar las lecturas de calentamiento.
+     */
+    private record Resultado(long lecturas, long nanos, HistogramaLatencias latencias, double consumoMaximo,
+                             long muestras, long muestrasSobreLimite) {
+    }
+
+    private static Resultado repetir(Iterator<LecturaGrabada> lecturas, Consumer<List<LecturaGrabada>> aplicar,
+                                     SmartGridDecisionEngine motor, int tamañoLote, double velocidad,
+                                     long calentamiento, long periodoPronostico) {
+        HistogramaLatencias latencias = new HistogramaLatencias();
+        List<LecturaGrabada> lote = new ArrayList<>(tamañoLote);
+        long[] programadas = new long[tamañoLote];
+        LecturaGrabada siguiente = lecturas.hasNext() ? lecturas.next() : null;
+        long instanteInicial = siguiente == null ? 0 : siguiente.instante();
+
+        long aplicadas = 0;
+        long inicio = System.nanoTime();
+        long lotes = 0;
+        double consumoMaximo = 0;
+        long muestras = 0;
+        long muestrasSobreLimite = 0;
+        long siguientePronostico = Long.MIN_VALUE;
+
+        while (siguiente != null) {
+            if (aplicadas == calentamiento && calentamiento > 0) {
+                // Fin del calentamiento: las medidas empiezan de cero, el estado del motor se conserva
+                latencias = new HistogramaLatencias();
+                inicio = System.nanoTime();
+                instanteInicial = siguiente.instante();
+            }
+
+            // En tiempo escalado se espera al instante de la primera lectura y se juntan las que ya tocan
+            long ahora = System.nanoTime();
+            int n = 0;
+            do {
+                long programada = velocidad > 0 ? programada(inicio, instanteInicial, siguiente, velocidad) : ahora;
+                if (n == 0 && programada > ahora) {
+                    LockSupport.parkNanos(programada - ahora);
+                    ahora = System.nanoTime();
+                } else if (programada > ahora) {
+                    break;
+                }
+                lote.add(siguiente);
+                programadas[n++] = programada;
+                siguiente = lecturas.hasNext() ? lecturas.next() : null;
+            } while (n < tamañoLote && siguiente != null
+                    && aplicadas + n != calentamiento);
+
+            aplicar.accept(lote);
+            long fin = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                latencias.registrar(fin - programadas[i]);
+            }
+            aplicadas += n;
+
+            long instante = lote.get(n - 1).instante();
+            if (periodoPronostico > 0 && instante >= siguientePronostico) {
+                motor.pronosticar(instante);
+                siguientePronostico = instante + periodoPronostico;
+            }
+            lote.clear();
+
+            if (++lotes % MUESTREO_LOTES == 0) {
+                double consumo = motor.getConsumoTotal();
+                consumoMaximo = Math.max(consumoMaximo, consumo);
+                muestras++;
+                if (consumo > motor.getLimiteConsumo()) {
+                    muestrasSobreLimite++;
+                }
+            }
+        }
+        long medidas = aplicadas - Math.min(aplicadas, calentamiento);
+        return new Resultado(medidas, System.nanoTime() - inicio, latencias, consumoMaximo, muestras,
+                muestrasSobreLimite);
+    }
+
+    private static long programada(long inicio, long instanteInicial, LecturaGrabada lectura, double velocidad) {
+        return inicio + (long) ((lectura.instante() - instanteInicial) * 1_000_000 / velocidad);
+    }
+
+    /**
+     * Cuenta las desconexiones automáticas y los dispositivos que vuelven tras ser desconectados.
+     * Se invoca desde los hilos del motor, así que solo usa estructuras concurrentes.
+     */
+    private static final class ObservadorDesconexiones implements CambiosMotorListener {
+
+        final LongAdder desconexiones = new LongAdder();
+        final LongAdder reconexiones = new LongAdder();
+        final Set<String> desconectados = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public void dispositivoActualizado(Dispositivo dispositivo, boolean conectado) {
+            if (conectado && desconectados.remove(dispositivo.getNombre())) {
+                reconexiones.increment();
+            }
+        }
+
+        @Override
+        public void dispositivoDesconectado(String nombre, String zona, boolean automatico) {
+            if (automatico) {
+                desconexiones.increment();
+                desconectados.add(nombre);
+            }
+        }
+    }
+
+    private static void informar(Resultado resultado, SmartGridDecisionEngine motor, ObservadorDesconexiones observador,
+                                 MQTTSubscriberService servicio, long descartadas, String modo) {
+        HistogramaLatencias latencias = resultado.latencias();
+        double segundos = resultado.nanos() / 1e9;
+        System.out.printf("📊 Repetición (%s): %,d lecturas en %.2f s → %,.0f lecturas/s%n", modo,
+                resultado.lecturas(), segundos, resultado.lecturas() / segundos);
+        System.out.printf("⏱️ Latencia (µs): p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f p99.99=%.1f max=%.1f%n",
+                micros(latencias.percentil(0.5)), micros(latencias.percentil(0.9)),
+                micros(latencias.percentil(0.99)), micros(latencias.percentil(0.999)),
+                micros(latencias.percentil(0.9999)), micros(latencias.getMaximo()));
+        System.out.printf("🔌 Desconexiones automáticas: %,d (reconectados después: %,d)%n",
+                observador.desconexiones.sum(), observador.reconexiones.sum());
+        for (String zona : motor.getZonas()) {
+            long desconexiones = motor.getDesconexionesAutomaticas(zona);
+            if (desconexiones > 0) {
+                System.out.printf("   %s: %,d%n", zona, desconexiones);
+            }
+        }
+        System.out.printf("⚡ Consumo final: %.0fW / %.0fW (críticos %.0fW), máximo muestreado %.0fW, "
+                        + "%d de %d muestras por encima del límite%n",
+                motor.getConsumoTotal(), motor.getLimiteConsumo(), motor.getConsumoCriticos(),
+                resultado.consumoMaximo(), resultado.muestrasSobreLimite(), resultado.muestras());
+        if (motor.getPronostico().isActivo()) {
+            ErrorPronostico error = motor.getErrorPronostico();
+            long anticipadas = 0;
+            for (String zona : motor.getZonas()) {
+                anticipadas += motor.getAnticipadas(zona);
+            }
+            System.out.printf("🔮 Previsión a %,d ms: error absoluto medio %.0fW, sesgo %.0fW (%,d comparaciones), "
+                            + "desconexiones anticipadas: %,d%n", motor.getPronostico().horizonteMs(),
+                    error.getMedioAbsoluto(), error.getSesgo(), error.comparaciones(), anticipadas);
+        }
+        System.out.printf("🚨 Alerta de críticos al terminar: %s · activos: %,d%n",
+                motor.isAlertaCriticos() ? "sí" : "no", motor.getNumeroActivos());
+        if (descartadas > 0) {
+            System.out.printf("❓ Lecturas de dispositivos desconocidos saltadas: %,d%n", descartadas);
+        }
+        if (servicio != null) {
+            Map<ResultadoLectura, Long> errores = servicio.getErroresLectura();
+            errores.values().removeIf(cuenta -> cuenta == 0);
+            if (!errores.isEmpty()) {
+                System.out.println("❌ Rechazados por el servicio: " + errores);
+            }
+        }
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1_000.0;
+    }
+
+    /**
+     * Límites por zona con el formato de {@code smartgrid.motor.limites-zona} (zona:W,zona:W).
+     */
+    private static Map<String, Double> limitesZona(String texto) {
+        Map<String, Double> limites = new HashMap<>();
+        for (String parte : texto.split(",")) {
+            if (parte.isBlank()) continue;
+            String[] zonaLimite = parte.trim().split(":");
+            limites.put(zonaLimite[0].trim(), Double.parseDouble(zonaLimite[1].trim()));
+        }
+        return limites;
+    }
+
+    private static Map<String, String> opciones(String[] args) {
+        Map<String, String> opciones = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Opción no válida '" + arg + "', se esperaba --clave=valor");
+            }
+            int igual = arg.indexOf('=');
+            opciones.put(arg.substring(2, igual), arg.substring(igual + 1));
+        }
+        return opciones;
+    }
+}
@@ -0,0 +1,62 @@
+package com.smartgrid.benchmarks;
+
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.repository.DispositivoRepository;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * {@link DispositivoRepository} sobre una lista fija, para medir sin base de datos.
+ * Solo implementa las consultas que usa el camino de ingesta.
+ */
+final class RepositorioEnMemoria {
+
+    private RepositorioEnMemoria() {
+    }
+
+    static DispositivoRepository de(List<Dispositivo> dispositivos) {
+        Map<String, Dispositivo> porNombre = dispositivos.stream()
+                .collect(Collectors.toMap(Dispositivo::getNombre, Function.identity()));
+        Map<Long, Dispositivo> porId = dispositivos.stream()
+                .filter(d -> d.getId() != null)
+                .collect(Collectors.toMap(Dispositivo::getId, Function.identity()));
+        return sobre(porNombre, porId);
+    }
+
+    /**
+     * Repositorio que consulta directamente los mapas recibidos, así que ve los dispositivos que se
+     * añadan después (p. ej. los que aparecen por primera vez al repetir una grabación).
+     */
+    static DispositivoRepository sobre(Map<String, Dispositivo> porNombre, Map<Long, Dispositivo> porId) {
+        return (DispositivoRepository) Proxy.newProxyInstance(
+                DispositivoRepository.class.getClassLoader(),
+                new Class<?>[]{DispositivoRepository.class},
+                (proxy, metodo, args) -> switch (metodo.getName()) {
+                    case "findAll" -> List.copyOf(porNombre.values());
+                    case "findByNombre" -> Optional.ofNullable(porNombre.get((String) args[0]));
+                    case "findByNombreIn" -> ((Collection<?>) args[0]).stream()
+                            .map(porNombre::get)
+                            .filter(d -> d != null)
+                            .toList();
+                    case "findAllById" -> {
+                        List<Dispositivo> encontrados = new ArrayList<>();
+                        for (Object id : (Iterable<?>) args[0]) {
+                            Dispositivo d = porId.get((Long) id);
+                            if (d != null) encontrados.add(d);
+                        }
+                        yield encontrados;
+                    }
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "RepositorioEnMemoria";
+                    default -> throw new UnsupportedOperationException(metodo.getName());
+                });
+    }
+}
@@ -0,0 +1,97 @@
+package com.smartgrid.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuración del canal de órdenes MQTT hacia los dispositivos (desconectar, restablecer y consignas
+ * de potencia), con su propio límite de envío por zona y la espera de las confirmaciones.
+ */
+@Component
+public class ActuacionConfig {
+
+    @Value("${mqtt.actuacion.activa:false}")
+    private boolean activa;
+
+    @Value("${mqtt.actuacion.topic:smartgrid/control/}")
+    private String prefijoTopic;
+
+    @Value("${mqtt.actuacion.ordenes-por-segundo-zona:50}")
+    private double ordenesPorSegundoZona;
+
+    @Value("${mqtt.actuacion.max-en-vuelo:1000}")
+    private int maxEnVuelo;
+
+    @Value("${mqtt.actuacion.espera-confirmacion-ms:5000}")
+    private long esperaConfirmacionMs;
+
+    @Value("${mqtt.actuacion.reintentos:3}")
+    private int reintentos;
+
+    @Value("${mqtt.actuacion.intervalo-ms:50}")
+    private long intervaloMs;
+
+    /**
+     * Indica si las decisiones del motor se envían a los dispositivos.
+     *
+     * @return true si el canal de órdenes está activado
+     */
+    public boolean isActiva() {
+        return activa;
+    }
+
+    /**
+     * Prefijo del topic de cada dispositivo; se le añade el nombre del dispositivo,
+     * y el dispositivo confirma en ese mismo topic seguido de "/ack".
+     *
+     * @return prefijo terminado en "/"
+     */
+    public String getPrefijoTopic() {
+        return prefijoTopic.endsWith("/") ? prefijoTopic : prefijoTopic + "/";
+    }
+
+    /**
+     * Órdenes que se envían como mucho por segundo a los dispositivos de una misma zona.
+     *
+     * @return órdenes por segundo
+     */
+    public double getOrdenesPorSegundoZona() {
+        return ordenesPorSegundoZona;
+    }
+
+    /**
+     * Órdenes publicadas y aún sin confirmar que se admiten a la vez.
+     *
+     * @return máximo de órdenes en vuelo
+     */
+    public int getMaxEnVuelo() {
+        return maxEnVuelo;
+    }
+
+    /**
+     * Tiempo que se espera la confirmación de un dispositivo antes de reenviar la orden.
+     *
+     * @return espera en milisegundos
+     */
+    public long getEsperaConfirmacionMs() {
+        return esperaConfirmacionMs;
+    }
+
+    /**
+     * Reenvíos de una orden sin confirmar antes de darla por fallida.
+     *
+     * @return número de reintentos
+     */
+    public int getReintentos() {
+        return reintentos;
+    }
+
+    /**
+     * Intervalo entre rondas de envío de órdenes.
+     *
+     * @return intervalo en milisegundos
+     */
+    public long getIntervaloMs() {
+        return intervaloMs;
+    }
+}
@@ -0,0 +1,48 @@
+package com.smartgrid.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuración de la API REST de consulta de dispositivos, que se sirve desde una foto
+ * de los dispositivos activos que se renueva como mucho una vez por intervalo.
+ */
+@Component
+public class ApiConfig {
+
+    @Value("${smartgrid.api.intervalo-foto-ms:1000}")
+    private long intervaloFotoMs;
+
+    @Value("${smartgrid.api.pagina-por-defecto:100}")
+    private int paginaPorDefecto;
+
+    @Value("${smartgrid.api.pagina-maxima:1000}")
+    private int paginaMaxima;
+
+    /**
+     * Tiempo mínimo entre dos fotos de los dispositivos activos; es lo más desfasada que puede estar una consulta.
+     *
+     * @return intervalo en milisegundos
+     */
+    public long getIntervaloFotoMs() {
+        return intervaloFotoMs;
+    }
+
+    /**
+     * Dispositivos por página si la petición no lo indica.
+     *
+     * @return tamaño de página por defecto
+     */
+    public int getPaginaPorDefecto() {
+        return paginaPorDefecto;
+    }
+
+    /**
+     * Dispositivos por página como máximo, aunque la petición pida más.
+     *
+     * @return tamaño de página máximo
+     */
+    public int getPaginaMaxima() {
+        return paginaMaxima;
+    }
+}
@@ -0,0 +1,60 @@
+package com.smartgrid.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuración del filtro de banda muerta, que evita aplicar al motor las lecturas
+ * que apenas cambian respecto a la última aplicada del mismo dispositivo.
+ */
+@Component
+public class BandaMuertaConfig {
+
+    @Value("${smartgrid.banda-muerta.activa:false}")
+    private boolean activa;
+
+    @Value("${smartgrid.banda-muerta.absoluta:0}")
+    private double absoluta;
+
+    @Value("${smartgrid.banda-muerta.porcentaje:0}")
+    private double porcentaje;
+
+    @Value("${smartgrid.banda-muerta.max-antiguedad-ms:30000}")
+    private long maxAntiguedadMs;
+
+    /**
+     * Indica si se filtran las lecturas antes de llegar al motor.
+     *
+     * @return true si el filtro está activado
+     */
+    public boolean isActiva() {
+        return activa;
+    }
+
+    /**
+     * Variación mínima respecto a la última lectura aplicada para volver a aplicar una.
+     *
+     * @return umbral en Watts
+     */
+    public double getAbsoluta() {
+        return absoluta;
+    }
+
+    /**
+     * Variación mínima en porcentaje de la última lectura aplicada; cuenta el mayor de los dos umbrales.
+     *
+     * @return umbral en porcentaje
+     */
+    public double getPorcentaje() {
+        return porcentaje;
+    }
+
+    /**
+     * Tiempo tras el que una lectura se aplica aunque no haya variado.
+     *
+     * @return antigüedad máxima en milisegundos (0 = sin límite)
+     */
+    public long getMaxAntiguedadMs() {
+        return maxAntiguedadMs;
+    }
+}
@@ -1,10 +1,47 @@
 package com.smartgrid.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartgrid.controller.LimiteOperadoresInterceptor;
+import com.smartgrid.logic.Caducidad;
+import com.smartgrid.logic.OpcionesMotor;
 import com.smartgrid.logic.SmartGridDecisionEngine;
 import com.smartgrid.repository.DispositivoRepository;
+import com.smartgrid.service.ActuacionDispositivos;
+import com.smartgrid.service.ClienteActuacionMqtt;
+import com.smartgrid.service.DifusionDashboard;
+import com.smartgrid.service.EscritorLecturas;
+import com.smartgrid.service.EstadisticasConsumo;
+import com.smartgrid.service.FiltroBandaMuerta;
+import com.smartgrid.service.FotoDispositivos;
+import com.smartgrid.service.ImportadorDispositivos;
+import com.smartgrid.service.InstantaneasMotor;
+import com.smartgrid.service.LimiteConcurrencia;
 import com.smartgrid.service.MQTTSubscriberService;
+import com.smartgrid.service.MetricasMotor;
+import com.smartgrid.service.OpcionesSuscriptor;
+import com.smartgrid.service.RegistroDispositivos;
+import com.smartgrid.service.RegistroDispositivosListener;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.util.function.ToDoubleFunction;
 
 /**
  * Clase de configuración de Spring que define los beans necesarios para la aplicación,
@@ -13,27 +50,373 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class Config {
 
+    private static final Logger log = LoggerFactory.getLogger(Config.class);
+
     /**
      * Bean que gestiona el servicio suscriptor de MQTT.
      * Este servicio escucha mensajes desde el broker MQTT y los procesa.
      *
      * @param mqttConfig configuración del cliente MQTT
      * @param ia motor de decisión de la smart grid
-     * @param repository repositorio JPA para acceder a los dispositivos
+     * @param registroDispositivos registro en memoria de los dispositivos dados de alta
+     * @param escritorLecturas histórico de lecturas en segundo plano
+     * @param bandaMuertaConfig activación y umbrales del filtro de banda muerta
+     * @param registroMetricas registro de métricas de la aplicación (Actuator)
      * @return instancia lista para usar de MQTTSubscriberService
      */
     @Bean
-    public MQTTSubscriberService mqttSubscriberService(MQTTConfig mqttConfig, SmartGridDecisionEngine ia, DispositivoRepository repository) {
-        return new MQTTSubscriberService(mqttConfig, ia, repository);
+    @DependsOn("instantaneasMotor") // el estado guardado del motor se restaura antes de suscribirse
+    public MQTTSubscriberService mqttSubscriberService(MQTTConfig mqttConfig, SmartGridDecisionEngine ia,
+                                                       RegistroDispositivos registroDispositivos,
+                                                       EscritorLecturas escritorLecturas,
+                                                       BandaMuertaConfig bandaMuertaConfig,
+                                                       MeterRegistry registroMetricas) {
+        FiltroBandaMuerta filtro = null;
+        if (bandaMuertaConfig.isActiva()) {
+            filtro = new FiltroBandaMuerta(bandaMuertaConfig.getAbsoluta(), bandaMuertaConfig.getPorcentaje(),
+                    maxAntiguedadBandaMuerta(bandaMuertaConfig.getMaxAntiguedadMs(), ia.getCaducidad()));
+            ia.añadirListener(filtro); // olvida la referencia de los desconectados y los ajustados
+        }
+        return new MQTTSubscriberService(mqttConfig, ia, registroDispositivos, OpcionesSuscriptor.POR_DEFECTO
+                .conHistorico(escritorLecturas).conFiltro(filtro).conMetricas(registroMetricas));
+    }
+
+    /**
+     * Bean del canal de órdenes hacia los dispositivos, que publica por MQTT las desconexiones,
+     * restablecimientos y consignas de potencia desde su propio hilo. Si está desactivado, no observa
+     * el motor y las órdenes se ignoran.
+     *
+     * @param ia motor de decisiones a observar
+     * @param mqttConfig broker e identificador del cliente MQTT
+     * @param actuacionConfig activación, topics, límite por zona y confirmaciones
+     * @param registroMetricas registro de métricas de la aplicación (Actuator)
+     * @return canal ya suscrito al motor si está activo
+     * @throws MqttException si la dirección del broker no es válida
+     */
+    @Bean
+    public ActuacionDispositivos actuacionDispositivos(SmartGridDecisionEngine ia, MQTTConfig mqttConfig,
+                                                       ActuacionConfig actuacionConfig,
+                                                       MeterRegistry registroMetricas) throws MqttException {
+        ActuacionDispositivos actuacion = new ActuacionDispositivos(ia, actuacionConfig.getPrefijoTopic(),
+                actuacionConfig.getOrdenesPorSegundoZona(), actuacionConfig.getMaxEnVuelo(),
+                actuacionConfig.getEsperaConfirmacionMs(), actuacionConfig.getReintentos(),
+                actuacionConfig.getIntervaloMs());
+        if (actuacionConfig.isActiva()) {
+            if (!ia.getHisteresis().isActiva()) {
+                log.warn("⚠️ Actuación activa sin histéresis: los dispositivos desconectados no recibirán la orden "
+                        + "de restablecerse; configura smartgrid.motor.histeresis.fraccion-restablecer");
+            }
+            actuacion.iniciar(new ClienteActuacionMqtt(mqttConfig.getBrokerUrl(),
+                    mqttConfig.getClientId() + "-actuacion", actuacionConfig.getPrefijoTopic(),
+                    actuacionConfig.getMaxEnVuelo(), actuacion::confirmar));
+        }
+
+        Gauge.builder("smartgrid.actuacion.pendientes", actuacion, a -> a.getEstadisticas().pendientes())
+                .description("Órdenes a dispositivos esperando turno")
+                .register(registroMetricas);
+        Gauge.builder("smartgrid.actuacion.en-vuelo", actuacion, a -> a.getEstadisticas().enVuelo())
+                .description("Órdenes a dispositivos publicadas y sin confirmar")
+                .register(registroMetricas);
+        contadorOrdenes(registroMetricas, actuacion, "enviada", a -> a.getEstadisticas().enviadas());
+        contadorOrdenes(registroMetricas, actuacion, "confirmada", a -> a.getEstadisticas().confirmadas());
+        contadorOrdenes(registroMetricas, actuacion, "reintentada", a -> a.getEstadisticas().reintentos());
+        contadorOrdenes(registroMetricas, actuacion, "fallida", a -> a.getEstadisticas().fallidas());
+        return actuacion;
+    }
+
+    private static void contadorOrdenes(MeterRegistry registroMetricas, ActuacionDispositivos actuacion,
+                                        String resultado, ToDoubleFunction<ActuacionDispositivos> valor) {
+        FunctionCounter.builder("smartgrid.actuacion.ordenes", actuacion, valor)
+                .description("Órdenes a dispositivos por resultado")
+                .tag("resultado", resultado)
+                .register(registroMetricas);
+    }
+
+    /**
+     * Las lecturas que filtra la banda muerta no llegan al motor, así que tampoco renuevan la caducidad:
+     * un medidor estable se retiraría aunque siga enviando. Por eso, con caducidad, se aplica al menos
+     * una lectura de cada dispositivo cada medio TTL.
+     */
+    private static long maxAntiguedadBandaMuerta(long maxAntiguedadMs, Caducidad caducidad) {
+        if (!caducidad.isActiva()) return maxAntiguedadMs;
+
+        long limite = Math.max(1, caducidad.ttlMs() / 2);
+        if (maxAntiguedadMs <= 0 || maxAntiguedadMs > limite) {
+            log.warn("⚠️ Antigüedad máxima de la banda muerta reducida a {} ms (la mitad de la caducidad)", limite);
+            return limite;
+        }
+        return maxAntiguedadMs;
+    }
+
+    /**
+     * Bean con las métricas del estado del motor (consumo frente a los límites, alertas y desconexiones
+     * por zona). Actuator lo vincula al registro de métricas al arrancar.
+     *
+     * @param ia motor de decisiones a observar
+     * @return métricas pendientes de vincular
+     */
+    @Bean
+    public MetricasMotor metricasMotor(SmartGridDecisionEngine ia) {
+        return new MetricasMotor(ia);
+    }
+
+    /**
+     * Bean del escritor del histórico de lecturas, que inserta por lotes en segundo plano.
+     * Si el histórico está desactivado, el escritor no arranca y descarta lo que recibe.
+     *
+     * @param jdbcTemplate acceso JDBC a la base de datos
+     * @param historicoConfig activación y dimensionado del histórico
+     * @return escritor listo para usar
+     */
+    @Bean
+    public EscritorLecturas escritorLecturas(JdbcTemplate jdbcTemplate, HistoricoConfig historicoConfig) {
+        EscritorLecturas escritor = new EscritorLecturas(jdbcTemplate, historicoConfig.getCapacidadLotes(),
+                historicoConfig.getFilasPorEscritura(), historicoConfig.getEsperaMs());
+        if (historicoConfig.isActivo()) {
+            escritor.iniciar();
+        }
+        return escritor;
+    }
+
+    /**
+     * Bean que guarda periódicamente el estado del motor y, al crearse, lo restaura.
+     * Si las instantáneas están desactivadas, no se lee ni se escribe nada.
+     *
+     * @param ia motor de decisiones cuyo estado se guarda
+     * @param instantaneaConfig activación, directorio e intervalos de las instantáneas
+     * @return instantáneas ya restauradas y en marcha
+     */
+    @Bean
+    public InstantaneasMotor instantaneasMotor(SmartGridDecisionEngine ia, InstantaneaConfig instantaneaConfig) {
+        InstantaneasMotor instantaneas = new InstantaneasMotor(ia, Path.of(instantaneaConfig.getDirectorio()),
+                instantaneaConfig.getIntervaloMs(), instantaneaConfig.getRegistroMs(),
+                instantaneaConfig.getAntiguedadMaximaMs());
+        if (instantaneaConfig.isActiva()) {
+            if (!Path.of(instantaneaConfig.getDirectorio()).isAbsolute()) {
+                log.warn("⚠️ El directorio de instantáneas '{}' es relativo: se resuelve desde '{}'",
+                        instantaneaConfig.getDirectorio(), Path.of("").toAbsolutePath());
+            }
+            instantaneas.restaurar();
+            instantaneas.iniciar();
+        }
+        return instantaneas;
+    }
+
+    /**
+     * Bean que difunde a los dashboards conectados los cambios del motor, agrupados por intervalo.
+     *
+     * @param ia motor de decisiones a observar
+     * @param mapper serializador JSON de la aplicación
+     * @param dashboardConfig intervalo de envío y duración de las conexiones
+     * @return difusión ya suscrita al motor
+     */
+    @Bean
+    public DifusionDashboard difusionDashboard(SmartGridDecisionEngine ia, ObjectMapper mapper,
+                                               DashboardConfig dashboardConfig) {
+        DifusionDashboard difusion = new DifusionDashboard(ia, mapper, dashboardConfig.getIntervaloMs(),
+                dashboardConfig.getTimeoutMs());
+        difusion.iniciar();
+        return difusion;
+    }
+
+    /**
+     * Bean de las estadísticas de consumo en ventanas de tiempo por dispositivo y por zona.
+     * Si están desactivadas, no observa el motor y las consultas no encuentran nada.
+     *
+     * @param ia motor de decisiones a observar
+     * @param estadisticasConfig activación, dispositivos máximos, muestreo de zonas y precisión
+     * @param registroMetricas registro de métricas de la aplicación (Actuator)
+     * @return estadísticas ya suscritas al motor
+     */
+    @Bean
+    public EstadisticasConsumo estadisticasConsumo(SmartGridDecisionEngine ia, EstadisticasConfig estadisticasConfig,
+                                                   MeterRegistry registroMetricas) {
+        EstadisticasConsumo estadisticas = new EstadisticasConsumo(ia, estadisticasConfig.getMaxDispositivos(),
+                estadisticasConfig.getMuestreoZonasMs(), estadisticasConfig.getErrorRelativo());
+        if (estadisticasConfig.isActivas()) {
+            estadisticas.iniciar();
+        }
+        Gauge.builder("smartgrid.estadisticas.dispositivos", estadisticas, EstadisticasConsumo::getNumeroDispositivos)
+                .description("Dispositivos con estadísticas de consumo en memoria")
+                .register(registroMetricas);
+        FunctionCounter.builder("smartgrid.estadisticas.sin-seguimiento", estadisticas,
+                        EstadisticasConsumo::getSinSeguimiento)
+                .description("Lecturas de dispositivos sin estadísticas por superar el máximo")
+                .register(registroMetricas);
+        return estadisticas;
+    }
+
+    /**
+     * Bean con la foto de los dispositivos activos de la que se sirve la API de consulta.
+     *
+     * @param ia motor de decisiones del que se copian los dispositivos
+     * @param apiConfig intervalo mínimo entre fotos
+     * @return foto que se tomará con la primera consulta
+     */
+    @Bean
+    public FotoDispositivos fotoDispositivos(SmartGridDecisionEngine ia, ApiConfig apiConfig) {
+        return new FotoDispositivos(ia, apiConfig.getIntervaloFotoMs());
+    }
+
+    /**
+     * Bean de la importación masiva de dispositivos, que da de alta por lotes JDBC
+     * y actualiza el registro en memoria tras cada lote.
+     *
+     * @param jdbcTemplate acceso JDBC a la base de datos
+     * @param transactionManager gestor de las transacciones de cada lote
+     * @param registro registro de dispositivos en memoria
+     * @param mapper lector de las líneas NDJSON
+     * @param importacionConfig tamaño de lote y errores que se detallan
+     * @return importador listo para usar
+     */
+    @Bean
+    public ImportadorDispositivos importadorDispositivos(JdbcTemplate jdbcTemplate,
+                                                         PlatformTransactionManager transactionManager,
+                                                         RegistroDispositivos registro, ObjectMapper mapper,
+                                                         ImportacionConfig importacionConfig) {
+        return new ImportadorDispositivos(jdbcTemplate, new TransactionTemplate(transactionManager), registro, mapper,
+                importacionConfig.getFilasPorLote(), importacionConfig.getMaxErrores());
+    }
+
+    /**
+     * Bean del registro de dispositivos en memoria, precargado desde la base de datos
+     * para que la ingesta no consulte el repositorio en cada mensaje.
+     *
+     * @param repository repositorio JPA para acceder a los dispositivos
+     * @param registroConfig capacidad, TTL negativo y refresco del registro
+     * @param registroMetricas registro de métricas de la aplicación (Actuator)
+     * @return registro listo para usar
+     */
+    @Bean
+    public RegistroDispositivos registroDispositivos(DispositivoRepository repository, RegistroConfig registroConfig,
+                                                     MeterRegistry registroMetricas) {
+        return new RegistroDispositivos(repository, registroConfig.getMaxDispositivos(),
+                registroConfig.getTtlNegativoMs(), registroConfig.getRefrescoMs(), registroMetricas);
+    }
+
+    /**
+     * Pone al día el registro de dispositivos y el motor con las altas, cambios y bajas hechas a través de JPA.
+     *
+     * @param registroDispositivos registro en memoria de los dispositivos dados de alta
+     * @param ia motor que olvida los dispositivos que dejan de existir
+     * @return listener de los {@link com.smartgrid.model.CambioDispositivo}
+     */
+    @Bean
+    public RegistroDispositivosListener registroDispositivosListener(RegistroDispositivos registroDispositivos,
+                                                                     SmartGridDecisionEngine ia) {
+        return new RegistroDispositivosListener(registroDispositivos, ia);
     }
 
     /**
      * Bean del motor de decisiones que simula la lógica de control energético.
      *
-     * @return nueva instancia de SmartGridDecisionEngine
+     * @param motorConfig límite global, límites por zona, paralelismo, caducidad, histéresis y previsión del motor
+     * @return nueva instancia de SmartGridDecisionEngine, con la caducidad, el restablecimiento y la previsión
+     * ya en marcha si están activos
      */
     @Bean
-    public SmartGridDecisionEngine decisionEngine() {
-        return new SmartGridDecisionEngine();
+    public SmartGridDecisionEngine decisionEngine(MotorConfig motorConfig) {
+        SmartGridDecisionEngine ia = new SmartGridDecisionEngine(OpcionesMotor.conLimite(motorConfig.getLimiteConsumo())
+                .conLimitesZona(motorConfig.getLimitesZona())
+                .conParalelismo(motorConfig.getParalelismo())
+                .conCaducidad(motorConfig.getCaducidad())
+                .conHisteresis(motorConfig.getHisteresis())
+                .conPronostico(motorConfig.getPronostico()));
+        ia.iniciarReloj();
+        return ia;
+    }
+
+    /**
+     * Bean que limita cuántas peticiones de operadores se atienden a la vez, para que una ráfaga en el
+     * dashboard no le quite los núcleos a la ingesta. Publica las peticiones en curso y las rechazadas.
+     *
+     * @param webConfig límite de peticiones, espera máxima e hilos virtuales
+     * @param registroMetricas registro de métricas de la aplicación (Actuator)
+     * @return límite compartido por las rutas de operadores
+     */
+    @Bean
+    public LimiteConcurrencia limiteOperadores(WebConfig webConfig, MeterRegistry registroMetricas) {
+        if (webConfig.isHilosVirtuales()) {
+            if (WebConfig.isHilosVirtualesDisponibles() && webConfig.getMaxConcurrentes() > 0) {
+                log.info("🧵 Peticiones web en hilos virtuales; como mucho {} de operadores a la vez",
+                        webConfig.getMaxConcurrentes());
+            } else if (WebConfig.isHilosVirtualesDisponibles()) {
+                log.info("🧵 Peticiones web en hilos virtuales, sin límite de operadores a la vez");
+            } else {
+                log.warn("⚠️ Se han pedido hilos virtuales, pero Java {} no los tiene (hace falta 21): "
+                        + "las peticiones web siguen en el pool de Tomcat", Runtime.version().feature());
+            }
+        }
+
+        LimiteConcurrencia limite = new LimiteConcurrencia(webConfig.getMaxConcurrentes(), webConfig.getEsperaMs());
+        Gauge.builder("smartgrid.web.operadores.en-curso", limite, LimiteConcurrencia::getEnCurso)
+                .description("Peticiones de operadores que se están atendiendo")
+                .register(registroMetricas);
+        FunctionCounter.builder("smartgrid.web.operadores.rechazadas", limite, LimiteConcurrencia::getRechazadas)
+                .description("Peticiones de operadores rechazadas por superar el límite de concurrencia")
+                .register(registroMetricas);
+        return limite;
+    }
+
+    /**
+     * Registra el límite de concurrencia en las rutas de operadores del dashboard.
+     * Sin límite configurado no se registra nada y las rutas se atienden como siempre.
+     *
+     * @param limiteOperadores límite compartido por las rutas
+     * @return configuración de Spring MVC con el interceptor
+     */
+    @Bean
+    public WebMvcConfigurer limiteOperadoresWeb(LimiteConcurrencia limiteOperadores) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                if (limiteOperadores.getMaximo() == 0) return;
+                registry.addInterceptor(new LimiteOperadoresInterceptor(limiteOperadores))
+                        .addPathPatterns(LimiteOperadoresInterceptor.RUTAS);
+            }
+        };
+    }
+
+    /**
+     * Al terminar de arrancar, comprueba que el pool de conexiones da para todos los hilos que consultan la
+     * base de datos a la vez. Si no, la ingesta esperaría conexión detrás de las demás consultas.
+     *
+     * @param dataSource pool de conexiones de la aplicación
+     * @param mqttConfig conexiones y carriles de ingesta
+     * @param historicoConfig activación del histórico de lecturas
+     * @param registroConfig refresco anticipado del registro de dispositivos
+     * @return comprobación que se ejecuta con la aplicación lista
+     */
+    @Bean
+    public ApplicationListener<ApplicationReadyEvent> validacionPoolConexiones(DataSource dataSource,
+                                                                               MQTTConfig mqttConfig,
+                                                                               HistoricoConfig historicoConfig,
+                                                                               RegistroConfig registroConfig) {
+        return evento -> {
+            if (!(dataSource instanceof HikariDataSource hikari)) return;
+
+            int necesarias = conexionesNecesarias(mqttConfig, historicoConfig, registroConfig);
+            if (hikari.getMaximumPoolSize() < necesarias) {
+                log.warn("⚠️ Pool de conexiones con {} conexiones; la ingesta, el histórico y la web pueden usar {} "
+                        + "a la vez (spring.datasource.hikari.maximum-pool-size)", hikari.getMaximumPoolSize(),
+                        necesarias);
+            } else {
+                log.info("✅ Pool de conexiones: {} conexiones para {} consumidores simultáneos",
+                        hikari.getMaximumPoolSize(), necesarias);
+            }
+        };
+    }
+
+    /**
+     * Hilos que pueden tener una conexión a la vez: los de ingesta (carriles o, sin etapa de ingesta,
+     * los clientes MQTT) por los fallos del registro, el escritor del histórico, el refresco del registro
+     * y una más para las consultas puntuales (arranque, web).
+     */
+    static int conexionesNecesarias(MQTTConfig mqttConfig, HistoricoConfig historicoConfig,
+                                    RegistroConfig registroConfig) {
+        int ingesta = mqttConfig.getIngestaCapacidad() > 0 ? mqttConfig.getIngestaCarriles() : mqttConfig.getConexiones();
+        int historico = historicoConfig.isActivo() ? 1 : 0;
+        int refresco = registroConfig.getRefrescoMs() > 0 ? 1 : 0;
+        return ingesta + historico + refresco + 1;
     }
 }
@@ -0,0 +1,36 @@
+package com.smartgrid.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuración del dashboard en vivo, que envía a los navegadores conectados
+ * solo los cambios producidos desde el último envío.
+ */
+@Component
+public class DashboardConfig {
+
+    @Value("${smartgrid.dashboard.intervalo-ms:250}")
+    private long intervaloMs;
+
+    @Value("${smartgrid.dashboard.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    /**
+     * Intervalo entre envíos; los cambios de un mismo dispositivo dentro del intervalo se agrupan en uno.
+     *
+     * @return intervalo en milisegundos
+     */
+    public long getIntervaloMs() {
+        return intervaloMs;
+    }
+
+    /**
+     * Duración máxima de cada conexión; al cumplirse, el navegador se reconecta solo.
+     *
+     * @return duración en milisegundos
+     */
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+}
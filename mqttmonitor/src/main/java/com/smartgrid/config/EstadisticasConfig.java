@@ -0,0 +1,60 @@
+package com.smartgrid.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuración de las estadísticas de consumo en ventanas de tiempo, que se mantienen en memoria
+ * por dispositivo y por zona.
+ */
+@Component
+public class EstadisticasConfig {
+
+    @Value("${smartgrid.estadisticas.activas:false}")
+    private boolean activas;
+
+    @Value("${smartgrid.estadisticas.max-dispositivos:10000}")
+    private int maxDispositivos;
+
+    @Value("${smartgrid.estadisticas.muestreo-zonas-ms:100}")
+    private long muestreoZonasMs;
+
+    @Value("${smartgrid.estadisticas.error-relativo:0.01}")
+    private double errorRelativo;
+
+    /**
+     * Indica si se calculan las estadísticas.
+     *
+     * @return true si están activadas
+     */
+    public boolean isActivas() {
+        return activas;
+    }
+
+    /**
+     * Número máximo de dispositivos con estadísticas; cada uno ocupa una cantidad fija de memoria.
+     *
+     * @return dispositivos como máximo
+     */
+    public int getMaxDispositivos() {
+        return maxDispositivos;
+    }
+
+    /**
+     * Intervalo con el que se muestrea el consumo total de cada zona.
+     *
+     * @return intervalo en milisegundos
+     */
+    public long getMuestreoZonasMs() {
+        return muestreoZonasMs;
+    }
+
+    /**
+     * Error relativo de los percentiles (0.01 = 1 %).
+     *
+     * @return error relativo entre 0 y 1
+     */
+    public double getErrorRelativo() {
+        return errorRelativo;
+    }
+}
@@ -0,0 +1,60 @@
+package com.smartgrid.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuración del histórico de lecturas, que se escribe en la base de datos
+ * por lotes y en segundo plano para no frenar la ingesta MQTT.
+ */
+@Component
+public class HistoricoConfig {
+
+    @Value("${smartgrid.historico.activo:false}")
+    private boolean activo;
+
+    @Value("${smartgrid.historico.capacidad-lotes:1024}")
+    private int capacidadLotes;
+
+    @Value("${smartgrid.historico.filas-por-escritura:1000}")
+    private int filasPorEscritura;
+
+    @Value("${smartgrid.historico.espera-ms:1000}")
+    private long esperaMs;
+
+    /**
+     * Indica si se guardan las lecturas.
+     *
+     * @return true si el histórico está activado
+     */
+    public boolean isActivo() {
+        return activo;
+    }
+
+    /**
+     * Número de lotes de ingesta pendientes de escribir que se admiten antes de descartar.
+     *
+     * @return capacidad de la cola de escritura
+     */
+    public int getCapacidadLotes() {
+        return capacidadLotes;
+    }
+
+    /**
+     * Número máximo de filas por lote JDBC.
+     *
+     * @return filas por escritura
+     */
+    public int getFilasPorEscritura() {
+        return filasPorEscritura;
+    }
+
+    /**
+     * Espera máxima para completar un lote JDBC antes de escribirlo.
+     *
+     * @return espera en milisegundos
+     */
+    public long getEsperaMs() {
+        return esperaMs;
+    }
+}
@@ -0,0 +1,36 @@
+package com.smartgrid.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuración de la importación masiva de dispositivos, que escribe por lotes JDBC
+ * sin pasar por Hibernate.
+ */
+@Component
+public class ImportacionConfig {
+
+    @Value("${smartgrid.importacion.filas-por-lote:1000}")
+    private int filasPorLote;
+
+    @Value("${smartgrid.importacion.max-errores:100}")
+    private int maxErrores;
+
+    /**
+     * Dispositivos que se escriben en cada transacción (y en cada lote JDBC).
+     *
+     * @return filas por lote
+     */
+    public int getFilasPorLote() {
+        return filasPorLote;
+    }
+
+    /**
+     * Número máximo de errores de filas que se devuelven en el resultado; el resto solo se cuentan.
+     *
+     * @return errores que se detallan
+     */
+    public int getMaxErrores() {
+        return maxErrores;
+    }
+}
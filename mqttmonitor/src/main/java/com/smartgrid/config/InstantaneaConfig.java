@@ -0,0 +1,73 @@
+package com.smartgrid.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuración de las instantáneas del estado del motor, que permiten arrancar
+ * con los dispositivos activos y su consumo sin esperar a que todos vuelvan a informar.
+ */
+@Component
+public class InstantaneaConfig {
+
+    @Value("${smartgrid.instantanea.activa:false}")
+    private boolean activa;
+
+    @Value("${smartgrid.instantanea.directorio:/var/lib/smartgrid/instantaneas}")
+    private String directorio;
+
+    @Value("${smartgrid.instantanea.intervalo-ms:60000}")
+    private long intervaloMs;
+
+    @Value("${smartgrid.instantanea.registro-ms:1000}")
+    private long registroMs;
+
+    @Value("${smartgrid.instantanea.antiguedad-maxima-ms:900000}")
+    private long antiguedadMaximaMs;
+
+    /**
+     * Indica si se guarda y se restaura el estado del motor.
+     *
+     * @return true si las instantáneas están activadas
+     */
+    public boolean isActiva() {
+        return activa;
+    }
+
+    /**
+     * Directorio local donde se guardan la instantánea y el registro de cambios.
+     * Una ruta relativa depende del directorio desde el que se arranque la aplicación.
+     *
+     * @return ruta del directorio
+     */
+    public String getDirectorio() {
+        return directorio;
+    }
+
+    /**
+     * Intervalo entre instantáneas completas.
+     *
+     * @return intervalo en milisegundos
+     */
+    public long getIntervaloMs() {
+        return intervaloMs;
+    }
+
+    /**
+     * Intervalo con el que se añaden al registro los cambios desde la última instantánea.
+     *
+     * @return intervalo en milisegundos
+     */
+    public long getRegistroMs() {
+        return registroMs;
+    }
+
+    /**
+     * Antigüedad máxima del estado guardado para restaurarlo; uno más antiguo se descarta.
+     *
+     * @return antigüedad en milisegundos
+     */
+    public long getAntiguedadMaximaMs() {
+        return antiguedadMaximaMs;
+    }
+}
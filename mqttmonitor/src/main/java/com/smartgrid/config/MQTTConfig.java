@@ -1,11 +1,21 @@
 package com.smartgrid.config;
 
+import com.smartgrid.service.PoliticaContrapresion;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * Configuración del cliente MQTT, leída desde el archivo de propiedades.
- * Contiene la URL del broker, el topic a suscribirse y el ID del cliente.
+ * Contiene la URL del broker, el topic a suscribirse y el ID del cliente,
+ * así como el dimensionado de la etapa de ingesta que desacopla el callback MQTT del procesamiento.
+ * <p>
+ * Con varias conexiones, cada una recibe una parte del tráfico: o bien todas se suscriben al topic
+ * con una suscripción compartida ({@code $share/grupo/topic}) y el broker reparte los mensajes,
+ * o bien se configura una lista de filtros (p. ej. uno por zona) y se reparten entre las conexiones.
  */
 @Component
 public class MQTTConfig {
@@ -19,6 +29,30 @@ public class MQTTConfig {
     @Value("${mqtt.client.id}")
     private String clientId;
 
+    @Value("${mqtt.conexiones:1}")
+    private int conexiones;
+
+    @Value("${mqtt.suscripcion.grupo:smartgrid}")
+    private String grupoCompartido;
+
+    @Value("${mqtt.suscripcion.topics:}")
+    private String topicsParticionados;
+
+    @Value("${mqtt.ingesta.carriles:0}")
+    private int ingestaCarriles;
+
+    @Value("${mqtt.ingesta.capacidad:65536}")
+    private int ingestaCapacidad;
+
+    @Value("${mqtt.ingesta.tamano-lote:512}")
+    private int ingestaTamanoLote;
+
+    @Value("${mqtt.ingesta.espera-lote-ms:5}")
+    private long ingestaEsperaLoteMs;
+
+    @Value("${mqtt.ingesta.politica:BLOQUEAR}")
+    private PoliticaContrapresion ingestaPolitica;
+
     /**
      * Obtiene la URL del broker MQTT.
      *
@@ -45,4 +79,121 @@ public class MQTTConfig {
     public String getClientId() {
         return clientId;
     }
+
+    /**
+     * Número de conexiones al broker, cada una con su propio hilo de callback.
+     * Con filtros particionados no se abren más conexiones que filtros.
+     *
+     * @return número de conexiones (al menos 1)
+     */
+    public int getConexiones() {
+        int solicitadas = Math.max(1, conexiones);
+        List<String> topics = getTopicsParticionados();
+        return topics.isEmpty() ? solicitadas : Math.min(solicitadas, topics.size());
+    }
+
+    /**
+     * Grupo de la suscripción compartida con la que se reparte el topic entre varias conexiones.
+     *
+     * @return nombre del grupo
+     */
+    public String getGrupoCompartido() {
+        return grupoCompartido;
+    }
+
+    /**
+     * Filtros que se reparten entre las conexiones en lugar de compartir el topic,
+     * con el formato {@code filtro,filtro} (p. ej. {@code smartgrid/consumption/norte/#}).
+     *
+     * @return filtros configurados, vacío si se usa el topic único
+     */
+    public List<String> getTopicsParticionados() {
+        if (topicsParticionados == null || topicsParticionados.isBlank()) return List.of();
+        return Arrays.stream(topicsParticionados.split(","))
+                .map(String::trim)
+                .filter(topic -> !topic.isEmpty())
+                .toList();
+    }
+
+    /**
+     * Filtros a los que se suscribe una conexión.
+     * <ul>
+     *     <li>Con filtros particionados, los que le tocan por reparto circular.</li>
+     *     <li>Con varias conexiones, el topic como suscripción compartida del grupo.</li>
+     *     <li>Con una sola conexión, el topic tal cual.</li>
+     * </ul>
+     *
+     * @param conexion índice de la conexión, de 0 a {@link #getConexiones()} - 1
+     * @return filtros de la conexión
+     */
+    public List<String> getFiltros(int conexion) {
+        int total = getConexiones();
+        List<String> topics = getTopicsParticionados();
+        if (!topics.isEmpty()) {
+            List<String> filtros = new ArrayList<>();
+            for (int i = conexion; i < topics.size(); i += total) {
+                filtros.add(topics.get(i));
+            }
+            return filtros;
+        }
+        return total > 1 ? List.of("$share/" + grupoCompartido + "/" + topic) : List.of(topic);
+    }
+
+    /**
+     * Identificador de cliente de una conexión; con varias se añade el índice para que no colisionen.
+     *
+     * @param conexion índice de la conexión
+     * @return ID del cliente para esa conexión
+     */
+    public String getClientId(int conexion) {
+        return getConexiones() > 1 ? clientId + "-" + conexion : clientId;
+    }
+
+    /**
+     * Número de carriles de procesamiento en los que se reparten los mensajes por dispositivo.
+     * Todos los mensajes de un dispositivo van al mismo carril, así que se procesan en orden de llegada.
+     *
+     * @return número de carriles (0 en la propiedad = uno por conexión)
+     */
+    public int getIngestaCarriles() {
+        return ingestaCarriles > 0 ? ingestaCarriles : getConexiones();
+    }
+
+    /**
+     * Capacidad del buffer de mensajes pendientes entre el callback MQTT y el procesamiento.
+     * Con varios carriles se reparte entre ellos.
+     * Con 0 se desactiva la etapa y cada mensaje se procesa en el hilo del cliente MQTT.
+     *
+     * @return número máximo de mensajes pendientes
+     */
+    public int getIngestaCapacidad() {
+        return ingestaCapacidad;
+    }
+
+    /**
+     * Obtiene el número máximo de mensajes que se procesan juntos en un lote.
+     *
+     * @return tamaño máximo del lote
+     */
+    public int getIngestaTamanoLote() {
+        return ingestaTamanoLote;
+    }
+
+    /**
+     * Obtiene cuánto se espera a que se complete un lote antes de procesarlo incompleto.
+     *
+     * @return espera máxima en milisegundos
+     */
+    public long getIngestaEsperaLoteMs() {
+        return ingestaEsperaLoteMs;
+    }
+
+    /**
+     * Obtiene qué hacer cuando el buffer de mensajes pendientes está lleno.
+     *
+     * @return política de contrapresión
+     */
+    public PoliticaContrapresion getIngestaPolitica() {
+        return ingestaPolitica;
+    }
 }
@@ -0,0 +1,165 @@
+package com.smartgrid.config;
+
+import com.smartgrid.logic.Caducidad;
+import com.smartgrid.logic.Histeresis;
+import com.smartgrid.logic.Pronostico;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Configuración del motor de decisiones: límite global del alimentador,
+ * límites propios por zona, paralelismo de la evaluación por zonas, caducidad
+ * de los dispositivos que dejan de enviar lecturas e histéresis del restablecimiento
+ * de los que desconecta el motor.
+ */
+@Component
+public class MotorConfig {
+
+    @Value("${smartgrid.motor.limite-consumo:5000}")
+    private double limiteConsumo;
+
+    @Value("${smartgrid.motor.limites-zona:}")
+    private String limitesZona;
+
+    @Value("${smartgrid.motor.paralelismo:0}")
+    private int paralelismo;
+
+    @Value("${smartgrid.motor.caducidad.ttl-ms:0}")
+    private long caducidadTtlMs;
+
+    @Value("${smartgrid.motor.caducidad.resolucion-ms:1000}")
+    private long caducidadResolucionMs;
+
+    @Value("${smartgrid.motor.caducidad.modo:QUITAR}")
+    private Caducidad.Modo caducidadModo;
+
+    @Value("${smartgrid.motor.caducidad.factor-atenuacion:0.5}")
+    private double caducidadFactorAtenuacion;
+
+    @Value("${smartgrid.motor.histeresis.fraccion-restablecer:0}")
+    private double histeresisFraccionRestablecer;
+
+    @Value("${smartgrid.motor.histeresis.min-desconectado-ms:60000}")
+    private long histeresisMinDesconectadoMs;
+
+    @Value("${smartgrid.motor.histeresis.periodo-ms:1000}")
+    private long histeresisPeriodoMs;
+
+    @Value("${smartgrid.motor.pronostico.horizonte-ms:0}")
+    private long pronosticoHorizonteMs;
+
+    @Value("${smartgrid.motor.pronostico.periodo-ms:1000}")
+    private long pronosticoPeriodoMs;
+
+    @Value("${smartgrid.motor.pronostico.alfa:0.5}")
+    private double pronosticoAlfa;
+
+    @Value("${smartgrid.motor.pronostico.beta:0.1}")
+    private double pronosticoBeta;
+
+    @Value("${smartgrid.motor.pronostico.anticipar:false}")
+    private boolean pronosticoAnticipar;
+
+    /**
+     * Límite de consumo total de todas las zonas.
+     *
+     * @return límite global en Watts
+     */
+    public double getLimiteConsumo() {
+        return limiteConsumo;
+    }
+
+    /**
+     * Límites propios de las zonas, con el formato {@code zona:watts,zona:watts}.
+     * Las zonas que no aparecen solo están sujetas al límite global.
+     *
+     * @return límite en Watts de cada zona configurada
+     * @throws IllegalArgumentException si alguna entrada no tiene el formato esperado
+     */
+    public Map<String, Double> getLimitesZona() {
+        Map<String, Double> limites = new HashMap<>();
+        if (limitesZona == null || limitesZona.isBlank()) return limites;
+
+        for (String entrada : limitesZona.split(",")) {
+            String[] partes = entrada.split(":");
+            if (partes.length != 2 || partes[0].isBlank()) {
+                throw new IllegalArgumentException("Límite de zona inválido: '" + entrada.trim()
+                        + "'. Se esperaba 'zona:watts'");
+            }
+            try {
+                limites.put(partes[0].trim(), Double.parseDouble(partes[1].trim()));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Límite de zona inválido: '" + entrada.trim() + "'", e);
+            }
+        }
+        return limites;
+    }
+
+    /**
+     * Hilos con los que se aplican en paralelo las zonas de un lote.
+     *
+     * @return número de hilos (0 = tantos como núcleos disponibles)
+     */
+    public int getParalelismo() {
+        return paralelismo > 0 ? paralelismo : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Tratamiento de los dispositivos que dejan de enviar lecturas: TTL, resolución de la revisión,
+     * retirarlos o atenuar su consumo y el factor de atenuación.
+     *
+     * @return caducidad configurada (desactivada con un TTL de 0)
+     * @throws IllegalArgumentException si el factor de atenuación no está entre 0 y 1
+     */
+    public Caducidad getCaducidad() {
+        if (caducidadFactorAtenuacion < 0 || caducidadFactorAtenuacion >= 1) {
+            throw new IllegalArgumentException("Factor de atenuación inválido: " + caducidadFactorAtenuacion
+                    + ". Debe estar entre 0 y 1");
+        }
+        return new Caducidad(Math.max(0, caducidadTtlMs), caducidadResolucionMs, caducidadModo,
+                caducidadFactorAtenuacion);
+    }
+
+    /**
+     * Restablecimiento de los dispositivos desconectados por el motor: fracción del límite por debajo de la
+     * cual vuelven, tiempo mínimo desconectados y cada cuánto se buscan candidatos.
+     *
+     * @return histéresis configurada (desactivada con una fracción de 0)
+     * @throws IllegalArgumentException si la fracción no está entre 0 y 1 o el periodo no es positivo
+     */
+    public Histeresis getHisteresis() {
+        if (histeresisFraccionRestablecer < 0 || histeresisFraccionRestablecer > 1) {
+            throw new IllegalArgumentException("Fracción de restablecimiento inválida: "
+                    + histeresisFraccionRestablecer + ". Debe estar entre 0 y 1");
+        }
+        if (histeresisPeriodoMs <= 0) {
+            throw new IllegalArgumentException("Periodo de restablecimiento inválido: " + histeresisPeriodoMs
+                    + ". Debe ser positivo");
+        }
+        return new Histeresis(histeresisFraccionRestablecer, Math.max(0, histeresisMinDesconectadoMs),
+                histeresisPeriodoMs);
+    }
+
+    /**
+     * Previsión del consumo por zona y total: horizonte, periodo de observación, pesos del suavizado y si se
+     * desconecta por anticipado.
+     *
+     * @return previsión configurada (desactivada con un horizonte de 0)
+     * @throws IllegalArgumentException si alfa o beta no están entre 0 y 1 o el periodo no es positivo
+     */
+    public Pronostico getPronostico() {
+        if (pronosticoAlfa <= 0 || pronosticoAlfa > 1 || pronosticoBeta <= 0 || pronosticoBeta > 1) {
+            throw new IllegalArgumentException("Pesos de la previsión inválidos: alfa " + pronosticoAlfa + ", beta "
+                    + pronosticoBeta + ". Deben estar entre 0 y 1");
+        }
+        if (pronosticoPeriodoMs <= 0) {
+            throw new IllegalArgumentException("Periodo de la previsión inválido: " + pronosticoPeriodoMs
+                    + ". Debe ser positivo");
+        }
+        return new Pronostico(Math.max(0, pronosticoHorizonteMs), pronosticoPeriodoMs, pronosticoAlfa, pronosticoBeta,
+                pronosticoAnticipar);
+    }
+}
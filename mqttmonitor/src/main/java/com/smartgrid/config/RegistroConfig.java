@@ -0,0 +1,48 @@
+package com.smartgrid.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuración del registro de dispositivos en memoria que evita consultar
+ * la base de datos en cada mensaje MQTT.
+ */
+@Component
+public class RegistroConfig {
+
+    @Value("${smartgrid.registro.max-dispositivos:100000}")
+    private int maxDispositivos;
+
+    @Value("${smartgrid.registro.ttl-negativo-ms:30000}")
+    private long ttlNegativoMs;
+
+    @Value("${smartgrid.registro.refresco-ms:0}")
+    private long refrescoMs;
+
+    /**
+     * Número máximo de entradas (conocidas y desconocidas) que guarda el registro.
+     *
+     * @return capacidad del registro
+     */
+    public int getMaxDispositivos() {
+        return maxDispositivos;
+    }
+
+    /**
+     * Tiempo durante el que se recuerda que un nombre no está registrado.
+     *
+     * @return TTL de las entradas negativas en milisegundos
+     */
+    public long getTtlNegativoMs() {
+        return ttlNegativoMs;
+    }
+
+    /**
+     * Antigüedad a partir de la cual un acierto dispara una recarga en segundo plano.
+     *
+     * @return intervalo de refresco anticipado en milisegundos (0 = desactivado)
+     */
+    public long getRefrescoMs() {
+        return refrescoMs;
+    }
+}
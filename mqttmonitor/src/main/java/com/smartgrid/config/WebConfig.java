@@ -0,0 +1,57 @@
+package com.smartgrid.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuración de la capa web: cuántas peticiones de operadores se atienden a la vez
+ * y si Tomcat atiende cada petición en un hilo virtual.
+ */
+@Component
+public class WebConfig {
+
+    @Value("${smartgrid.web.max-concurrentes:0}")
+    private int maxConcurrentes;
+
+    @Value("${smartgrid.web.espera-ms:2000}")
+    private long esperaMs;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean hilosVirtuales;
+
+    /**
+     * Peticiones de operadores (dashboard y gestión) que se atienden a la vez; el resto de núcleos
+     * queda para la ingesta.
+     *
+     * @return número de peticiones (0 = sin límite)
+     */
+    public int getMaxConcurrentes() {
+        return Math.max(0, maxConcurrentes);
+    }
+
+    /**
+     * Tiempo que espera una petición a que haya sitio antes de rechazarse con un 503.
+     *
+     * @return espera máxima en milisegundos
+     */
+    public long getEsperaMs() {
+        return esperaMs;
+    }
+
+    /**
+     * Indica si se han pedido hilos virtuales para las peticiones web ({@code spring.threads.virtual.enabled}).
+     * Spring Boot solo los usa con Java 21 o posterior.
+     *
+     * @return true si están pedidos
+     */
+    public boolean isHilosVirtuales() {
+        return hilosVirtuales;
+    }
+
+    /**
+     * Indica si la JVM en la que se ejecuta la aplicación admite hilos virtuales.
+     */
+    public static boolean isHilosVirtualesDisponibles() {
+        return Runtime.version().feature() >= 21;
+    }
+}
@@ -1,11 +1,18 @@
 package com.smartgrid.controller;
 
 import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.service.ActuacionDispositivos;
+import com.smartgrid.service.DifusionDashboard;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 /**
  * Controlador web que gestiona la visualización del dashboard principal
@@ -16,6 +23,10 @@ public class DashboardController {
 
     private final SmartGridDecisionEngine ia;
 
+    private final DifusionDashboard difusion;
+
+    private final ActuacionDispositivos actuacion;
+
     /**
      * Constructor que recibe el motor de decisiones para interactuar
      * con el estado energético actual y los dispositivos activos.
@@ -23,7 +34,32 @@ public class DashboardController {
      * @param ia instancia del motor de decisiones
      */
     public DashboardController(SmartGridDecisionEngine ia) {
+        this(ia, null);
+    }
+
+    /**
+     * Constructor con la difusión de cambios para el dashboard en vivo.
+     *
+     * @param ia instancia del motor de decisiones
+     * @param difusion difusión de cambios por Server-Sent Events (null si no hay dashboard en vivo)
+     */
+    public DashboardController(SmartGridDecisionEngine ia, DifusionDashboard difusion) {
+        this(ia, difusion, null);
+    }
+
+    /**
+     * Constructor con el canal de órdenes, que lleva los ajustes de potencia a los dispositivos.
+     *
+     * @param ia instancia del motor de decisiones
+     * @param difusion difusión de cambios por Server-Sent Events (null si no hay dashboard en vivo)
+     * @param actuacion canal de órdenes a los dispositivos (null si no se envían)
+     */
+    @Autowired
+    public DashboardController(SmartGridDecisionEngine ia, DifusionDashboard difusion,
+                               ActuacionDispositivos actuacion) {
         this.ia = ia;
+        this.difusion = difusion;
+        this.actuacion = actuacion;
     }
 
     /**
@@ -43,6 +79,20 @@ public class DashboardController {
         return "dashboard";
     }
 
+    /**
+     * Flujo de Server-Sent Events del dashboard: una instantánea al conectarse ("instantanea")
+     * y después solo los cambios de cada intervalo ("delta"), sin volver a renderizar la página.
+     *
+     * @return emisor SSE de la conexión
+     */
+    @GetMapping(path = "/dashboard/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream() {
+        if (difusion == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Dashboard en vivo no disponible");
+        }
+        return difusion.suscribir();
+    }
+
     /**
      * Muestra la página de gestión manual, donde se listan los dispositivos activos
      * con opción de desconexión si no son críticos.
@@ -61,6 +111,7 @@ public class DashboardController {
 
     /**
      * Permite desconectar un dispositivo manualmente desde la interfaz.
+     * La orden al dispositivo la envía el canal de órdenes, que observa las desconexiones del motor.
      *
      * @param nombre nombre del dispositivo a desconectar
      * @return redirección a la página de gestión
@@ -73,7 +124,8 @@ public class DashboardController {
 
     /**
      * Permite ajustar la potencia de un dispositivo crítico.
-     * Si el consumo total sigue siendo mayor que el límite, no permitirá la salida.
+     * Si los críticos no caben con la nueva potencia en su zona o en el límite global, no se aplica.
+     * Si se aplica, se envía la consigna al dispositivo.
      *
      * @param nombre     nombre del dispositivo
      * @param nuevaPotencia nueva potencia que se desea asignar
@@ -83,6 +135,10 @@ public class DashboardController {
     public String ajustarPotencia(@RequestParam String nombre, @RequestParam double nuevaPotencia) {
         boolean ajustado = ia.ajustarPotenciaDispositivo(nombre, nuevaPotencia);
         if (ajustado) {
+            // El motor solo se queda con la potencia si la acepta: el dispositivo recibe lo mismo que se muestra
+            if (actuacion != null) {
+                actuacion.consigna(nombre, nuevaPotencia);
+            }
             return "redirect:/gestion";
         } else {
             return "redirect:/gestion?error=No se pudo ajustar la potencia";
@@ -0,0 +1,98 @@
+package com.smartgrid.controller;
+
+import com.smartgrid.config.ApiConfig;
+import com.smartgrid.model.NivelCriticidad;
+import com.smartgrid.service.FotoDispositivos;
+import com.smartgrid.service.ImportadorDispositivos;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.InputStream;
+
+/**
+ * API REST de consulta de los dispositivos activos, paginada por cursor y servida desde la
+ * {@link FotoDispositivos} vigente, sin copiar la flota del motor en cada petición.
+ * También recibe las altas masivas de dispositivos ({@link ImportadorDispositivos}).
+ */
+@RestController
+@RequestMapping("/api/dispositivos")
+public class DispositivosController {
+
+    private final FotoDispositivos foto;
+
+    private final ApiConfig apiConfig;
+
+    private final ImportadorDispositivos importador;
+
+    /**
+     * @param foto       foto de los dispositivos activos
+     * @param apiConfig  tamaños de página
+     * @param importador importación masiva de dispositivos
+     */
+    public DispositivosController(FotoDispositivos foto, ApiConfig apiConfig, ImportadorDispositivos importador) {
+        this.foto = foto;
+        this.apiConfig = apiConfig;
+        this.importador = importador;
+    }
+
+    /**
+     * Página de dispositivos activos.
+     *
+     * @param zona          solo los de esta zona ("sin_zona" para los dispositivos sin zona)
+     * @param criticidad    solo los de esta criticidad
+     * @param consumoMinimo solo los que consumen al menos estos Watts
+     * @param consumoMaximo solo los que consumen como mucho estos Watts
+     * @param orden         "nombre", "-nombre", "consumo" o "-consumo"
+     * @param cursor        cursor "siguiente" de la página anterior
+     * @param porPagina     dispositivos por página (limitado por la configuración)
+     * @return página con el resumen de la foto
+     */
+    @GetMapping
+    public FotoDispositivos.Pagina listar(@RequestParam(required = false) String zona,
+                                          @RequestParam(required = false) NivelCriticidad criticidad,
+                                          @RequestParam(required = false) Double consumoMinimo,
+                                          @RequestParam(required = false) Double consumoMaximo,
+                                          @RequestParam(defaultValue = "nombre") String orden,
+                                          @RequestParam(required = false) String cursor,
+                                          @RequestParam(required = false) Integer porPagina) {
+        int tamaño = Math.min(apiConfig.getPaginaMaxima(),
+                porPagina == null ? apiConfig.getPaginaPorDefecto() : porPagina);
+        try {
+            return foto.consultar(new FotoDispositivos.Filtro(zona, criticidad, consumoMinimo, consumoMaximo),
+                    FotoDispositivos.Orden.de(orden), cursor, tamaño, System.currentTimeMillis());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    /**
+     * Alta o actualización masiva de dispositivos. El cuerpo se procesa en streaming, así que admite
+     * ficheros con decenas de miles de dispositivos.
+     *
+     * @param tipo   text/csv o application/x-ndjson
+     * @param cuerpo dispositivos a importar
+     * @return recuento de la importación y primeros errores
+     */
+    @PostMapping(value = "/importar", consumes = {"text/csv", "application/x-ndjson"})
+    public ImportadorDispositivos.Resultado importar(@RequestHeader(HttpHeaders.CONTENT_TYPE) String tipo,
+                                                     InputStream cuerpo) {
+        boolean csv = MediaType.parseMediaType(tipo).isCompatibleWith(MediaType.valueOf("text/csv"));
+        ImportadorDispositivos.Formato formato = csv ? ImportadorDispositivos.Formato.CSV
+                : ImportadorDispositivos.Formato.NDJSON;
+        try {
+            return importador.importar(cuerpo, formato);
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+}
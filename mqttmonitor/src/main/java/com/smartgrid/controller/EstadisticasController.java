@@ -0,0 +1,78 @@
+package com.smartgrid.controller;
+
+import com.smartgrid.logic.SerieConsumo;
+import com.smartgrid.service.EstadisticasConsumo;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * API REST con las estadísticas de consumo en ventanas de 1 s, 1 min y 15 min de cada dispositivo
+ * y de cada zona. Se responden desde memoria, sin consultar el histórico de lecturas.
+ */
+@RestController
+@RequestMapping("/api/estadisticas")
+public class EstadisticasController {
+
+    /**
+     * Estadísticas de un dispositivo o una zona.
+     *
+     * @param nombre   nombre del dispositivo o de la zona
+     * @param ventanas ventanas deslizante y fija por periodo ("1s", "1m", "15m")
+     */
+    public record Respuesta(String nombre, Map<String, SerieConsumo.Ventana> ventanas) {
+    }
+
+    private final EstadisticasConsumo estadisticas;
+
+    /**
+     * @param estadisticas estadísticas de consumo en memoria
+     */
+    public EstadisticasController(EstadisticasConsumo estadisticas) {
+        this.estadisticas = estadisticas;
+    }
+
+    /**
+     * Estadísticas de un dispositivo.
+     *
+     * @param nombre nombre del dispositivo
+     * @return ventanas del dispositivo
+     */
+    @GetMapping("/dispositivos/{nombre}")
+    public Respuesta dispositivo(@PathVariable String nombre) {
+        return estadisticas.consultarDispositivo(nombre, System.currentTimeMillis())
+                .map(ventanas -> new Respuesta(nombre, ventanas))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "Sin estadísticas del dispositivo " + nombre));
+    }
+
+    /**
+     * Zonas con estadísticas.
+     *
+     * @return nombres de las zonas ("sin_zona" para los dispositivos sin zona)
+     */
+    @GetMapping("/zonas")
+    public Set<String> zonas() {
+        return estadisticas.getZonas();
+    }
+
+    /**
+     * Estadísticas del consumo total de una zona.
+     *
+     * @param zona nombre de la zona ("sin_zona" para los dispositivos sin zona)
+     * @return ventanas de la zona
+     */
+    @GetMapping("/zonas/{zona}")
+    public Respuesta zona(@PathVariable String zona) {
+        return estadisticas.consultarZona(zona, System.currentTimeMillis())
+                .map(ventanas -> new Respuesta(zona, ventanas))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "Sin estadísticas de la zona " + zona));
+    }
+}
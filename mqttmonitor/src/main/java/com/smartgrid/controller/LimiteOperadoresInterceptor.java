@@ -0,0 +1,60 @@
+package com.smartgrid.controller;
+
+import com.smartgrid.service.LimiteConcurrencia;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Aplica un {@link LimiteConcurrencia} a las páginas y acciones de los operadores del {@link DashboardController}
+ * y a la consulta paginada de dispositivos.
+ * Las peticiones que no consiguen permiso a tiempo reciben un 503 con {@code Retry-After}.
+ * El flujo de Server-Sent Events no pasa por aquí: es asíncrono y no ocupa un hilo mientras está abierto.
+ */
+public class LimiteOperadoresInterceptor implements HandlerInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(LimiteOperadoresInterceptor.class);
+
+    /** Rutas sujetas al límite */
+    public static final String[] RUTAS = {"/", "/gestion", "/desconectar", "/ajustar-potencia", "/api/dispositivos"};
+
+    // Atributo de la petición que indica que tiene un permiso que devolver
+    private static final String CON_PERMISO = LimiteOperadoresInterceptor.class.getName() + ".permiso";
+
+    private static final String REINTENTAR_SEGUNDOS = "1";
+
+    private final LimiteConcurrencia limite;
+
+    /**
+     * @param limite límite compartido por todas las rutas de operadores
+     */
+    public LimiteOperadoresInterceptor(LimiteConcurrencia limite) {
+        this.limite = limite;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!limite.entrar()) {
+            log.warn("⚠️ Petición '{}' rechazada: {} operadores atendidos a la vez", request.getRequestURI(),
+                    limite.getMaximo());
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, REINTENTAR_SEGUNDOS);
+            return false;
+        }
+        request.setAttribute(CON_PERMISO, Boolean.TRUE);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        if (request.getAttribute(CON_PERMISO) != null) {
+            request.removeAttribute(CON_PERMISO);
+            limite.salir();
+        }
+    }
+}
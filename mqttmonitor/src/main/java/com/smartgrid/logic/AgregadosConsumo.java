@@ -0,0 +1,96 @@
+package com.smartgrid.logic;
+
+import com.smartgrid.model.NivelCriticidad;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Totales de consumo mantenidos de forma incremental.
+ * En lugar de recorrer todos los dispositivos en cada lectura, el motor aplica
+ * la diferencia (delta) de cada alta, baja o cambio de consumo, de modo que
+ * consultar cualquier total cuesta O(1). No desglosa por zona: cada zona tiene los suyos en su
+ * {@link ParticionZona}.
+ * <p>
+ * Los totales son acumuladores atómicos, por lo que varios hilos pueden aplicar deltas a la vez.
+ * Se guardan en milivatios enteros: cada consumo se redondea igual al sumarlo y al restarlo, así que
+ * las altas y bajas se cancelan exactamente y los totales no derivan por el redondeo de coma flotante
+ * por muchos millones de deltas que se apliquen.
+ */
+public class AgregadosConsumo {
+
+    /** Clave usada para los dispositivos que no tienen zona asignada */
+    public static final String SIN_ZONA = "sin_zona";
+
+    private static final double MILIVATIOS_POR_VATIO = 1000;
+
+    // En milivatios
+    private final LongAdder total = new LongAdder();
+
+    private final LongAdder criticos = new LongAdder();
+
+    private final Map<NivelCriticidad, LongAdder> porCriticidad = new EnumMap<>(NivelCriticidad.class);
+
+    public AgregadosConsumo() {
+        for (NivelCriticidad criticidad : NivelCriticidad.values()) {
+            porCriticidad.put(criticidad, new LongAdder());
+        }
+    }
+
+    /**
+     * Suma consumo a los totales general y por criticidad.
+     *
+     * @param criticidad criticidad del dispositivo (puede ser null)
+     * @param consumo    consumo en Watts a sumar
+     */
+    public void sumar(NivelCriticidad criticidad, double consumo) {
+        aplicar(criticidad, milivatios(consumo));
+    }
+
+    /**
+     * Resta consumo de los totales general y por criticidad.
+     *
+     * @param criticidad criticidad del dispositivo (puede ser null)
+     * @param consumo    consumo en Watts a restar
+     */
+    public void restar(NivelCriticidad criticidad, double consumo) {
+        aplicar(criticidad, -milivatios(consumo));
+    }
+
+    private void aplicar(NivelCriticidad criticidad, long delta) {
+        if (delta == 0) return;
+
+        total.add(delta);
+        if (criticidad == NivelCriticidad.CRITICA) {
+            criticos.add(delta);
+        }
+        if (criticidad != null) {
+            porCriticidad.get(criticidad).add(delta);
+        }
+    }
+
+    public double getTotal() {
+        return vatios(total);
+    }
+
+    public double getCriticos() {
+        return vatios(criticos);
+    }
+
+    public double getCriticidad(NivelCriticidad criticidad) {
+        return vatios(porCriticidad.get(criticidad));
+    }
+
+    private static long milivatios(double consumo) {
+        return Math.round(consumo * MILIVATIOS_POR_VATIO);
+    }
+
+    private static double vatios(LongAdder milivatios) {
+        return milivatios.sum() / MILIVATIOS_POR_VATIO;
+    }
+
+    static String claveZona(String zona) {
+        return zona == null ? SIN_ZONA : zona;
+    }
+}
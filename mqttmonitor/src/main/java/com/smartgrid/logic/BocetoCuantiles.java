@@ -0,0 +1,158 @@
+package com.smartgrid.logic;
+
+import java.util.Arrays;
+
+/**
+ * Boceto de cuantiles con error relativo acotado (DDSketch) para consumos en Watts.
+ * <p>
+ * Cada valor positivo cae en el cubo {@code ceil(log(v) / log(γ))}, con {@code γ = (1 + α) / (1 - α)}:
+ * cualquier cuantil se devuelve con un error relativo de como mucho {@code α}, sea cual sea la
+ * distribución. Los cubos se guardan dispersos (solo los que tienen valores), así que un dispositivo
+ * estable ocupa uno o dos. Si se llega al máximo de cubos se funden los más bajos, que pierden precisión
+ * mientras los cuantiles altos (los picos) la conservan. Los valores cero o negativos cuentan como 0.
+ * <p>
+ * Dos bocetos con la misma precisión se pueden fundir sin perder nada, que es como se componen las
+ * ventanas a partir de sus tramos. No es seguro para uso concurrente.
+ */
+public final class BocetoCuantiles {
+
+    private static final int CAPACIDAD_INICIAL = 4;
+
+    private final double gamma;
+    private final double logGamma;
+    private final int maxCubos;
+
+    // Índices de los cubos en orden creciente y sus cuentas; solo los primeros 'cubos' son válidos
+    private int[] indices = new int[CAPACIDAD_INICIAL];
+    private long[] cuentas = new long[CAPACIDAD_INICIAL];
+    private int cubos;
+
+    private long ceros;
+    private long total;
+
+    /**
+     * @param errorRelativo error relativo máximo de los cuantiles (p. ej. 0.01 = 1 %)
+     * @param maxCubos      número máximo de cubos antes de fundir los más bajos
+     */
+    public BocetoCuantiles(double errorRelativo, int maxCubos) {
+        if (errorRelativo <= 0 || errorRelativo >= 1) {
+            throw new IllegalArgumentException("Error relativo inválido: " + errorRelativo);
+        }
+        this.gamma = (1 + errorRelativo) / (1 - errorRelativo);
+        this.logGamma = Math.log(gamma);
+        this.maxCubos = Math.max(2, maxCubos);
+    }
+
+    /**
+     * Añade un valor al boceto.
+     *
+     * @param valor consumo en Watts
+     */
+    public void añadir(double valor) {
+        añadir(valor, 1);
+    }
+
+    private void añadir(double valor, long cuenta) {
+        total += cuenta;
+        if (!(valor > 0)) {
+            ceros += cuenta;
+            return;
+        }
+        añadirCubo((int) Math.ceil(Math.log(valor) / logGamma), cuenta);
+    }
+
+    private void añadirCubo(int indice, long cuenta) {
+        int posicion = Arrays.binarySearch(indices, 0, cubos, indice);
+        if (posicion >= 0) {
+            cuentas[posicion] += cuenta;
+            return;
+        }
+
+        posicion = -posicion - 1;
+        if (cubos == maxCubos) {
+            // Lleno: el valor nuevo o el cubo más bajo se funde con el siguiente
+            if (posicion == 0) {
+                cuentas[0] += cuenta;
+                return;
+            }
+            cuentas[1] += cuentas[0];
+            System.arraycopy(indices, 1, indices, 0, cubos - 1);
+            System.arraycopy(cuentas, 1, cuentas, 0, cubos - 1);
+            cubos--;
+            posicion--;
+        }
+        if (cubos == indices.length) {
+            int capacidad = Math.min(maxCubos, indices.length * 2);
+            indices = Arrays.copyOf(indices, capacidad);
+            cuentas = Arrays.copyOf(cuentas, capacidad);
+        }
+        System.arraycopy(indices, posicion, indices, posicion + 1, cubos - posicion);
+        System.arraycopy(cuentas, posicion, cuentas, posicion + 1, cubos - posicion);
+        indices[posicion] = indice;
+        cuentas[posicion] = cuenta;
+        cubos++;
+    }
+
+    /**
+     * Suma a este boceto los valores de otro con la misma precisión.
+     *
+     * @param otro boceto a fundir; no se modifica
+     */
+    public void fundir(BocetoCuantiles otro) {
+        if (otro.gamma != gamma) {
+            throw new IllegalArgumentException("Solo se pueden fundir bocetos con la misma precisión");
+        }
+        total += otro.ceros;
+        ceros += otro.ceros;
+        for (int i = 0; i < otro.cubos; i++) {
+            total += otro.cuentas[i];
+            añadirCubo(otro.indices[i], otro.cuentas[i]);
+        }
+    }
+
+    /**
+     * Valor aproximado del cuantil indicado.
+     *
+     * @param q cuantil entre 0 y 1 (0.5 = mediana, 0.99 = percentil 99)
+     * @return valor en Watts, o NaN si el boceto está vacío
+     */
+    public double cuantil(double q) {
+        if (total == 0) return Double.NaN;
+
+        long rango = (long) Math.floor(Math.min(1, Math.max(0, q)) * (total - 1));
+        if (rango < ceros) return 0;
+
+        long acumulado = ceros;
+        for (int i = 0; i < cubos; i++) {
+            acumulado += cuentas[i];
+            if (acumulado > rango) {
+                // Punto del cubo que minimiza el error relativo
+                return 2 * Math.pow(gamma, indices[i]) / (gamma + 1);
+            }
+        }
+        return 2 * Math.pow(gamma, indices[cubos - 1]) / (gamma + 1);
+    }
+
+    /**
+     * Número de valores añadidos.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Número de cubos en uso (sin contar el de ceros).
+     */
+    public int getCubos() {
+        return cubos;
+    }
+
+    /**
+     * Vacía el boceto conservando la memoria reservada.
+     */
+    public void limpiar() {
+        cubos = 0;
+        ceros = 0;
+        total = 0;
+    }
+}
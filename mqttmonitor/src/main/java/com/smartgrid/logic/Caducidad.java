@@ -0,0 +1,35 @@
+package com.smartgrid.logic;
+
+/**
+ * Qué hace el motor con los dispositivos activos que dejan de enviar lecturas.
+ * <p>
+ * Un medidor que se queda en silencio seguiría contando su último consumo para siempre y podría
+ * provocar desconexiones innecesarias. Con la caducidad activa, pasado {@code ttlMs} sin lecturas
+ * el dispositivo se retira del motor o, en modo {@link Modo#ATENUAR}, su consumo se multiplica por
+ * {@code factorAtenuacion} en cada periodo sin lecturas hasta que deja de contar.
+ *
+ * @param ttlMs            tiempo sin lecturas tras el que caduca un dispositivo (0 = desactivada)
+ * @param resolucionMs     cada cuánto se revisan las caducidades; un dispositivo caduca como mucho
+ *                         esta cantidad de tiempo después de su TTL
+ * @param modo             retirar el dispositivo o atenuar su consumo
+ * @param factorAtenuacion factor que se aplica al consumo en cada periodo sin lecturas (modo ATENUAR)
+ */
+public record Caducidad(long ttlMs, long resolucionMs, Modo modo, double factorAtenuacion) {
+
+    /** Sin caducidad: los dispositivos siguen activos hasta que se desconectan */
+    public static final Caducidad DESACTIVADA = new Caducidad(0, 1000, Modo.QUITAR, 0);
+
+    /**
+     * Tratamiento de un dispositivo caducado.
+     */
+    public enum Modo {
+        /** Se retira del motor, como si se hubiera desconectado */
+        QUITAR,
+        /** Su consumo se reduce por el factor de atenuación en cada periodo sin lecturas */
+        ATENUAR
+    }
+
+    public boolean isActiva() {
+        return ttlMs > 0;
+    }
+}
@@ -0,0 +1,53 @@
+package com.smartgrid.logic;
+
+import com.smartgrid.model.Dispositivo;
+
+/**
+ * Recibe los cambios de estado de los dispositivos activos del motor de decisiones.
+ * <p>
+ * Se invoca dentro de la actualización atómica de cada dispositivo, por lo que los avisos
+ * de un mismo dispositivo llegan en orden; a cambio, la implementación debe ser muy rápida
+ * y no volver a llamar al motor (lo habitual es anotar el nombre y procesarlo después).
+ */
+public interface CambiosMotorListener {
+
+    /**
+     * Un dispositivo ha recibido una lectura o un ajuste de potencia.
+     *
+     * @param dispositivo dispositivo con su consumo ya actualizado
+     * @param conectado   true si no estaba activo en ninguna zona antes de esta lectura
+     */
+    void dispositivoActualizado(Dispositivo dispositivo, boolean conectado);
+
+    /**
+     * Un dispositivo ha dejado de estar activo.
+     *
+     * @param nombre     nombre del dispositivo
+     * @param zona       zona en la que estaba ({@link AgregadosConsumo#SIN_ZONA} si no tiene)
+     * @param automatico true si lo ha desconectado el motor por exceso de consumo, false si ha sido manual
+     */
+    void dispositivoDesconectado(String nombre, String zona, boolean automatico);
+
+    /**
+     * El motor ha vuelto a conectar un dispositivo que había desconectado, al recuperar margen por debajo
+     * del umbral de restablecimiento. Solo ocurre con histéresis: sin ella, un dispositivo desconectado
+     * vuelve con su siguiente lectura y se avisa con {@link #dispositivoActualizado}.
+     * Por defecto se trata como la lectura de un dispositivo que se conecta.
+     *
+     * @param dispositivo dispositivo con el consumo con el que vuelve
+     */
+    default void dispositivoRestablecido(Dispositivo dispositivo) {
+        dispositivoActualizado(dispositivo, true);
+    }
+
+    /**
+     * Un dispositivo ha dejado de estar activo por llevar demasiado tiempo sin lecturas.
+     * Por defecto se trata como una desconexión que no se debe al exceso de consumo.
+     *
+     * @param nombre nombre del dispositivo
+     * @param zona   zona en la que estaba ({@link AgregadosConsumo#SIN_ZONA} si no tiene)
+     */
+    default void dispositivoCaducado(String nombre, String zona) {
+        dispositivoDesconectado(nombre, zona, false);
+    }
+}
@@ -0,0 +1,72 @@
+package com.smartgrid.logic;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Índice de los dispositivos no críticos ordenados por consumo (mayor primero).
+ * Se mantiene al día con cada lectura, de modo que al desconectar por exceso
+ * solo se extraen los k mayores consumidores en O(k log n) en vez de ordenar todos.
+ * <p>
+ * La clave es (consumo, slot): el slot del dispositivo en la {@link TablaDispositivos} desempata
+ * entre dispositivos con el mismo consumo y permite localizar la entrada de un dispositivo
+ * conociendo su consumo contabilizado.
+ * Admite acceso concurrente; {@link #size()} recorre el índice y solo debe usarse fuera del camino caliente.
+ */
+public class ColaDesconexion {
+
+    private record Entrada(double consumo, int slot) {
+    }
+
+    private static final Comparator<Entrada> ORDEN = Comparator
+            .comparingDouble(Entrada::consumo).reversed()
+            .thenComparingInt(Entrada::slot);
+
+    private final NavigableSet<Entrada> entradas = new ConcurrentSkipListSet<>(ORDEN);
+
+    /**
+     * Añade un dispositivo al índice con el consumo indicado.
+     *
+     * @param slot    slot del dispositivo
+     * @param consumo consumo con el que queda contabilizado
+     */
+    public void añadir(int slot, double consumo) {
+        entradas.add(new Entrada(consumo, slot));
+    }
+
+    /**
+     * Elimina la entrada de un dispositivo.
+     *
+     * @param slot    slot del dispositivo
+     * @param consumo consumo con el que estaba contabilizado
+     */
+    public void eliminar(int slot, double consumo) {
+        entradas.remove(new Entrada(consumo, slot));
+    }
+
+    /**
+     * Extrae el dispositivo con mayor consumo.
+     *
+     * @return slot del dispositivo o -1 si no queda ninguno
+     */
+    public int extraerMayor() {
+        Entrada mayor = entradas.pollFirst();
+        return mayor == null ? -1 : mayor.slot();
+    }
+
+    /**
+     * Consumo del dispositivo que se extraería a continuación, sin extraerlo.
+     *
+     * @return consumo del mayor candidato o -1 si no queda ninguno
+     */
+    public double consumoMayor() {
+        Iterator<Entrada> iterador = entradas.iterator();
+        return iterador.hasNext() ? iterador.next().consumo() : -1;
+    }
+
+    public int size() {
+        return entradas.size();
+    }
+}
@@ -0,0 +1,10 @@
+package com.smartgrid.logic;
+
+/**
+ * Dispositivo desconectado por el motor que espera a restablecerse, p. ej. para guardar el estado del motor.
+ *
+ * @param lectura        última lectura recibida, con la que se restablecerá
+ * @param desconectadoMs instante de la desconexión en milisegundos desde epoch
+ */
+public record Desconectado(Lectura lectura, long desconectadoMs) {
+}
@@ -0,0 +1,29 @@
+package com.smartgrid.logic;
+
+/**
+ * Error acumulado de una previsión: cada previsión a horizonte se compara con el consumo observado
+ * al llegar su instante.
+ *
+ * @param comparaciones previsiones ya comparadas con su consumo real
+ * @param sumaAbsoluta  suma de los errores absolutos en Watts
+ * @param suma          suma de los errores (real - previsto) en Watts; positiva si se prevé por debajo
+ */
+public record ErrorPronostico(long comparaciones, double sumaAbsoluta, double suma) {
+
+    /** Sin previsiones comparadas todavía */
+    public static final ErrorPronostico VACIO = new ErrorPronostico(0, 0, 0);
+
+    /**
+     * Error absoluto medio en Watts, o NaN sin comparaciones.
+     */
+    public double getMedioAbsoluto() {
+        return comparaciones == 0 ? Double.NaN : sumaAbsoluta / comparaciones;
+    }
+
+    /**
+     * Error medio en Watts (sesgo), o NaN sin comparaciones.
+     */
+    public double getSesgo() {
+        return comparaciones == 0 ? Double.NaN : suma / comparaciones;
+    }
+}
@@ -0,0 +1,21 @@
+package com.smartgrid.logic;
+
+/**
+ * Estadísticas de consumo de un dispositivo o una zona en una ventana de tiempo.
+ * Sin lecturas en la ventana, los valores derivados de ellas son null; la energía se cuenta igualmente
+ * con el último consumo conocido, que se mantiene hasta la siguiente lectura o la desconexión.
+ *
+ * @param desde     inicio de la ventana en milisegundos desde epoch
+ * @param hasta     fin de la ventana en milisegundos desde epoch
+ * @param lecturas  número de lecturas en la ventana
+ * @param minimo    menor lectura en Watts
+ * @param maximo    mayor lectura en Watts
+ * @param media     media de las lecturas en Watts
+ * @param energiaWh energía consumida en la ventana, en Wh
+ * @param p50       mediana aproximada de las lecturas en Watts
+ * @param p90       percentil 90 aproximado en Watts
+ * @param p99       percentil 99 aproximado en Watts
+ */
+public record EstadisticasVentana(long desde, long hasta, long lecturas, Double minimo, Double maximo, Double media,
+                                  double energiaWh, Double p50, Double p90, Double p99) {
+}
@@ -0,0 +1,27 @@
+package com.smartgrid.logic;
+
+/**
+ * Cómo vuelve el motor a conectar los dispositivos que ha desconectado por exceso de consumo.
+ * <p>
+ * Sin histéresis, un dispositivo desconectado vuelve a contar en cuanto envía su siguiente lectura:
+ * si el consumo sigue alto se desconecta otra vez, y un dispositivo que oscila alrededor del límite
+ * provoca una desconexión por lectura. Con la histéresis activa, el motor se desconecta por encima del
+ * límite (el umbral de desconexión) pero solo restablece un dispositivo cuando cabe por debajo de
+ * {@code fraccionRestablecer} veces el límite, global y de su zona, y ha pasado al menos
+ * {@code minDesconectadoMs} desconectado. Mientras tanto sus lecturas solo actualizan el consumo
+ * con el que volverá.
+ *
+ * @param fraccionRestablecer fracción del límite por debajo de la cual se restablecen dispositivos
+ *                            (0 = desactivada, 1 = sin banda)
+ * @param minDesconectadoMs   tiempo mínimo que pasa desconectado un dispositivo
+ * @param periodoMs           cada cuánto se buscan dispositivos que restablecer
+ */
+public record Histeresis(double fraccionRestablecer, long minDesconectadoMs, long periodoMs) {
+
+    /** Sin histéresis: un dispositivo desconectado vuelve con su siguiente lectura */
+    public static final Histeresis DESACTIVADA = new Histeresis(0, 0, 1000);
+
+    public boolean isActiva() {
+        return fraccionRestablecer > 0;
+    }
+}
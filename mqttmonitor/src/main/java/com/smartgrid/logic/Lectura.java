@@ -0,0 +1,22 @@
+package com.smartgrid.logic;
+
+import com.smartgrid.model.Dispositivo;
+
+/**
+ * Lectura de consumo ya asociada a su dispositivo registrado.
+ * El consumo viaja aparte de la entidad porque la misma instancia puede
+ * recibir varias lecturas dentro de un lote.
+ *
+ * @param dispositivo dispositivo registrado
+ * @param consumo     consumo leído en Watts
+ * @param instante    instante de la medida en milisegundos desde epoch, o 0 si el mensaje no lo indica
+ */
+public record Lectura(Dispositivo dispositivo, double consumo, long instante) {
+
+    /**
+     * Lectura sin instante de medida (formato de texto): se toma el de llegada.
+     */
+    public Lectura(Dispositivo dispositivo, double consumo) {
+        this(dispositivo, consumo, 0);
+    }
+}
@@ -0,0 +1,66 @@
+package com.smartgrid.logic;
+
+import java.util.Map;
+
+/**
+ * Opciones del {@link SmartGridDecisionEngine}.
+ * <p>
+ * Se parte de {@link #POR_DEFECTO} o de {@link #conLimite(double)} y se cambia cada opción por su nombre,
+ * de modo que una opción nueva no cambia a quien no la usa:
+ * <pre>
+ * OpcionesMotor.conLimite(5000).conLimitesZona(Map.of("cocina", 2000.0)).conHisteresis(histeresis)
+ * </pre>
+ *
+ * @param limiteConsumo límite global del alimentador en Watts
+ * @param limitesZona   límite propio de cada zona que lo tenga, en Watts
+ * @param paralelismo   número de hilos para aplicar lotes con varias zonas (1 = en el hilo que llama)
+ * @param caducidad     tratamiento de los dispositivos que dejan de enviar lecturas; la rueda no avanza hasta
+ *                      {@link SmartGridDecisionEngine#iniciarReloj()} o las llamadas a
+ *                      {@link SmartGridDecisionEngine#caducarInactivos(long)}
+ * @param histeresis    restablecimiento de los dispositivos desconectados por el motor; se revisa con
+ *                      {@link SmartGridDecisionEngine#iniciarReloj()} o las llamadas a
+ *                      {@link SmartGridDecisionEngine#restablecerDesconectados(long)}
+ * @param pronostico    previsión del consumo; se actualiza con {@link SmartGridDecisionEngine#iniciarReloj()}
+ *                      o las llamadas a {@link SmartGridDecisionEngine#pronosticar(long)}
+ */
+public record OpcionesMotor(double limiteConsumo, Map<String, Double> limitesZona, int paralelismo,
+                            Caducidad caducidad, Histeresis histeresis, Pronostico pronostico) {
+
+    /** Límite global de 5000W, sin límites por zona, lotes en el hilo que llama y sin caducidad, histéresis ni previsión */
+    public static final OpcionesMotor POR_DEFECTO = new OpcionesMotor(5000.0, Map.of(), 1,
+            Caducidad.DESACTIVADA, Histeresis.DESACTIVADA, Pronostico.DESACTIVADO);
+
+    public OpcionesMotor {
+        limitesZona = Map.copyOf(limitesZona);
+    }
+
+    /**
+     * Opciones por defecto con otro límite global.
+     *
+     * @param limiteConsumo límite global del alimentador en Watts
+     */
+    public static OpcionesMotor conLimite(double limiteConsumo) {
+        return new OpcionesMotor(limiteConsumo, POR_DEFECTO.limitesZona, POR_DEFECTO.paralelismo,
+                POR_DEFECTO.caducidad, POR_DEFECTO.histeresis, POR_DEFECTO.pronostico);
+    }
+
+    public OpcionesMotor conLimitesZona(Map<String, Double> limitesZona) {
+        return new OpcionesMotor(limiteConsumo, limitesZona, paralelismo, caducidad, histeresis, pronostico);
+    }
+
+    public OpcionesMotor conParalelismo(int paralelismo) {
+        return new OpcionesMotor(limiteConsumo, limitesZona, paralelismo, caducidad, histeresis, pronostico);
+    }
+
+    public OpcionesMotor conCaducidad(Caducidad caducidad) {
+        return new OpcionesMotor(limiteConsumo, limitesZona, paralelismo, caducidad, histeresis, pronostico);
+    }
+
+    public OpcionesMotor conHisteresis(Histeresis histeresis) {
+        return new OpcionesMotor(limiteConsumo, limitesZona, paralelismo, caducidad, histeresis, pronostico);
+    }
+
+    public OpcionesMotor conPronostico(Pronostico pronostico) {
+        return new OpcionesMotor(limiteConsumo, limitesZona, paralelismo, caducidad, histeresis, pronostico);
+    }
+}
@@ -0,0 +1,445 @@
+package com.smartgrid.logic;
+
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Partición del motor con los dispositivos activos de una zona.
+ * <p>
+ * Cada zona tiene sus propios totales, su índice de desconexión, su bloqueo de decisión y,
+ * opcionalmente, su propio límite de consumo. Así las lecturas de zonas distintas no comparten
+ * estructuras y se pueden aplicar en paralelo. Los datos de cada dispositivo viven en la
+ * {@link TablaDispositivos} del motor, que indica en qué partición está activo.
+ * El límite global (alimentador) lo concilia {@link SmartGridDecisionEngine} por encima de las zonas.
+ * Con histéresis, los dispositivos que desconecta el motor pasan al {@link RegistroDesconectados}
+ * y sus lecturas se quedan allí hasta que el motor los restablece. Con {@link Pronostico} activo,
+ * cada zona lleva la previsión de su consumo y puede desconectar antes de llegar a su límite.
+ */
+final class ParticionZona {
+
+    private static final Logger log = LoggerFactory.getLogger(ParticionZona.class);
+
+    private final String zona;
+
+    // Posición de la partición en la tabla de dispositivos
+    private final int indice;
+
+    // Límite de la zona en Watts (infinito si la zona solo está sujeta al límite global)
+    private final double limite;
+
+    private final AgregadosConsumo agregados = new AgregadosConsumo();
+
+    // Totales de todas las zonas, compartidos por todas las particiones del motor
+    private final AgregadosConsumo totales;
+
+    private final ColaDesconexion colaDesconexion = new ColaDesconexion();
+
+    // Serializa las desconexiones y los cambios de alerta de esta zona
+    private final ReentrantLock bloqueo = new ReentrantLock();
+
+    // Dispositivos de todas las zonas, compartida por todas las particiones del motor
+    private final TablaDispositivos tabla;
+
+    // Avisos de cambios de los dispositivos de la zona, compartido por todas las particiones del motor
+    private final CambiosMotorListener cambios;
+
+    // Dispositivos desconectados por el motor a la espera de restablecerse (null sin histéresis)
+    private final RegistroDesconectados desconectados;
+
+    // Previsión del consumo de la zona (null sin previsión)
+    private final PronosticoHolt pronostico;
+
+    // Alerta por exceso de consumo de críticos dentro de la zona
+    private volatile boolean alerta = false;
+
+    // Dispositivos de la zona desconectados por el motor, por su límite o por el global
+    private final LongAdder desconexionesAutomaticas = new LongAdder();
+
+    // Dispositivos de la zona retirados por llevar demasiado tiempo sin lecturas
+    private final LongAdder caducados = new LongAdder();
+
+    // Dispositivos que el motor ha vuelto a conectar en la zona al recuperar margen
+    private final LongAdder restablecidos = new LongAdder();
+
+    // Dispositivos de la zona desconectados por la previsión antes de superar un límite
+    private final LongAdder anticipadas = new LongAdder();
+
+    ParticionZona(String zona, int indice, double limite, AgregadosConsumo totales, TablaDispositivos tabla,
+                  CambiosMotorListener cambios, RegistroDesconectados desconectados, PronosticoHolt pronostico) {
+        this.zona = zona;
+        this.indice = indice;
+        this.limite = limite;
+        this.totales = totales;
+        this.tabla = tabla;
+        this.cambios = cambios;
+        this.desconectados = desconectados;
+        this.pronostico = pronostico;
+    }
+
+    /**
+     * Da de alta o actualiza un dispositivo aplicando solo la diferencia a los totales.
+     * Si estaba activo en otra zona, se descuenta de ella en la misma operación. Si el motor lo
+     * desconectó y espera a restablecerlo, la lectura solo actualiza el consumo con el que volverá.
+     *
+     * @param slot        slot del dispositivo en la tabla
+     * @param dispositivo dispositivo de la lectura
+     * @param consumo     consumo leído en Watts
+     * @return false si el slot ya no es del dispositivo (se ha liberado mientras tanto) y hay que pedir otro
+     */
+    boolean registrar(int slot, Dispositivo dispositivo, double consumo) {
+        synchronized (tabla.cerrojo(slot)) {
+            if (!tabla.esDe(slot, dispositivo.getNombre())) return false;
+
+            dispositivo.setConsumo(consumo);
+            if (desconectados != null && desconectados.actualizar(slot, dispositivo, consumo)) return true;
+
+            boolean conectado = activar(slot, dispositivo, consumo);
+            cambios.dispositivoActualizado(dispositivo, conectado);
+            return true;
+        }
+    }
+
+    /**
+     * Vuelve a conectar en la zona un dispositivo que el motor había desconectado, con su última lectura.
+     * El llamante ya lo ha quitado del {@link RegistroDesconectados} bajo el mismo cerrojo.
+     */
+    void restablecer(int slot, Dispositivo dispositivo, double consumo) {
+        synchronized (tabla.cerrojo(slot)) {
+            dispositivo.setConsumo(consumo);
+            activar(slot, dispositivo, consumo);
+            restablecidos.increment();
+            cambios.dispositivoRestablecido(dispositivo);
+        }
+    }
+
+    /**
+     * Activa el dispositivo en la zona; si estaba activo en otra, lo descuenta de ella.
+     *
+     * @return true si no estaba activo en ninguna zona
+     */
+    private boolean activar(int slot, Dispositivo dispositivo, double consumo) {
+        ParticionZona anterior = tabla.getParticion(slot);
+        if (anterior != null) {
+            anterior.descontar(slot, tabla.getCriticidad(slot), tabla.getConsumo(slot));
+        }
+        tabla.activar(slot, indice, dispositivo, consumo);
+        contabilizar(slot, dispositivo.getCriticidad(), consumo);
+        return anterior == null;
+    }
+
+    /**
+     * Asigna una nueva potencia a un dispositivo crítico activo de la zona.
+     *
+     * @return true si el dispositivo está activo en la zona y es crítico
+     */
+    boolean ajustarPotencia(int slot, double nuevaPotencia) {
+        synchronized (tabla.cerrojo(slot)) {
+            NivelCriticidad criticidad = tabla.getCriticidad(slot);
+            if (tabla.getParticion(slot) != this || criticidad != NivelCriticidad.CRITICA) {
+                return false;
+            }
+            cambiarConsumo(slot, criticidad, nuevaPotencia);
+            return true;
+        }
+    }
+
+    /**
+     * Reduce el consumo contabilizado de un dispositivo activo de la zona que no envía lecturas.
+     *
+     * @param consumo consumo atenuado en Watts
+     */
+    void atenuar(int slot, double consumo) {
+        synchronized (tabla.cerrojo(slot)) {
+            if (tabla.getParticion(slot) != this) return;
+            cambiarConsumo(slot, tabla.getCriticidad(slot), consumo);
+        }
+    }
+
+    private void cambiarConsumo(int slot, NivelCriticidad criticidad, double consumo) {
+        descontar(slot, criticidad, tabla.getConsumo(slot));
+        Dispositivo dispositivo = tabla.getEntidad(slot);
+        dispositivo.setConsumo(consumo);
+        tabla.setConsumo(slot, consumo);
+        contabilizar(slot, criticidad, consumo);
+        cambios.dispositivoActualizado(dispositivo, false);
+    }
+
+    /**
+     * Quita un dispositivo de la zona y descuenta su consumo. Con histéresis, los que desconecta el
+     * motor quedan a la espera de restablecerse, salvo que ya no existan: entonces se libera su slot.
+     *
+     * @param automatico true si lo desconecta el motor por exceso de consumo
+     * @return nombre del dispositivo, o null si no estaba activo en la zona
+     */
+    String quitar(int slot, boolean automatico) {
+        synchronized (tabla.cerrojo(slot)) {
+            if (tabla.getParticion(slot) != this) return null;
+
+            Dispositivo dispositivo = tabla.getEntidad(slot);
+            double consumo = tabla.getConsumo(slot);
+            String nombre = retirar(slot);
+            if (automatico) {
+                desconexionesAutomaticas.increment();
+                if (desconectados != null && !tabla.isOlvidado(slot)) {
+                    desconectados.anotar(slot, dispositivo, consumo, System.currentTimeMillis());
+                }
+            }
+            tabla.liberarSiOlvidado(slot);
+            cambios.dispositivoDesconectado(nombre, zona, automatico);
+            return nombre;
+        }
+    }
+
+    /**
+     * Quita de la zona un dispositivo que lleva demasiado tiempo sin lecturas y, si ya no existe, libera su slot.
+     *
+     * @return nombre del dispositivo, o null si no estaba activo en la zona
+     */
+    String caducar(int slot) {
+        synchronized (tabla.cerrojo(slot)) {
+            if (tabla.getParticion(slot) != this) return null;
+
+            String nombre = retirar(slot);
+            tabla.liberarSiOlvidado(slot);
+            caducados.increment();
+            cambios.dispositivoCaducado(nombre, zona);
+            return nombre;
+        }
+    }
+
+    private String retirar(int slot) {
+        descontar(slot, tabla.getCriticidad(slot), tabla.getConsumo(slot));
+        String nombre = tabla.getEntidad(slot).getNombre();
+        tabla.desactivar(slot);
+        return nombre;
+    }
+
+    private void contabilizar(int slot, NivelCriticidad criticidad, double consumo) {
+        agregados.sumar(criticidad, consumo);
+        totales.sumar(criticidad, consumo);
+        if (esDesconectable(criticidad)) {
+            colaDesconexion.añadir(slot, consumo);
+        }
+    }
+
+    private void descontar(int slot, NivelCriticidad criticidad, double consumo) {
+        agregados.restar(criticidad, consumo);
+        totales.restar(criticidad, consumo);
+        if (esDesconectable(criticidad)) {
+            colaDesconexion.eliminar(slot, consumo);
+        }
+    }
+
+    /**
+     * Aplica el límite de la zona: desconecta sus no críticos de mayor consumo
+     * o activa la alerta de la zona. Sin límite propio no hace nada.
+     * La alerta solo se registra en el log al activarse y al restablecerse.
+     */
+    void comprobarLimite() {
+        // Camino rápido: dentro del límite y sin alerta que restablecer
+        if (agregados.getTotal() <= limite && !alerta) return;
+
+        bloqueo.lock();
+        try {
+            double consumoZona = agregados.getTotal();
+            if (consumoZona <= limite) {
+                if (alerta) {
+                    alerta = false;
+                    log.info("✅ Zona '{}' dentro de su límite: {}W / {}W", zona, consumoZona, limite);
+                }
+                return;
+            }
+
+            double consumoCriticos = agregados.getCriticos();
+            if (consumoCriticos > limite) {
+                // Mientras dure la alerta, cada lectura volvería a repetir el aviso
+                if (!alerta) {
+                    alerta = true;
+                    log.warn("⚠️ Consumo excedido en la zona '{}': {}W > {}W", zona, consumoZona, limite);
+                    log.error("🚨 Consumo de críticos de la zona '{}' ({}W) supera su límite ({}W)",
+                            zona, consumoCriticos, limite);
+                }
+                return;
+            }
+
+            log.warn("⚠️ Consumo excedido en la zona '{}': {}W > {}W", zona, consumoZona, limite);
+
+            List<String> desconectados = new ArrayList<>();
+            while (agregados.getTotal() > limite) {
+                int slot = colaDesconexion.extraerMayor();
+                if (slot < 0) break;
+
+                String nombre = quitar(slot, true);
+                if (nombre != null) {
+                    desconectados.add(nombre);
+                }
+            }
+
+            if (!desconectados.isEmpty()) {
+                log.info("🔌 Dispositivos no críticos desconectados en la zona '{}': {}", zona,
+                        String.join(", ", desconectados));
+            }
+
+            boolean excedida = agregados.getTotal() > limite;
+            if (excedida && !alerta) {
+                log.error("🔔 Intervención manual requerida en la zona '{}'", zona);
+            } else if (!excedida && alerta) {
+                log.info("✅ Zona '{}' dentro de su límite: {}W / {}W", zona, agregados.getTotal(), limite);
+            }
+            alerta = excedida;
+        } finally {
+            bloqueo.unlock();
+        }
+    }
+
+    /**
+     * Desconecta los no críticos de mayor consumo de la zona mientras el consumo previsto a horizonte
+     * supere su límite. No cambia la alerta, que depende solo del consumo real. Sin límite propio o sin
+     * previsión no hace nada.
+     *
+     * @param horizonteMs horizonte de la previsión
+     * @param anticipados recibe los nombres de los dispositivos desconectados
+     */
+    void anticiparLimite(long horizonteMs, List<String> anticipados) {
+        if (pronostico == null || !Double.isFinite(limite)) return;
+
+        // Solo cuenta una tendencia al alza
+        double margen = Math.max(0, pronostico.getTendencia()) * horizonteMs;
+        if (agregados.getTotal() + margen <= limite) return;
+        // Si ni sin los no críticos se llegaría a tiempo, se espera a que decida el límite real
+        if (agregados.getCriticos() + margen > limite) return;
+
+        bloqueo.lock();
+        try {
+            while (agregados.getTotal() + margen > limite) {
+                int slot = colaDesconexion.extraerMayor();
+                if (slot < 0) break;
+
+                String nombre = quitar(slot, true);
+                if (nombre != null) {
+                    anticipadas.increment();
+                    anticipados.add(nombre);
+                }
+            }
+        } finally {
+            bloqueo.unlock();
+        }
+    }
+
+    /**
+     * Observa el consumo actual de la zona para su previsión. Sin previsión no hace nada.
+     *
+     * @param ahoraMs instante de la observación en milisegundos desde epoch
+     */
+    void observarConsumo(long ahoraMs) {
+        if (pronostico != null) {
+            pronostico.observar(ahoraMs, agregados.getTotal());
+        }
+    }
+
+    /**
+     * Consumo actual más la subida prevista a horizonte; sin previsión, el consumo actual.
+     */
+    double getConsumoPrevisto(long horizonteMs) {
+        double total = agregados.getTotal();
+        return pronostico == null ? total : total + Math.max(0, pronostico.getTendencia()) * horizonteMs;
+    }
+
+    /**
+     * Desconecta el no crítico de mayor consumo de la zona (usado al conciliar el límite global).
+     *
+     * @return nombre del dispositivo desconectado o null si no queda ninguno
+     */
+    String desconectarMayor() {
+        return desconectarMayor(false);
+    }
+
+    /**
+     * Desconecta el no crítico de mayor consumo de la zona, al conciliar el límite global o su previsión.
+     *
+     * @param anticipada true si se desconecta por la previsión y no por el consumo actual
+     * @return nombre del dispositivo desconectado o null si no queda ninguno
+     */
+    String desconectarMayor(boolean anticipada) {
+        bloqueo.lock();
+        try {
+            for (int slot = colaDesconexion.extraerMayor(); slot >= 0; slot = colaDesconexion.extraerMayor()) {
+                String nombre = quitar(slot, true);
+                if (nombre != null) {
+                    if (anticipada) {
+                        anticipadas.increment();
+                    }
+                    return nombre;
+                }
+            }
+            return null;
+        } finally {
+            bloqueo.unlock();
+        }
+    }
+
+    /**
+     * Consumo del siguiente candidato a desconexión, o -1 si no hay ninguno.
+     */
+    double consumoMayorCandidato() {
+        return colaDesconexion.consumoMayor();
+    }
+
+    private static boolean esDesconectable(NivelCriticidad criticidad) {
+        return criticidad != NivelCriticidad.CRITICA;
+    }
+
+    String getZona() {
+        return zona;
+    }
+
+    double getLimite() {
+        return limite;
+    }
+
+    boolean isAlerta() {
+        return alerta;
+    }
+
+    double getTotal() {
+        return agregados.getTotal();
+    }
+
+    double getCriticos() {
+        return agregados.getCriticos();
+    }
+
+    long getDesconexionesAutomaticas() {
+        return desconexionesAutomaticas.sum();
+    }
+
+    long getCaducados() {
+        return caducados.sum();
+    }
+
+    long getRestablecidos() {
+        return restablecidos.sum();
+    }
+
+    long getAnticipadas() {
+        return anticipadas.sum();
+    }
+
+    /**
+     * Previsión del consumo de la zona, o null sin previsión.
+     */
+    PronosticoHolt getPronostico() {
+        return pronostico;
+    }
+
+    int getTamañoColaDesconexion() {
+        return colaDesconexion.size();
+    }
+}
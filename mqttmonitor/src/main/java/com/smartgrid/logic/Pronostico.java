@@ -0,0 +1,30 @@
+package com.smartgrid.logic;
+
+/**
+ * Previsión del consumo de cada zona y del total para desconectar antes de superar el límite.
+ * <p>
+ * Sin previsión el motor solo reacciona cuando un total ya está por encima de su límite, así que
+ * cada sobrecarga se sirve antes de corregirse. Con la previsión activa, cada {@code periodoMs} se
+ * actualiza un suavizado exponencial doble (Holt) del consumo de cada zona y del total, que estima
+ * su nivel y su tendencia en O(1). Con {@code anticipar}, si el consumo actual más la tendencia a
+ * {@code horizonteMs} supera un límite, se desconectan ya los no críticos de mayor consumo, como haría
+ * el límite al superarse; las alertas siguen dependiendo solo del consumo real.
+ * <p>
+ * Los dispositivos que se desconectan por anticipado vuelven con su siguiente lectura salvo que haya
+ * {@link Histeresis}, que además tiene en cuenta la tendencia antes de restablecerlos.
+ *
+ * @param horizonteMs tiempo por delante que se prevé (0 = desactivada)
+ * @param periodoMs   cada cuánto se observa el consumo y se actualiza la previsión
+ * @param alfa        peso de cada observación en el nivel (entre 0 y 1; más alto, sigue antes los cambios)
+ * @param beta        peso de cada observación en la tendencia (entre 0 y 1)
+ * @param anticipar   desconectar según la previsión o solo calcularla (métricas y ajuste)
+ */
+public record Pronostico(long horizonteMs, long periodoMs, double alfa, double beta, boolean anticipar) {
+
+    /** Sin previsión: el motor solo reacciona al consumo actual */
+    public static final Pronostico DESACTIVADO = new Pronostico(0, 1000, 0.5, 0.1, false);
+
+    public boolean isActivo() {
+        return horizonteMs > 0;
+    }
+}
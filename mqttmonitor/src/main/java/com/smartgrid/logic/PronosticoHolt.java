@@ -0,0 +1,114 @@
+package com.smartgrid.logic;
+
+/**
+ * Suavizado exponencial doble (Holt) de un consumo observado a intervalos, con el error de sus
+ * previsiones a horizonte.
+ * <p>
+ * Cada observación actualiza el nivel y la tendencia (en W/ms, para admitir intervalos irregulares)
+ * en O(1). La previsión a horizonte de cada observación se guarda hasta que llega su instante y se
+ * compara con el consumo observado entonces; solo caben las de un horizonte, así que la memoria es fija.
+ * Lo actualiza un único hilo (el reloj del motor) y se consulta desde cualquiera.
+ */
+final class PronosticoHolt {
+
+    private final double alfa;
+    private final double beta;
+    private final long horizonteMs;
+
+    // Estado del suavizado, protegido por el monitor de la instancia
+    private double nivel;
+    private double tendencia;
+    private long ultimoMs = Long.MIN_VALUE;
+
+    // Previsiones pendientes de comparar: instante objetivo y consumo previsto, en anillo
+    private final long[] objetivos;
+    private final double[] previstos;
+    private int primero;
+    private int pendientes;
+
+    private long comparaciones;
+    private double sumaAbsoluta;
+    private double suma;
+
+    // Lo que leen las decisiones y las métricas sin tomar el monitor
+    private volatile double tendenciaActual;
+    private volatile double prevision = Double.NaN;
+
+    PronosticoHolt(Pronostico pronostico) {
+        this.alfa = pronostico.alfa();
+        this.beta = pronostico.beta();
+        this.horizonteMs = pronostico.horizonteMs();
+        int capacidad = (int) Math.min(1 << 16, horizonteMs / Math.max(1, pronostico.periodoMs()) + 2);
+        this.objetivos = new long[capacidad];
+        this.previstos = new double[capacidad];
+    }
+
+    /**
+     * Añade una observación del consumo. Las que no avanzan en el tiempo se ignoran.
+     *
+     * @param ahoraMs instante de la observación en milisegundos desde epoch
+     * @param consumo consumo observado en Watts
+     */
+    synchronized void observar(long ahoraMs, double consumo) {
+        if (ultimoMs == Long.MIN_VALUE) {
+            nivel = consumo;
+            tendencia = 0;
+        } else {
+            long dt = ahoraMs - ultimoMs;
+            if (dt <= 0) return;
+
+            comparar(ahoraMs, consumo);
+            double anterior = nivel;
+            nivel = alfa * consumo + (1 - alfa) * (nivel + tendencia * dt);
+            tendencia = beta * (nivel - anterior) / dt + (1 - beta) * tendencia;
+        }
+        ultimoMs = ahoraMs;
+        tendenciaActual = tendencia;
+        prevision = nivel + tendencia * horizonteMs;
+        guardar(ahoraMs + horizonteMs, prevision);
+    }
+
+    /**
+     * Compara con el consumo observado las previsiones cuyo instante ya ha llegado.
+     */
+    private void comparar(long ahoraMs, double consumo) {
+        while (pendientes > 0 && objetivos[primero] <= ahoraMs) {
+            double error = consumo - previstos[primero];
+            comparaciones++;
+            sumaAbsoluta += Math.abs(error);
+            suma += error;
+            primero = (primero + 1) % objetivos.length;
+            pendientes--;
+        }
+    }
+
+    private void guardar(long objetivoMs, double previsto) {
+        if (pendientes == objetivos.length) {
+            // Observaciones más seguidas que el periodo: se descarta la previsión más antigua
+            primero = (primero + 1) % objetivos.length;
+            pendientes--;
+        }
+        int posicion = (primero + pendientes) % objetivos.length;
+        objetivos[posicion] = objetivoMs;
+        previstos[posicion] = previsto;
+        pendientes++;
+    }
+
+    /**
+     * Tendencia estimada en W/ms (0 antes de la segunda observación).
+     */
+    double getTendencia() {
+        return tendenciaActual;
+    }
+
+    /**
+     * Consumo previsto a horizonte desde la última observación, o NaN sin observaciones.
+     */
+    double getPrevision() {
+        return prevision;
+    }
+
+    synchronized ErrorPronostico getError() {
+        return new ErrorPronostico(comparaciones, sumaAbsoluta, suma);
+    }
+}
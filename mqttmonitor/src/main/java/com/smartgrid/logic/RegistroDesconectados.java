@@ -0,0 +1,148 @@
+package com.smartgrid.logic;
+
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+
+import java.util.Comparator;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.IntConsumer;
+
+/**
+ * Dispositivos desconectados por el motor que esperan a que vuelva a haber margen para restablecerse.
+ * <p>
+ * El estado de cada dispositivo (instante de la desconexión y la última lectura recibida) vive en la
+ * {@link TablaDispositivos}; aquí se mantiene un índice por prioridad de restablecimiento: primero la
+ * criticidad más alta y, dentro de ella, el mayor consumo. Con un margen dado, {@link #recorrer} salta
+ * directamente a los candidatos de cada criticidad que caben en él, sin recorrer los que no caben.
+ * <p>
+ * Las altas, bajas y lecturas de un dispositivo requieren el cerrojo de su slot.
+ */
+final class RegistroDesconectados {
+
+    /**
+     * Decide sobre un candidato a restablecer.
+     */
+    @FunctionalInterface
+    interface Restablecedor {
+        /**
+         * @param slot   slot del dispositivo
+         * @param margen consumo que aún cabe por debajo del umbral de restablecimiento global
+         * @return consumo con el que se ha restablecido, o -1 si no se ha restablecido
+         */
+        double restablecer(int slot, double margen);
+    }
+
+    private record Entrada(int rango, double consumo, int slot) {
+    }
+
+    private static final Comparator<Entrada> ORDEN = Comparator
+            .comparingInt(Entrada::rango)
+            .thenComparing(Comparator.comparingDouble(Entrada::consumo).reversed())
+            .thenComparingInt(Entrada::slot);
+
+    private static final int NIVELES = NivelCriticidad.values().length;
+
+    private final NavigableSet<Entrada> entradas = new ConcurrentSkipListSet<>(ORDEN);
+
+    private final TablaDispositivos tabla;
+
+    RegistroDesconectados(TablaDispositivos tabla) {
+        this.tabla = tabla;
+    }
+
+    /**
+     * Anota un dispositivo recién desconectado por el motor, con la lectura con la que estaba contabilizado.
+     *
+     * @param instante instante de la desconexión en milisegundos desde epoch
+     */
+    void anotar(int slot, Dispositivo dispositivo, double consumo, long instante) {
+        tabla.marcarDesconectado(slot, dispositivo, consumo, instante);
+        entradas.add(new Entrada(rango(dispositivo.getCriticidad()), consumo, slot));
+    }
+
+    /**
+     * Vuelve a anotar un dispositivo que el motor desconectó antes de reiniciarse, con el instante original
+     * de la desconexión. Su caducidad cuenta desde ahora, como si acabara de enviar una lectura.
+     */
+    void restaurar(int slot, Dispositivo dispositivo, double consumo, long instante) {
+        anotar(slot, dispositivo, consumo, instante);
+        tabla.anotarVisto(slot);
+    }
+
+    /**
+     * Aplica una lectura a un dispositivo si está esperando a restablecerse, sin volver a conectarlo.
+     *
+     * @return true si el dispositivo estaba desconectado por el motor y la lectura se ha quedado aquí
+     */
+    boolean actualizar(int slot, Dispositivo dispositivo, double consumo) {
+        if (tabla.getDesconectadoMs(slot) == 0) return false;
+
+        entradas.remove(new Entrada(rango(tabla.getCriticidad(slot)), tabla.getConsumo(slot), slot));
+        tabla.actualizarDesconectado(slot, dispositivo, consumo);
+        entradas.add(new Entrada(rango(dispositivo.getCriticidad()), consumo, slot));
+        return true;
+    }
+
+    /**
+     * Deja de esperar a restablecer un dispositivo (se restablece, se desconecta a mano o caduca).
+     *
+     * @return true si estaba esperando
+     */
+    boolean olvidar(int slot) {
+        if (tabla.getDesconectadoMs(slot) == 0) return false;
+
+        entradas.remove(new Entrada(rango(tabla.getCriticidad(slot)), tabla.getConsumo(slot), slot));
+        tabla.desmarcarDesconectado(slot);
+        return true;
+    }
+
+    /**
+     * Ofrece los candidatos que caben en el margen, por orden de prioridad. El margen se reduce con cada
+     * restablecimiento; los que no caben se saltan con una búsqueda en el índice en vez de recorrerlos.
+     *
+     * @param margen       consumo que cabe por debajo del umbral de restablecimiento global
+     * @param restablecedor decide sobre cada candidato bajo el cerrojo de su slot
+     */
+    void recorrer(double margen, Restablecedor restablecedor) {
+        for (int rango = 0; rango <= NIVELES && margen > 0; rango++) {
+            Entrada desde = new Entrada(rango, margen, Integer.MIN_VALUE);
+            for (Entrada candidato = entradas.ceiling(desde);
+                 candidato != null && candidato.rango() == rango;
+                 candidato = entradas.ceiling(desde)) {
+                double restablecido = restablecedor.restablecer(candidato.slot(), margen);
+                if (restablecido >= 0) {
+                    margen -= restablecido;
+                    desde = new Entrada(rango, margen, Integer.MIN_VALUE);
+                } else {
+                    desde = new Entrada(rango, candidato.consumo(), candidato.slot() + 1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Recorre los slots que esperan a restablecerse. Sin cerrojo: las altas y bajas concurrentes pueden
+     * verse o no.
+     */
+    void recorrerSlots(IntConsumer accion) {
+        for (Entrada entrada : entradas) {
+            accion.accept(entrada.slot());
+        }
+    }
+
+    int size() {
+        return entradas.size();
+    }
+
+    boolean isEmpty() {
+        return entradas.isEmpty();
+    }
+
+    /**
+     * Posición de una criticidad en el orden de restablecimiento: la más alta primero, sin criticidad al final.
+     */
+    private static int rango(NivelCriticidad criticidad) {
+        return criticidad == null ? NIVELES : NIVELES - 1 - criticidad.ordinal();
+    }
+}
@@ -0,0 +1,127 @@
+package com.smartgrid.logic;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Rueda temporal (hashed timing wheel) con los slots de la {@link TablaDispositivos} pendientes
+ * de revisar su caducidad.
+ * <p>
+ * El tiempo se divide en tics de {@code resolucionMs} y cada tic tiene su cubo, elegido por el tic
+ * módulo el número de cubos. Un slot se programa una sola vez, al activarse, en el cubo del tic en
+ * que vencería si no volviera a leerse; las lecturas siguientes solo apuntan su instante en la tabla.
+ * Al pasar por el cubo, quien avanza la rueda comprueba cada slot y, si ha recibido lecturas
+ * entre tanto, lo vuelve a programar para su nuevo vencimiento. Así cada tic cuesta lo que tenga
+ * su cubo, sin recorrer todos los dispositivos, y cada dispositivo se revisa como mucho una vez por TTL
+ * (más alguna vuelta extra si el TTL no cabe en la rueda).
+ */
+final class RuedaCaducidad {
+
+    private static final int MAX_CUBOS = 1 << 12;
+
+    /**
+     * Slots programados para un mismo tic (o uno congruente de otra vuelta).
+     */
+    private static final class Cubo {
+        private int[] slots = new int[16];
+        private int tamaño;
+
+        synchronized void añadir(int slot) {
+            if (tamaño == slots.length) {
+                slots = Arrays.copyOf(slots, tamaño * 2);
+            }
+            slots[tamaño++] = slot;
+        }
+
+        synchronized int[] vaciar() {
+            int[] contenido = Arrays.copyOf(slots, tamaño);
+            tamaño = 0;
+            return contenido;
+        }
+    }
+
+    private final long ttlMs;
+    private final long resolucionMs;
+    private final Cubo[] cubos;
+    private final int mascara;
+
+    // Instante del último avance, el que se apunta como última lectura de cada slot
+    private volatile long ahoraMs;
+
+    // Último tic cuyo cubo se ha vaciado; solo lo toca quien avanza la rueda
+    private long ultimoTic;
+
+    /**
+     * @param ttlMs        tiempo sin lecturas tras el que vence un slot
+     * @param resolucionMs duración de cada tic
+     * @param inicioMs     instante inicial del reloj (milisegundos desde epoch)
+     */
+    RuedaCaducidad(long ttlMs, long resolucionMs, long inicioMs) {
+        this.ttlMs = ttlMs;
+        this.resolucionMs = Math.max(1, resolucionMs);
+        long ticsTtl = (ttlMs + this.resolucionMs - 1) / this.resolucionMs;
+        int numero = (int) Math.min(MAX_CUBOS, Long.highestOneBit(Math.max(1, ticsTtl)) << 1);
+        this.cubos = new Cubo[numero];
+        for (int i = 0; i < numero; i++) {
+            cubos[i] = new Cubo();
+        }
+        this.mascara = numero - 1;
+        this.ahoraMs = inicioMs;
+        this.ultimoTic = inicioMs / this.resolucionMs;
+    }
+
+    long getTtlMs() {
+        return ttlMs;
+    }
+
+    /**
+     * Instante del último avance: la hora de la rueda, con la precisión de un tic.
+     */
+    long getAhoraMs() {
+        return ahoraMs;
+    }
+
+    /**
+     * Programa la revisión de un slot en el primer tic en que ya habrá vencido.
+     *
+     * @param venceMs instante a partir del cual el slot está caducado
+     */
+    void programar(int slot, long venceMs) {
+        long tic = (venceMs + resolucionMs - 1) / resolucionMs;
+        cubos[(int) (tic & mascara)].añadir(slot);
+    }
+
+    /**
+     * Avanza el reloj y entrega los slots de los tics que han pasado desde el último avance,
+     * como mucho una vuelta completa. Los que se vuelvan a programar durante la revisión
+     * no se entregan otra vez en este avance.
+     *
+     * @param ahoraMs instante actual (milisegundos desde epoch); si retrocede no se hace nada
+     * @param revisar recibe cada slot del que hay que comprobar la caducidad
+     */
+    synchronized void avanzar(long ahoraMs, IntConsumer revisar) {
+        if (ahoraMs < this.ahoraMs) return;
+        this.ahoraMs = ahoraMs;
+
+        long tic = ahoraMs / resolucionMs;
+        for (long t = Math.max(ultimoTic + 1, tic - mascara); t <= tic; t++) {
+            for (int slot : cubos[(int) (t & mascara)].vaciar()) {
+                revisar.accept(slot);
+            }
+        }
+        ultimoTic = Math.max(ultimoTic, tic);
+    }
+
+    /**
+     * Número de slots programados (uso en tests).
+     */
+    int getProgramados() {
+        int total = 0;
+        for (Cubo cubo : cubos) {
+            synchronized (cubo) {
+                total += cubo.tamaño;
+            }
+        }
+        return total;
+    }
+}
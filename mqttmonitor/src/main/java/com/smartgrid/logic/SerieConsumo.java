@@ -0,0 +1,309 @@
+package com.smartgrid.logic;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Estadísticas de consumo en ventanas de tiempo de un dispositivo o una zona, mantenidas de forma
+ * incremental con cada lectura y sin guardar las lecturas.
+ * <p>
+ * Cada {@link Periodo} (1 s, 1 min, 15 min) se divide en unos pocos tramos fijos, alineados con el reloj,
+ * que guardan el número de lecturas, su suma, mínimo, máximo, un {@link BocetoCuantiles} y la energía.
+ * Los tramos forman un anillo: la memoria por serie es fija y cada lectura solo toca el tramo actual
+ * de cada periodo. De ellos salen dos ventanas:
+ * <ul>
+ *     <li><b>Deslizante</b>: el tramo en curso y los anteriores hasta completar el periodo, así que
+ *     avanza a saltos de un tramo.</li>
+ *     <li><b>Fija</b>: el último periodo completo alineado con el reloj (p. ej. el último minuto en punto),
+ *     que se resume al cerrarse.</li>
+ * </ul>
+ * La energía integra el último consumo conocido en el tiempo, repartido entre los tramos que abarca:
+ * un dispositivo estable que no envía lecturas sigue sumando energía hasta que se desconecta.
+ * <p>
+ * Los métodos están sincronizados: las lecturas de un dispositivo llegan en orden desde el motor y las
+ * consultas pueden venir de cualquier hilo.
+ */
+public final class SerieConsumo {
+
+    /**
+     * Periodos de las ventanas, con el número de tramos en que se divide cada uno.
+     */
+    public enum Periodo {
+        SEGUNDO("1s", 1_000, 5),
+        MINUTO("1m", 60_000, 6),
+        QUINCE_MINUTOS("15m", 900_000, 5);
+
+        private final String etiqueta;
+        private final long duracionMs;
+        private final int tramos;
+
+        Periodo(String etiqueta, long duracionMs, int tramos) {
+            this.etiqueta = etiqueta;
+            this.duracionMs = duracionMs;
+            this.tramos = tramos;
+        }
+
+        public String getEtiqueta() {
+            return etiqueta;
+        }
+
+        public long getDuracionMs() {
+            return duracionMs;
+        }
+
+        /**
+         * Duración de cada tramo, que es el paso con el que avanza la ventana deslizante.
+         */
+        public long getTramoMs() {
+            return duracionMs / tramos;
+        }
+    }
+
+    /**
+     * Las dos ventanas de un periodo.
+     *
+     * @param deslizante ventana que termina en el instante de la consulta
+     * @param fija       último periodo completo alineado con el reloj, o null si aún no se ha cerrado ninguno
+     */
+    public record Ventana(EstadisticasVentana deslizante, EstadisticasVentana fija) {
+    }
+
+    private static final long NINGUNO = Long.MIN_VALUE / 2;
+    private static final double MS_POR_HORA = 3_600_000.0;
+
+    /**
+     * Acumulado de las lecturas de un tramo.
+     */
+    private static final class Tramo {
+        long lecturas;
+        double suma;
+        double minimo;
+        double maximo;
+        double energiaWms;
+        // Se crea con la primera lectura; los tramos vacíos no ocupan boceto
+        BocetoCuantiles boceto;
+
+        void limpiar() {
+            lecturas = 0;
+            suma = 0;
+            energiaWms = 0;
+            if (boceto != null) {
+                boceto.limpiar();
+            }
+        }
+    }
+
+    /**
+     * Anillo de tramos de un periodo.
+     */
+    private final class Nivel {
+        final Periodo periodo;
+        final long tramoMs;
+        final Tramo[] tramos;
+        // Índice absoluto (instante / tramoMs) del tramo en curso
+        long actual = NINGUNO;
+        EstadisticasVentana fija;
+
+        Nivel(Periodo periodo) {
+            this.periodo = periodo;
+            this.tramoMs = periodo.getTramoMs();
+            this.tramos = new Tramo[periodo.tramos];
+            for (int i = 0; i < tramos.length; i++) {
+                tramos[i] = new Tramo();
+            }
+        }
+
+        Tramo tramo(long indice) {
+            return tramos[(int) Math.floorMod(indice, (long) tramos.length)];
+        }
+
+        /**
+         * Avanza el anillo hasta el tramo indicado, cerrando la ventana fija al pasar por el inicio de un periodo.
+         * Un salto largo solo recorre el periodo anterior al del destino, que es el único que se puede consultar.
+         */
+        void irA(long indice) {
+            if (indice <= actual) return;
+
+            int n = tramos.length;
+            long inicioAnterior = indice - Math.floorMod(indice, (long) n) - n;
+            if (actual < inicioAnterior - 1) {
+                for (Tramo tramo : tramos) {
+                    tramo.limpiar();
+                }
+                actual = inicioAnterior - 1;
+            }
+            for (long j = actual + 1; j <= indice; j++) {
+                // Los periodos que terminan antes de la primera lectura no se cierran: no hay nada que resumir
+                if (Math.floorMod(j, (long) n) == 0 && j * tramoMs > primeraMs) {
+                    fija = resumir(j - n, j * tramoMs);
+                }
+                tramo(j).limpiar();
+                actual = j;
+            }
+        }
+
+        /**
+         * Suma la energía de un consumo constante entre dos instantes a los tramos que abarca.
+         */
+        void integrar(long desdeMs, long hastaMs, double consumo) {
+            long hasta = Math.floorDiv(hastaMs, tramoMs);
+            if (consumo == 0 || hastaMs <= desdeMs) {
+                irA(hasta);
+                return;
+            }
+
+            // Solo cuentan el periodo anterior al del destino y el propio
+            long desde = Math.max(Math.floorDiv(desdeMs, tramoMs),
+                    hasta - Math.floorMod(hasta, (long) tramos.length) - tramos.length);
+            for (long j = desde; j <= hasta; j++) {
+                irA(j);
+                long inicio = Math.max(desdeMs, j * tramoMs);
+                long fin = Math.min(hastaMs, (j + 1) * tramoMs);
+                tramo(j).energiaWms += consumo * (fin - inicio);
+            }
+        }
+
+        void añadir(double consumo) {
+            Tramo tramo = tramo(actual);
+            if (tramo.lecturas == 0) {
+                tramo.minimo = consumo;
+                tramo.maximo = consumo;
+            } else {
+                tramo.minimo = Math.min(tramo.minimo, consumo);
+                tramo.maximo = Math.max(tramo.maximo, consumo);
+            }
+            tramo.lecturas++;
+            tramo.suma += consumo;
+            if (tramo.boceto == null) {
+                tramo.boceto = new BocetoCuantiles(errorRelativo, maxCubos);
+            }
+            tramo.boceto.añadir(consumo);
+        }
+
+        /**
+         * Resume los tramos desde {@code primero} hasta el actual, como ventana que termina en {@code hastaMs}.
+         */
+        EstadisticasVentana resumir(long primero, long hastaMs) {
+            long lecturas = 0;
+            double suma = 0;
+            double minimo = Double.POSITIVE_INFINITY;
+            double maximo = Double.NEGATIVE_INFINITY;
+            double energiaWms = 0;
+            BocetoCuantiles boceto = null;
+            for (long j = Math.max(primero, actual - tramos.length + 1); j <= actual; j++) {
+                Tramo tramo = tramo(j);
+                energiaWms += tramo.energiaWms;
+                if (tramo.lecturas == 0) continue;
+
+                lecturas += tramo.lecturas;
+                suma += tramo.suma;
+                minimo = Math.min(minimo, tramo.minimo);
+                maximo = Math.max(maximo, tramo.maximo);
+                if (boceto == null) {
+                    boceto = new BocetoCuantiles(errorRelativo, maxCubos);
+                }
+                boceto.fundir(tramo.boceto);
+            }
+
+            long desdeMs = primero * tramoMs;
+            if (lecturas == 0) {
+                return new EstadisticasVentana(desdeMs, hastaMs, 0, null, null, null, energiaWms / MS_POR_HORA,
+                        null, null, null);
+            }
+            return new EstadisticasVentana(desdeMs, hastaMs, lecturas, minimo, maximo, suma / lecturas,
+                    energiaWms / MS_POR_HORA, boceto.cuantil(0.5), boceto.cuantil(0.9), boceto.cuantil(0.99));
+        }
+    }
+
+    private final double errorRelativo;
+    private final int maxCubos;
+    private final Nivel[] niveles;
+
+    // Último consumo conocido y hasta cuándo se ha integrado su energía
+    private double consumo;
+    private long integradoHasta = NINGUNO;
+    private long primeraMs = NINGUNO;
+
+    /**
+     * @param errorRelativo error relativo de los cuantiles
+     * @param maxCubos      cubos máximos de cada boceto, que acota la memoria por tramo
+     */
+    public SerieConsumo(double errorRelativo, int maxCubos) {
+        if (errorRelativo <= 0 || errorRelativo >= 1) {
+            throw new IllegalArgumentException("Error relativo inválido: " + errorRelativo);
+        }
+        this.errorRelativo = errorRelativo;
+        this.maxCubos = maxCubos;
+        Periodo[] periodos = Periodo.values();
+        this.niveles = new Nivel[periodos.length];
+        for (int i = 0; i < periodos.length; i++) {
+            niveles[i] = new Nivel(periodos[i]);
+        }
+    }
+
+    /**
+     * Registra una lectura. Hasta este instante cuenta la energía del consumo anterior.
+     *
+     * @param instante instante de la lectura en milisegundos desde epoch; si es anterior al último,
+     *                 se toma el último
+     * @param consumo  consumo leído en Watts
+     */
+    public synchronized void registrar(long instante, double consumo) {
+        long ahora = avanzar(instante);
+        for (Nivel nivel : niveles) {
+            nivel.añadir(consumo);
+        }
+        this.consumo = consumo;
+        this.integradoHasta = ahora;
+    }
+
+    /**
+     * El dispositivo deja de consumir: a partir de aquí no suma energía hasta la siguiente lectura.
+     *
+     * @param instante instante de la desconexión en milisegundos desde epoch
+     */
+    public synchronized void desconectar(long instante) {
+        integradoHasta = avanzar(instante);
+        consumo = 0;
+    }
+
+    /**
+     * Ventanas deslizante y fija de cada periodo en el instante indicado.
+     *
+     * @param instante instante de la consulta en milisegundos desde epoch
+     * @return ventanas por etiqueta de periodo ("1s", "1m", "15m"), de la más corta a la más larga
+     */
+    public synchronized Map<String, Ventana> consultar(long instante) {
+        integradoHasta = avanzar(instante);
+        Map<String, Ventana> ventanas = new LinkedHashMap<>();
+        for (Nivel nivel : niveles) {
+            EstadisticasVentana deslizante = nivel.resumir(nivel.actual - nivel.tramos.length + 1, integradoHasta);
+            ventanas.put(nivel.periodo.getEtiqueta(), new Ventana(deslizante, nivel.fija));
+        }
+        return ventanas;
+    }
+
+    /**
+     * Último consumo conocido en Watts (0 tras desconectarse).
+     */
+    public synchronized double getConsumo() {
+        return consumo;
+    }
+
+    /**
+     * Integra la energía del consumo actual hasta el instante indicado y avanza los anillos.
+     *
+     * @return instante hasta el que queda integrada la energía
+     */
+    private long avanzar(long instante) {
+        if (integradoHasta == NINGUNO) {
+            primeraMs = instante;
+        }
+        long ahora = integradoHasta == NINGUNO ? instante : Math.max(integradoHasta, instante);
+        long desde = integradoHasta == NINGUNO ? ahora : integradoHasta;
+        for (Nivel nivel : niveles) {
+            nivel.integrar(desde, ahora, consumo);
+        }
+        return ahora;
+    }
+}
@@ -4,27 +4,183 @@ import com.smartgrid.model.Dispositivo;
 import com.smartgrid.model.NivelCriticidad;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.stereotype.Component;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 /**
  * Motor de decisiones que gestiona los dispositivos conectados
  * en función del consumo energético y su criticidad.
+ * <p>
+ * Los dispositivos activos se reparten en particiones por zona ({@link ParticionZona}),
+ * cada una con sus propios totales, índice de desconexión y, si se configura, su propio límite.
+ * Cada partición aplica también sus deltas a unos totales globales, de modo que consultar el
+ * consumo total no depende del número de zonas.
+ * Los datos de cada dispositivo (consumo contabilizado, criticidad y zona activa) se guardan en
+ * arrays de primitivos de una {@link TablaDispositivos}, indexados por un slot denso por dispositivo.
+ * Por encima de ellas se aplica el límite global del alimentador, de forma jerárquica:
+ * primero cada zona respeta su límite y después, si el total de todas supera el global,
+ * se desconecta el mayor consumidor no crítico de cualquier zona.
+ * <p>
+ * Es seguro para uso concurrente (callbacks MQTT, hilos de ingesta y peticiones web):
+ * <ul>
+ *     <li>Las lecturas de un mismo dispositivo se aplican de forma atómica bajo el cerrojo de
+ *     su slot, incluido un cambio de zona; lecturas de dispositivos distintos avanzan en
+ *     paralelo y las de zonas distintas no comparten totales ni índices.</li>
+ *     <li>Los totales son acumuladores atómicos: en reposo son exactos y, con escrituras en
+ *     curso, reflejan al menos las lecturas ya aplicadas por el propio hilo.</li>
+ *     <li>Las decisiones de cada zona se toman bajo el bloqueo de la zona y las del límite
+ *     global bajo un bloqueo global, y solo cuando se supera el límite o hay una alerta que
+ *     restablecer. Toda lectura que deja un total por encima de su límite termina con una
+ *     evaluación que ya la incluye, por lo que no se pierden desconexiones.</li>
+ *     <li>Los lotes con lecturas de varias zonas se aplican en paralelo, una tarea por zona.
+ *     Un cambio de zona de un dispositivo dentro de un mismo lote no garantiza el orden de sus lecturas.</li>
+ * </ul>
+ * Con {@link Caducidad} activa, los dispositivos que dejan de enviar lecturas se retiran (o se atenúan)
+ * pasado su TTL. Cada lectura solo apunta su hora en la tabla; una {@link RuedaCaducidad} revisa en cada
+ * tic únicamente los dispositivos que vencen en él, y la retirada descuenta los totales y avisa a los
+ * listeners como cualquier otra desconexión.
+ * <p>
+ * Con {@link Histeresis} activa, los dispositivos que desconecta el motor no vuelven con su siguiente
+ * lectura: quedan en un {@link RegistroDesconectados} ordenado por criticidad y consumo, y una revisión
+ * periódica los restablece cuando caben por debajo del umbral de restablecimiento (una fracción del
+ * límite, global y de su zona) y han cumplido su tiempo mínimo desconectados. El margen sale de los
+ * totales que ya se mantienen por zona, sin recorrer los dispositivos activos.
+ * <p>
+ * Con {@link Pronostico} activo, el reloj observa cada periodo el consumo de cada zona y el total y
+ * actualiza su previsión (suavizado de Holt, O(1) por observación). Si se pide anticipar, desconecta los
+ * no críticos de mayor consumo cuando el consumo más la subida prevista a horizonte supera un límite,
+ * antes de que se sirva la sobrecarga.
  */
 public class SmartGridDecisionEngine {
 
     private static final Logger log = LoggerFactory.getLogger(SmartGridDecisionEngine.class);
 
-    // Límite de consumo total permitido en Watts
-    private final double limiteConsumo = 5000.0;
+    // Tamaño mínimo de lote para repartir las zonas entre varios hilos
+    private static final int MIN_LECTURAS_PARALELO = 64;
 
-    // Dispositivos activos actualmente (nombre -> dispositivo)
-    private final Map<String, Dispositivo> dispositivosActivos = new HashMap<>();
+    // Por debajo de este consumo (W) un dispositivo atenuado por falta de lecturas se retira
+    private static final double CONSUMO_MINIMO_ATENUADO = 1.0;
+
+    // Límite de consumo total permitido en Watts (alimentador)
+    private final double limiteConsumo;
+
+    // Límites propios de algunas zonas; el resto solo está sujeto al límite global
+    private final Map<String, Double> limitesZona;
+
+    // Particiones por zona (clave de zona -> dispositivos activos de la zona)
+    private final Map<String, ParticionZona> particiones = new ConcurrentHashMap<>();
+
+    // Totales de todas las zonas, actualizados por cada partición junto con los suyos
+    private final AgregadosConsumo totales = new AgregadosConsumo();
+
+    // Datos de todos los dispositivos y zona en la que está activo cada uno
+    private final TablaDispositivos tabla;
+
+    // Qué se hace con los dispositivos que dejan de enviar lecturas
+    private final Caducidad caducidad;
+
+    // Dispositivos activos pendientes de revisar su caducidad (null si no caducan)
+    private final RuedaCaducidad rueda;
+
+    // Cuándo y cómo se restablecen los dispositivos desconectados por el motor
+    private final Histeresis histeresis;
+
+    // Dispositivos desconectados por el motor a la espera de restablecerse (null sin histéresis)
+    private final RegistroDesconectados desconectados;
+
+    // Previsión del consumo y si se desconecta por anticipado
+    private final Pronostico pronostico;
+
+    // Previsión del consumo total (null sin previsión)
+    private final PronosticoHolt pronosticoTotal;
+
+    // Hilo que avanza la rueda de caducidad, busca dispositivos que restablecer y actualiza la previsión
+    // (null hasta iniciarReloj())
+    private ScheduledExecutorService reloj;
+
+    // Serializa las decisiones del límite global y los cambios del estado de alerta global
+    private final ReentrantLock bloqueoDecision = new ReentrantLock();
+
+    // Hilos que aplican en paralelo las lecturas de cada zona de un lote (null si se aplican en el llamante)
+    private final ForkJoinPool hilosZonas;
+
+    // Interesados en los cambios de los dispositivos activos (p. ej. el dashboard en vivo)
+    private volatile CambiosMotorListener[] listeners = new CambiosMotorListener[0];
+
+    // Reparte los avisos de las particiones entre los listeners sin reservar memoria en cada lectura
+    private final CambiosMotorListener notificador = new CambiosMotorListener() {
+        @Override
+        public void dispositivoActualizado(Dispositivo dispositivo, boolean conectado) {
+            for (CambiosMotorListener listener : listeners) {
+                listener.dispositivoActualizado(dispositivo, conectado);
+            }
+        }
+
+        @Override
+        public void dispositivoDesconectado(String nombre, String zona, boolean automatico) {
+            for (CambiosMotorListener listener : listeners) {
+                listener.dispositivoDesconectado(nombre, zona, automatico);
+            }
+        }
+
+        @Override
+        public void dispositivoRestablecido(Dispositivo dispositivo) {
+            for (CambiosMotorListener listener : listeners) {
+                listener.dispositivoRestablecido(dispositivo);
+            }
+        }
+
+        @Override
+        public void dispositivoCaducado(String nombre, String zona) {
+            for (CambiosMotorListener listener : listeners) {
+                listener.dispositivoCaducado(nombre, zona);
+            }
+        }
+    };
 
     // Flag que indica si hay una situación de alerta por exceso de consumo solo con dispositivos críticos
-    private boolean alertaCriticos = false;
+    private volatile boolean alertaCriticos = false;
+
+    /**
+     * Motor con las opciones por defecto ({@link OpcionesMotor#POR_DEFECTO}): límite global de 5000W, sin
+     * límites por zona y aplicando los lotes en el hilo que llama.
+     */
+    public SmartGridDecisionEngine() {
+        this(OpcionesMotor.POR_DEFECTO);
+    }
+
+    /**
+     * @param opciones límites, paralelismo, caducidad, histéresis y previsión del motor
+     */
+    public SmartGridDecisionEngine(OpcionesMotor opciones) {
+        this.limiteConsumo = opciones.limiteConsumo();
+        this.limitesZona = opciones.limitesZona();
+        this.caducidad = opciones.caducidad();
+        this.rueda = caducidad.isActiva()
+                ? new RuedaCaducidad(caducidad.ttlMs(), caducidad.resolucionMs(), System.currentTimeMillis())
+                : null;
+        this.tabla = new TablaDispositivos(rueda);
+        this.histeresis = opciones.histeresis();
+        this.desconectados = histeresis.isActiva() ? new RegistroDesconectados(tabla) : null;
+        this.pronostico = opciones.pronostico();
+        this.pronosticoTotal = pronostico.isActivo() ? new PronosticoHolt(pronostico) : null;
+        this.hilosZonas = opciones.paralelismo() > 1
+                ? new ForkJoinPool(opciones.paralelismo(), pool -> {
+                    ForkJoinWorkerThread hilo = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    hilo.setName("motor-zonas-" + hilo.getPoolIndex());
+                    return hilo;
+                }, null, false)
+                : null;
+    }
 
     /**
      * Procesa el dispositivo recibido y determina si puede mantenerse activo.
@@ -34,118 +190,712 @@ public class SmartGridDecisionEngine {
      * @param dispositivo Dispositivo con datos actualizados
      */
     public void procesarDispositivo(Dispositivo dispositivo) {
-        dispositivosActivos.put(dispositivo.getNombre(), dispositivo);
-        alertaCriticos = false; // Reiniciar estado de alerta
+        ParticionZona particion = particion(dispositivo.getZona());
+        registrar(particion, dispositivo, dispositivo.getConsumo());
+        particion.comprobarLimite();
+        comprobarLimite();
+    }
+
+    /**
+     * Aplica un lote de lecturas de una sola pasada y evalúa los límites una única vez al final.
+     * Las lecturas de un mismo dispositivo se aplican en orden, por lo que prevalece la última.
+     * Si el lote es grande y toca varias zonas, cada zona se aplica en paralelo.
+     *
+     * @param lecturas lecturas ya asociadas a su dispositivo
+     */
+    public void procesarLecturas(List<Lectura> lecturas) {
+        if (lecturas.isEmpty()) return;
+
+        if (hilosZonas == null || lecturas.size() < MIN_LECTURAS_PARALELO) {
+            for (Lectura lectura : lecturas) {
+                Dispositivo dispositivo = lectura.dispositivo();
+                registrar(particion(dispositivo.getZona()), dispositivo, lectura.consumo());
+            }
+            particiones.values().forEach(ParticionZona::comprobarLimite);
+        } else {
+            aplicarPorZonas(lecturas);
+        }
+        comprobarLimite();
+    }
+
+    /**
+     * Reparte el lote por zona y aplica cada zona en una tarea, con su propia evaluación de límite.
+     */
+    private void aplicarPorZonas(List<Lectura> lecturas) {
+        Map<ParticionZona, List<Lectura>> porZona = new HashMap<>();
+        for (Lectura lectura : lecturas) {
+            porZona.computeIfAbsent(particion(lectura.dispositivo().getZona()), p -> new ArrayList<>())
+                    .add(lectura);
+        }
 
+        List<ForkJoinTask<?>> tareas = new ArrayList<>(porZona.size());
+        porZona.forEach((particion, deLaZona) -> tareas.add(hilosZonas.submit(() -> {
+            for (Lectura lectura : deLaZona) {
+                registrar(particion, lectura.dispositivo(), lectura.consumo());
+            }
+            particion.comprobarLimite();
+        })));
+        for (ForkJoinTask<?> tarea : tareas) {
+            tarea.join();
+        }
+    }
+
+    /**
+     * Comprueba el total global tras aplicar lecturas y, solo si hace falta, toma el bloqueo de decisión.
+     */
+    private void comprobarLimite() {
         double consumoTotal = getConsumoTotal();
 
-        // Si el consumo total está por debajo del límite, desactivamos la alerta.
-        if (consumoTotal <= limiteConsumo) {
-            alertaCriticos = false; // Restablecemos la alerta cuando estamos dentro del límite
-            log.info("✅ Consumo dentro del límite: {}W / {}W", consumoTotal, limiteConsumo);
+        // Camino rápido: dentro del límite y sin alerta que restablecer, no hace falta coordinarse
+        if (consumoTotal <= limiteConsumo && !alertaCriticos) {
+            if (log.isDebugEnabled()) { // evita convertir los totales a objetos en cada lectura
+                log.debug("✅ Consumo dentro del límite: {}W / {}W", consumoTotal, limiteConsumo);
+            }
             return;
         }
 
-        log.warn("⚠️ Consumo excedido: {}W > {}W", consumoTotal, limiteConsumo);
+        bloqueoDecision.lock();
+        try {
+            evaluarLimite();
+        } finally {
+            bloqueoDecision.unlock();
+        }
+    }
 
-        // Filtrar dispositivos críticos
-        List<Dispositivo> criticos = dispositivosActivos.values().stream()
-                .filter(d -> d.getCriticidad() == NivelCriticidad.CRITICA)
-                .toList();
+    /**
+     * Compara el consumo total con el límite global y, si se supera, desconecta los no críticos
+     * de mayor consumo de cualquier zona o activa la alerta. Debe llamarse con {@link #bloqueoDecision} adquirido.
+     * La alerta solo se registra en el log al activarse y al restablecerse, no en cada lectura mientras dura.
+     */
+    private void evaluarLimite() {
+        double consumoTotal = getConsumoTotal();
 
-        // Filtrar dispositivos no críticos
-        List<Dispositivo> noCriticos = dispositivosActivos.values().stream()
-                .filter(d -> d.getCriticidad() != NivelCriticidad.CRITICA)
-                .sorted(Comparator.comparingDouble(Dispositivo::getConsumo).reversed())
-                .toList();
+        // Si el consumo total está por debajo del límite, desactivamos la alerta.
+        if (consumoTotal <= limiteConsumo) {
+            if (alertaCriticos) {
+                alertaCriticos = false; // Restablecemos la alerta cuando estamos dentro del límite
+                log.info("✅ Consumo dentro del límite: {}W / {}W", consumoTotal, limiteConsumo);
+            }
+            return;
+        }
 
-        // Calcular el consumo solo de dispositivos críticos
-        double consumoCriticos = criticos.stream()
-                .mapToDouble(Dispositivo::getConsumo)
-                .sum();
+        // Consumo solo de dispositivos críticos, ya agregado por zona
+        double consumoCriticos = getConsumoCriticos();
 
         // Si el consumo de dispositivos críticos excede el límite, activamos la alerta y no desconectamos nada
         if (consumoCriticos > limiteConsumo) {
-            alertaCriticos = true;
-            log.error("🚨 Consumo solo de dispositivos críticos ({}W) supera el límite ({}W)",
-                    consumoCriticos, limiteConsumo);
-            log.error("🛑 No se pueden desconectar dispositivos críticos automáticamente.");
-            log.error("🔔 Intervención manual requerida para gestionar dispositivos críticos.");
+            if (!alertaCriticos) {
+                alertaCriticos = true;
+                log.warn("⚠️ Consumo excedido: {}W > {}W", consumoTotal, limiteConsumo);
+                log.error("🚨 Consumo solo de dispositivos críticos ({}W) supera el límite ({}W)",
+                        consumoCriticos, limiteConsumo);
+                log.error("🛑 No se pueden desconectar dispositivos críticos automáticamente.");
+                log.error("🔔 Intervención manual requerida para gestionar dispositivos críticos.");
+            }
             return;
         }
 
+        log.warn("⚠️ Consumo excedido: {}W > {}W", consumoTotal, limiteConsumo);
+
         // Procedemos a desconectar dispositivos no críticos si el consumo total excede el límite
-        double consumoActual = consumoTotal;
         List<String> desconectados = new ArrayList<>();
 
-        for (Dispositivo d : noCriticos) {
-            if (consumoActual <= limiteConsumo) break;
+        // Se desconecta el no crítico de mayor consumo entre todas las zonas hasta volver al límite
+        while (getConsumoTotal() > limiteConsumo) {
+            ParticionZona particion = particionConMayorCandidato();
+            if (particion == null) break;
 
-            consumoActual -= d.getConsumo();
-            dispositivosActivos.remove(d.getNombre());
-            desconectados.add(d.getNombre());
+            String nombre = particion.desconectarMayor();
+            if (nombre != null) {
+                desconectados.add(nombre);
+            }
         }
 
+        double consumoActual = getConsumoTotal();
+
         if (!desconectados.isEmpty()) {
             log.info("🔌 Dispositivos no críticos desconectados: {}", String.join(", ", desconectados));
-            log.info("⚡ Consumo tras desconexión: {:.0f}W / {:.0f}W", consumoActual, limiteConsumo);
+            log.info("⚡ Consumo tras desconexión: {}W / {}W", consumoActual, limiteConsumo);
         }
 
         // Si aún no se ha reducido el consumo al límite, activamos la alerta crítica ( dispositivos unicos criticos y se sigue conectando mas)
-        if (consumoActual > limiteConsumo) {
-            alertaCriticos = true;
-            log.error("⚠️ Consumo aún elevado después de desconectar todos los no críticos: {:.0f}W", consumoActual);
+        boolean alerta = consumoActual > limiteConsumo;
+        if (alerta && !alertaCriticos) {
+            log.error("⚠️ Consumo aún elevado después de desconectar todos los no críticos: {}W", consumoActual);
             log.error("🔔 Intervención manual requerida para gestionar dispositivos críticos.");
+        } else if (!alerta && alertaCriticos) {
+            log.info("✅ Consumo dentro del límite: {}W / {}W", consumoActual, limiteConsumo);
+        }
+        alertaCriticos = alerta;
+    }
+
+    /**
+     * Arranca un hilo que, con el reloj del sistema, avanza la rueda de caducidad un tic cada
+     * {@link Caducidad#resolucionMs()}, busca dispositivos que restablecer cada {@link Histeresis#periodoMs()}
+     * y actualiza la previsión cada {@link Pronostico#periodoMs()}. Sin caducidad, histéresis ni previsión
+     * no hace nada.
+     */
+    public synchronized void iniciarReloj() {
+        if ((rueda == null && desconectados == null && pronosticoTotal == null) || reloj != null) return;
+
+        reloj = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "motor-reloj");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        if (rueda != null) {
+            reloj.scheduleAtFixedRate(() -> {
+                try {
+                    caducarInactivos(System.currentTimeMillis());
+                } catch (RuntimeException e) {
+                    // Una excepción cancelaría las siguientes ejecuciones
+                    log.error("❌ Error revisando la caducidad de los dispositivos: {}", e.getMessage(), e);
+                }
+            }, caducidad.resolucionMs(), caducidad.resolucionMs(), TimeUnit.MILLISECONDS);
+            log.info("⌛ Caducidad de dispositivos sin lecturas: {} ms ({})", caducidad.ttlMs(), caducidad.modo());
+        }
+        if (desconectados != null) {
+            reloj.scheduleWithFixedDelay(() -> {
+                try {
+                    restablecerDesconectados(System.currentTimeMillis());
+                } catch (RuntimeException e) {
+                    log.error("❌ Error restableciendo dispositivos desconectados: {}", e.getMessage(), e);
+                }
+            }, histeresis.periodoMs(), histeresis.periodoMs(), TimeUnit.MILLISECONDS);
+            log.info("🔁 Restablecimiento por debajo del {}% del límite, tras {} ms desconectados",
+                    histeresis.fraccionRestablecer() * 100, histeresis.minDesconectadoMs());
+        }
+        if (pronosticoTotal != null) {
+            reloj.scheduleAtFixedRate(() -> {
+                try {
+                    pronosticar(System.currentTimeMillis());
+                } catch (RuntimeException e) {
+                    log.error("❌ Error actualizando la previsión de consumo: {}", e.getMessage(), e);
+                }
+            }, pronostico.periodoMs(), pronostico.periodoMs(), TimeUnit.MILLISECONDS);
+            log.info("🔮 Previsión de consumo a {} ms{}", pronostico.horizonteMs(),
+                    pronostico.anticipar() ? ", desconectando por anticipado" : "");
+        }
+    }
+
+    /**
+     * Observa el consumo de cada zona y el total, actualiza sus previsiones y, si se pide anticipar,
+     * desconecta los no críticos de mayor consumo de las zonas y del total cuyo consumo más la subida
+     * prevista a horizonte supere su límite. Sin previsión no hace nada.
+     *
+     * @param ahoraMs instante actual en milisegundos desde epoch
+     */
+    public void pronosticar(long ahoraMs) {
+        if (pronosticoTotal == null) return;
+
+        for (ParticionZona particion : particiones.values()) {
+            particion.observarConsumo(ahoraMs);
+        }
+        pronosticoTotal.observar(ahoraMs, getConsumoTotal());
+        if (!pronostico.anticipar()) return;
+
+        List<String> anticipados = new ArrayList<>();
+        for (ParticionZona particion : particiones.values()) {
+            particion.anticiparLimite(pronostico.horizonteMs(), anticipados);
+        }
+
+        // Límite global: igual que al superarse, pero con la subida prevista y sin tocar la alerta
+        double margen = Math.max(0, pronosticoTotal.getTendencia()) * pronostico.horizonteMs();
+        if (getConsumoTotal() + margen > limiteConsumo && getConsumoCriticos() + margen <= limiteConsumo) {
+            bloqueoDecision.lock();
+            try {
+                while (getConsumoTotal() + margen > limiteConsumo) {
+                    ParticionZona particion = particionConMayorCandidato();
+                    if (particion == null) break;
+
+                    String nombre = particion.desconectarMayor(true);
+                    if (nombre != null) {
+                        anticipados.add(nombre);
+                    }
+                }
+            } finally {
+                bloqueoDecision.unlock();
+            }
+        }
+
+        if (!anticipados.isEmpty()) {
+            log.info("🔮 Dispositivos desconectados por anticipado: {}", String.join(", ", anticipados));
+            log.info("⚡ Consumo tras anticipar: {}W / {}W (subida prevista {}W)", getConsumoTotal(),
+                    limiteConsumo, margen);
+        }
+    }
+
+    /**
+     * Vuelve a conectar dispositivos desconectados por el motor mientras quepan por debajo del umbral de
+     * restablecimiento global y de su zona, empezando por la criticidad más alta y el mayor consumo.
+     * Solo se restablecen los que llevan al menos {@link Histeresis#minDesconectadoMs()} desconectados.
+     * Sin histéresis no hace nada.
+     *
+     * @param ahoraMs instante actual en milisegundos desde epoch
+     */
+    public void restablecerDesconectados(long ahoraMs) {
+        if (desconectados == null || desconectados.isEmpty()) return;
+
+        // Camino rápido: sin margen global por debajo del umbral no cabe nadie
+        double umbral = limiteConsumo * histeresis.fraccionRestablecer();
+        if (getConsumoPrevisto() >= umbral) return;
+
+        List<String> restablecidos = new ArrayList<>();
+        bloqueoDecision.lock();
+        try {
+            desconectados.recorrer(umbral - getConsumoPrevisto(),
+                    (slot, margen) -> restablecer(slot, margen, ahoraMs, restablecidos));
+        } finally {
+            bloqueoDecision.unlock();
+        }
+
+        if (!restablecidos.isEmpty()) {
+            log.info("🔁 Dispositivos restablecidos: {}", String.join(", ", restablecidos));
+            log.info("⚡ Consumo tras restablecer: {}W / {}W", getConsumoTotal(), limiteConsumo);
+        }
+    }
+
+    /**
+     * Restablece un candidato si cumple su tiempo mínimo desconectado y cabe en el margen global y en el
+     * de su zona. Se llama con {@link #bloqueoDecision} adquirido.
+     *
+     * @return consumo con el que se ha restablecido, o -1 si sigue desconectado
+     */
+    private double restablecer(int slot, double margen, long ahoraMs, List<String> restablecidos) {
+        synchronized (tabla.cerrojo(slot)) {
+            long desconectado = tabla.getDesconectadoMs(slot);
+            if (desconectado == 0 || ahoraMs - desconectado < histeresis.minDesconectadoMs()) return -1;
+
+            double consumo = tabla.getConsumo(slot);
+            Dispositivo dispositivo = tabla.getEntidad(slot);
+            ParticionZona particion = particion(dispositivo.getZona());
+            if (consumo > margen || particion.getConsumoPrevisto(pronostico.horizonteMs()) + consumo
+                    > particion.getLimite() * histeresis.fraccionRestablecer()) {
+                return -1;
+            }
+
+            desconectados.olvidar(slot);
+            particion.restablecer(slot, dispositivo, consumo);
+            restablecidos.add(dispositivo.getNombre());
+            return consumo;
+        }
+    }
+
+    /**
+     * Avanza la rueda de caducidad hasta {@code ahoraMs} y retira o atenúa los dispositivos que
+     * llevan más del TTL sin lecturas. Solo revisa los dispositivos que vencen en los tics transcurridos.
+     * Sin caducidad no hace nada.
+     *
+     * @param ahoraMs instante actual en milisegundos desde epoch
+     */
+    public void caducarInactivos(long ahoraMs) {
+        if (rueda == null) return;
+
+        List<String> caducados = new ArrayList<>();
+        int[] atenuados = new int[1];
+        rueda.avanzar(ahoraMs, slot -> revisarCaducidad(slot, ahoraMs, caducados, atenuados));
+        if (caducados.isEmpty() && atenuados[0] == 0) return;
+
+        if (!caducados.isEmpty()) {
+            log.info("⌛ {} dispositivos retirados por llevar más de {} ms sin lecturas", caducados.size(),
+                    caducidad.ttlMs());
+            log.debug("⌛ Dispositivos retirados: {}", caducados);
+        }
+        if (atenuados[0] > 0) {
+            log.info("⌛ Consumo atenuado de {} dispositivos sin lecturas", atenuados[0]);
+        }
+
+        // El consumo solo ha bajado: se restablecen las alertas que ya no procedan
+        particiones.values().forEach(ParticionZona::comprobarLimite);
+        comprobarLimite();
+    }
+
+    private void revisarCaducidad(int slot, long ahoraMs, List<String> caducados, int[] atenuados) {
+        synchronized (tabla.cerrojo(slot)) {
+            ParticionZona particion = tabla.getParticion(slot);
+            if (particion == null) {
+                if (tabla.getDesconectadoMs(slot) != 0) {
+                    // Desconectado por el motor: deja de esperar si su medidor también se ha quedado en silencio
+                    long vence = tabla.getVistoMs(slot) + caducidad.ttlMs();
+                    if (vence > ahoraMs) {
+                        rueda.programar(slot, vence);
+                        return;
+                    }
+                    desconectados.olvidar(slot);
+                }
+                tabla.desprogramar(slot); // se volverá a programar cuando se active de nuevo
+                tabla.liberarSiOlvidado(slot);
+                return;
+            }
+
+            // Ha recibido lecturas (o se ha atenuado) desde que se programó: se revisa en su nuevo vencimiento
+            long vence = Math.max(tabla.getVistoMs(slot), tabla.getAtenuadoMs(slot)) + caducidad.ttlMs();
+            if (vence > ahoraMs) {
+                rueda.programar(slot, vence);
+                return;
+            }
+
+            double atenuado = tabla.getConsumo(slot) * caducidad.factorAtenuacion();
+            if (caducidad.modo() == Caducidad.Modo.ATENUAR && atenuado >= CONSUMO_MINIMO_ATENUADO) {
+                particion.atenuar(slot, atenuado);
+                tabla.setAtenuadoMs(slot, ahoraMs);
+                rueda.programar(slot, ahoraMs + caducidad.ttlMs());
+                atenuados[0]++;
+            } else {
+                tabla.desprogramar(slot);
+                String nombre = particion.caducar(slot);
+                if (nombre != null) {
+                    caducados.add(nombre);
+                }
+            }
         }
     }
 
     /**
      * Ajusta la potencia de un dispositivo crítico, de ser posible.
+     * Solo se acepta si los críticos caben con la nueva potencia en el límite de su zona y en el global;
+     * los no críticos que dejen de caber se desconectan como tras cualquier lectura.
      *
      * @param nombre         nombre del dispositivo a ajustar
      * @param nuevaPotencia nueva potencia para el dispositivo
-     * @return true si se pudo ajustar correctamente, false en caso contrario
+     * @return true si el ajuste se ha aplicado y se mantiene, false si no se ha aplicado
      */
     public boolean ajustarPotenciaDispositivo(String nombre, double nuevaPotencia) {
-        Dispositivo dispositivo = dispositivosActivos.get(nombre);
+        int slot = tabla.buscarSlot(nombre);
+        if (slot < 0) return false;
 
-        if (dispositivo == null || dispositivo.getCriticidad() != NivelCriticidad.CRITICA) {
-            return false; // No se puede ajustar potencia si no es crítico
-        }
-
-        // Ajustar la potencia
-        dispositivo.setConsumo(nuevaPotencia);
+        // Ajustar la potencia de forma atómica respecto a otras lecturas del mismo dispositivo
+        ParticionZona particion;
+        synchronized (tabla.cerrojo(slot)) {
+            particion = tabla.esDe(slot, nombre) ? tabla.getParticion(slot) : null;
+            if (particion == null || tabla.getCriticidad(slot) != NivelCriticidad.CRITICA) {
+                return false; // No se puede ajustar potencia si no es crítico
+            }
 
-        // Comprobar si el nuevo consumo cumple con el límite
-        double consumoTotal = getConsumoTotal(); //TODO aqui hay que revisar bien si se ajustan los valores porque si esta ajustado debemos entrar en el if y no entra
-        if (consumoTotal <= limiteConsumo) {
-            alertaCriticos = false;
-            log.info("🔧 Potencia ajustada para el dispositivo '{}' a {}W", nombre, nuevaPotencia);
-            log.info("✅ Consumo dentro del límite: {}W / {}W", consumoTotal, limiteConsumo);
-            return true;
+            // Los críticos no se desconectan: con la nueva potencia tienen que caber en ambos límites
+            double delta = nuevaPotencia - tabla.getConsumo(slot);
+            if (particion.getCriticos() + delta > particion.getLimite()) {
+                log.warn("⚠️ No se pudo ajustar la potencia de '{}' a {}W debido a que excede el límite de la zona '{}'.",
+                        nombre, nuevaPotencia, particion.getZona());
+                return false;
+            }
+            if (getConsumoCriticos() + delta > limiteConsumo) {
+                log.warn("⚠️ No se pudo ajustar la potencia de '{}' a {}W debido a que excede el límite.",
+                        nombre, nuevaPotencia);
+                return false;
+            }
+            particion.ajustarPotencia(slot, nuevaPotencia);
         }
 
-        // Si el consumo total sigue siendo demasiado alto, revertir el ajuste
-        dispositivo.setConsumo(dispositivo.getConsumo()); // revertir el consumo original
-        //TODO hay que controlar bien los cambios de ajuste de potencia, porque sale como que no se puede ajustar porque excede ( si se ajusta pero sigue excediendo seguramente )
-        log.warn("⚠️ No se pudo ajustar la potencia de '{}' a {}W debido a que excede el límite.", nombre, nuevaPotencia);
-        return false;
+        // Se aplican los límites como con una lectura: desconectando no críticos y restableciendo alertas
+        particion.comprobarLimite();
+        comprobarLimite();
+        log.info("🔧 Potencia ajustada para el dispositivo '{}' a {}W", nombre, nuevaPotencia);
+        return true;
     }
 
     /**
      * Devuelve un mapa de los dispositivos activos con su consumo actual.
      */
     public List<Dispositivo> getDispositivosActivos() {
-        return new ArrayList<>(dispositivosActivos.values());
+        List<Dispositivo> activos = new ArrayList<>(tabla.getNumeroActivos());
+        tabla.añadirActivos(activos);
+        return activos;
+    }
+
+    /**
+     * Lecturas con las que están contabilizados los dispositivos activos, p. ej. para guardar el estado del motor.
+     * Cada lectura es coherente por sí misma, pero el conjunto no es una foto atómica si hay lecturas en curso.
+     */
+    public List<Lectura> getLecturasActivas() {
+        List<Lectura> lecturas = new ArrayList<>(tabla.getNumeroActivos());
+        tabla.añadirLecturasActivas(lecturas);
+        return lecturas;
+    }
+
+    /**
+     * Dispositivos desconectados por el motor que esperan a restablecerse, con la lectura con la que volverán,
+     * p. ej. para guardar el estado del motor. Vacío sin histéresis. Como {@link #getLecturasActivas()}, no es
+     * una foto atómica si hay lecturas en curso.
+     */
+    public List<Desconectado> getDesconectados() {
+        if (desconectados == null) return List.of();
+
+        List<Desconectado> lista = new ArrayList<>(desconectados.size());
+        desconectados.recorrerSlots(slot -> {
+            Desconectado desconectado = leerDesconectado(slot);
+            if (desconectado != null) {
+                lista.add(desconectado);
+            }
+        });
+        return lista;
+    }
+
+    /**
+     * Estado de un dispositivo desconectado por el motor que espera a restablecerse.
+     *
+     * @param nombre nombre del dispositivo
+     * @return su última lectura e instante de desconexión, si está esperando (nunca sin histéresis)
+     */
+    public Optional<Desconectado> buscarDesconectado(String nombre) {
+        if (desconectados == null) return Optional.empty();
+        int slot = tabla.buscarSlot(nombre);
+        if (slot < 0) return Optional.empty();
+        synchronized (tabla.cerrojo(slot)) {
+            return tabla.esDe(slot, nombre) ? Optional.ofNullable(leerDesconectado(slot)) : Optional.empty();
+        }
+    }
+
+    private Desconectado leerDesconectado(int slot) {
+        synchronized (tabla.cerrojo(slot)) {
+            long instante = tabla.getDesconectadoMs(slot);
+            return instante == 0 ? null
+                    : new Desconectado(new Lectura(tabla.getEntidad(slot), tabla.getConsumo(slot)), instante);
+        }
+    }
+
+    /**
+     * Vuelve a dejar a la espera de restablecerse un dispositivo que el motor había desconectado, p. ej. al
+     * restaurar el estado guardado antes de recibir lecturas. Cuenta su tiempo mínimo desconectado desde el
+     * instante original, así que sus lecturas no lo vuelven a conectar antes de tiempo.
+     *
+     * @param dispositivo    dispositivo desconectado
+     * @param consumo        última lectura con la que se restablecerá, en Watts
+     * @param desconectadoMs instante de la desconexión en milisegundos desde epoch
+     * @return true si se ha anotado; false sin histéresis o si el dispositivo ya está activo o esperando
+     */
+    public boolean restaurarDesconectado(Dispositivo dispositivo, double consumo, long desconectadoMs) {
+        if (desconectados == null) return false;
+
+        while (true) {
+            int slot = tabla.slot(dispositivo.getNombre());
+            synchronized (tabla.cerrojo(slot)) {
+                if (!tabla.esDe(slot, dispositivo.getNombre())) continue; // liberado mientras tanto
+                if (tabla.getParticion(slot) != null || tabla.getDesconectadoMs(slot) != 0) return false;
+                dispositivo.setConsumo(consumo);
+                desconectados.restaurar(slot, dispositivo, consumo, desconectadoMs);
+                return true;
+            }
+        }
     }
 
     /**
      * Devuelve el consumo total actual de todos los dispositivos activos.
      */
     public double getConsumoTotal() {
-        return dispositivosActivos.values().stream()
-                .mapToDouble(Dispositivo::getConsumo)
-                .sum();
+        return totales.getTotal();
+    }
+
+    /**
+     * Consumo total actual más la subida prevista a horizonte; sin previsión, el consumo total.
+     */
+    private double getConsumoPrevisto() {
+        double total = getConsumoTotal();
+        return pronosticoTotal == null ? total
+                : total + Math.max(0, pronosticoTotal.getTendencia()) * pronostico.horizonteMs();
+    }
+
+    /**
+     * Devuelve el consumo actual de los dispositivos críticos activos.
+     */
+    public double getConsumoCriticos() {
+        return totales.getCriticos();
+    }
+
+    /**
+     * Devuelve el consumo actual de los dispositivos activos de una zona.
+     *
+     * @param zona nombre de la zona (null para los dispositivos sin zona)
+     */
+    public double getConsumoZona(String zona) {
+        ParticionZona particion = particiones.get(AgregadosConsumo.claveZona(zona));
+        return particion == null ? 0.0 : particion.getTotal();
+    }
+
+    /**
+     * Devuelve el consumo actual de los dispositivos activos con una criticidad dada.
+     *
+     * @param criticidad nivel de criticidad
+     */
+    public double getConsumoPorCriticidad(NivelCriticidad criticidad) {
+        return totales.getCriticidad(criticidad);
+    }
+
+    /**
+     * Dispositivos desconectados automáticamente en una zona desde el arranque,
+     * tanto por el límite de la zona como por el global.
+     *
+     * @param zona nombre de la zona (null para los dispositivos sin zona)
+     */
+    public long getDesconexionesAutomaticas(String zona) {
+        ParticionZona particion = particiones.get(AgregadosConsumo.claveZona(zona));
+        return particion == null ? 0 : particion.getDesconexionesAutomaticas();
+    }
+
+    /**
+     * Dispositivos de una zona retirados desde el arranque por llevar demasiado tiempo sin lecturas.
+     *
+     * @param zona nombre de la zona (null para los dispositivos sin zona)
+     */
+    public long getCaducados(String zona) {
+        ParticionZona particion = particiones.get(AgregadosConsumo.claveZona(zona));
+        return particion == null ? 0 : particion.getCaducados();
+    }
+
+    /**
+     * Tratamiento configurado para los dispositivos que dejan de enviar lecturas.
+     */
+    public Caducidad getCaducidad() {
+        return caducidad;
+    }
+
+    /**
+     * Dispositivos de una zona que el motor ha vuelto a conectar desde el arranque al recuperar margen.
+     *
+     * @param zona nombre de la zona (null para los dispositivos sin zona)
+     */
+    public long getRestablecidos(String zona) {
+        ParticionZona particion = particiones.get(AgregadosConsumo.claveZona(zona));
+        return particion == null ? 0 : particion.getRestablecidos();
+    }
+
+    /**
+     * Dispositivos desconectados por el motor que esperan a restablecerse (0 sin histéresis).
+     */
+    public int getNumeroDesconectados() {
+        return desconectados == null ? 0 : desconectados.size();
+    }
+
+    /**
+     * Cuándo y cómo se restablecen los dispositivos desconectados por el motor.
+     */
+    public Histeresis getHisteresis() {
+        return histeresis;
+    }
+
+    /**
+     * Previsión del consumo y si se desconecta por anticipado.
+     */
+    public Pronostico getPronostico() {
+        return pronostico;
+    }
+
+    /**
+     * Consumo total previsto a horizonte en la última observación, o NaN sin previsión.
+     */
+    public double getPrevision() {
+        return pronosticoTotal == null ? Double.NaN : pronosticoTotal.getPrevision();
+    }
+
+    /**
+     * Consumo de una zona previsto a horizonte en la última observación.
+     *
+     * @param zona nombre de la zona (null para los dispositivos sin zona)
+     * @return previsión en Watts, o NaN sin previsión o si la zona aún no se ha observado
+     */
+    public double getPrevisionZona(String zona) {
+        ParticionZona particion = particiones.get(AgregadosConsumo.claveZona(zona));
+        return particion == null || particion.getPronostico() == null ? Double.NaN
+                : particion.getPronostico().getPrevision();
+    }
+
+    /**
+     * Error de las previsiones del consumo total ya comparadas con el consumo real.
+     */
+    public ErrorPronostico getErrorPronostico() {
+        return pronosticoTotal == null ? ErrorPronostico.VACIO : pronosticoTotal.getError();
+    }
+
+    /**
+     * Error de las previsiones del consumo de una zona ya comparadas con el consumo real.
+     *
+     * @param zona nombre de la zona (null para los dispositivos sin zona)
+     */
+    public ErrorPronostico getErrorPronosticoZona(String zona) {
+        ParticionZona particion = particiones.get(AgregadosConsumo.claveZona(zona));
+        return particion == null || particion.getPronostico() == null ? ErrorPronostico.VACIO
+                : particion.getPronostico().getError();
+    }
+
+    /**
+     * Dispositivos de una zona desconectados por la previsión desde el arranque, antes de superar
+     * el límite de la zona o el global. También cuentan como desconexiones automáticas.
+     *
+     * @param zona nombre de la zona (null para los dispositivos sin zona)
+     */
+    public long getAnticipadas(String zona) {
+        ParticionZona particion = particiones.get(AgregadosConsumo.claveZona(zona));
+        return particion == null ? 0 : particion.getAnticipadas();
+    }
+
+    /**
+     * Número de dispositivos activos en todas las zonas.
+     */
+    public int getNumeroActivos() {
+        return tabla.getNumeroActivos();
+    }
+
+    /**
+     * Zonas con dispositivos activos o que han tenido alguno.
+     */
+    public Set<String> getZonas() {
+        return new TreeSet<>(particiones.keySet());
+    }
+
+    /**
+     * Límite propio de una zona.
+     *
+     * @param zona nombre de la zona (null para los dispositivos sin zona)
+     * @return límite en Watts, o infinito si la zona solo está sujeta al límite global
+     */
+    public double getLimiteZona(String zona) {
+        return limitesZona.getOrDefault(AgregadosConsumo.claveZona(zona), Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Indica si una zona está en alerta porque sus críticos superan su límite.
+     *
+     * @param zona nombre de la zona (null para los dispositivos sin zona)
+     */
+    public boolean isAlertaZona(String zona) {
+        ParticionZona particion = particiones.get(AgregadosConsumo.claveZona(zona));
+        return particion != null && particion.isAlerta();
+    }
+
+    /**
+     * Lectura actual de un dispositivo activo, sin copiar el resto de activos.
+     *
+     * @param nombre nombre del dispositivo
+     * @return dispositivo con el consumo con el que está contabilizado, si está activo; con caducidad,
+     * el instante es el de su última lectura (con la resolución de la rueda)
+     */
+    public Optional<Lectura> buscarActivo(String nombre) {
+        int slot = tabla.buscarSlot(nombre);
+        if (slot < 0) return Optional.empty();
+        synchronized (tabla.cerrojo(slot)) {
+            return tabla.esDe(slot, nombre) ? Optional.ofNullable(tabla.getActivo(slot)) : Optional.empty();
+        }
+    }
+
+    /**
+     * Registra un listener de cambios de los dispositivos activos.
+     *
+     * @param listener listener a avisar en cada alta, lectura y desconexión
+     */
+    public synchronized void añadirListener(CambiosMotorListener listener) {
+        CambiosMotorListener[] actuales = listeners;
+        CambiosMotorListener[] nuevos = Arrays.copyOf(actuales, actuales.length + 1);
+        nuevos[actuales.length] = listener;
+        listeners = nuevos;
+    }
+
+    /**
+     * Deja de avisar a un listener registrado con {@link #añadirListener}.
+     *
+     * @param listener listener a quitar
+     */
+    public synchronized void quitarListener(CambiosMotorListener listener) {
+        listeners = Arrays.stream(listeners).filter(l -> l != listener).toArray(CambiosMotorListener[]::new);
     }
 
     /**
@@ -154,18 +904,142 @@ public class SmartGridDecisionEngine {
      * @param nombre Nombre del dispositivo a desconectar
      */
     public void desconectarDispositivo(String nombre) {
-        dispositivosActivos.remove(nombre);
+        int slot = tabla.buscarSlot(nombre);
+        if (slot < 0) return; // Nunca ha enviado lecturas: no hay nada que desconectar
+
+        synchronized (tabla.cerrojo(slot)) {
+            if (!tabla.esDe(slot, nombre)) return;
+
+            ParticionZona particion = tabla.getParticion(slot);
+            if (particion != null) {
+                particion.quitar(slot, false);
+            } else if (desconectados != null && tabla.getDesconectadoMs(slot) != 0) {
+                // Si esperaba a restablecerse, lo decide ahora el operador
+                String zona = AgregadosConsumo.claveZona(tabla.getEntidad(slot).getZona());
+                desconectados.olvidar(slot);
+                tabla.liberarSiOlvidado(slot);
+                notificador.dispositivoDesconectado(nombre, zona, false);
+            }
+        }
         log.info("🛑 Dispositivo '{}' desconectado manualmente", nombre);
     }
 
+    /**
+     * Olvida un dispositivo que ya no existe (se ha borrado o renombrado en el registro) para reutilizar su
+     * slot. Deja de esperar a restablecerse; si está activo sigue contabilizado hasta que se desconecte o
+     * caduque, y entonces se libera su slot. Una lectura posterior con el mismo nombre lo vuelve a dar de alta.
+     *
+     * @param nombre nombre del dispositivo
+     */
+    public void olvidarDispositivo(String nombre) {
+        int slot = tabla.buscarSlot(nombre);
+        if (slot < 0) return;
+
+        synchronized (tabla.cerrojo(slot)) {
+            if (!tabla.esDe(slot, nombre)) return;
+            if (desconectados != null) {
+                desconectados.olvidar(slot);
+            }
+            tabla.olvidar(slot);
+        }
+    }
+
+    /**
+     * Libera los hilos de evaluación por zonas y del reloj del motor al cerrar el contexto.
+     */
+    public void close() {
+        if (hilosZonas != null) {
+            hilosZonas.shutdown();
+        }
+        synchronized (this) {
+            if (reloj != null) {
+                reloj.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Partición de una zona, creada la primera vez que llega un dispositivo de ella.
+     */
+    private ParticionZona particion(String zona) {
+        String clave = AgregadosConsumo.claveZona(zona);
+        ParticionZona particion = particiones.get(clave);
+        if (particion != null) return particion;
+        return particiones.computeIfAbsent(clave, z -> tabla.añadirParticion(indice ->
+                new ParticionZona(z, indice, limitesZona.getOrDefault(z, Double.POSITIVE_INFINITY), totales, tabla,
+                        notificador, desconectados, pronostico.isActivo() ? new PronosticoHolt(pronostico) : null)));
+    }
+
+    /**
+     * Registra la lectura en su zona; si el dispositivo estaba activo en otra, la partición lo descuenta de allí.
+     */
+    private void registrar(ParticionZona particion, Dispositivo dispositivo, double consumo) {
+        // Si el slot se libera entre buscarlo y aplicar la lectura, se pide otro para el mismo nombre
+        while (!particion.registrar(tabla.slot(dispositivo.getNombre()), dispositivo, consumo)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Zona cuyo siguiente candidato a desconexión consume más, o null si no queda ninguno.
+     */
+    private ParticionZona particionConMayorCandidato() {
+        ParticionZona elegida = null;
+        double mayor = -1;
+        for (ParticionZona particion : particiones.values()) {
+            double consumo = particion.consumoMayorCandidato();
+            if (consumo > mayor) {
+                mayor = consumo;
+                elegida = particion;
+            }
+        }
+        return elegida;
+    }
+
+    /**
+     * Número de entradas de los índices de desconexión (uso en tests de invariantes).
+     */
+    int getTamañoColaDesconexion() {
+        int tamaño = 0;
+        for (ParticionZona particion : particiones.values()) {
+            tamaño += particion.getTamañoColaDesconexion();
+        }
+        return tamaño;
+    }
+
+    /**
+     * Número de slots pendientes de revisar en la rueda de caducidad (uso en tests).
+     */
+    int getProgramadosCaducidad() {
+        return rueda == null ? 0 : rueda.getProgramados();
+    }
+
+    /**
+     * Número de slots de la tabla asignados a un dispositivo (uso en tests).
+     */
+    int getNumeroSlots() {
+        return tabla.getNumeroSlots();
+    }
+
+    /**
+     * Número de slots reservados en la tabla, asignados o libres (uso en tests).
+     */
+    int getCapacidadSlots() {
+        return tabla.getCapacidadSlots();
+    }
+
     /**
      * Indica si se ha generado una alerta por consumo excesivo
-     * con solo dispositivos críticos activos.
+     * con solo dispositivos críticos activos, en el límite global o en el de alguna zona.
      *
      * @return true si hay alerta crítica, false en caso contrario
      */
     public boolean isAlertaCriticos() {
-        return alertaCriticos;
+        if (alertaCriticos) return true;
+        for (ParticionZona particion : particiones.values()) {
+            if (particion.isAlerta()) return true;
+        }
+        return false;
     }
 
     public double getLimiteConsumo() {
@@ -0,0 +1,449 @@
+package com.smartgrid.logic;
+
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * Tabla de dispositivos del motor en arrays paralelos de primitivos (struct of arrays).
+ * <p>
+ * Cada dispositivo recibe un hueco (slot) denso la primera vez que llega y lo conserva aunque
+ * se desconecte; solo lo pierde cuando deja de existir ({@link #olvidar(int)}) y ya nada lo referencia,
+ * y entonces el slot se reutiliza para el siguiente dispositivo nuevo. Por slot se guardan el consumo contabilizado, la criticidad, la partición en la
+ * que está activo y un bit en el conjunto de activos; la entidad JPA solo se conserva como
+ * referencia para listar los activos y avisar a los listeners, el camino caliente no la consulta.
+ * Con caducidad, además, el instante de la última lectura y si el slot está en la {@link RuedaCaducidad}.
+ * Un dispositivo desconectado por el motor que espera a restablecerse ({@link RegistroDesconectados})
+ * conserva su entidad y su última lectura aunque no esté activo, junto con el instante de la desconexión.
+ * <p>
+ * Los arrays se reservan por páginas de tamaño fijo, así que crecer nunca copia ni mueve los datos
+ * ya escritos. Cada slot se modifica bajo el cerrojo de su franja ({@link #cerrojo(int)}), que hace
+ * atómicas las lecturas de un mismo dispositivo; las consultas sin cerrojo son aproximadas.
+ */
+final class TablaDispositivos {
+
+    /** Valor de {@link #getParticion(int)} para un slot sin dispositivo activo */
+    static final int SIN_PARTICION = -1;
+
+    private static final byte SIN_CRITICIDAD = -1;
+    private static final NivelCriticidad[] NIVELES = NivelCriticidad.values();
+
+    private static final int BITS_PAGINA = 12;
+    private static final int TAMAÑO_PAGINA = 1 << BITS_PAGINA;
+    private static final int MASCARA_PAGINA = TAMAÑO_PAGINA - 1;
+
+    // Número de cerrojos: dispositivos distintos rara vez comparten uno
+    private static final int FRANJAS = 1024;
+
+    private static final VarHandle PALABRA = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /**
+     * Bloque de {@link #TAMAÑO_PAGINA} slots consecutivos.
+     */
+    private static final class Pagina {
+        final double[] consumo = new double[TAMAÑO_PAGINA];
+        final byte[] criticidad = new byte[TAMAÑO_PAGINA];
+        final int[] particion = new int[TAMAÑO_PAGINA];
+        final Dispositivo[] entidad = new Dispositivo[TAMAÑO_PAGINA];
+        final long[] activos = new long[TAMAÑO_PAGINA / Long.SIZE];
+        final long[] vistoMs = new long[TAMAÑO_PAGINA];
+        final long[] atenuadoMs = new long[TAMAÑO_PAGINA];
+        final boolean[] programado = new boolean[TAMAÑO_PAGINA];
+        final long[] desconectadoMs = new long[TAMAÑO_PAGINA];
+        final String[] nombre = new String[TAMAÑO_PAGINA];
+        final boolean[] olvidado = new boolean[TAMAÑO_PAGINA];
+
+        Pagina() {
+            Arrays.fill(particion, SIN_PARTICION);
+        }
+    }
+
+    // Slot de cada dispositivo por nombre
+    private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+
+    private final Object[] cerrojos = new Object[FRANJAS];
+
+    // Páginas reservadas; solo crece, protegido por el monitor de la instancia
+    private volatile Pagina[] paginas = new Pagina[0];
+    private int siguienteSlot;
+
+    // Slots liberados que se reutilizan antes de estrenar uno nuevo; protegido por el monitor de la instancia
+    private int[] libres = new int[0];
+    private int numeroLibres;
+
+    // Particiones por índice; solo crece, protegido por el monitor de la instancia
+    private volatile ParticionZona[] particiones = new ParticionZona[0];
+
+    private final AtomicInteger numeroActivos = new AtomicInteger();
+
+    // Revisión de los dispositivos sin lecturas (null si no caducan)
+    private final RuedaCaducidad rueda;
+
+    TablaDispositivos() {
+        this(null);
+    }
+
+    /**
+     * @param rueda rueda en la que se programa cada dispositivo al activarse (null si no caducan)
+     */
+    TablaDispositivos(RuedaCaducidad rueda) {
+        this.rueda = rueda;
+        for (int i = 0; i < FRANJAS; i++) {
+            cerrojos[i] = new Object();
+        }
+    }
+
+    /**
+     * Slot de un dispositivo, asignándole uno nuevo si es la primera vez que llega.
+     */
+    int slot(String nombre) {
+        Integer slot = slots.get(nombre);
+        return slot != null ? slot : slots.computeIfAbsent(nombre, this::reservarSlot);
+    }
+
+    /**
+     * Slot de un dispositivo, o -1 si nunca ha llegado.
+     */
+    int buscarSlot(String nombre) {
+        Integer slot = slots.get(nombre);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Indica si el slot sigue siendo del dispositivo: entre obtenerlo y tomar su cerrojo se ha podido
+     * liberar y asignar a otro. Requiere el cerrojo del slot.
+     */
+    boolean esDe(int slot, String nombre) {
+        return nombre.equals(pagina(slot).nombre[slot & MASCARA_PAGINA]);
+    }
+
+    private synchronized int reservarSlot(String nombre) {
+        int slot = numeroLibres > 0 ? libres[--numeroLibres] : estrenarSlot();
+        pagina(slot).nombre[slot & MASCARA_PAGINA] = nombre;
+        return slot;
+    }
+
+    private int estrenarSlot() {
+        int slot = siguienteSlot;
+        Pagina[] actuales = paginas;
+        if (slot >>> BITS_PAGINA == actuales.length) {
+            Pagina[] nuevas = Arrays.copyOf(actuales, Math.max(1, actuales.length * 2));
+            for (int i = actuales.length; i < nuevas.length; i++) {
+                nuevas[i] = new Pagina();
+            }
+            paginas = nuevas;
+        }
+        siguienteSlot = slot + 1;
+        return slot;
+    }
+
+    /**
+     * Registra una partición nueva y le asigna el siguiente índice.
+     *
+     * @param crear construye la partición a partir de su índice
+     */
+    synchronized ParticionZona añadirParticion(IntFunction<ParticionZona> crear) {
+        ParticionZona[] actuales = particiones;
+        ParticionZona particion = crear.apply(actuales.length);
+        ParticionZona[] nuevas = Arrays.copyOf(actuales, actuales.length + 1);
+        nuevas[actuales.length] = particion;
+        particiones = nuevas;
+        return particion;
+    }
+
+    /**
+     * Cerrojo que protege las escrituras del slot.
+     */
+    Object cerrojo(int slot) {
+        return cerrojos[slot & (FRANJAS - 1)];
+    }
+
+    private Pagina pagina(int slot) {
+        return paginas[slot >>> BITS_PAGINA];
+    }
+
+    /**
+     * Marca el slot como activo en una partición con el consumo indicado y apunta la hora de la lectura.
+     * Si no estaba ya en la rueda de caducidad, lo programa. Requiere el cerrojo del slot.
+     */
+    void activar(int slot, int particion, Dispositivo dispositivo, double consumo) {
+        Pagina pagina = pagina(slot);
+        int i = slot & MASCARA_PAGINA;
+        pagina.consumo[i] = consumo;
+        pagina.criticidad[i] = codigo(dispositivo.getCriticidad());
+        pagina.entidad[i] = dispositivo;
+        pagina.olvidado[i] = false;
+        if (pagina.particion[i] == SIN_PARTICION) {
+            numeroActivos.incrementAndGet();
+        }
+        pagina.particion[i] = particion;
+        anotarVisto(pagina, slot);
+        // El bit se publica después de los datos para quien recorre los activos sin cerrojo
+        PALABRA.getAndBitwiseOr(pagina.activos, i >>> 6, 1L << i);
+    }
+
+    /**
+     * Apunta la hora de una lectura y, si el slot no estaba en la rueda de caducidad, lo programa.
+     * Requiere el cerrojo del slot.
+     */
+    void anotarVisto(int slot) {
+        anotarVisto(pagina(slot), slot);
+    }
+
+    private void anotarVisto(Pagina pagina, int slot) {
+        if (rueda == null) return;
+
+        int i = slot & MASCARA_PAGINA;
+        long ahora = rueda.getAhoraMs();
+        pagina.vistoMs[i] = ahora;
+        if (!pagina.programado[i]) {
+            pagina.programado[i] = true;
+            rueda.programar(slot, ahora + rueda.getTtlMs());
+        }
+    }
+
+    /**
+     * Cambia el consumo contabilizado de un slot activo. Requiere el cerrojo del slot.
+     */
+    void setConsumo(int slot, double consumo) {
+        pagina(slot).consumo[slot & MASCARA_PAGINA] = consumo;
+    }
+
+    /**
+     * Marca el slot como inactivo. Requiere el cerrojo del slot.
+     */
+    void desactivar(int slot) {
+        Pagina pagina = pagina(slot);
+        int i = slot & MASCARA_PAGINA;
+        if (pagina.particion[i] == SIN_PARTICION) return;
+
+        PALABRA.getAndBitwiseAnd(pagina.activos, i >>> 6, ~(1L << i));
+        pagina.particion[i] = SIN_PARTICION;
+        pagina.entidad[i] = null;
+        numeroActivos.decrementAndGet();
+    }
+
+    /**
+     * Marca un slot recién desactivado como desconectado por el motor y conserva la lectura con la que
+     * se restablecerá. Requiere el cerrojo del slot.
+     *
+     * @param instante instante de la desconexión en milisegundos desde epoch
+     */
+    void marcarDesconectado(int slot, Dispositivo dispositivo, double consumo, long instante) {
+        Pagina pagina = pagina(slot);
+        int i = slot & MASCARA_PAGINA;
+        pagina.entidad[i] = dispositivo;
+        pagina.consumo[i] = consumo;
+        pagina.criticidad[i] = codigo(dispositivo.getCriticidad());
+        // 0 indica que no está desconectado
+        pagina.desconectadoMs[i] = Math.max(1, instante);
+    }
+
+    /**
+     * Guarda la última lectura de un slot desconectado por el motor, sin activarlo, y apunta su hora
+     * para la caducidad. Requiere el cerrojo del slot.
+     */
+    void actualizarDesconectado(int slot, Dispositivo dispositivo, double consumo) {
+        Pagina pagina = pagina(slot);
+        int i = slot & MASCARA_PAGINA;
+        pagina.entidad[i] = dispositivo;
+        pagina.consumo[i] = consumo;
+        pagina.criticidad[i] = codigo(dispositivo.getCriticidad());
+        pagina.olvidado[i] = false;
+        anotarVisto(pagina, slot);
+    }
+
+    /**
+     * Quita la marca de desconectado por el motor; si el slot no está activo, suelta su entidad.
+     * Requiere el cerrojo del slot.
+     */
+    void desmarcarDesconectado(int slot) {
+        Pagina pagina = pagina(slot);
+        int i = slot & MASCARA_PAGINA;
+        pagina.desconectadoMs[i] = 0;
+        if (pagina.particion[i] == SIN_PARTICION) {
+            pagina.entidad[i] = null;
+        }
+    }
+
+    /**
+     * Instante en que el motor desconectó el slot, o 0 si no espera a restablecerse.
+     */
+    long getDesconectadoMs(int slot) {
+        return pagina(slot).desconectadoMs[slot & MASCARA_PAGINA];
+    }
+
+    /**
+     * Indica que el slot ya no está en la rueda de caducidad. Requiere el cerrojo del slot.
+     */
+    void desprogramar(int slot) {
+        pagina(slot).programado[slot & MASCARA_PAGINA] = false;
+    }
+
+    /**
+     * Anota que el dispositivo del slot ya no existe y libera el slot si nada lo referencia; si no,
+     * se libera con {@link #liberarSiOlvidado(int)} al retirarlo. Una lectura posterior lo vuelve a dar
+     * por existente. Requiere el cerrojo del slot.
+     */
+    void olvidar(int slot) {
+        pagina(slot).olvidado[slot & MASCARA_PAGINA] = true;
+        liberarSiOlvidado(slot);
+    }
+
+    boolean isOlvidado(int slot) {
+        return pagina(slot).olvidado[slot & MASCARA_PAGINA];
+    }
+
+    /**
+     * Libera el slot de un dispositivo olvidado si no está activo, ni esperando a restablecerse, ni en la
+     * rueda de caducidad. Su nombre deja de tener slot y el siguiente dispositivo nuevo lo reutiliza.
+     * Requiere el cerrojo del slot.
+     *
+     * @return true si se ha liberado
+     */
+    boolean liberarSiOlvidado(int slot) {
+        Pagina pagina = pagina(slot);
+        int i = slot & MASCARA_PAGINA;
+        if (!pagina.olvidado[i] || pagina.particion[i] != SIN_PARTICION || pagina.desconectadoMs[i] != 0
+                || pagina.programado[i]) {
+            return false;
+        }
+
+        slots.remove(pagina.nombre[i], slot);
+        pagina.nombre[i] = null;
+        pagina.olvidado[i] = false;
+        pagina.entidad[i] = null;
+        pagina.consumo[i] = 0;
+        pagina.criticidad[i] = SIN_CRITICIDAD;
+        pagina.vistoMs[i] = 0;
+        pagina.atenuadoMs[i] = 0;
+        synchronized (this) {
+            if (numeroLibres == libres.length) {
+                libres = Arrays.copyOf(libres, Math.max(16, libres.length * 2));
+            }
+            libres[numeroLibres++] = slot;
+        }
+        return true;
+    }
+
+    /**
+     * Instante de la última lectura del slot según la rueda de caducidad (0 sin caducidad).
+     */
+    long getVistoMs(int slot) {
+        return pagina(slot).vistoMs[slot & MASCARA_PAGINA];
+    }
+
+    /**
+     * Instante de la última atenuación del consumo del slot por falta de lecturas (0 si no se ha atenuado).
+     */
+    long getAtenuadoMs(int slot) {
+        return pagina(slot).atenuadoMs[slot & MASCARA_PAGINA];
+    }
+
+    void setAtenuadoMs(int slot, long instante) {
+        pagina(slot).atenuadoMs[slot & MASCARA_PAGINA] = instante;
+    }
+
+    /**
+     * Partición en la que está activo el slot, o null si no lo está.
+     */
+    ParticionZona getParticion(int slot) {
+        int particion = pagina(slot).particion[slot & MASCARA_PAGINA];
+        return particion == SIN_PARTICION ? null : particiones[particion];
+    }
+
+    double getConsumo(int slot) {
+        return pagina(slot).consumo[slot & MASCARA_PAGINA];
+    }
+
+    NivelCriticidad getCriticidad(int slot) {
+        byte codigo = pagina(slot).criticidad[slot & MASCARA_PAGINA];
+        return codigo == SIN_CRITICIDAD ? null : NIVELES[codigo];
+    }
+
+    Dispositivo getEntidad(int slot) {
+        return pagina(slot).entidad[slot & MASCARA_PAGINA];
+    }
+
+    /**
+     * Lectura con la que está contabilizado el slot, o null si no está activo.
+     * Con caducidad, el instante de la lectura es el de la última que recibió el dispositivo.
+     */
+    Lectura getActivo(int slot) {
+        synchronized (cerrojo(slot)) {
+            Pagina pagina = pagina(slot);
+            int i = slot & MASCARA_PAGINA;
+            return pagina.particion[i] == SIN_PARTICION ? null
+                    : new Lectura(pagina.entidad[i], pagina.consumo[i], pagina.vistoMs[i]);
+        }
+    }
+
+    /**
+     * Añade las entidades de los dispositivos activos recorriendo el conjunto de activos.
+     */
+    void añadirActivos(List<Dispositivo> destino) {
+        recorrerActivos(slot -> {
+            Dispositivo dispositivo = getEntidad(slot);
+            if (dispositivo != null) {
+                destino.add(dispositivo);
+            }
+        });
+    }
+
+    /**
+     * Añade la lectura con la que está contabilizado cada dispositivo activo, leída bajo su cerrojo.
+     */
+    void añadirLecturasActivas(List<Lectura> destino) {
+        recorrerActivos(slot -> {
+            Lectura lectura = getActivo(slot);
+            if (lectura != null) {
+                destino.add(lectura);
+            }
+        });
+    }
+
+    private void recorrerActivos(IntConsumer accion) {
+        Pagina[] actuales = paginas;
+        for (int p = 0; p < actuales.length; p++) {
+            long[] activos = actuales[p].activos;
+            for (int palabra = 0; palabra < activos.length; palabra++) {
+                long bits = (long) PALABRA.getVolatile(activos, palabra);
+                while (bits != 0) {
+                    accion.accept((p << BITS_PAGINA) + (palabra << 6) + Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+        }
+    }
+
+    int getNumeroActivos() {
+        return numeroActivos.get();
+    }
+
+    /**
+     * Número de slots asignados, activos o no.
+     */
+    int getNumeroSlots() {
+        return slots.size();
+    }
+
+    /**
+     * Número de slots reservados en las páginas, asignados o libres.
+     */
+    synchronized int getCapacidadSlots() {
+        return siguienteSlot;
+    }
+
+    private static byte codigo(NivelCriticidad criticidad) {
+        return criticidad == null ? SIN_CRITICIDAD : (byte) criticidad.ordinal();
+    }
+}
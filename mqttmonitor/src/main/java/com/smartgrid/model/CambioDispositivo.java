@@ -0,0 +1,32 @@
+package com.smartgrid.model;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Evento de un {@link Dispositivo} dado de alta, modificado o eliminado a través de JPA.
+ * Lo publica {@link DispositivoListener} de forma síncrona, dentro de la misma operación.
+ */
+public class CambioDispositivo extends ApplicationEvent {
+
+    private final transient Dispositivo dispositivo;
+    private final boolean eliminado;
+
+    /**
+     * @param origen      quien publica el evento
+     * @param dispositivo dispositivo tal y como ha quedado guardado, o el eliminado
+     * @param eliminado   true si se ha eliminado
+     */
+    public CambioDispositivo(Object origen, Dispositivo dispositivo, boolean eliminado) {
+        super(origen);
+        this.dispositivo = dispositivo;
+        this.eliminado = eliminado;
+    }
+
+    public Dispositivo getDispositivo() {
+        return dispositivo;
+    }
+
+    public boolean isEliminado() {
+        return eliminado;
+    }
+}
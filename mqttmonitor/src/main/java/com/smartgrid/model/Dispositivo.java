@@ -7,6 +7,7 @@ import jakarta.persistence.*;
  */
 @Entity
 @Table(name = "dispositivos")
+@EntityListeners(DispositivoListener.class)
 public class Dispositivo {
 
     @Id
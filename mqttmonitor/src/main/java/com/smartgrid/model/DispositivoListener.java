@@ -0,0 +1,33 @@
+package com.smartgrid.model;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * Listener JPA que publica un {@link CambioDispositivo} cada vez que se da de alta, modifica o elimina
+ * un dispositivo, para que los servicios que guardan copias en memoria se pongan al día sin que el
+ * modelo dependa de ellos. Hibernate lo obtiene como bean de Spring al construir el EntityManagerFactory.
+ */
+@Component
+public class DispositivoListener {
+
+    private final ApplicationEventPublisher eventos;
+
+    public DispositivoListener(ApplicationEventPublisher eventos) {
+        this.eventos = eventos;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void alGuardar(Dispositivo dispositivo) {
+        eventos.publishEvent(new CambioDispositivo(this, dispositivo, false));
+    }
+
+    @PostRemove
+    public void alEliminar(Dispositivo dispositivo) {
+        eventos.publishEvent(new CambioDispositivo(this, dispositivo, true));
+    }
+}
@@ -0,0 +1,86 @@
+package com.smartgrid.model;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Entidad JPA de una lectura de consumo recibida por MQTT.
+ * La tabla es de solo inserción: forma el histórico para facturación y análisis,
+ * y se escribe por lotes desde {@link com.smartgrid.service.EscritorLecturas}.
+ */
+@Entity
+@Table(name = "lecturas_consumo",
+        indexes = @Index(name = "idx_lecturas_consumo_nombre_instante", columnList = "nombre, instante"))
+public class LecturaConsumo {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "dispositivo_id")
+    private Long dispositivoId;
+
+    private String nombre;
+
+    private String zona;
+
+    /**
+     * Consumo leído (en Watts).
+     */
+    private double consumo;
+
+    /**
+     * Momento en el que se procesó la lectura.
+     */
+    private Instant instante;
+
+    // --- Getters y Setters ---
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getDispositivoId() {
+        return dispositivoId;
+    }
+
+    public void setDispositivoId(Long dispositivoId) {
+        this.dispositivoId = dispositivoId;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    public void setNombre(String nombre) {
+        this.nombre = nombre;
+    }
+
+    public String getZona() {
+        return zona;
+    }
+
+    public void setZona(String zona) {
+        this.zona = zona;
+    }
+
+    public double getConsumo() {
+        return consumo;
+    }
+
+    public void setConsumo(double consumo) {
+        this.consumo = consumo;
+    }
+
+    public Instant getInstante() {
+        return instante;
+    }
+
+    public void setInstante(Instant instante) {
+        this.instante = instante;
+    }
+}
@@ -3,6 +3,8 @@ package com.smartgrid.repository;
 import com.smartgrid.model.Dispositivo;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -18,4 +20,12 @@ public interface DispositivoRepository extends JpaRepository<Dispositivo, Long>
      * @return Optional con el dispositivo si existe
      */
     Optional<Dispositivo> findByNombre(String nombre);
+
+    /**
+     * Busca de una sola vez todos los dispositivos cuyos nombres se indican.
+     *
+     * @param nombres nombres de los dispositivos
+     * @return dispositivos encontrados (los nombres desconocidos no aparecen)
+     */
+    List<Dispositivo> findByNombreIn(Collection<String> nombres);
 }
@@ -0,0 +1,24 @@
+package com.smartgrid.repository;
+
+import com.smartgrid.model.LecturaConsumo;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Repositorio JPA para consultar el histórico de lecturas de consumo.
+ * Las inserciones no pasan por aquí, sino por lotes JDBC desde {@link com.smartgrid.service.EscritorLecturas}.
+ */
+public interface LecturaConsumoRepository extends JpaRepository<LecturaConsumo, Long> {
+
+    /**
+     * Lecturas de un dispositivo en un intervalo de tiempo, en orden cronológico.
+     *
+     * @param nombre nombre del dispositivo
+     * @param desde  inicio del intervalo (incluido)
+     * @param hasta  fin del intervalo (incluido)
+     * @return lecturas del intervalo
+     */
+    List<LecturaConsumo> findByNombreAndInstanteBetweenOrderByInstante(String nombre, Instant desde, Instant hasta);
+}
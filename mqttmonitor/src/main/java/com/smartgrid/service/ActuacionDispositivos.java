@@ -0,0 +1,396 @@
+package com.smartgrid.service;
+
+import com.smartgrid.logic.AgregadosConsumo;
+import com.smartgrid.logic.CambiosMotorListener;
+import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.model.Dispositivo;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Canal de órdenes hacia los dispositivos físicos: lleva por MQTT las desconexiones y restablecimientos
+ * que decide el motor (o el operador) y los ajustes de potencia, para que no se queden solo en memoria.
+ * <p>
+ * Cada orden se publica con QoS 1 en el topic del dispositivo ({@code <prefijo><nombre>}) como
+ * {@code {"id":17,"orden":"DESCONECTAR"}} (las consignas llevan además {@code "potencia"}), y el dispositivo
+ * la confirma publicando el id en {@code <prefijo><nombre>/ack}:
+ * <ul>
+ *     <li>El motor solo anota la orden (una por dispositivo, la última gana) desde su listener, sin bloquear
+ *     nunca la ingesta; todo lo demás ocurre en un hilo propio cada {@code intervaloMs}.</li>
+ *     <li>Cada zona tiene una cubeta de {@code ordenesPorSegundoZona} órdenes por segundo: una desconexión
+ *     masiva sale por tandas sin saturar a los dispositivos de una zona ni a su red.</li>
+ *     <li>Como mucho hay {@code maxEnVuelo} órdenes sin confirmar. Las que no se confirman en
+ *     {@code esperaConfirmacionMs} se reenvían con el mismo id hasta {@code reintentos} veces y después se
+ *     dan por fallidas. Una orden nueva para el mismo dispositivo sustituye a la que estaba en vuelo.</li>
+ * </ul>
+ * Los dispositivos que caducan no reciben orden: si no envían lecturas, tampoco las escucharían. Solo se
+ * ordena restablecer cuando lo decide el motor con histéresis; una lectura nueva de un dispositivo
+ * desconectado (lo que sin histéresis lo vuelve a contar como activo) no deshace la orden de desconexión.
+ */
+public class ActuacionDispositivos implements CambiosMotorListener {
+
+    private static final Logger log = LoggerFactory.getLogger(ActuacionDispositivos.class);
+
+    /**
+     * Tipo de orden.
+     */
+    public enum TipoOrden {
+        DESCONECTAR, RESTABLECER, CONSIGNA
+    }
+
+    /**
+     * Orden para un dispositivo, con la zona cuya cubeta la limita. La potencia solo tiene sentido en las consignas.
+     */
+    public record Orden(long id, TipoOrden tipo, String nombre, String zona, double potencia) {
+
+        /**
+         * @return mensaje JSON que se publica
+         */
+        byte[] mensaje() {
+            String json = tipo == TipoOrden.CONSIGNA
+                    ? "{\"id\":" + id + ",\"orden\":\"" + tipo + "\",\"potencia\":" + potencia + "}"
+                    : "{\"id\":" + id + ",\"orden\":\"" + tipo + "\"}";
+            return json.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Publica las órdenes en el broker.
+     */
+    public interface Publicador {
+
+        /**
+         * Publica un mensaje con QoS 1 sin esperar a la confirmación del broker.
+         *
+         * @throws MqttException si no hay conexión o el cliente no admite más mensajes en vuelo
+         */
+        void publicar(String topic, byte[] mensaje) throws MqttException;
+
+        /**
+         * Se llama en cada ronda de envíos para recuperar la conexión si se ha perdido.
+         */
+        default void revisarConexion() {
+        }
+
+        default void close() {
+        }
+    }
+
+    /**
+     * Contadores del canal en un instante dado.
+     */
+    public record Estadisticas(int pendientes, int enVuelo, long enviadas, long confirmadas, long reintentos,
+                               long fallidas) {
+    }
+
+    /**
+     * Orden esperando su turno en la cola de su zona.
+     */
+    private record Espera(Orden orden, int intento) {
+    }
+
+    /**
+     * Orden publicada pendiente de confirmar.
+     */
+    private record EnVuelo(Orden orden, int intento, long plazoMs) {
+    }
+
+    /**
+     * Cubeta de órdenes de una zona.
+     */
+    private static final class Cubeta {
+        double fichas;
+        long ultimaMs;
+
+        Cubeta(double fichas, long ultimaMs) {
+            this.fichas = fichas;
+            this.ultimaMs = ultimaMs;
+        }
+    }
+
+    private final SmartGridDecisionEngine ia;
+    private final String prefijoTopic;
+    private final double ordenesPorSegundoZona;
+    private final int maxEnVuelo;
+    private final long esperaConfirmacionMs;
+    private final int reintentos;
+    private final long intervaloMs;
+
+    private final AtomicLong ids = new AtomicLong();
+
+    /** Última orden sin despachar de cada dispositivo y orden de llegada (lo que escribe el motor) */
+    private final Map<String, Orden> pendientes = new ConcurrentHashMap<>();
+    private final Queue<String> llegadas = new ConcurrentLinkedQueue<>();
+
+    // Estado del hilo de envío: colas por zona, órdenes que esperan turno y cubetas
+    private final Map<String, ArrayDeque<String>> colasZona = new LinkedHashMap<>();
+    private final Map<String, Espera> esperando = new HashMap<>();
+    private final Map<String, Cubeta> cubetas = new HashMap<>();
+    /** Ids publicados en orden de envío; como el plazo es fijo, también en orden de vencimiento */
+    private final ArrayDeque<Long> plazos = new ArrayDeque<>();
+
+    /** Órdenes sin confirmar (se confirman desde el hilo del cliente MQTT) y la última de cada dispositivo */
+    private final Map<Long, EnVuelo> enVuelo = new ConcurrentHashMap<>();
+    private final Map<String, Long> ultimaOrden = new ConcurrentHashMap<>();
+
+    /** Órdenes sin publicar, anotadas o esperando turno en su zona */
+    private final AtomicInteger numeroPendientes = new AtomicInteger();
+    private final LongAdder enviadas = new LongAdder();
+    private final LongAdder confirmadas = new LongAdder();
+    private final LongAdder reintentadas = new LongAdder();
+    private final LongAdder fallidas = new LongAdder();
+
+    private volatile Publicador publicador;
+    private ScheduledExecutorService planificador;
+
+    /**
+     * @param ia                    motor de decisiones a observar
+     * @param prefijoTopic          prefijo del topic de cada dispositivo (p. ej. "smartgrid/control/")
+     * @param ordenesPorSegundoZona órdenes que se envían como mucho por segundo a cada zona
+     * @param maxEnVuelo            órdenes sin confirmar que se admiten a la vez
+     * @param esperaConfirmacionMs  tiempo que se espera la confirmación antes de reenviar
+     * @param reintentos            reenvíos de una orden sin confirmar antes de darla por fallida
+     * @param intervaloMs           intervalo entre rondas de envío
+     */
+    public ActuacionDispositivos(SmartGridDecisionEngine ia, String prefijoTopic, double ordenesPorSegundoZona,
+                                 int maxEnVuelo, long esperaConfirmacionMs, int reintentos, long intervaloMs) {
+        if (!(ordenesPorSegundoZona > 0)) {
+            throw new IllegalArgumentException("Órdenes por segundo y zona inválidas: " + ordenesPorSegundoZona);
+        }
+        this.ia = ia;
+        this.prefijoTopic = prefijoTopic;
+        this.ordenesPorSegundoZona = ordenesPorSegundoZona;
+        this.maxEnVuelo = Math.max(1, maxEnVuelo);
+        this.esperaConfirmacionMs = Math.max(1, esperaConfirmacionMs);
+        this.reintentos = Math.max(0, reintentos);
+        this.intervaloMs = Math.max(1, intervaloMs);
+    }
+
+    /**
+     * Empieza a observar el motor y a enviar órdenes en un hilo propio.
+     *
+     * @param publicador cliente con el que se publican las órdenes
+     */
+    public synchronized void iniciar(Publicador publicador) {
+        if (planificador != null) return;
+        this.publicador = publicador;
+        ia.añadirListener(this);
+        planificador = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "actuacion-dispositivos");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        planificador.scheduleWithFixedDelay(this::despacharSinFallar, intervaloMs, intervaloMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Deja de observar el motor y cierra el cliente. Las órdenes sin enviar se pierden.
+     */
+    public synchronized void close() {
+        if (planificador == null) return;
+        ia.quitarListener(this);
+        planificador.shutdownNow();
+        planificador = null;
+        publicador.close();
+    }
+
+    @Override
+    public void dispositivoActualizado(Dispositivo dispositivo, boolean conectado) {
+        // Una lectura no es una orden: sin histéresis, un dispositivo desconectado vuelve al motor
+        // con su siguiente lectura, pero físicamente sigue como le dejó la última orden
+    }
+
+    @Override
+    public void dispositivoRestablecido(Dispositivo dispositivo) {
+        encolar(TipoOrden.RESTABLECER, dispositivo.getNombre(), zona(dispositivo), 0);
+    }
+
+    @Override
+    public void dispositivoDesconectado(String nombre, String zona, boolean automatico) {
+        encolar(TipoOrden.DESCONECTAR, nombre, zona, 0);
+    }
+
+    @Override
+    public void dispositivoCaducado(String nombre, String zona) {
+        // Si no envía lecturas, tampoco escucharía la orden
+    }
+
+    /**
+     * Ordena a un dispositivo que ajuste su potencia. La zona se toma del motor, donde el dispositivo
+     * sigue activo tras aceptar el ajuste, en el hilo que llama y sin ir a la base de datos.
+     *
+     * @param nombre   nombre del dispositivo
+     * @param potencia potencia en Watts
+     */
+    public void consigna(String nombre, double potencia) {
+        String zona = ia.buscarActivo(nombre).map(lectura -> zona(lectura.dispositivo()))
+                .orElse(AgregadosConsumo.SIN_ZONA);
+        encolar(TipoOrden.CONSIGNA, nombre, zona, potencia);
+    }
+
+    /**
+     * Anota una orden sin bloquear; sustituye a la que el dispositivo tuviera sin despachar.
+     * Sin arrancar el canal no se anota nada.
+     */
+    private void encolar(TipoOrden tipo, String nombre, String zona, double potencia) {
+        if (publicador == null) return;
+        if (pendientes.put(nombre, new Orden(ids.incrementAndGet(), tipo, nombre, zona, potencia)) == null) {
+            numeroPendientes.incrementAndGet();
+            llegadas.offer(nombre);
+        }
+    }
+
+    /**
+     * Confirmación de un dispositivo. Se ignoran las de órdenes desconocidas, sustituidas o ya confirmadas.
+     *
+     * @param id id de la orden
+     */
+    public void confirmar(long id) {
+        EnVuelo confirmada = enVuelo.remove(id);
+        if (confirmada == null) return;
+        ultimaOrden.remove(confirmada.orden().nombre(), id);
+        confirmadas.increment();
+    }
+
+    private void despacharSinFallar() {
+        try {
+            publicador.revisarConexion();
+            despachar(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            log.error("❌ Error al enviar órdenes a los dispositivos: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Ronda de envío: reenvía o da por fallidas las órdenes vencidas, reparte las nuevas por zona
+     * y publica las que permiten las cubetas de cada zona. Solo la llama el hilo del canal (o los tests).
+     *
+     * @param ahoraMs instante actual en milisegundos desde epoch
+     */
+    void despachar(long ahoraMs) {
+        revisarPlazos(ahoraMs);
+        repartir();
+
+        for (Map.Entry<String, ArrayDeque<String>> zona : colasZona.entrySet()) {
+            ArrayDeque<String> cola = zona.getValue();
+            if (cola.isEmpty()) continue;
+
+            Cubeta cubeta = cubetas.computeIfAbsent(zona.getKey(), z -> new Cubeta(ordenesPorSegundoZona, ahoraMs));
+            cubeta.fichas = Math.min(ordenesPorSegundoZona,
+                    cubeta.fichas + (ahoraMs - cubeta.ultimaMs) * ordenesPorSegundoZona / 1000.0);
+            cubeta.ultimaMs = ahoraMs;
+
+            while (!cola.isEmpty() && cubeta.fichas >= 1) {
+                if (enVuelo.size() >= maxEnVuelo) return;
+
+                String nombre = cola.peekFirst();
+                Espera espera = esperando.get(nombre);
+                try {
+                    publicador.publicar(prefijoTopic + nombre, espera.orden().mensaje());
+                } catch (MqttException e) {
+                    log.debug("⚠️ No se pudo publicar la orden para '{}': {}", nombre, e.getMessage());
+                    return; // sin conexión: se reintenta en la siguiente ronda
+                } catch (IllegalArgumentException e) {
+                    // El nombre no vale como topic (comodines): la orden no se podrá enviar nunca
+                    log.warn("⚠️ Orden para '{}' descartada: {}", nombre, e.getMessage());
+                    cola.pollFirst();
+                    esperando.remove(nombre);
+                    numeroPendientes.decrementAndGet();
+                    fallidas.increment();
+                    continue;
+                }
+                cola.pollFirst();
+                esperando.remove(nombre);
+                numeroPendientes.decrementAndGet();
+                cubeta.fichas--;
+                enviadas.increment();
+                registrarEnVuelo(espera, ahoraMs);
+            }
+        }
+    }
+
+    private void registrarEnVuelo(Espera espera, long ahoraMs) {
+        Orden orden = espera.orden();
+        enVuelo.put(orden.id(), new EnVuelo(orden, espera.intento(), ahoraMs + esperaConfirmacionMs));
+        plazos.addLast(orden.id());
+
+        // Una orden nueva deja sin efecto la anterior del mismo dispositivo
+        Long anterior = ultimaOrden.put(orden.nombre(), orden.id());
+        if (anterior != null && anterior != orden.id()) {
+            enVuelo.remove(anterior);
+        }
+    }
+
+    /**
+     * Pasa las órdenes anotadas por el motor a la cola de su zona. Si el dispositivo ya tenía una orden
+     * esperando turno, la nueva ocupa su lugar.
+     */
+    private void repartir() {
+        String nombre;
+        while ((nombre = llegadas.poll()) != null) {
+            Orden orden = pendientes.remove(nombre);
+            if (orden == null) continue;
+
+            if (esperando.put(nombre, new Espera(orden, 0)) == null) {
+                colasZona.computeIfAbsent(orden.zona(), z -> new ArrayDeque<>()).addLast(nombre);
+            } else {
+                numeroPendientes.decrementAndGet(); // sustituye a la que esperaba turno
+            }
+        }
+    }
+
+    /**
+     * Reenvía las órdenes vencidas sin confirmar, por delante de las nuevas de su zona, o las da por fallidas.
+     */
+    private void revisarPlazos(long ahoraMs) {
+        while (!plazos.isEmpty()) {
+            EnVuelo vencida = enVuelo.get(plazos.peekFirst());
+            if (vencida != null && vencida.plazoMs() > ahoraMs) return;
+
+            plazos.pollFirst();
+            if (vencida == null || !enVuelo.remove(vencida.orden().id(), vencida)) continue; // confirmada o sustituida
+
+            String nombre = vencida.orden().nombre();
+            if (vencida.intento() >= reintentos) {
+                ultimaOrden.remove(nombre, vencida.orden().id());
+                fallidas.increment();
+                log.warn("⚠️ El dispositivo '{}' no ha confirmado la orden {} tras {} intentos", nombre,
+                        vencida.orden().tipo(), vencida.intento() + 1);
+            } else if (!esperando.containsKey(nombre)) {
+                // Si ya espera una orden más reciente, esta no se reenvía
+                esperando.put(nombre, new Espera(vencida.orden(), vencida.intento() + 1));
+                numeroPendientes.incrementAndGet();
+                colasZona.computeIfAbsent(vencida.orden().zona(), z -> new ArrayDeque<>()).addFirst(nombre);
+                reintentadas.increment();
+            }
+        }
+    }
+
+    private static String zona(Dispositivo dispositivo) {
+        return dispositivo.getZona() == null ? AgregadosConsumo.SIN_ZONA : dispositivo.getZona();
+    }
+
+    /**
+     * @return contadores actuales del canal
+     */
+    public Estadisticas getEstadisticas() {
+        return new Estadisticas(numeroPendientes.get(), enVuelo.size(), enviadas.sum(), confirmadas.sum(),
+                reintentadas.sum(), fallidas.sum());
+    }
+}
@@ -0,0 +1,153 @@
+package com.smartgrid.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Reparte la ingesta en varios carriles ({@link PipelineIngesta}), cada uno con su propio hilo trabajador.
+ * <p>
+ * Los mensajes se asignan al carril por el hash del dispositivo, así que todos los de un mismo dispositivo
+ * pasan por el mismo carril y se procesan en el orden en que se encolaron, mientras que dispositivos
+ * distintos avanzan en paralelo. Los payloads en los que no se identifica el dispositivo van al primer carril.
+ * Las tramas binarias con lecturas de dispositivos de varios carriles se dividen en una trama por carril,
+ * de modo que la regla se cumple también para ellas. Un dispositivo que informa en texto y en binario
+ * pasa por un solo carril siempre que el hash sea el mismo en los dos formatos; el de
+ * {@link MQTTSubscriberService#hashDispositivo(byte[])} lo es mientras el registro tiene cargado el dispositivo.
+ */
+public class CarrilesIngesta {
+
+    private final PipelineIngesta[] carriles;
+    private final ToIntFunction<byte[]> hashDispositivo;
+
+    /**
+     * @param numero           número de carriles
+     * @param opciones         opciones de cada carril; la capacidad es la de todos los carriles juntos
+     *                         y el timer de latencia, si lo hay, lo comparten
+     * @param claveDispositivo extrae el dispositivo de un payload (para coalescer); null si no se puede identificar
+     * @param hashDispositivo  hash del dispositivo de un payload, igual para todos sus mensajes; 0 si no se identifica
+     * @param procesador       recibe cada lote en el hilo de su carril (puede llamarse desde varios hilos a la vez)
+     */
+    public CarrilesIngesta(int numero, OpcionesIngesta opciones, Function<byte[], String> claveDispositivo,
+                           ToIntFunction<byte[]> hashDispositivo, Consumer<List<byte[]>> procesador) {
+        int total = Math.max(1, numero);
+        OpcionesIngesta porCarril = opciones.conCapacidad(Math.max(1, opciones.capacidad() / total));
+        this.carriles = new PipelineIngesta[total];
+        for (int i = 0; i < total; i++) {
+            String nombre = total == 1 ? "mqtt-ingesta" : "mqtt-ingesta-" + i;
+            carriles[i] = new PipelineIngesta(nombre, porCarril, claveDispositivo, procesador);
+        }
+        this.hashDispositivo = hashDispositivo;
+    }
+
+    /**
+     * Arranca los hilos de todos los carriles.
+     */
+    public void iniciar() {
+        for (PipelineIngesta carril : carriles) {
+            carril.iniciar();
+        }
+    }
+
+    /**
+     * Detiene todos los carriles tras procesar lo que quede pendiente.
+     */
+    public void detener() {
+        for (PipelineIngesta carril : carriles) {
+            carril.detener();
+        }
+    }
+
+    /**
+     * Deposita un payload en el carril de su dispositivo. Se invoca desde los callbacks MQTT.
+     *
+     * @param payload contenido del mensaje tal y como llega del broker
+     * @return false si el mensaje se ha descartado
+     */
+    public boolean encolar(byte[] payload) {
+        if (carriles.length > 1 && TramaBinaria.esBinaria(payload)
+                && TramaBinaria.validar(payload) == ResultadoLectura.OK
+                && TramaBinaria.numeroLecturas(payload) > 1) {
+            return encolarRepartida(payload);
+        }
+        return carriles[carril(payload)].encolar(payload);
+    }
+
+    /**
+     * Divide una trama binaria por carriles; si todas sus lecturas van al mismo, la encola tal cual.
+     */
+    private boolean encolarRepartida(byte[] trama) {
+        int lecturas = TramaBinaria.numeroLecturas(trama);
+        int[] carrilDe = new int[lecturas];
+        int[] porCarril = new int[carriles.length];
+        for (int i = 0; i < lecturas; i++) {
+            carrilDe[i] = carrilDeHash(TramaBinaria.hashDispositivo(trama, i));
+            porCarril[carrilDe[i]]++;
+        }
+        if (porCarril[carrilDe[0]] == lecturas) {
+            return carriles[carrilDe[0]].encolar(trama);
+        }
+
+        boolean aceptada = true;
+        int[] indices = new int[lecturas];
+        for (int c = 0; c < carriles.length; c++) {
+            if (porCarril[c] == 0) continue;
+            int cantidad = 0;
+            for (int i = 0; i < lecturas; i++) {
+                if (carrilDe[i] == c) indices[cantidad++] = i;
+            }
+            aceptada &= carriles[c].encolar(TramaBinaria.extraer(trama, indices, cantidad));
+        }
+        return aceptada;
+    }
+
+    /**
+     * Carril que corresponde al dispositivo del payload.
+     */
+    int carril(byte[] payload) {
+        if (carriles.length == 1) return 0;
+        return carrilDeHash(hashDispositivo.applyAsInt(payload));
+    }
+
+    private int carrilDeHash(int h) {
+        return Math.floorMod(h ^ (h >>> 16), carriles.length);
+    }
+
+    public int getNumeroCarriles() {
+        return carriles.length;
+    }
+
+    /**
+     * Estadísticas de todos los carriles sumadas; la profundidad máxima es la del carril más cargado.
+     */
+    public PipelineIngesta.Estadisticas getEstadisticas() {
+        int profundidad = 0, capacidad = 0, profundidadMaxima = 0;
+        long encolados = 0, descartados = 0, coalescidos = 0, lotes = 0, procesados = 0;
+        for (PipelineIngesta carril : carriles) {
+            PipelineIngesta.Estadisticas e = carril.getEstadisticas();
+            profundidad += e.profundidad();
+            capacidad += e.capacidad();
+            profundidadMaxima = Math.max(profundidadMaxima, e.profundidadMaxima());
+            encolados += e.encolados();
+            descartados += e.descartados();
+            coalescidos += e.coalescidos();
+            lotes += e.lotes();
+            procesados += e.procesados();
+        }
+        return new PipelineIngesta.Estadisticas(profundidad, capacidad, profundidadMaxima, encolados,
+                descartados, coalescidos, lotes, procesados);
+    }
+
+    /**
+     * Estadísticas de cada carril, para detectar desequilibrios en el reparto.
+     */
+    public List<PipelineIngesta.Estadisticas> getEstadisticasCarriles() {
+        List<PipelineIngesta.Estadisticas> estadisticas = new ArrayList<>(carriles.length);
+        for (PipelineIngesta carril : carriles) {
+            estadisticas.add(carril.getEstadisticas());
+        }
+        return estadisticas;
+    }
+}
@@ -0,0 +1,100 @@
+package com.smartgrid.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * Nombre de dispositivo como rango de bytes, usable como clave de mapa.
+ * <p>
+ * El hash y la igualdad ignoran mayúsculas ASCII, de modo que una clave apuntada directamente
+ * sobre un payload MQTT coincide con la clave guardada a partir del nombre normalizado
+ * sin tener que construir un String. Un nombre con bytes fuera de ASCII se pliega antes con
+ * {@link #plegar(String)}, igual que al normalizarlo, así que ambos caminos coinciden para cualquier
+ * nombre. Las claves guardadas no cambian; solo las de {@link SondaNombre} se reapuntan en cada búsqueda.
+ */
+final class ClaveNombre {
+
+    private byte[] datos;
+    private int desde;
+    private int hasta;
+    private int hash;
+
+    /**
+     * Clave guardada para un nombre ya normalizado.
+     */
+    static ClaveNombre de(String nombreNormalizado) {
+        byte[] bytes = nombreNormalizado.getBytes(StandardCharsets.UTF_8);
+        ClaveNombre clave = new ClaveNombre();
+        clave.apuntar(bytes, 0, bytes.length);
+        return clave;
+    }
+
+    static ClaveNombre sonda() {
+        return new ClaveNombre();
+    }
+
+    /**
+     * Pasa un nombre a minúsculas sin depender del idioma del sistema (con el turco, {@code "I"} no sería
+     * {@code "i"}). Para ASCII equivale a {@link #minuscula(byte)}.
+     */
+    static String plegar(String nombre) {
+        return nombre.toLowerCase(Locale.ROOT);
+    }
+
+    void apuntar(byte[] datos, int desde, int hasta) {
+        int h = 0;
+        for (int i = desde; i < hasta; i++) {
+            byte b = datos[i];
+            if (b < 0) {
+                // Fuera de ASCII las mayúsculas no se pliegan byte a byte: se pliega el nombre entero
+                byte[] plegado = plegar(new String(datos, desde, hasta - desde, StandardCharsets.UTF_8))
+                        .getBytes(StandardCharsets.UTF_8);
+                fijar(plegado, 0, plegado.length, hash(plegado, 0, plegado.length));
+                return;
+            }
+            h = 31 * h + minuscula(b);
+        }
+        fijar(datos, desde, hasta, h);
+    }
+
+    private void fijar(byte[] datos, int desde, int hasta, int hash) {
+        this.datos = datos;
+        this.desde = desde;
+        this.hasta = hasta;
+        this.hash = hash;
+    }
+
+    private static int hash(byte[] datos, int desde, int hasta) {
+        int h = 0;
+        for (int i = desde; i < hasta; i++) {
+            h = 31 * h + minuscula(datos[i]);
+        }
+        return h;
+    }
+
+    private static int minuscula(byte b) {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ClaveNombre otra)) return false;
+        int longitud = hasta - desde;
+        if (otra.hash != hash || otra.hasta - otra.desde != longitud) return false;
+        for (int i = 0; i < longitud; i++) {
+            if (minuscula(datos[desde + i]) != minuscula(otra.datos[otra.desde + i])) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return new String(datos, desde, hasta - desde, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,127 @@
+package com.smartgrid.service;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongConsumer;
+
+/**
+ * Conexión MQTT propia del canal de órdenes ({@link ActuacionDispositivos}), separada de las de ingesta
+ * para que las publicaciones no compitan con la recepción de lecturas.
+ * <p>
+ * Publica con QoS 1 sin esperar al PUBACK (el cliente asíncrono lleva la cuenta de los mensajes en vuelo)
+ * y se suscribe a {@code <prefijo>+/ack}, donde cada dispositivo confirma el id de las órdenes que ha aplicado.
+ * Si la conexión se pierde, o no se consigue al arrancar, se vuelve a intentar como mucho cada
+ * {@code esperaReconexionMs}; mientras tanto las órdenes esperan en su cola.
+ */
+public class ClienteActuacionMqtt implements ActuacionDispositivos.Publicador {
+
+    private static final Logger log = LoggerFactory.getLogger(ClienteActuacionMqtt.class);
+
+    private static final long ESPERA_RECONEXION_MS = 5_000;
+
+    private final MqttAsyncClient cliente;
+    private final MqttConnectOptions opciones;
+    private final String filtroConfirmaciones;
+    private final LongConsumer alConfirmar;
+
+    private final AtomicBoolean conectando = new AtomicBoolean();
+    private volatile long ultimoIntentoNanos;
+    private volatile boolean primerIntento = true;
+
+    /**
+     * @param brokerUrl    dirección del broker
+     * @param clientId     identificador del cliente, distinto de los de ingesta
+     * @param prefijoTopic prefijo de los topics de los dispositivos
+     * @param maxEnVuelo   mensajes QoS 1 sin PUBACK que admite el cliente
+     * @param alConfirmar  recibe el id de cada orden confirmada por un dispositivo
+     * @throws MqttException si la dirección del broker no es válida
+     */
+    public ClienteActuacionMqtt(String brokerUrl, String clientId, String prefijoTopic, int maxEnVuelo,
+                                LongConsumer alConfirmar) throws MqttException {
+        this.cliente = new MqttAsyncClient(brokerUrl, clientId, new MemoryPersistence());
+        this.opciones = new MqttConnectOptions();
+        opciones.setCleanSession(true);
+        opciones.setKeepAliveInterval(30);
+        opciones.setMaxInflight(Math.max(1, maxEnVuelo));
+        this.filtroConfirmaciones = prefijoTopic + "+/ack";
+        this.alConfirmar = alConfirmar;
+    }
+
+    @Override
+    public void publicar(String topic, byte[] mensaje) throws MqttException {
+        cliente.publish(topic, mensaje, 1, false);
+    }
+
+    @Override
+    public void revisarConexion() {
+        if (cliente.isConnected() || conectando.get()) return;
+        long ahora = System.nanoTime();
+        if (!primerIntento && ahora - ultimoIntentoNanos < TimeUnit.MILLISECONDS.toNanos(ESPERA_RECONEXION_MS)) return;
+        if (!conectando.compareAndSet(false, true)) return;
+
+        primerIntento = false;
+        ultimoIntentoNanos = ahora;
+        try {
+            cliente.connect(opciones, null, new IMqttActionListener() {
+                @Override
+                public void onSuccess(IMqttToken token) {
+                    suscribir();
+                }
+
+                @Override
+                public void onFailure(IMqttToken token, Throwable error) {
+                    conectando.set(false);
+                    log.warn("⚠️ Canal de órdenes sin conexión con el broker: {}", error.getMessage());
+                }
+            });
+        } catch (MqttException e) {
+            conectando.set(false);
+            log.warn("⚠️ Canal de órdenes sin conexión con el broker: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Con sesión limpia la suscripción a las confirmaciones se repite en cada conexión.
+     */
+    private void suscribir() {
+        try {
+            cliente.subscribe(filtroConfirmaciones, 1, (topic, mensaje) -> confirmar(mensaje.getPayload()));
+            log.info("✅ Canal de órdenes conectado; confirmaciones en '{}'", filtroConfirmaciones);
+        } catch (MqttException e) {
+            log.warn("⚠️ No se pudo suscribir a las confirmaciones '{}': {}", filtroConfirmaciones, e.getMessage());
+        } finally {
+            conectando.set(false);
+        }
+    }
+
+    private void confirmar(byte[] mensaje) {
+        String id = new String(mensaje, StandardCharsets.UTF_8).trim();
+        try {
+            alConfirmar.accept(Long.parseLong(id));
+        } catch (NumberFormatException e) {
+            log.debug("❌ Confirmación inválida: '{}'", id);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (cliente.isConnected()) {
+                cliente.disconnect().waitForCompletion(TimeUnit.SECONDS.toMillis(5));
+            }
+            cliente.close();
+        } catch (MqttException e) {
+            log.warn("⚠️ Error al cerrar el canal de órdenes: {}", e.getMessage());
+        }
+    }
+}
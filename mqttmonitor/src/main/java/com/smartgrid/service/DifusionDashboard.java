@@ -0,0 +1,388 @@
+package com.smartgrid.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartgrid.logic.CambiosMotorListener;
+import com.smartgrid.logic.Lectura;
+import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Difunde el estado del motor a los dashboards conectados mediante Server-Sent Events.
+ * <p>
+ * El motor solo anota qué dispositivos han cambiado (una entrada por dispositivo, la última gana);
+ * en cada intervalo se consultan esos dispositivos, se serializa un único delta con sus cambios y
+ * el resumen de consumo, y se envía el mismo texto a todas las conexiones. Así el coste por intervalo
+ * depende de los dispositivos que cambian y no del tamaño de la flota ni del número de dashboards.
+ * Al conectarse, cada dashboard recibe una instantánea completa, compartida por todas las conexiones
+ * que llegan dentro del mismo intervalo.
+ * <p>
+ * Los envíos se hacen fuera del monitor y en hilos propios, con como mucho un envío en curso por
+ * conexión: un dashboard lento no retrasa a los demás ni a las nuevas suscripciones. Si al llegar un
+ * delta aún no ha terminado de enviarse el anterior, la conexión se ha quedado atrás y se cierra; el
+ * navegador se reconecta y recibe una instantánea en lugar de deltas que ya no podría encadenar.
+ */
+public class DifusionDashboard implements CambiosMotorListener {
+
+    private static final Logger log = LoggerFactory.getLogger(DifusionDashboard.class);
+
+    /**
+     * Tipo de cambio de un dispositivo dentro de un intervalo.
+     */
+    public enum TipoCambio {
+        CONECTADO, ACTUALIZADO, DESCONECTADO_AUTOMATICO, DESCONECTADO_MANUAL;
+
+        /**
+         * Agrupa dos cambios del mismo dispositivo: prevalece el último, salvo que una
+         * conexión seguida de lecturas sigue siendo una conexión para quien no la ha visto.
+         */
+        static TipoCambio combinar(TipoCambio anterior, TipoCambio nuevo) {
+            return anterior == CONECTADO && nuevo == ACTUALIZADO ? CONECTADO : nuevo;
+        }
+
+        boolean esDesconexion() {
+            return this == DESCONECTADO_AUTOMATICO || this == DESCONECTADO_MANUAL;
+        }
+    }
+
+    /**
+     * Estado de un dispositivo tal y como se envía al navegador (sin zona ni consumo si se ha desconectado).
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record CambioDispositivo(String nombre, TipoCambio tipo, String zona, NivelCriticidad criticidad,
+                                    Double consumo) {
+    }
+
+    /**
+     * Consumo y alerta de una zona; el límite es null si la zona solo está sujeta al límite global.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record ResumenZona(String zona, double consumo, Double limite, boolean alerta) {
+    }
+
+    /**
+     * Totales y estado de alerta del motor.
+     */
+    public record Resumen(double consumoTotal, double limite, boolean alertaCriticos, List<ResumenZona> zonas) {
+    }
+
+    /**
+     * Cambios de un intervalo; el resumen es null si no ha variado.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Delta(long secuencia, List<CambioDispositivo> cambios, Resumen resumen) {
+    }
+
+    /**
+     * Estado completo que recibe un dashboard al conectarse.
+     */
+    public record Instantanea(long secuencia, List<CambioDispositivo> dispositivos, Resumen resumen) {
+    }
+
+    private final SmartGridDecisionEngine ia;
+    private final ObjectMapper mapper;
+    private final long intervaloMs;
+    private final long timeoutMs;
+
+    /** Dispositivos con cambios pendientes de enviar y el tipo de cambio agrupado */
+    private final Map<String, TipoCambio> pendientes = new ConcurrentHashMap<>();
+
+    private final List<Suscriptor> suscriptores = new CopyOnWriteArrayList<>();
+
+    // Estado de la difusión, protegido por el monitor de la instancia
+    private long secuencia;
+    private Resumen ultimoResumen;
+    private long secuenciaInstantanea = -1;
+    private String instantanea;
+
+    private ScheduledExecutorService planificador;
+
+    // Hilos que envían los deltas, como mucho uno ocupado por conexión
+    private ExecutorService envios;
+
+    /**
+     * @param ia          motor de decisiones a observar
+     * @param mapper      serializador JSON
+     * @param intervaloMs intervalo entre envíos
+     * @param timeoutMs   duración máxima de cada conexión
+     */
+    public DifusionDashboard(SmartGridDecisionEngine ia, ObjectMapper mapper, long intervaloMs, long timeoutMs) {
+        this.ia = ia;
+        this.mapper = mapper;
+        this.intervaloMs = Math.max(1, intervaloMs);
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Empieza a observar el motor y a enviar deltas periódicamente.
+     */
+    public synchronized void iniciar() {
+        if (planificador != null) return;
+        ia.añadirListener(this);
+        planificador = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "dashboard-difusion");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        AtomicInteger hilos = new AtomicInteger();
+        envios = Executors.newCachedThreadPool(tarea -> {
+            Thread hilo = new Thread(tarea, "dashboard-envio-" + hilos.incrementAndGet());
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        planificador.scheduleWithFixedDelay(this::difundirSinFallar, intervaloMs, intervaloMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Deja de observar el motor y cierra las conexiones abiertas.
+     */
+    public synchronized void close() {
+        if (planificador == null) return;
+        ia.quitarListener(this);
+        planificador.shutdownNow();
+        planificador = null;
+        envios.shutdownNow();
+        envios = null;
+        for (Suscriptor suscriptor : suscriptores) {
+            suscriptor.emisor.complete();
+        }
+        suscriptores.clear();
+    }
+
+    @Override
+    public void dispositivoActualizado(Dispositivo dispositivo, boolean conectado) {
+        pendientes.merge(dispositivo.getNombre(), conectado ? TipoCambio.CONECTADO : TipoCambio.ACTUALIZADO,
+                TipoCambio::combinar);
+    }
+
+    @Override
+    public void dispositivoDesconectado(String nombre, String zona, boolean automatico) {
+        pendientes.put(nombre, automatico ? TipoCambio.DESCONECTADO_AUTOMATICO : TipoCambio.DESCONECTADO_MANUAL);
+    }
+
+    /**
+     * Abre una conexión SSE y le envía la instantánea actual; después recibirá los deltas.
+     *
+     * @return emisor a devolver desde el controlador
+     */
+    public SseEmitter suscribir() {
+        SseEmitter emisor = new SseEmitter(timeoutMs);
+        Suscriptor suscriptor = new Suscriptor(emisor);
+        emisor.onCompletion(() -> suscriptores.remove(suscriptor));
+        emisor.onTimeout(() -> suscriptores.remove(suscriptor));
+        emisor.onError(error -> suscriptores.remove(suscriptor));
+
+        // Con el monitor se fija qué secuencia recibe; el envío, fuera de él
+        String id;
+        String json;
+        synchronized (this) {
+            json = instantanea();
+            id = Long.toString(secuencia);
+            suscriptores.add(suscriptor);
+        }
+        suscriptor.enviar(id, "instantanea", json);
+        return emisor;
+    }
+
+    /**
+     * Agrupa los cambios pendientes y, si hay alguno o ha variado el resumen, encarga el envío de un delta
+     * a todas las conexiones sin esperar a que terminen.
+     */
+    void difundir() {
+        String id;
+        String json;
+        ExecutorService envios;
+        synchronized (this) {
+            envios = this.envios;
+            if (envios == null) return;
+
+            Delta delta = prepararDelta();
+            if (delta == null) return;
+            id = Long.toString(delta.secuencia());
+            json = serializar(delta);
+        }
+
+        for (Suscriptor suscriptor : suscriptores) {
+            suscriptor.enviarDelta(envios, id, json);
+        }
+    }
+
+    /**
+     * Delta del intervalo actual, o null si no hay nada que enviar o nadie a quien enviarlo.
+     */
+    synchronized Delta prepararDelta() {
+        Resumen resumen = resumen();
+        boolean resumenCambiado = !resumen.equals(ultimoResumen);
+        if (pendientes.isEmpty() && !resumenCambiado) return null;
+
+        secuencia++;
+        ultimoResumen = resumen;
+
+        // Sin dashboards conectados no hace falta consultar nada: quien se conecte recibirá una instantánea
+        if (suscriptores.isEmpty()) {
+            pendientes.clear();
+            return null;
+        }
+        return new Delta(secuencia, drenarCambios(), resumenCambiado ? resumen : null);
+    }
+
+    private void difundirSinFallar() {
+        try {
+            difundir();
+        } catch (RuntimeException e) {
+            log.error("❌ Error al difundir el estado al dashboard: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Retira los cambios pendientes y consulta el estado actual de cada dispositivo afectado.
+     */
+    private List<CambioDispositivo> drenarCambios() {
+        List<CambioDispositivo> cambios = new ArrayList<>(pendientes.size());
+        Iterator<String> nombres = pendientes.keySet().iterator();
+        while (nombres.hasNext()) {
+            String nombre = nombres.next();
+            TipoCambio tipo = pendientes.remove(nombre);
+            if (tipo == null) continue;
+
+            if (tipo.esDesconexion()) {
+                cambios.add(new CambioDispositivo(nombre, tipo, null, null, null));
+            } else {
+                // Si ya no está activo, su desconexión está anotada y saldrá en el siguiente intervalo
+                ia.buscarActivo(nombre).ifPresent(lectura -> cambios.add(estado(tipo, lectura)));
+            }
+        }
+        return cambios;
+    }
+
+    /**
+     * Instantánea serializada, reutilizada mientras no se haya enviado un nuevo delta.
+     */
+    private String instantanea() {
+        if (secuenciaInstantanea != secuencia || instantanea == null) {
+            List<CambioDispositivo> dispositivos = new ArrayList<>();
+            for (Dispositivo dispositivo : ia.getDispositivosActivos()) {
+                dispositivos.add(estado(TipoCambio.CONECTADO, new Lectura(dispositivo, dispositivo.getConsumo())));
+            }
+            instantanea = serializar(new Instantanea(secuencia, dispositivos, resumen()));
+            secuenciaInstantanea = secuencia;
+        }
+        return instantanea;
+    }
+
+    private Resumen resumen() {
+        List<ResumenZona> zonas = new ArrayList<>();
+        for (String zona : ia.getZonas()) {
+            double limite = ia.getLimiteZona(zona);
+            zonas.add(new ResumenZona(zona, ia.getConsumoZona(zona), Double.isInfinite(limite) ? null : limite,
+                    ia.isAlertaZona(zona)));
+        }
+        return new Resumen(ia.getConsumoTotal(), ia.getLimiteConsumo(), ia.isAlertaCriticos(), zonas);
+    }
+
+    private static CambioDispositivo estado(TipoCambio tipo, Lectura lectura) {
+        Dispositivo dispositivo = lectura.dispositivo();
+        return new CambioDispositivo(dispositivo.getNombre(), tipo, dispositivo.getZona(),
+                dispositivo.getCriticidad(), lectura.consumo());
+    }
+
+    /**
+     * Conexión de un dashboard, con como mucho un envío en curso.
+     */
+    private final class Suscriptor {
+
+        private final SseEmitter emisor;
+
+        // Hay un envío en curso; empieza ocupado hasta que se envía la instantánea
+        private final AtomicBoolean ocupado = new AtomicBoolean(true);
+
+        // Se ha quedado atrás: se cierra en cuanto no quede ningún envío en curso
+        private volatile boolean atrasado;
+
+        Suscriptor(SseEmitter emisor) {
+            this.emisor = emisor;
+        }
+
+        /**
+         * Encarga el envío de un delta; si aún no ha terminado el anterior, cierra la conexión.
+         */
+        void enviarDelta(ExecutorService envios, String id, String json) {
+            if (!ocupado.compareAndSet(false, true)) {
+                suscriptores.remove(this);
+                atrasado = true;
+                cerrarSiAtrasado();
+                log.debug("📉 Dashboard cerrado por quedarse atrás en el delta {}", id);
+                return;
+            }
+            try {
+                envios.execute(() -> enviar(id, "delta", json));
+            } catch (RejectedExecutionException e) {
+                // La difusión se está cerrando y cierra también la conexión
+                ocupado.set(false);
+            }
+        }
+
+        /**
+         * Envía un evento en el hilo que llama y deja libre la conexión.
+         */
+        void enviar(String id, String nombre, String json) {
+            try {
+                emisor.send(SseEmitter.event()
+                        .id(id)
+                        .name(nombre)
+                        .data(json, MediaType.APPLICATION_JSON));
+            } catch (IOException | IllegalStateException e) {
+                // La conexión ya está cerrada; se queda ocupada para no volver a tocarla
+                suscriptores.remove(this);
+                return;
+            }
+            ocupado.set(false);
+            cerrarSiAtrasado();
+        }
+
+        /**
+         * Cierra la conexión si se ha quedado atrás; solo lo hace quien la encuentra libre.
+         */
+        private void cerrarSiAtrasado() {
+            if (atrasado && ocupado.compareAndSet(false, true)) {
+                emisor.complete();
+            }
+        }
+    }
+
+    private String serializar(Object valor) {
+        try {
+            return mapper.writeValueAsString(valor);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar el estado del dashboard", e);
+        }
+    }
+
+    /**
+     * @return número de dashboards conectados
+     */
+    public int getSuscriptores() {
+        return suscriptores.size();
+    }
+}
@@ -0,0 +1,256 @@
+package com.smartgrid.service;
+
+import com.smartgrid.logic.Lectura;
+import com.smartgrid.model.Dispositivo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Escritor en segundo plano del histórico de lecturas (tabla {@code lecturas_consumo}).
+ * <p>
+ * La ingesta entrega cada lote de lecturas ya aplicado con una sola operación no bloqueante;
+ * un hilo propio los agrupa y los inserta con lotes JDBC de hasta {@code filasPorEscritura} filas
+ * (con {@code reWriteBatchedInserts} el driver de PostgreSQL los envía como INSERT multi-fila).
+ * Si la base de datos no da abasto y la cola se llena, los lotes nuevos se descartan y se cuentan:
+ * la latencia de la ingesta tiene prioridad sobre el histórico.
+ */
+public class EscritorLecturas {
+
+    private static final Logger log = LoggerFactory.getLogger(EscritorLecturas.class);
+
+    static final String INSERTAR = "INSERT INTO lecturas_consumo (dispositivo_id, nombre, zona, consumo, instante) "
+            + "VALUES (?, ?, ?, ?, ?)";
+
+    private static final int INTENTOS = 3;
+    private static final long PAUSA_REINTENTO_MS = 200;
+    private static final long INTERVALO_AVISO_MS = 10_000;
+
+    /**
+     * Lote de lecturas pendiente de escribir, con el instante en que se procesó
+     * (se usa para las lecturas que no traen el suyo).
+     */
+    private record Pendiente(long instante, List<Lectura> lecturas) {
+    }
+
+    /**
+     * Contadores del escritor en un instante dado.
+     */
+    public record Estadisticas(int lotesPendientes, long recibidas, long escritas, long descartadas,
+                               long fallidas, long escrituras) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BlockingQueue<Pendiente> cola;
+    private final int filasPorEscritura;
+    private final long esperaNanos;
+
+    private final LongAdder recibidas = new LongAdder();
+    private final LongAdder escritas = new LongAdder();
+    private final LongAdder descartadas = new LongAdder();
+    private final LongAdder fallidas = new LongAdder();
+    private final LongAdder escrituras = new LongAdder();
+    private final AtomicLong ultimoAviso = new AtomicLong();
+
+    private volatile boolean activo;
+    private Thread escritor;
+
+    /**
+     * @param jdbcTemplate      acceso JDBC a la base de datos
+     * @param capacidadLotes    lotes de ingesta pendientes que se admiten antes de descartar
+     * @param filasPorEscritura filas máximas por lote JDBC
+     * @param esperaMs          espera máxima para completar un lote JDBC
+     */
+    public EscritorLecturas(JdbcTemplate jdbcTemplate, int capacidadLotes, int filasPorEscritura, long esperaMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.cola = new ArrayBlockingQueue<>(Math.max(1, capacidadLotes));
+        this.filasPorEscritura = Math.max(1, filasPorEscritura);
+        this.esperaNanos = TimeUnit.MILLISECONDS.toNanos(esperaMs);
+    }
+
+    /**
+     * Arranca el hilo escritor. Mientras no se arranca, las lecturas se ignoran.
+     */
+    public synchronized void iniciar() {
+        if (activo) return;
+        activo = true;
+        escritor = new Thread(this::bucle, "historico-lecturas");
+        escritor.setDaemon(true);
+        escritor.start();
+    }
+
+    /**
+     * Detiene el hilo escritor tras escribir lo que quede pendiente.
+     */
+    public synchronized void close() {
+        if (!activo) return;
+        activo = false;
+        escritor.interrupt();
+        try {
+            escritor.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Entrega un lote de lecturas para el histórico sin bloquear.
+     * La lista no debe modificarse después.
+     *
+     * @param lecturas lecturas aplicadas al motor
+     * @return false si el histórico está desactivado o la cola está llena
+     */
+    public boolean registrar(List<Lectura> lecturas) {
+        if (!activo || lecturas.isEmpty()) return false;
+
+        recibidas.add(lecturas.size());
+        if (cola.offer(new Pendiente(System.currentTimeMillis(), lecturas))) {
+            return true;
+        }
+
+        descartadas.add(lecturas.size());
+        long ahora = System.currentTimeMillis();
+        long anterior = ultimoAviso.get();
+        if (ahora - anterior >= INTERVALO_AVISO_MS && ultimoAviso.compareAndSet(anterior, ahora)) {
+            log.warn("⚠️ Cola del histórico llena: se descartan lecturas ({} en total)", descartadas.sum());
+        }
+        return false;
+    }
+
+    private void bucle() {
+        List<Pendiente> pendientes = new ArrayList<>();
+        while (activo) {
+            try {
+                pendientes.add(cola.take());
+                completar(pendientes);
+            } catch (InterruptedException e) {
+                // close(): se escribe lo que quede y se sale
+            }
+            escribir(pendientes);
+        }
+        Thread.interrupted(); // la escritura final necesita poder pedir conexión
+        cola.drainTo(pendientes);
+        escribir(pendientes);
+    }
+
+    /**
+     * Espera a reunir filas suficientes para un lote JDBC, como mucho {@code esperaNanos}.
+     */
+    private void completar(List<Pendiente> pendientes) throws InterruptedException {
+        long limite = System.nanoTime() + esperaNanos;
+        int filas = contarFilas(pendientes);
+
+        while (filas < filasPorEscritura) {
+            Pendiente siguiente = cola.poll();
+            if (siguiente == null) {
+                long restante = limite - System.nanoTime();
+                if (restante <= 0) return;
+                siguiente = cola.poll(restante, TimeUnit.NANOSECONDS);
+                if (siguiente == null) return;
+            }
+            pendientes.add(siguiente);
+            filas += siguiente.lecturas().size();
+        }
+    }
+
+    private static int contarFilas(List<Pendiente> pendientes) {
+        int filas = 0;
+        for (Pendiente pendiente : pendientes) {
+            filas += pendiente.lecturas().size();
+        }
+        return filas;
+    }
+
+    private void escribir(List<Pendiente> pendientes) {
+        if (pendientes.isEmpty()) return;
+
+        List<Lectura> lecturas = new ArrayList<>(filasPorEscritura);
+        List<Timestamp> instantes = new ArrayList<>(filasPorEscritura);
+        for (Pendiente pendiente : pendientes) {
+            Timestamp instante = new Timestamp(pendiente.instante());
+            for (Lectura lectura : pendiente.lecturas()) {
+                lecturas.add(lectura);
+                instantes.add(lectura.instante() > 0 ? new Timestamp(lectura.instante()) : instante);
+                if (lecturas.size() == filasPorEscritura) {
+                    insertar(lecturas, instantes);
+                    lecturas.clear();
+                    instantes.clear();
+                }
+            }
+        }
+        insertar(lecturas, instantes);
+        pendientes.clear();
+    }
+
+    /**
+     * Inserta las filas en un único lote JDBC, con unos pocos reintentos ante errores transitorios.
+     */
+    private void insertar(List<Lectura> lecturas, List<Timestamp> instantes) {
+        if (lecturas.isEmpty()) return;
+
+        BatchPreparedStatementSetter filas = new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Lectura lectura = lecturas.get(i);
+                Dispositivo dispositivo = lectura.dispositivo();
+                if (dispositivo.getId() == null) {
+                    ps.setNull(1, Types.BIGINT);
+                } else {
+                    ps.setLong(1, dispositivo.getId());
+                }
+                ps.setString(2, dispositivo.getNombre());
+                ps.setString(3, dispositivo.getZona());
+                ps.setDouble(4, lectura.consumo());
+                ps.setTimestamp(5, instantes.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return lecturas.size();
+            }
+        };
+
+        for (int intento = 1; intento <= INTENTOS; intento++) {
+            try {
+                jdbcTemplate.batchUpdate(INSERTAR, filas);
+                escritas.add(lecturas.size());
+                escrituras.increment();
+                return;
+            } catch (DataAccessException e) {
+                if (intento == INTENTOS) {
+                    fallidas.add(lecturas.size());
+                    log.error("❌ No se pudieron guardar {} lecturas en el histórico: {}", lecturas.size(), e.getMessage());
+                    return;
+                }
+                try {
+                    Thread.sleep(PAUSA_REINTENTO_MS * intento);
+                } catch (InterruptedException ie) {
+                    // Al cerrar se sigue intentando sin pausa; no se restaura la interrupción
+                    // porque el pool de conexiones rechazaría la siguiente petición
+                }
+            }
+        }
+    }
+
+    /**
+     * @return contadores actuales del escritor
+     */
+    public Estadisticas getEstadisticas() {
+        return new Estadisticas(cola.size(), recibidas.sum(), escritas.sum(), descartadas.sum(),
+                fallidas.sum(), escrituras.sum());
+    }
+}
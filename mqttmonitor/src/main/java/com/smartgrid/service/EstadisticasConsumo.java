@@ -0,0 +1,174 @@
+package com.smartgrid.service;
+
+import com.smartgrid.logic.CambiosMotorListener;
+import com.smartgrid.logic.SerieConsumo;
+import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.model.Dispositivo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Estadísticas de consumo por dispositivo y por zona en ventanas de 1 s, 1 min y 15 min
+ * (mínimo, máximo, media, energía y percentiles), mantenidas en memoria a medida que llegan
+ * las lecturas para responder sin recorrer el histórico.
+ * <p>
+ * Cada lectura que aplica el motor se anota en la {@link SerieConsumo} de su dispositivo, que ocupa
+ * una cantidad fija de memoria; a partir de {@code maxDispositivos} los dispositivos nuevos no se siguen.
+ * El consumo de cada zona se muestrea del motor a intervalos fijos, porque es la suma de sus
+ * dispositivos y no tiene lecturas propias.
+ */
+public class EstadisticasConsumo implements CambiosMotorListener {
+
+    private static final Logger log = LoggerFactory.getLogger(EstadisticasConsumo.class);
+
+    /** Cubos de los bocetos de cuantiles de cada dispositivo, que hay muchos */
+    static final int CUBOS_DISPOSITIVO = 32;
+
+    /** Cubos de los bocetos de cuantiles de cada zona, que hay pocas */
+    static final int CUBOS_ZONA = 512;
+
+    private final SmartGridDecisionEngine ia;
+    private final int maxDispositivos;
+    private final long muestreoZonasMs;
+    private final double errorRelativo;
+
+    private final Map<String, SerieConsumo> dispositivos = new ConcurrentHashMap<>();
+    private final Map<String, SerieConsumo> zonas = new ConcurrentHashMap<>();
+    private final LongAdder sinSeguimiento = new LongAdder();
+
+    private ScheduledExecutorService muestreo;
+
+    /**
+     * @param ia              motor de decisiones a observar
+     * @param maxDispositivos dispositivos con estadísticas como máximo
+     * @param muestreoZonasMs intervalo de muestreo del consumo de las zonas
+     * @param errorRelativo   error relativo de los percentiles
+     */
+    public EstadisticasConsumo(SmartGridDecisionEngine ia, int maxDispositivos, long muestreoZonasMs,
+                               double errorRelativo) {
+        this.ia = ia;
+        this.maxDispositivos = maxDispositivos;
+        this.muestreoZonasMs = Math.max(1, muestreoZonasMs);
+        this.errorRelativo = errorRelativo;
+    }
+
+    /**
+     * Empieza a observar el motor y a muestrear las zonas.
+     */
+    public synchronized void iniciar() {
+        if (muestreo != null) return;
+        ia.añadirListener(this);
+        muestreo = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "estadisticas-zonas");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        muestreo.scheduleAtFixedRate(this::muestrearSinFallar, muestreoZonasMs, muestreoZonasMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Deja de observar el motor y de muestrear las zonas.
+     */
+    public synchronized void close() {
+        if (muestreo == null) return;
+        ia.quitarListener(this);
+        muestreo.shutdownNow();
+        muestreo = null;
+    }
+
+    @Override
+    public void dispositivoActualizado(Dispositivo dispositivo, boolean conectado) {
+        SerieConsumo serie = dispositivos.get(dispositivo.getNombre());
+        if (serie == null) {
+            if (dispositivos.size() >= maxDispositivos) {
+                sinSeguimiento.increment();
+                return;
+            }
+            serie = dispositivos.computeIfAbsent(dispositivo.getNombre(),
+                    nombre -> new SerieConsumo(errorRelativo, CUBOS_DISPOSITIVO));
+        }
+        serie.registrar(System.currentTimeMillis(), dispositivo.getConsumo());
+    }
+
+    @Override
+    public void dispositivoDesconectado(String nombre, String zona, boolean automatico) {
+        SerieConsumo serie = dispositivos.get(nombre);
+        if (serie != null) {
+            serie.desconectar(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Anota el consumo actual de cada zona del motor.
+     *
+     * @param ahoraMs instante del muestreo en milisegundos desde epoch
+     */
+    public void muestrearZonas(long ahoraMs) {
+        for (String zona : ia.getZonas()) {
+            zonas.computeIfAbsent(zona, z -> new SerieConsumo(errorRelativo, CUBOS_ZONA))
+                    .registrar(ahoraMs, ia.getConsumoZona(zona));
+        }
+    }
+
+    private void muestrearSinFallar() {
+        try {
+            muestrearZonas(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            log.error("❌ Error al muestrear el consumo de las zonas", e);
+        }
+    }
+
+    /**
+     * Estadísticas de un dispositivo.
+     *
+     * @param nombre  nombre del dispositivo
+     * @param ahoraMs instante de la consulta en milisegundos desde epoch
+     * @return ventanas por periodo ("1s", "1m", "15m"), o vacío si el dispositivo no tiene estadísticas
+     */
+    public Optional<Map<String, SerieConsumo.Ventana>> consultarDispositivo(String nombre, long ahoraMs) {
+        return Optional.ofNullable(dispositivos.get(nombre)).map(serie -> serie.consultar(ahoraMs));
+    }
+
+    /**
+     * Estadísticas del consumo total de una zona.
+     *
+     * @param zona    nombre de la zona ("sin_zona" para los dispositivos sin zona)
+     * @param ahoraMs instante de la consulta en milisegundos desde epoch
+     * @return ventanas por periodo ("1s", "1m", "15m"), o vacío si la zona no se ha muestreado
+     */
+    public Optional<Map<String, SerieConsumo.Ventana>> consultarZona(String zona, long ahoraMs) {
+        return Optional.ofNullable(zonas.get(zona)).map(serie -> serie.consultar(ahoraMs));
+    }
+
+    /**
+     * Zonas con estadísticas.
+     */
+    public Set<String> getZonas() {
+        return new TreeSet<>(zonas.keySet());
+    }
+
+    /**
+     * Número de dispositivos con estadísticas.
+     */
+    public int getNumeroDispositivos() {
+        return dispositivos.size();
+    }
+
+    /**
+     * Lecturas de dispositivos que no se han seguido por haber alcanzado el máximo.
+     */
+    public long getSinSeguimiento() {
+        return sinSeguimiento.sum();
+    }
+}
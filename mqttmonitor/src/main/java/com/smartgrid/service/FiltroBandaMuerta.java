@@ -0,0 +1,153 @@
+package com.smartgrid.service;
+
+import com.smartgrid.logic.CambiosMotorListener;
+import com.smartgrid.logic.Lectura;
+import com.smartgrid.model.Dispositivo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Filtro de banda muerta delante del motor de decisiones: muchos medidores repiten el mismo valor
+ * (o casi) cada segundo y cada repetición recorre el motor entero sin cambiar ninguna decisión.
+ * <p>
+ * Una lectura solo pasa al motor si se aleja de la última aplicada del dispositivo más que la banda
+ * (el mayor de un umbral absoluto en Watts y un porcentaje del último valor), o si la última aplicada
+ * tiene más de {@code maxAntiguedadMs}. Dentro de un lote solo se conserva la última lectura de cada
+ * dispositivo, que es la que el motor dejaría de todos modos.
+ * <p>
+ * Se registra como {@link CambiosMotorListener} para no dejar al motor con un valor distinto del medido:
+ * cuando el motor desconecta un dispositivo o le ajusta la potencia, el filtro olvida su referencia y
+ * la siguiente lectura pasa siempre, igual que la de un dispositivo nuevo o actualizado en el registro.
+ */
+public class FiltroBandaMuerta implements CambiosMotorListener {
+
+    /**
+     * Última lectura aplicada de un dispositivo.
+     */
+    private static final class Referencia {
+        Dispositivo dispositivo;
+        double consumo;
+        long aplicada;
+
+        Referencia(Dispositivo dispositivo, double consumo, long aplicada) {
+            this.dispositivo = dispositivo;
+            this.consumo = consumo;
+            this.aplicada = aplicada;
+        }
+    }
+
+    private final double umbralAbsoluto;
+    private final double umbralRelativo;
+    private final long maxAntiguedadNanos;
+
+    /** Última lectura aplicada por nombre de dispositivo */
+    private final Map<String, Referencia> referencias = new ConcurrentHashMap<>();
+
+    private final LongAdder dentroDeBanda = new LongAdder();
+    private final LongAdder coalescidas = new LongAdder();
+
+    /**
+     * @param umbralAbsoluto   variación mínima en Watts para aplicar una lectura
+     * @param umbralPorcentaje variación mínima en porcentaje del último valor aplicado
+     * @param maxAntiguedadMs  tiempo tras el que se aplica la lectura aunque no varíe (0 = sin límite)
+     */
+    public FiltroBandaMuerta(double umbralAbsoluto, double umbralPorcentaje, long maxAntiguedadMs) {
+        this.umbralAbsoluto = Math.max(0, umbralAbsoluto);
+        this.umbralRelativo = Math.max(0, umbralPorcentaje) / 100;
+        this.maxAntiguedadNanos = maxAntiguedadMs > 0 ? TimeUnit.MILLISECONDS.toNanos(maxAntiguedadMs) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Decide si una lectura debe llegar al motor y, si es así, la toma como nueva referencia.
+     *
+     * @param dispositivo dispositivo de la lectura, tal y como lo devuelve el registro
+     * @param consumo     consumo leído en Watts
+     * @param ahora       instante de la decisión ({@link System#nanoTime()})
+     * @return true si hay que aplicarla
+     */
+    public boolean admitir(Dispositivo dispositivo, double consumo, long ahora) {
+        Referencia referencia = referencias.get(dispositivo.getNombre());
+        if (referencia == null) {
+            referencias.put(dispositivo.getNombre(), new Referencia(dispositivo, consumo, ahora));
+            return true;
+        }
+
+        synchronized (referencia) {
+            // Un dispositivo modificado en el registro (zona, criticidad) llega como una instancia nueva
+            double banda = Math.max(umbralAbsoluto, umbralRelativo * Math.abs(referencia.consumo));
+            if (referencia.dispositivo == dispositivo && ahora - referencia.aplicada < maxAntiguedadNanos
+                    && Math.abs(consumo - referencia.consumo) <= banda) {
+                dentroDeBanda.increment();
+                return false;
+            }
+            referencia.dispositivo = dispositivo;
+            referencia.consumo = consumo;
+            referencia.aplicada = ahora;
+            return true;
+        }
+    }
+
+    /**
+     * Filtra un lote: deja la última lectura de cada dispositivo y, de ellas, las que salen de la banda.
+     *
+     * @param lecturas lecturas en orden de llegada
+     * @param ahora    instante de la decisión ({@link System#nanoTime()})
+     * @return lecturas que hay que aplicar, en el orden en que llegó la última de cada dispositivo
+     */
+    public List<Lectura> filtrar(List<Lectura> lecturas, long ahora) {
+        List<Lectura> admitidas = new ArrayList<>(lecturas.size());
+        Set<String> vistos = lecturas.size() > 1 ? new HashSet<>() : null;
+        for (int i = lecturas.size() - 1; i >= 0; i--) {
+            Lectura lectura = lecturas.get(i);
+            if (vistos != null && !vistos.add(lectura.dispositivo().getNombre())) {
+                coalescidas.increment();
+                continue;
+            }
+            if (admitir(lectura.dispositivo(), lectura.consumo(), ahora)) {
+                admitidas.add(lectura);
+            }
+        }
+        Collections.reverse(admitidas);
+        return admitidas;
+    }
+
+    @Override
+    public void dispositivoActualizado(Dispositivo dispositivo, boolean conectado) {
+        // Un ajuste de potencia deja en el motor un valor distinto del último medido
+        Referencia referencia = referencias.get(dispositivo.getNombre());
+        if (referencia == null) return;
+        synchronized (referencia) {
+            if (referencia.consumo != dispositivo.getConsumo()) {
+                referencias.remove(dispositivo.getNombre(), referencia);
+            }
+        }
+    }
+
+    @Override
+    public void dispositivoDesconectado(String nombre, String zona, boolean automatico) {
+        // La siguiente lectura tiene que volver a darlo de alta en el motor
+        referencias.remove(nombre);
+    }
+
+    /**
+     * Lecturas que no han llegado al motor por quedar dentro de la banda.
+     */
+    public long getDentroDeBanda() {
+        return dentroDeBanda.sum();
+    }
+
+    /**
+     * Lecturas sustituidas por una posterior del mismo dispositivo en el mismo lote.
+     */
+    public long getCoalescidas() {
+        return coalescidas.sum();
+    }
+}
@@ -0,0 +1,385 @@
+package com.smartgrid.service;
+
+import com.smartgrid.logic.AgregadosConsumo;
+import com.smartgrid.logic.Lectura;
+import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Foto inmutable de los dispositivos activos del motor para la API de consulta, publicada como mucho
+ * una vez cada {@code intervaloMs}.
+ * <p>
+ * La foto se copia del motor bajo demanda, cuando la actual ha caducado: una sola petición la rehace y el
+ * resto sigue leyendo la anterior mientras tanto, así que las consultas nunca compiten con la ingesta más
+ * que al copiar. Guarda los dispositivos ordenados por nombre y por consumo, y las páginas se sirven por
+ * cursor (el último dispositivo devuelto) con una búsqueda binaria en el orden pedido, sin copiar la flota.
+ * Como el cursor es una clave y no una posición, una consulta puede continuar sobre una foto más reciente.
+ * <p>
+ * Cada foto lleva además índices por zona y por criticidad, en los mismos dos órdenes, de modo que una
+ * página filtrada recorre solo los dispositivos de su zona o criticidad. El rango de consumo se acota con
+ * búsqueda binaria cuando se ordena por consumo; solo los criterios restantes se comprueban uno a uno.
+ */
+public class FotoDispositivos {
+
+    /**
+     * Estado de un dispositivo activo en la foto.
+     *
+     * @param zona null para los dispositivos sin zona
+     */
+    public record EstadoDispositivo(String nombre, String zona, NivelCriticidad criticidad, double consumo) {
+    }
+
+    /**
+     * Criterios que deben cumplir los dispositivos de una página; los null no filtran.
+     *
+     * @param zona          nombre de la zona ("sin_zona" para los dispositivos sin zona)
+     * @param criticidad    nivel de criticidad
+     * @param consumoMinimo consumo mínimo en Watts, incluido
+     * @param consumoMaximo consumo máximo en Watts, incluido
+     */
+    public record Filtro(String zona, NivelCriticidad criticidad, Double consumoMinimo, Double consumoMaximo) {
+
+        /** Sin filtros: todos los dispositivos activos */
+        public static final Filtro TODOS = new Filtro(null, null, null, null);
+
+        boolean admite(EstadoDispositivo estado) {
+            return (zona == null || zona.equals(claveZona(estado)))
+                    && (criticidad == null || criticidad == estado.criticidad())
+                    && (consumoMinimo == null || estado.consumo() >= consumoMinimo)
+                    && (consumoMaximo == null || estado.consumo() <= consumoMaximo);
+        }
+    }
+
+    /**
+     * Orden de las páginas. Los empates de consumo se deshacen por nombre.
+     */
+    public enum Orden {
+        NOMBRE("nombre"), NOMBRE_DESC("-nombre"), CONSUMO("consumo"), CONSUMO_DESC("-consumo");
+
+        private final String parametro;
+
+        Orden(String parametro) {
+            this.parametro = parametro;
+        }
+
+        /**
+         * Orden a partir del parámetro de la petición ("nombre", "-nombre", "consumo", "-consumo").
+         *
+         * @throws IllegalArgumentException si no es ninguno de ellos
+         */
+        public static Orden de(String parametro) {
+            for (Orden orden : values()) {
+                if (orden.parametro.equals(parametro)) return orden;
+            }
+            throw new IllegalArgumentException("Orden desconocido: " + parametro);
+        }
+
+        boolean isPorConsumo() {
+            return this == CONSUMO || this == CONSUMO_DESC;
+        }
+
+        boolean isDescendente() {
+            return this == NOMBRE_DESC || this == CONSUMO_DESC;
+        }
+    }
+
+    /**
+     * Página de dispositivos con el resumen de la foto de la que sale.
+     *
+     * @param version        número de la foto; sube con cada publicación
+     * @param instanteMs     instante en que se tomó la foto, en milisegundos desde epoch
+     * @param activos        dispositivos activos en la foto
+     * @param consumoTotal   suma del consumo de los dispositivos de la foto en Watts
+     * @param limite         límite global en Watts
+     * @param alertaCriticos alerta por consumo de críticos al tomar la foto
+     * @param dispositivos   dispositivos de la página
+     * @param siguiente      cursor de la página siguiente, o null si no quedan dispositivos que cumplan el filtro
+     */
+    public record Pagina(long version, long instanteMs, int activos, double consumoTotal, double limite,
+                         boolean alertaCriticos, List<EstadoDispositivo> dispositivos, String siguiente) {
+    }
+
+    private static final Comparator<EstadoDispositivo> POR_NOMBRE = Comparator.comparing(EstadoDispositivo::nombre);
+
+    private static final Comparator<EstadoDispositivo> POR_CONSUMO =
+            Comparator.comparingDouble(EstadoDispositivo::consumo).thenComparing(EstadoDispositivo::nombre);
+
+    /**
+     * Dispositivos en los dos órdenes que admite la API.
+     */
+    private record Indice(EstadoDispositivo[] porNombre, EstadoDispositivo[] porConsumo) {
+
+        static final Indice VACIO = new Indice(new EstadoDispositivo[0], new EstadoDispositivo[0]);
+
+        EstadoDispositivo[] ordenados(Orden orden) {
+            return orden.isPorConsumo() ? porConsumo : porNombre;
+        }
+
+        int size() {
+            return porNombre.length;
+        }
+    }
+
+    /**
+     * Dispositivos activos en un instante, con sus índices por zona y por criticidad.
+     */
+    private record Foto(long version, long instanteMs, Indice todos, Map<String, Indice> porZona,
+                        Map<NivelCriticidad, Indice> porCriticidad, double consumoTotal, double limite,
+                        boolean alertaCriticos) {
+
+        /**
+         * Índice más pequeño que contiene todos los dispositivos que pueden cumplir el filtro.
+         */
+        Indice indice(Filtro filtro) {
+            Indice indice = todos;
+            if (filtro.zona() != null) {
+                indice = porZona.getOrDefault(filtro.zona(), Indice.VACIO);
+            }
+            if (filtro.criticidad() != null) {
+                Indice deCriticidad = porCriticidad.getOrDefault(filtro.criticidad(), Indice.VACIO);
+                if (deCriticidad.size() < indice.size()) {
+                    indice = deCriticidad;
+                }
+            }
+            return indice;
+        }
+    }
+
+    private final SmartGridDecisionEngine ia;
+    private final long intervaloMs;
+
+    // Solo una petición rehace la foto; las demás siguen con la anterior
+    private final ReentrantLock publicando = new ReentrantLock();
+
+    private volatile Foto foto;
+
+    private final LongAdder publicaciones = new LongAdder();
+
+    /**
+     * @param ia          motor de decisiones del que se copian los dispositivos
+     * @param intervaloMs tiempo mínimo entre dos fotos
+     */
+    public FotoDispositivos(SmartGridDecisionEngine ia, long intervaloMs) {
+        this.ia = ia;
+        this.intervaloMs = Math.max(0, intervaloMs);
+    }
+
+    /**
+     * Página de dispositivos activos de la foto vigente.
+     *
+     * @param filtro  criterios que deben cumplir los dispositivos
+     * @param orden   orden de la página
+     * @param cursor  cursor devuelto en la página anterior, o null para la primera
+     * @param tamaño  número máximo de dispositivos de la página (al menos 1)
+     * @param ahoraMs instante de la consulta en milisegundos desde epoch
+     * @return página con los dispositivos que cumplen el filtro a partir del cursor
+     * @throws IllegalArgumentException si el cursor no es válido
+     */
+    public Pagina consultar(Filtro filtro, Orden orden, String cursor, int tamaño, long ahoraMs) {
+        Foto actual = getFoto(ahoraMs);
+        EstadoDispositivo[] ordenados = actual.indice(filtro).ordenados(orden);
+        Comparator<EstadoDispositivo> comparador = orden.isPorConsumo() ? POR_CONSUMO : POR_NOMBRE;
+        int paso = orden.isDescendente() ? -1 : 1;
+
+        // Tramo [desde, hasta) que puede cumplir el filtro; por consumo, el rango se acota sin recorrerlo
+        int desde = 0;
+        int hasta = ordenados.length;
+        if (orden.isPorConsumo()) {
+            if (filtro.consumoMinimo() != null) {
+                desde = primeroNoMenor(ordenados, new EstadoDispositivo("", null, null, filtro.consumoMinimo()),
+                        POR_CONSUMO);
+            }
+            if (filtro.consumoMaximo() != null) {
+                hasta = primeroMayorConsumo(ordenados, filtro.consumoMaximo());
+            }
+        }
+
+        int i;
+        if (cursor == null) {
+            i = orden.isDescendente() ? hasta - 1 : desde;
+        } else {
+            EstadoDispositivo clave = decodificar(cursor);
+            // Primer dispositivo posterior al cursor en el sentido del orden
+            i = orden.isDescendente() ? Math.min(hasta, primeroNoMenor(ordenados, clave, comparador)) - 1
+                    : Math.max(desde, primeroMayor(ordenados, clave, comparador));
+        }
+
+        // Se busca uno más de los pedidos para saber si la página siguiente tendrá alguno
+        int limite = Math.max(1, tamaño);
+        List<EstadoDispositivo> pagina = new ArrayList<>(Math.min(limite + 1, Math.max(0, hasta - desde)));
+        for (; i >= desde && i < hasta && pagina.size() <= limite; i += paso) {
+            if (filtro.admite(ordenados[i])) {
+                pagina.add(ordenados[i]);
+            }
+        }
+
+        boolean hayMas = pagina.size() > limite;
+        if (hayMas) {
+            pagina.remove(limite);
+        }
+        return new Pagina(actual.version(), actual.instanteMs(), actual.todos().size(), actual.consumoTotal(),
+                actual.limite(), actual.alertaCriticos(), pagina,
+                hayMas ? codificar(pagina.get(pagina.size() - 1)) : null);
+    }
+
+    /**
+     * Foto vigente; si ha caducado, la rehace quien llega primero y el resto usa la anterior.
+     */
+    private Foto getFoto(long ahoraMs) {
+        Foto actual = foto;
+        if (actual != null && ahoraMs - actual.instanteMs() < intervaloMs) return actual;
+
+        if (actual == null) {
+            publicando.lock(); // la primera vez no hay otra que servir
+        } else if (!publicando.tryLock()) {
+            return actual;
+        }
+        try {
+            actual = foto;
+            if (actual != null && ahoraMs - actual.instanteMs() < intervaloMs) return actual;
+
+            actual = tomarFoto(actual == null ? 1 : actual.version() + 1, ahoraMs);
+            foto = actual;
+            publicaciones.increment();
+            return actual;
+        } finally {
+            publicando.unlock();
+        }
+    }
+
+    private Foto tomarFoto(long version, long ahoraMs) {
+        List<Lectura> lecturas = ia.getLecturasActivas();
+        EstadoDispositivo[] porNombre = new EstadoDispositivo[lecturas.size()];
+        double total = 0;
+        for (int i = 0; i < porNombre.length; i++) {
+            Lectura lectura = lecturas.get(i);
+            Dispositivo dispositivo = lectura.dispositivo();
+            porNombre[i] = new EstadoDispositivo(dispositivo.getNombre(), dispositivo.getZona(),
+                    dispositivo.getCriticidad(), lectura.consumo());
+            total += lectura.consumo();
+        }
+        EstadoDispositivo[] porConsumo = porNombre.clone();
+        Arrays.sort(porNombre, POR_NOMBRE);
+        Arrays.sort(porConsumo, POR_CONSUMO);
+
+        // Los índices se reparten recorriendo los arrays ya ordenados, así que salen ordenados sin volver a ordenar
+        Map<String, List<EstadoDispositivo>> zonasPorNombre = new HashMap<>();
+        Map<String, List<EstadoDispositivo>> zonasPorConsumo = new HashMap<>();
+        Map<NivelCriticidad, List<EstadoDispositivo>> criticidadesPorNombre = new EnumMap<>(NivelCriticidad.class);
+        Map<NivelCriticidad, List<EstadoDispositivo>> criticidadesPorConsumo = new EnumMap<>(NivelCriticidad.class);
+        for (EstadoDispositivo estado : porNombre) {
+            zonasPorNombre.computeIfAbsent(claveZona(estado), z -> new ArrayList<>()).add(estado);
+            if (estado.criticidad() != null) {
+                criticidadesPorNombre.computeIfAbsent(estado.criticidad(), c -> new ArrayList<>()).add(estado);
+            }
+        }
+        for (EstadoDispositivo estado : porConsumo) {
+            zonasPorConsumo.computeIfAbsent(claveZona(estado), z -> new ArrayList<>()).add(estado);
+            if (estado.criticidad() != null) {
+                criticidadesPorConsumo.computeIfAbsent(estado.criticidad(), c -> new ArrayList<>()).add(estado);
+            }
+        }
+
+        Map<String, Indice> porZona = new HashMap<>();
+        zonasPorNombre.forEach((zona, deLaZona) -> porZona.put(zona, indice(deLaZona, zonasPorConsumo.get(zona))));
+        Map<NivelCriticidad, Indice> porCriticidad = new EnumMap<>(NivelCriticidad.class);
+        criticidadesPorNombre.forEach((criticidad, deLaCriticidad) -> porCriticidad.put(criticidad,
+                indice(deLaCriticidad, criticidadesPorConsumo.get(criticidad))));
+        return new Foto(version, ahoraMs, new Indice(porNombre, porConsumo), porZona, porCriticidad, total,
+                ia.getLimiteConsumo(), ia.isAlertaCriticos());
+    }
+
+    private static Indice indice(List<EstadoDispositivo> porNombre, List<EstadoDispositivo> porConsumo) {
+        return new Indice(porNombre.toArray(EstadoDispositivo[]::new), porConsumo.toArray(EstadoDispositivo[]::new));
+    }
+
+    private static String claveZona(EstadoDispositivo estado) {
+        return estado.zona() == null ? AgregadosConsumo.SIN_ZONA : estado.zona();
+    }
+
+    private static int primeroMayor(EstadoDispositivo[] ordenados, EstadoDispositivo clave,
+                                    Comparator<EstadoDispositivo> comparador) {
+        int bajo = 0;
+        int alto = ordenados.length;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (comparador.compare(ordenados[medio], clave) <= 0) {
+                bajo = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return bajo;
+    }
+
+    private static int primeroNoMenor(EstadoDispositivo[] ordenados, EstadoDispositivo clave,
+                                      Comparator<EstadoDispositivo> comparador) {
+        int bajo = 0;
+        int alto = ordenados.length;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (comparador.compare(ordenados[medio], clave) < 0) {
+                bajo = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return bajo;
+    }
+
+    /**
+     * Posición del primer dispositivo con más consumo que el indicado, en un array ordenado por consumo.
+     */
+    private static int primeroMayorConsumo(EstadoDispositivo[] porConsumo, double consumo) {
+        int bajo = 0;
+        int alto = porConsumo.length;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (porConsumo[medio].consumo() <= consumo) {
+                bajo = medio + 1;
+            } else {
+                alto = medio;
+            }
+        }
+        return bajo;
+    }
+
+    /**
+     * Cursor opaco con el consumo y el nombre del último dispositivo devuelto.
+     */
+    private static String codificar(EstadoDispositivo ultimo) {
+        String clave = ultimo.consumo() + ":" + ultimo.nombre();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(clave.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static EstadoDispositivo decodificar(String cursor) {
+        try {
+            String clave = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separador = clave.indexOf(':');
+            return new EstadoDispositivo(clave.substring(separador + 1), null, null,
+                    Double.parseDouble(clave.substring(0, separador)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Cursor inválido: " + cursor, e);
+        }
+    }
+
+    /**
+     * Número de fotos tomadas desde el arranque.
+     */
+    public long getPublicaciones() {
+        return publicaciones.sum();
+    }
+}
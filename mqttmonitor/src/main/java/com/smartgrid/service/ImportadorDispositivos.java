@@ -0,0 +1,416 @@
+package com.smartgrid.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Alta masiva de dispositivos desde CSV o NDJSON, sin pasar por Hibernate.
+ * <p>
+ * La entrada se lee en streaming y se escribe por tramos de {@code filasPorLote} dispositivos, cada uno en su
+ * propia transacción:
+ * <ul>
+ *     <li>Se buscan con una sola consulta los nombres del tramo que ya existen; esos se actualizan
+ *     (zona y criticidad) con un lote JDBC.</li>
+ *     <li>Para los nuevos se reservan de una vez los ids de la secuencia de {@code dispositivos} y se insertan
+ *     con un lote JDBC con el id ya puesto (con la generación IDENTITY de JPA cada fila necesitaría su propia
+ *     ida y vuelta, y Hibernate desactiva los lotes).</li>
+ *     <li>Tras confirmar el tramo, sus dispositivos se dan de alta en {@link RegistroDispositivos}, de modo que
+ *     la ingesta los reconoce sin reiniciar ni esperar a que caduque la caché negativa.</li>
+ * </ul>
+ * Los nombres se guardan normalizados, como los busca la ingesta; si un nombre se repite, gana la última fila.
+ * Las filas inválidas se cuentan y se informa de las primeras {@code maxErrores} sin detener la importación;
+ * un error de la base de datos la detiene, con los tramos anteriores ya confirmados.
+ * Solo se admite una importación a la vez.
+ * <p>
+ * Formatos:
+ * <ul>
+ *     <li>CSV con cabecera, separado por comas, con las columnas {@code nombre}, {@code zona} (opcional)
+ *     y {@code criticidad} en cualquier orden. Los campos pueden ir entre comillas dobles.</li>
+ *     <li>NDJSON: un objeto por línea, p. ej. {@code {"nombre":"horno","zona":"cocina","criticidad":"BAJA"}}.</li>
+ * </ul>
+ */
+public class ImportadorDispositivos {
+
+    private static final Logger log = LoggerFactory.getLogger(ImportadorDispositivos.class);
+
+    static final String RESERVAR_IDS = "SELECT nextval(pg_get_serial_sequence('dispositivos', 'id')) "
+            + "FROM generate_series(1, ?)";
+    static final String INSERTAR = "INSERT INTO dispositivos (id, nombre, zona, criticidad) VALUES (?, ?, ?, ?)";
+    static final String ACTUALIZAR = "UPDATE dispositivos SET zona = ?, criticidad = ? WHERE nombre = ?";
+    static final String BUSCAR = "SELECT id, nombre FROM dispositivos WHERE nombre IN (%s) ORDER BY id";
+
+    /**
+     * Formato de la entrada.
+     */
+    public enum Formato {
+        CSV, NDJSON
+    }
+
+    /**
+     * Resultado de una importación.
+     *
+     * @param leidas       filas leídas (sin contar cabecera ni líneas en blanco)
+     * @param insertadas   dispositivos dados de alta
+     * @param actualizadas dispositivos existentes actualizados
+     * @param rechazadas   filas inválidas
+     * @param errores      primeros errores, con su número de línea
+     */
+    public record Resultado(long leidas, long insertadas, long actualizadas, long rechazadas, List<String> errores) {
+    }
+
+    /**
+     * Dispositivo leído de la entrada, con el nombre ya normalizado.
+     */
+    record Fila(String nombre, String zona, NivelCriticidad criticidad) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionOperations transacciones;
+    private final RegistroDispositivos registro;
+    private final ObjectMapper mapper;
+    private final int filasPorLote;
+    private final int maxErrores;
+
+    private final ReentrantLock enCurso = new ReentrantLock();
+
+    /**
+     * @param jdbcTemplate  acceso JDBC a la base de datos
+     * @param transacciones transacción de cada tramo
+     * @param registro      registro en memoria que se actualiza tras cada tramo
+     * @param mapper        lector de las líneas NDJSON
+     * @param filasPorLote  dispositivos por tramo (y por lote JDBC)
+     * @param maxErrores    errores de filas que se devuelven como mucho
+     */
+    public ImportadorDispositivos(JdbcTemplate jdbcTemplate, TransactionOperations transacciones,
+                                  RegistroDispositivos registro, ObjectMapper mapper, int filasPorLote, int maxErrores) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transacciones = transacciones;
+        this.registro = registro;
+        this.mapper = mapper;
+        this.filasPorLote = Math.max(1, filasPorLote);
+        this.maxErrores = Math.max(0, maxErrores);
+    }
+
+    /**
+     * Importa los dispositivos de la entrada.
+     *
+     * @param entrada contenido en UTF-8; no se cierra
+     * @param formato formato de la entrada
+     * @return recuento de la importación
+     * @throws IllegalStateException    si ya hay otra importación en curso
+     * @throws IllegalArgumentException si la cabecera CSV no tiene las columnas obligatorias
+     */
+    public Resultado importar(InputStream entrada, Formato formato) {
+        if (!enCurso.tryLock()) {
+            throw new IllegalStateException("Ya hay una importación de dispositivos en curso");
+        }
+        try {
+            Importacion importacion = new Importacion(formato);
+            importacion.leer(new BufferedReader(new InputStreamReader(entrada, StandardCharsets.UTF_8)));
+            Resultado resultado = importacion.resultado();
+            log.info("✅ Importación de dispositivos: {} leídas, {} altas, {} actualizadas, {} rechazadas",
+                    resultado.leidas(), resultado.insertadas(), resultado.actualizadas(), resultado.rechazadas());
+            return resultado;
+        } finally {
+            enCurso.unlock();
+        }
+    }
+
+    /**
+     * Estado de una importación: el tramo pendiente y los contadores.
+     */
+    private final class Importacion {
+
+        private final Formato formato;
+        private final Map<String, Fila> tramo = new LinkedHashMap<>();
+        private final List<String> errores = new ArrayList<>();
+
+        private Map<String, Integer> columnas;
+        private long leidas;
+        private long insertadas;
+        private long actualizadas;
+        private long rechazadas;
+
+        Importacion(Formato formato) {
+            this.formato = formato;
+        }
+
+        void leer(BufferedReader lector) {
+            try {
+                String linea;
+                long numero = 0;
+                while ((linea = lector.readLine()) != null) {
+                    numero++;
+                    if (linea.isBlank()) continue;
+                    if (formato == Formato.CSV && columnas == null) {
+                        columnas = cabecera(linea);
+                        continue;
+                    }
+
+                    leidas++;
+                    try {
+                        Fila fila = formato == Formato.CSV ? filaCsv(linea) : filaNdjson(linea);
+                        tramo.remove(fila.nombre()); // la última fila con el nombre va al final del tramo
+                        tramo.put(fila.nombre(), fila);
+                    } catch (IllegalArgumentException e) {
+                        rechazar(numero, e.getMessage());
+                    }
+                    if (tramo.size() == filasPorLote) {
+                        escribirTramo();
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                // Lo leído antes de un error de lectura también se guarda
+                if (!tramo.isEmpty()) {
+                    escribirTramo();
+                }
+            }
+        }
+
+        private void rechazar(long numero, String motivo) {
+            rechazadas++;
+            if (errores.size() < maxErrores) {
+                errores.add("Línea " + numero + ": " + motivo);
+            }
+        }
+
+        private Fila filaCsv(String linea) {
+            List<String> campos = separarCsv(linea);
+            return fila(campo(campos, "nombre"), campo(campos, "zona"), campo(campos, "criticidad"));
+        }
+
+        private String campo(List<String> campos, String columna) {
+            Integer posicion = columnas.get(columna);
+            return posicion == null || posicion >= campos.size() ? null : campos.get(posicion);
+        }
+
+        private Fila filaNdjson(String linea) {
+            JsonNode nodo;
+            try {
+                nodo = mapper.readTree(linea);
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("JSON inválido");
+            }
+            if (!nodo.isObject()) {
+                throw new IllegalArgumentException("Se esperaba un objeto JSON");
+            }
+            return fila(nodo.path("nombre").asText(null), nodo.path("zona").asText(null),
+                    nodo.path("criticidad").asText(null));
+        }
+
+        private void escribirTramo() {
+            List<Fila> filas = new ArrayList<>(tramo.values());
+            tramo.clear();
+
+            List<Dispositivo> escritos = transacciones.execute(estado -> escribir(filas));
+            for (Dispositivo dispositivo : escritos) {
+                registro.registrar(dispositivo);
+            }
+        }
+
+        /**
+         * Escribe un tramo: actualiza los nombres existentes e inserta los nuevos con ids reservados.
+         *
+         * @return los dispositivos del tramo con su id
+         */
+        private List<Dispositivo> escribir(List<Fila> filas) {
+            Map<String, Long> existentes = buscarExistentes(filas);
+
+            List<Fila> nuevas = new ArrayList<>();
+            List<Fila> cambiadas = new ArrayList<>();
+            for (Fila fila : filas) {
+                (existentes.containsKey(fila.nombre()) ? cambiadas : nuevas).add(fila);
+            }
+
+            List<Long> ids = nuevas.isEmpty() ? List.of()
+                    : jdbcTemplate.queryForList(RESERVAR_IDS, Long.class, nuevas.size());
+            if (ids.size() != nuevas.size()) {
+                throw new IncorrectResultSizeDataAccessException("Ids reservados para los dispositivos nuevos",
+                        nuevas.size(), ids.size());
+            }
+            if (!nuevas.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERTAR, lote(nuevas, (ps, fila, i) -> {
+                    ps.setLong(1, ids.get(i));
+                    ps.setString(2, fila.nombre());
+                    ponerZona(ps, 3, fila.zona());
+                    ps.setInt(4, fila.criticidad().ordinal());
+                }));
+            }
+            if (!cambiadas.isEmpty()) {
+                jdbcTemplate.batchUpdate(ACTUALIZAR, lote(cambiadas, (ps, fila, i) -> {
+                    ponerZona(ps, 1, fila.zona());
+                    ps.setInt(2, fila.criticidad().ordinal());
+                    ps.setString(3, fila.nombre());
+                }));
+            }
+            insertadas += nuevas.size();
+            actualizadas += cambiadas.size();
+
+            List<Dispositivo> escritos = new ArrayList<>(filas.size());
+            for (int i = 0; i < nuevas.size(); i++) {
+                escritos.add(dispositivo(ids.get(i), nuevas.get(i)));
+            }
+            for (Fila fila : cambiadas) {
+                escritos.add(dispositivo(existentes.get(fila.nombre()), fila));
+            }
+            return escritos;
+        }
+
+        /**
+         * Ids de los nombres del tramo que ya están dados de alta (el menor, si hay repetidos).
+         */
+        private Map<String, Long> buscarExistentes(List<Fila> filas) {
+            String marcas = String.join(", ", Collections.nCopies(filas.size(), "?"));
+            Object[] nombres = filas.stream().map(Fila::nombre).toArray();
+
+            Map<String, Long> existentes = new HashMap<>();
+            jdbcTemplate.query(String.format(BUSCAR, marcas), resultado -> {
+                existentes.putIfAbsent(resultado.getString("nombre"), resultado.getLong("id"));
+            }, nombres);
+            return existentes;
+        }
+
+        Resultado resultado() {
+            return new Resultado(leidas, insertadas, actualizadas, rechazadas, List.copyOf(errores));
+        }
+    }
+
+    /**
+     * Asigna los parámetros de una fila de un lote.
+     */
+    @FunctionalInterface
+    private interface Parametros {
+        void poner(PreparedStatement ps, Fila fila, int i) throws SQLException;
+    }
+
+    private static BatchPreparedStatementSetter lote(List<Fila> filas, Parametros parametros) {
+        return new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                parametros.poner(ps, filas.get(i), i);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return filas.size();
+            }
+        };
+    }
+
+    private static void ponerZona(PreparedStatement ps, int posicion, String zona) throws SQLException {
+        if (zona == null) {
+            ps.setNull(posicion, Types.VARCHAR);
+        } else {
+            ps.setString(posicion, zona);
+        }
+    }
+
+    private static Dispositivo dispositivo(Long id, Fila fila) {
+        Dispositivo dispositivo = new Dispositivo();
+        dispositivo.setId(id);
+        dispositivo.setNombre(fila.nombre());
+        dispositivo.setZona(fila.zona());
+        dispositivo.setCriticidad(fila.criticidad());
+        return dispositivo;
+    }
+
+    /**
+     * Valida y normaliza los campos de una fila.
+     *
+     * @throws IllegalArgumentException si falta el nombre o la criticidad no es válida
+     */
+    static Fila fila(String nombre, String zona, String criticidad) {
+        if (nombre == null || nombre.isBlank()) {
+            throw new IllegalArgumentException("Falta el nombre");
+        }
+        if (criticidad == null || criticidad.isBlank()) {
+            throw new IllegalArgumentException("Falta la criticidad de '" + nombre.trim() + "'");
+        }
+        NivelCriticidad nivel;
+        try {
+            nivel = NivelCriticidad.valueOf(criticidad.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Criticidad desconocida: " + criticidad.trim());
+        }
+        String zonaLimpia = zona == null || zona.isBlank() ? null : zona.trim();
+        return new Fila(RegistroDispositivos.normalizar(nombre), zonaLimpia, nivel);
+    }
+
+    /**
+     * Posición de cada columna a partir de la cabecera CSV.
+     *
+     * @throws IllegalArgumentException si faltan las columnas nombre o criticidad
+     */
+    static Map<String, Integer> cabecera(String linea) {
+        Map<String, Integer> columnas = new HashMap<>();
+        List<String> nombres = separarCsv(linea.startsWith("\uFEFF") ? linea.substring(1) : linea);
+        for (int i = 0; i < nombres.size(); i++) {
+            columnas.putIfAbsent(nombres.get(i).trim().toLowerCase(Locale.ROOT), i);
+        }
+        if (!columnas.containsKey("nombre") || !columnas.containsKey("criticidad")) {
+            throw new IllegalArgumentException("La cabecera CSV debe tener las columnas nombre y criticidad: " + linea);
+        }
+        return columnas;
+    }
+
+    /**
+     * Separa una línea CSV por comas. Los campos entre comillas dobles pueden contener comas
+     * y comillas escritas dos veces.
+     */
+    static List<String> separarCsv(String linea) {
+        List<String> campos = new ArrayList<>();
+        StringBuilder campo = new StringBuilder();
+        boolean entreComillas = false;
+        for (int i = 0; i < linea.length(); i++) {
+            char c = linea.charAt(i);
+            if (entreComillas) {
+                if (c != '"') {
+                    campo.append(c);
+                } else if (i + 1 < linea.length() && linea.charAt(i + 1) == '"') {
+                    campo.append('"');
+                    i++;
+                } else {
+                    entreComillas = false;
+                }
+            } else if (c == '"') {
+                entreComillas = true;
+            } else if (c == ',') {
+                campos.add(campo.toString());
+                campo.setLength(0);
+            } else {
+                campo.append(c);
+            }
+        }
+        campos.add(campo.toString());
+        return campos;
+    }
+}
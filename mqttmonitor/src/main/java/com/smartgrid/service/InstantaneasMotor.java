@@ -0,0 +1,464 @@
+package com.smartgrid.service;
+
+import com.smartgrid.logic.CambiosMotorListener;
+import com.smartgrid.logic.Desconectado;
+import com.smartgrid.logic.Lectura;
+import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Guarda el estado del motor en disco y lo restaura al arrancar, antes de suscribirse a MQTT.
+ * <p>
+ * Periódicamente se escribe una instantánea binaria de los dispositivos activos con su consumo
+ * ({@value #FICHERO_INSTANTANEA}) y, con histéresis, de los que el motor ha desconectado y esperan a
+ * restablecerse, con el instante de su desconexión. Entre instantáneas solo se anota qué dispositivos cambian (el último
+ * cambio gana, como en {@link DifusionDashboard}) y, a intervalos cortos, su estado actual se añade
+ * al final de un registro de cambios ({@value #FICHERO_REGISTRO}). Al arrancar se proyecta la instantánea
+ * en memoria, se aplica el registro encima y el motor recupera de una pasada los activos, su consumo y,
+ * al reevaluar los límites, las alertas. Los desconectados vuelven a esperar con su instante original, así
+ * que tras reiniciar siguen sin volver con sus lecturas hasta cumplir su tiempo mínimo y caber por debajo
+ * del umbral de restablecimiento.
+ * <p>
+ * La instantánea se escribe en un temporal que sustituye a la anterior con un movimiento atómico, y el
+ * registro lleva la generación de la instantánea a la que sigue: un registro de otra generación no se
+ * aplica. El registro no se sincroniza con el disco en cada escritura, así que sobrevive a la caída del
+ * proceso, pero un corte de luz puede perder los últimos intervalos.
+ */
+public class InstantaneasMotor implements CambiosMotorListener {
+
+    private static final Logger log = LoggerFactory.getLogger(InstantaneasMotor.class);
+
+    static final String FICHERO_INSTANTANEA = "motor.snap";
+    static final String FICHERO_REGISTRO = "motor.log";
+
+    private static final int MAGIA_INSTANTANEA = 0x534D4731; // "SMG1"
+    private static final int MAGIA_REGISTRO = 0x534D474C;    // "SMGL"
+
+    private static final byte ACTUALIZADO = 1;
+    private static final byte DESCONECTADO = 2;
+    private static final byte DESCONECTADO_MOTOR = 3;
+
+    private static final NivelCriticidad[] NIVELES = NivelCriticidad.values();
+
+    /**
+     * Contadores de las instantáneas en un instante dado.
+     */
+    public record Estadisticas(long generacion, long instantaneas, long cambiosRegistrados, int restaurados,
+                               long fallos) {
+    }
+
+    private final SmartGridDecisionEngine ia;
+    private final Path directorio;
+    private final long intervaloMs;
+    private final long registroMs;
+    private final long antiguedadMaximaMs;
+
+    /** Dispositivos con cambios pendientes de añadir al registro */
+    private final Set<String> pendientes = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder instantaneas = new LongAdder();
+    private final LongAdder cambiosRegistrados = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+
+    // Estado de escritura, protegido por el monitor de la instancia
+    private volatile long generacion;
+    private FileChannel registro;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private volatile int restaurados;
+
+    private ScheduledExecutorService planificador;
+
+    /**
+     * @param ia                 motor cuyo estado se guarda
+     * @param directorio         directorio de la instantánea y el registro
+     * @param intervaloMs        intervalo entre instantáneas completas
+     * @param registroMs         intervalo entre escrituras del registro de cambios
+     * @param antiguedadMaximaMs antigüedad máxima del estado guardado para restaurarlo
+     */
+    public InstantaneasMotor(SmartGridDecisionEngine ia, Path directorio, long intervaloMs, long registroMs,
+                             long antiguedadMaximaMs) {
+        this.ia = ia;
+        this.directorio = directorio;
+        this.intervaloMs = Math.max(1, intervaloMs);
+        this.registroMs = Math.max(1, registroMs);
+        this.antiguedadMaximaMs = antiguedadMaximaMs;
+    }
+
+    /**
+     * Carga en el motor el último estado guardado, si existe y no es demasiado antiguo.
+     * Debe llamarse antes de recibir lecturas.
+     *
+     * @return número de dispositivos activos restaurados
+     */
+    public synchronized int restaurar() {
+        long inicio = System.nanoTime();
+        Path instantanea = directorio.resolve(FICHERO_INSTANTANEA);
+        if (!Files.exists(instantanea)) {
+            log.info("ℹ️ No hay estado guardado del motor en '{}'", directorio);
+            return 0;
+        }
+
+        Map<String, Lectura> estado = new LinkedHashMap<>();
+        Map<String, Desconectado> esperando = new LinkedHashMap<>();
+        try {
+            long guardado = leerInstantanea(instantanea, estado, esperando);
+            Path ficheroRegistro = directorio.resolve(FICHERO_REGISTRO);
+            if (Files.exists(ficheroRegistro) && leerRegistro(ficheroRegistro, estado, esperando)) {
+                guardado = Math.max(guardado, Files.getLastModifiedTime(ficheroRegistro).toMillis());
+            }
+
+            long antiguedad = System.currentTimeMillis() - guardado;
+            if (antiguedad > antiguedadMaximaMs) {
+                log.warn("⚠️ Estado guardado del motor descartado por antiguo ({} s)", antiguedad / 1000);
+                return 0;
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("⚠️ No se pudo leer el estado guardado del motor en '{}': {}", directorio, e.getMessage());
+            return 0;
+        }
+
+        int pendientes = 0;
+        for (Desconectado desconectado : esperando.values()) {
+            Lectura lectura = desconectado.lectura();
+            if (ia.restaurarDesconectado(lectura.dispositivo(), lectura.consumo(), desconectado.desconectadoMs())) {
+                pendientes++;
+            }
+        }
+        ia.procesarLecturas(new ArrayList<>(estado.values()));
+        restaurados = estado.size();
+        log.info("♻️ Estado del motor restaurado: {} dispositivos activos y {} a la espera de restablecerse en {} ms",
+                estado.size(), pendientes, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio));
+        return estado.size();
+    }
+
+    /**
+     * Escribe una primera instantánea, empieza a anotar los cambios del motor y programa las escrituras.
+     */
+    public synchronized void iniciar() {
+        if (planificador != null) return;
+        ia.añadirListener(this);
+        guardarInstantanea();
+
+        planificador = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "motor-instantaneas");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        planificador.scheduleWithFixedDelay(this::volcarRegistro, registroMs, registroMs, TimeUnit.MILLISECONDS);
+        planificador.scheduleWithFixedDelay(this::guardarInstantanea, intervaloMs, intervaloMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Deja de anotar cambios y guarda una última instantánea con el estado final del motor.
+     */
+    public void close() {
+        ScheduledExecutorService actual;
+        synchronized (this) {
+            if (planificador == null) return;
+            actual = planificador;
+            planificador = null;
+        }
+        actual.shutdown();
+        try {
+            actual.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            ia.quitarListener(this);
+            guardarInstantanea();
+            cerrarRegistro();
+        }
+    }
+
+    @Override
+    public void dispositivoActualizado(Dispositivo dispositivo, boolean conectado) {
+        pendientes.add(dispositivo.getNombre());
+    }
+
+    @Override
+    public void dispositivoDesconectado(String nombre, String zona, boolean automatico) {
+        pendientes.add(nombre);
+    }
+
+    /**
+     * Escribe una instantánea completa y empieza un registro de cambios nuevo a continuación.
+     * Los cambios anotados mientras tanto se añaden al registro nuevo.
+     */
+    public synchronized void guardarInstantanea() {
+        long nueva = Math.max(generacion + 1, System.currentTimeMillis());
+        List<Lectura> activos = ia.getLecturasActivas();
+        List<Desconectado> esperando = ia.getDesconectados();
+        Path temporal = directorio.resolve(FICHERO_INSTANTANEA + ".tmp");
+        try {
+            Files.createDirectories(directorio);
+            try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                buffer.clear();
+                buffer.putInt(MAGIA_INSTANTANEA).putLong(nueva).putLong(System.currentTimeMillis())
+                        .putInt(activos.size());
+                for (Lectura lectura : activos) {
+                    escribirDispositivo(canal, lectura);
+                }
+                asegurar(canal, Integer.BYTES);
+                buffer.putInt(esperando.size());
+                for (Desconectado desconectado : esperando) {
+                    escribirDesconectado(canal, desconectado);
+                }
+                vaciar(canal);
+                canal.force(true);
+            }
+            Files.move(temporal, directorio.resolve(FICHERO_INSTANTANEA),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            generacion = nueva;
+            abrirRegistro();
+            instantaneas.increment();
+            log.debug("💾 Instantánea del motor guardada: {} dispositivos activos y {} a la espera",
+                    activos.size(), esperando.size());
+        } catch (IOException | RuntimeException e) {
+            fallos.increment();
+            log.error("❌ Error al guardar la instantánea del motor en '{}': {}", directorio, e.getMessage());
+        }
+    }
+
+    /**
+     * Añade al registro el estado actual de los dispositivos que han cambiado desde la última escritura:
+     * activo con su consumo, desconectado por el motor a la espera de restablecerse, o fuera del motor.
+     */
+    public synchronized void volcarRegistro() {
+        if (registro == null || pendientes.isEmpty()) return;
+
+        int cambios = 0;
+        try {
+            buffer.clear();
+            Iterator<String> nombres = pendientes.iterator();
+            while (nombres.hasNext()) {
+                String nombre = nombres.next();
+                nombres.remove();
+
+                Optional<Lectura> activo = ia.buscarActivo(nombre);
+                Optional<Desconectado> desconectado = activo.isPresent() ? Optional.empty()
+                        : ia.buscarDesconectado(nombre);
+                asegurar(registro, 1);
+                if (activo.isPresent()) {
+                    buffer.put(ACTUALIZADO);
+                    escribirDispositivo(registro, activo.get());
+                } else if (desconectado.isPresent()) {
+                    buffer.put(DESCONECTADO_MOTOR);
+                    escribirDesconectado(registro, desconectado.get());
+                } else {
+                    buffer.put(DESCONECTADO);
+                    escribirTexto(registro, nombre);
+                }
+                cambios++;
+            }
+            vaciar(registro);
+            cambiosRegistrados.add(cambios);
+        } catch (IOException | RuntimeException e) {
+            fallos.increment();
+            log.error("❌ Error al escribir el registro de cambios del motor: {}", e.getMessage());
+        }
+    }
+
+    private void abrirRegistro() throws IOException {
+        cerrarRegistro();
+        registro = FileChannel.open(directorio.resolve(FICHERO_REGISTRO), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.clear();
+        buffer.putInt(MAGIA_REGISTRO).putLong(generacion);
+        vaciar(registro);
+    }
+
+    private void cerrarRegistro() {
+        if (registro == null) return;
+        try {
+            registro.close();
+        } catch (IOException e) {
+            log.warn("⚠️ Error al cerrar el registro de cambios del motor: {}", e.getMessage());
+        }
+        registro = null;
+    }
+
+    /**
+     * Lee la instantánea proyectándola en memoria.
+     *
+     * @return instante en que se guardó
+     */
+    private long leerInstantanea(Path fichero, Map<String, Lectura> estado, Map<String, Desconectado> esperando)
+            throws IOException {
+        try (FileChannel canal = FileChannel.open(fichero, StandardOpenOption.READ)) {
+            MappedByteBuffer datos = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            if (datos.getInt() != MAGIA_INSTANTANEA) {
+                throw new IOException("formato de instantánea desconocido");
+            }
+            generacion = datos.getLong();
+            long guardado = datos.getLong();
+            int dispositivos = datos.getInt();
+            for (int i = 0; i < dispositivos; i++) {
+                Lectura lectura = leerDispositivo(datos);
+                estado.put(lectura.dispositivo().getNombre(), lectura);
+            }
+            // Las instantáneas anteriores a guardar los desconectados terminan con los activos
+            int desconectados = datos.hasRemaining() ? datos.getInt() : 0;
+            for (int i = 0; i < desconectados; i++) {
+                Desconectado desconectado = leerDesconectado(datos);
+                esperando.put(desconectado.lectura().dispositivo().getNombre(), desconectado);
+            }
+            return guardado;
+        }
+    }
+
+    /**
+     * Aplica sobre el estado los cambios del registro, si sigue a la instantánea leída.
+     * Un último cambio a medio escribir se ignora.
+     *
+     * @return true si el registro corresponde a la instantánea
+     */
+    private boolean leerRegistro(Path fichero, Map<String, Lectura> estado, Map<String, Desconectado> esperando)
+            throws IOException {
+        try (FileChannel canal = FileChannel.open(fichero, StandardOpenOption.READ)) {
+            MappedByteBuffer datos = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            if (datos.remaining() < Integer.BYTES + Long.BYTES
+                    || datos.getInt() != MAGIA_REGISTRO || datos.getLong() != generacion) {
+                return false;
+            }
+            try {
+                while (datos.hasRemaining()) {
+                    byte tipo = datos.get();
+                    if (tipo == ACTUALIZADO) {
+                        Lectura lectura = leerDispositivo(datos);
+                        estado.put(lectura.dispositivo().getNombre(), lectura);
+                        esperando.remove(lectura.dispositivo().getNombre());
+                    } else if (tipo == DESCONECTADO_MOTOR) {
+                        Desconectado desconectado = leerDesconectado(datos);
+                        estado.remove(desconectado.lectura().dispositivo().getNombre());
+                        esperando.put(desconectado.lectura().dispositivo().getNombre(), desconectado);
+                    } else if (tipo == DESCONECTADO) {
+                        String nombre = leerTexto(datos);
+                        estado.remove(nombre);
+                        esperando.remove(nombre);
+                    } else {
+                        break;
+                    }
+                }
+            } catch (BufferUnderflowException e) {
+                log.warn("⚠️ Último cambio del registro del motor incompleto; se ignora");
+            }
+            return true;
+        }
+    }
+
+    // Formato de cada dispositivo: id (-1 sin id), nombre, zona, criticidad (-1 sin criticidad) y consumo
+
+    private void escribirDispositivo(FileChannel canal, Lectura lectura) throws IOException {
+        Dispositivo dispositivo = lectura.dispositivo();
+        asegurar(canal, Long.BYTES);
+        buffer.putLong(dispositivo.getId() == null ? -1 : dispositivo.getId());
+        escribirTexto(canal, dispositivo.getNombre());
+        escribirTexto(canal, dispositivo.getZona());
+        asegurar(canal, 1 + Double.BYTES);
+        buffer.put(dispositivo.getCriticidad() == null ? -1 : (byte) dispositivo.getCriticidad().ordinal());
+        buffer.putDouble(lectura.consumo());
+    }
+
+    private static Lectura leerDispositivo(ByteBuffer datos) {
+        Dispositivo dispositivo = new Dispositivo();
+        long id = datos.getLong();
+        dispositivo.setId(id < 0 ? null : id);
+        dispositivo.setNombre(leerTexto(datos));
+        dispositivo.setZona(leerTexto(datos));
+        byte criticidad = datos.get();
+        dispositivo.setCriticidad(criticidad < 0 ? null : NIVELES[criticidad]);
+        double consumo = datos.getDouble();
+        dispositivo.setConsumo(consumo);
+        return new Lectura(dispositivo, consumo);
+    }
+
+    // Un desconectado se guarda como un dispositivo seguido del instante de su desconexión
+
+    private void escribirDesconectado(FileChannel canal, Desconectado desconectado) throws IOException {
+        escribirDispositivo(canal, desconectado.lectura());
+        asegurar(canal, Long.BYTES);
+        buffer.putLong(desconectado.desconectadoMs());
+    }
+
+    private static Desconectado leerDesconectado(ByteBuffer datos) {
+        Lectura lectura = leerDispositivo(datos);
+        return new Desconectado(lectura, datos.getLong());
+    }
+
+    private void escribirTexto(FileChannel canal, String texto) throws IOException {
+        if (texto == null) {
+            asegurar(canal, Short.BYTES);
+            buffer.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Texto demasiado largo para la instantánea: " + bytes.length + " bytes");
+        }
+        asegurar(canal, Short.BYTES + bytes.length);
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String leerTexto(ByteBuffer datos) {
+        short longitud = datos.getShort();
+        if (longitud < 0) return null;
+        byte[] bytes = new byte[longitud];
+        datos.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Garantiza hueco en el buffer para los bytes indicados, escribiendo antes lo acumulado.
+     */
+    private void asegurar(FileChannel canal, int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) return;
+        vaciar(canal);
+        if (buffer.capacity() < bytes) {
+            buffer = ByteBuffer.allocateDirect(bytes);
+        }
+    }
+
+    private void vaciar(FileChannel canal) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * @return contadores de instantáneas, cambios registrados y dispositivos restaurados
+     */
+    public Estadisticas getEstadisticas() {
+        return new Estadisticas(generacion, instantaneas.sum(), cambiosRegistrados.sum(), restaurados, fallos.sum());
+    }
+}
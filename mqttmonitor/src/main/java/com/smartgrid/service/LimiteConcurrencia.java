@@ -0,0 +1,85 @@
+package com.smartgrid.service;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Número máximo de peticiones de operadores que se atienden a la vez.
+ * <p>
+ * Las páginas del dashboard y de gestión recorren todos los dispositivos activos del motor; una ráfaga de
+ * operadores ocupa tantos núcleos como hilos tenga el servidor web (o, con hilos virtuales, sin ningún
+ * tope) y le quita CPU y memoria a los carriles de ingesta. Con el límite, las peticiones que no caben
+ * esperan un tiempo acotado por un permiso y, si no lo consiguen, se rechazan en vez de encolarse.
+ */
+public class LimiteConcurrencia {
+
+    // null si no hay límite
+    private final Semaphore permisos;
+    private final int maximo;
+    private final long esperaNanos;
+
+    private final LongAdder rechazadas = new LongAdder();
+
+    /**
+     * @param maximo   peticiones atendidas a la vez (0 o menos = sin límite)
+     * @param esperaMs tiempo máximo que espera una petición a que quede un permiso libre
+     */
+    public LimiteConcurrencia(int maximo, long esperaMs) {
+        this.maximo = Math.max(0, maximo);
+        this.permisos = maximo > 0 ? new Semaphore(maximo, true) : null;
+        this.esperaNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, esperaMs));
+    }
+
+    /**
+     * Reserva un permiso, esperando como mucho el tiempo configurado.
+     * Si devuelve true, el llamante debe devolverlo con {@link #salir()}.
+     *
+     * @return true si se puede atender la petición
+     */
+    public boolean entrar() {
+        if (permisos == null) return true;
+
+        boolean concedido;
+        try {
+            concedido = permisos.tryAcquire(esperaNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            concedido = false;
+        }
+        if (!concedido) {
+            rechazadas.increment();
+        }
+        return concedido;
+    }
+
+    /**
+     * Devuelve el permiso obtenido con {@link #entrar()}.
+     */
+    public void salir() {
+        if (permisos != null) {
+            permisos.release();
+        }
+    }
+
+    /**
+     * Peticiones atendidas a la vez como máximo (0 = sin límite).
+     */
+    public int getMaximo() {
+        return maximo;
+    }
+
+    /**
+     * Peticiones que se están atendiendo ahora mismo (0 sin límite, no se cuentan).
+     */
+    public int getEnCurso() {
+        return permisos == null ? 0 : maximo - permisos.availablePermits();
+    }
+
+    /**
+     * Peticiones rechazadas desde el arranque por no conseguir permiso a tiempo.
+     */
+    public long getRechazadas() {
+        return rechazadas.sum();
+    }
+}
@@ -1,21 +1,50 @@
 package com.smartgrid.service;
 
 import com.smartgrid.config.MQTTConfig;
+import com.smartgrid.logic.Lectura;
 import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.model.Dispositivo;
 import com.smartgrid.repository.DispositivoRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.eclipse.paho.client.mqttv3.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jakarta.annotation.PostConstruct;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.stereotype.Service;
+import jakarta.annotation.PreDestroy;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
 
 /**
  * Servicio encargado de la conexión MQTT y del procesamiento de los mensajes recibidos.
  * Escucha mensajes de consumo energético desde un topic, los interpreta y aplica la lógica de decisión.
+ * Acepta tanto el texto "nombre:consumo" como tramas binarias con varias lecturas ({@link TramaBinaria}),
+ * que se distinguen por el primer byte del mensaje.
+ * <p>
+ * Puede abrir varias conexiones al broker (suscripción compartida o filtros repartidos, ver {@link MQTTConfig})
+ * para no depender de un único hilo de callback. Los mensajes de todas ellas se reparten por dispositivo
+ * entre los carriles de ingesta, de modo que las lecturas de un dispositivo se aplican en el orden en que
+ * se reciben. Entre conexiones el orden lo decide el broker: con suscripción compartida solo se conserva
+ * si el broker entrega siempre los mensajes de un mismo topic a la misma conexión.
+ * <p>
+ * Con un {@link FiltroBandaMuerta}, las lecturas que apenas cambian no llegan al motor, aunque sí al histórico.
+ * <p>
+ * Publica en el {@link MeterRegistry} los mensajes procesados, las lecturas aplicadas, los rechazos por
+ * motivo (incluidos los dispositivos desconocidos), el estado de la etapa de ingesta y la latencia de cada
+ * mensaje desde que llega del broker hasta que el motor ha decidido sobre él ({@code smartgrid.ingesta.latencia}).
  */
-@Service
 public class MQTTSubscriberService {
 
     private static final Logger log = LoggerFactory.getLogger(MQTTSubscriberService.class);
@@ -23,14 +52,37 @@ public class MQTTSubscriberService {
     /** Configuración del cliente MQTT (URL, clientId, topic, etc.) */
     private final MQTTConfig mqttConfig;
 
-    /** Cliente MQTT que se conecta al broker */
-    private MqttClient client;
+    /** Clientes MQTT conectados al broker, uno por conexión */
+    private final List<MqttClient> clientes = new ArrayList<>();
 
     /** Motor que toma decisiones en función del consumo */
     private final SmartGridDecisionEngine ia;
 
-    /** Repositorio para acceder a los dispositivos registrados */
-    private final DispositivoRepository dispositivoRepository;
+    /** Registro en memoria de los dispositivos dados de alta */
+    private final RegistroDispositivos registroDispositivos;
+
+    /** Histórico de lecturas en segundo plano (null si no se guarda) */
+    private final EscritorLecturas escritorLecturas;
+
+    /** Filtro de las lecturas que apenas cambian (null si se aplican todas) */
+    private final FiltroBandaMuerta filtroBandaMuerta;
+
+    /** Etapa que desacopla los callbacks MQTT del procesamiento (null si está desactivada) */
+    private CarrilesIngesta ingesta;
+
+    /** Parser y sonda de cada hilo de procesamiento, reutilizados entre mensajes */
+    private static final ThreadLocal<ParserLectura> PARSER = ThreadLocal.withInitial(ParserLectura::new);
+    private static final ThreadLocal<SondaNombre> SONDA = ThreadLocal.withInitial(SondaNombre::new);
+
+    /** Mensajes rechazados por motivo */
+    private final Map<ResultadoLectura, LongAdder> erroresLectura = new EnumMap<>(ResultadoLectura.class);
+
+    /** Mensajes procesados y lecturas entregadas al motor (una trama binaria puede llevar varias) */
+    private final LongAdder mensajes = new LongAdder();
+    private final LongAdder lecturas = new LongAdder();
+
+    /** Tiempo de cada mensaje desde que llega del broker hasta que el motor ha decidido sobre él */
+    private final Timer latenciaIngesta;
 
     /** Para evitar inicializaciones múltiples si el contexto Spring recarga el bean */
     private boolean alreadyInitialized = false;
@@ -40,13 +92,100 @@ public class MQTTSubscriberService {
      *
      * @param mqttConfig configuración del broker MQTT
      * @param ia instancia del motor de decisiones
-     * @param dispositivoRepository acceso a los dispositivos registrados
+     * @param registroDispositivos registro en memoria de los dispositivos dados de alta
+     * @param opciones histórico, filtro de banda muerta y registro de métricas
      */
-    @Autowired
-    public MQTTSubscriberService(MQTTConfig mqttConfig, SmartGridDecisionEngine ia, DispositivoRepository dispositivoRepository) {
+    public MQTTSubscriberService(MQTTConfig mqttConfig, SmartGridDecisionEngine ia, RegistroDispositivos registroDispositivos,
+                                 OpcionesSuscriptor opciones) {
         this.mqttConfig = mqttConfig;
         this.ia = ia;
-        this.dispositivoRepository = dispositivoRepository;
+        this.registroDispositivos = registroDispositivos;
+        this.escritorLecturas = opciones.escritorLecturas();
+        this.filtroBandaMuerta = opciones.filtroBandaMuerta();
+        MeterRegistry registroMetricas = opciones.registroMetricas();
+        for (ResultadoLectura resultado : ResultadoLectura.values()) {
+            if (resultado != ResultadoLectura.OK) {
+                LongAdder contador = new LongAdder();
+                erroresLectura.put(resultado, contador);
+                FunctionCounter.builder("smartgrid.ingesta.rechazados", contador, LongAdder::sum)
+                        .description("Mensajes o lecturas rechazados por motivo")
+                        .tag("motivo", resultado.name())
+                        .register(registroMetricas);
+            }
+        }
+        this.latenciaIngesta = registrarMetricas(registroMetricas);
+    }
+
+    private Timer registrarMetricas(MeterRegistry registroMetricas) {
+        FunctionCounter.builder("smartgrid.ingesta.mensajes", mensajes, LongAdder::sum)
+                .description("Mensajes procesados")
+                .register(registroMetricas);
+        FunctionCounter.builder("smartgrid.ingesta.lecturas", lecturas, LongAdder::sum)
+                .description("Lecturas entregadas al motor")
+                .register(registroMetricas);
+
+        // Etapa de ingesta: sin ella los valores quedan a 0
+        Gauge.builder("smartgrid.ingesta.profundidad", this, estadisticaIngesta(PipelineIngesta.Estadisticas::profundidad))
+                .description("Mensajes pendientes en la etapa de ingesta")
+                .register(registroMetricas);
+        FunctionCounter.builder("smartgrid.ingesta.descartados", this,
+                        estadisticaIngesta(PipelineIngesta.Estadisticas::descartados))
+                .description("Mensajes descartados con la etapa de ingesta llena")
+                .register(registroMetricas);
+        FunctionCounter.builder("smartgrid.ingesta.coalescidos", this,
+                        estadisticaIngesta(PipelineIngesta.Estadisticas::coalescidos))
+                .description("Mensajes sustituidos por uno posterior del mismo dispositivo")
+                .register(registroMetricas);
+
+        // Filtro de banda muerta: sin él no se filtra nada
+        FunctionCounter.builder("smartgrid.ingesta.filtradas", this,
+                        servicio -> servicio.filtroBandaMuerta == null ? 0 : servicio.filtroBandaMuerta.getDentroDeBanda())
+                .description("Lecturas no aplicadas al motor por quedar dentro de la banda muerta")
+                .tag("motivo", "banda_muerta")
+                .register(registroMetricas);
+        FunctionCounter.builder("smartgrid.ingesta.filtradas", this,
+                        servicio -> servicio.filtroBandaMuerta == null ? 0 : servicio.filtroBandaMuerta.getCoalescidas())
+                .description("Lecturas no aplicadas al motor por llegar otra posterior del mismo dispositivo en el lote")
+                .tag("motivo", "lote")
+                .register(registroMetricas);
+
+        return Timer.builder("smartgrid.ingesta.latencia")
+                .description("Tiempo desde que llega un mensaje hasta que el motor ha decidido sobre él")
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(10_000))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registroMetricas);
+    }
+
+    private static ToDoubleFunction<MQTTSubscriberService> estadisticaIngesta(
+            ToDoubleFunction<PipelineIngesta.Estadisticas> valor) {
+        return servicio -> {
+            PipelineIngesta.Estadisticas estadisticas = servicio.getEstadisticasIngesta();
+            return estadisticas == null ? 0 : valor.applyAsDouble(estadisticas);
+        };
+    }
+
+    /**
+     * Constructor con las opciones por defecto ({@link OpcionesSuscriptor#POR_DEFECTO}): sin histórico de
+     * lecturas ni filtro de banda muerta.
+     *
+     * @param mqttConfig configuración del broker MQTT
+     * @param ia instancia del motor de decisiones
+     * @param registroDispositivos registro en memoria de los dispositivos dados de alta
+     */
+    public MQTTSubscriberService(MQTTConfig mqttConfig, SmartGridDecisionEngine ia, RegistroDispositivos registroDispositivos) {
+        this(mqttConfig, ia, registroDispositivos, OpcionesSuscriptor.POR_DEFECTO);
+    }
+
+    /**
+     * Constructor con un registro propio sobre el repositorio, sin compartirlo con el resto de la aplicación.
+     *
+     * @param mqttConfig configuración del broker MQTT
+     * @param ia instancia del motor de decisiones
+     * @param dispositivoRepository acceso a los dispositivos registrados
+     */
+    public MQTTSubscriberService(MQTTConfig mqttConfig, SmartGridDecisionEngine ia, DispositivoRepository dispositivoRepository) {
+        this(mqttConfig, ia, new RegistroDispositivos(dispositivoRepository));
     }
 
     /**
@@ -58,68 +197,333 @@ public class MQTTSubscriberService {
         if (alreadyInitialized) return;
         alreadyInitialized = true;
 
-        try {
-            String brokerUrl = mqttConfig.getBrokerUrl();   // Dirección del broker
-            String clientId = mqttConfig.getClientId();     // Identificador único del cliente
-            String topic = mqttConfig.getTopic();           // Topic de suscripción
+        String brokerUrl = mqttConfig.getBrokerUrl();   // Dirección del broker
+
+        // La etapa de ingesta arranca antes de suscribirse para no perder los primeros mensajes
+        if (mqttConfig.getIngestaCapacidad() > 0) {
+            OpcionesIngesta opciones = new OpcionesIngesta(mqttConfig.getIngestaCapacidad(),
+                    mqttConfig.getIngestaTamanoLote(), mqttConfig.getIngestaEsperaLoteMs(),
+                    mqttConfig.getIngestaPolitica(), latenciaIngesta);
+            ingesta = new CarrilesIngesta(mqttConfig.getIngestaCarriles(), opciones,
+                    MQTTSubscriberService::claveDispositivo, this::hashDispositivo, this::procesarLote);
+            ingesta.iniciar();
+        }
 
-            client = new MqttClient(brokerUrl, clientId);
+        for (int conexion = 0; conexion < mqttConfig.getConexiones(); conexion++) {
+            String clientId = mqttConfig.getClientId(conexion);     // Identificador único del cliente
+            List<String> filtros = mqttConfig.getFiltros(conexion); // Topics de suscripción
+            try {
+                MqttClient client = new MqttClient(brokerUrl, clientId);
 
-            // Configuramos la conexión
-            MqttConnectOptions options = new MqttConnectOptions();
-            options.setCleanSession(true);         // Evita recibir mensajes antiguos
-            options.setKeepAliveInterval(30);      // Ping al broker cada 30 segundos
+                // Configuramos la conexión
+                MqttConnectOptions options = new MqttConnectOptions();
+                options.setCleanSession(true);         // Evita recibir mensajes antiguos
+                options.setKeepAliveInterval(30);      // Ping al broker cada 30 segundos
 
-            // Conexión al broker y suscripción al topic
-            client.connect(options);
-            client.subscribe(topic, (topicSus, msg) -> {
-                procesarMensaje(new String(msg.getPayload())); // Callback para cada mensaje recibido
-            });
+                // Conexión al broker y suscripción a los filtros de esta conexión
+                client.connect(options);
+                IMqttMessageListener callback = (topicSus, msg) -> {
+                    // Callback para cada mensaje recibido: con la etapa de ingesta solo se encola
+                    if (ingesta != null) {
+                        ingesta.encolar(msg.getPayload());
+                        return;
+                    }
+                    long llegada = System.nanoTime();
+                    if (TramaBinaria.esBinaria(msg.getPayload())) {
+                        procesarLote(List.of(msg.getPayload()));
+                    } else {
+                        procesarMensaje(msg.getPayload());
+                    }
+                    latenciaIngesta.record(System.nanoTime() - llegada, TimeUnit.NANOSECONDS);
+                };
+                for (String filtro : filtros) {
+                    client.subscribe(filtro, callback);
+                }
+                clientes.add(client);
 
-            log.info("✅ Suscrito a MQTT broker en '{}', topic '{}'", brokerUrl, topic);
-            log.info("✅ Conexión exitosa al broker MQTT '{}'", brokerUrl);
+                log.info("✅ Suscrito a MQTT broker en '{}' como '{}', topics {}", brokerUrl, clientId, filtros);
+            } catch (MqttException e) {
+                log.error("❌ Error al conectar con MQTT Broker ('{}'): {}", clientId, e.getMessage(), e);
+            }
+        }
 
-        } catch (MqttException e) {
-            log.error("❌ Error al conectar con MQTT Broker: {}", e.getMessage(), e);
+        if (!clientes.isEmpty()) {
+            log.info("✅ Conexión exitosa al broker MQTT '{}' ({} conexiones, {} carriles de ingesta)", brokerUrl,
+                    clientes.size(), ingesta == null ? 0 : ingesta.getNumeroCarriles());
         }
     }
 
     /**
-     * Procesa los mensajes entrantes del broker MQTT.
+     * Cierra las conexiones y detiene la etapa de ingesta procesando los mensajes que quedaran pendientes.
+     */
+    @PreDestroy
+    public void detener() {
+        for (MqttClient client : clientes) {
+            try {
+                client.disconnect();
+                client.close();
+            } catch (MqttException e) {
+                log.warn("⚠️ Error al cerrar la conexión MQTT '{}': {}", client.getClientId(), e.getMessage());
+            }
+        }
+        clientes.clear();
+        if (ingesta != null) {
+            ingesta.detener();
+        }
+    }
+
+    /**
+     * Procesa un mensaje que ya llega como texto.
      * El formato esperado es: "nombre_dispositivo:consumo"
      *
      * @param payload contenido del mensaje recibido
      */
     public void procesarMensaje(String payload) {
-        log.info("⚡ Mensaje recibido: '{}'", payload);
+        procesarMensaje(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Procesa los mensajes entrantes del broker MQTT directamente sobre sus bytes (UTF-8),
+     * sin pasar el payload a String.
+     * El formato esperado es: "nombre_dispositivo:consumo"
+     *
+     * @param bytes contenido del mensaje recibido
+     */
+    public void procesarMensaje(byte[] bytes) {
+        mensajes.increment();
 
-        // Validar formato
-        if (!payload.contains(":")) {
-            log.warn("❌ Formato de mensaje inválido: '{}'. Se esperaba 'nombre:valor'", payload);
+        ParserLectura parser = PARSER.get();
+        ResultadoLectura resultado = parser.interpretar(bytes);
+        if (resultado != ResultadoLectura.OK) {
+            contarError(resultado);
+            if (log.isDebugEnabled()) { // el texto solo se construye si se va a escribir
+                log.debug("❌ Mensaje inválido ({}): '{}'. Se esperaba 'nombre:valor'", resultado,
+                        new String(bytes, StandardCharsets.UTF_8));
+            }
             return;
         }
 
-        String[] partes = payload.split(":");
-        if (partes.length != 2) {
-            log.warn("❌ Formato incompleto. Payload: '{}'", payload);
-            return;
+        String nombre = nombre(bytes, parser);
+        double consumo = parser.getConsumo();
+        log.debug("⚡ Mensaje recibido: '{}:{}'", nombre, consumo);
+
+        // Buscar en el registro en memoria (solo consulta la base de datos si no lo conoce)
+        registroDispositivos.buscar(nombre).ifPresentOrElse(dispositivo -> {
+            // La entidad la comparten todos los hilos: el consumo viaja aparte, como en los lotes
+            List<Lectura> lectura = List.of(new Lectura(dispositivo, consumo));
+            if (filtroBandaMuerta == null || filtroBandaMuerta.admitir(dispositivo, consumo, System.nanoTime())) {
+                ia.procesarLecturas(lectura);
+                lecturas.increment();
+            }
+            guardarHistorico(lectura);
+        }, () -> {
+            contarError(ResultadoLectura.DISPOSITIVO_DESCONOCIDO);
+            log.debug("❌ Dispositivo desconocido '{}'. Debe estar registrado.", nombre);
+        });
+    }
+
+    /**
+     * Procesa un lote de mensajes de la etapa de ingesta: interpreta todos los payloads,
+     * resuelve los dispositivos de una vez y aplica todas las lecturas al motor en una sola pasada.
+     * <p>
+     * Los payloads se interpretan sobre los propios bytes y los dispositivos ya conocidos se resuelven
+     * sin crear cadenas; solo los nombres que el registro no tiene cargados pasan a String para
+     * consultarlos juntos. Las tramas binarias se resuelven igual, por id, y cada una de sus lecturas
+     * conserva el instante de medida. Las lecturas que hay que cargar reservan su posición, así que todas
+     * se aplican en el orden de llegada sea cual sea su formato y aunque su dispositivo se cargue a mitad
+     * del lote. Los mensajes rechazados se cuentan por {@link ResultadoLectura}.
+     *
+     * @param payloads contenidos de los mensajes en orden de llegada
+     */
+    public void procesarLote(List<byte[]> payloads) {
+        mensajes.add(payloads.size());
+        ParserLectura parser = PARSER.get();
+        SondaNombre sonda = SONDA.get();
+        List<Lectura> aplicables = new ArrayList<>(payloads.size());
+        List<LecturaTexto> sinCargar = null;
+        List<LecturaId> idsSinCargar = null;
+
+        for (byte[] payload : payloads) {
+            if (TramaBinaria.esBinaria(payload)) {
+                idsSinCargar = interpretarTrama(payload, aplicables, idsSinCargar);
+                continue;
+            }
+
+            ResultadoLectura resultado = parser.interpretar(payload);
+            if (resultado != ResultadoLectura.OK) {
+                contarError(resultado);
+                continue;
+            }
+
+            sonda.apuntar(payload, parser.getInicioNombre(), parser.getFinNombre());
+            switch (registroDispositivos.resolver(sonda)) {
+                case ENCONTRADO -> aplicables.add(new Lectura(sonda.getDispositivo(), parser.getConsumo()));
+                case DESCONOCIDO -> contarError(ResultadoLectura.DISPOSITIVO_DESCONOCIDO);
+                case SIN_CARGAR -> {
+                    if (sinCargar == null) sinCargar = new ArrayList<>();
+                    sinCargar.add(new LecturaTexto(aplicables.size(), nombre(payload, parser), parser.getConsumo()));
+                    aplicables.add(null);
+                }
+            }
         }
 
-        String nombre = partes[0].trim().toLowerCase();
-        double consumo;
+        if (sinCargar != null) {
+            Map<String, Dispositivo> dispositivos = registroDispositivos.buscarTodos(
+                    sinCargar.stream().map(LecturaTexto::nombre).toList());
+            for (LecturaTexto lectura : sinCargar) {
+                Dispositivo dispositivo = dispositivos.get(lectura.nombre());
+                if (dispositivo == null) {
+                    contarError(ResultadoLectura.DISPOSITIVO_DESCONOCIDO);
+                    log.debug("❌ Dispositivo desconocido '{}'", lectura.nombre());
+                    continue;
+                }
+                aplicables.set(lectura.posicion(), new Lectura(dispositivo, lectura.consumo()));
+            }
+        }
 
-        try {
-            consumo = Double.parseDouble(partes[1].trim());
-        } catch (NumberFormatException e) {
-            log.error("❌ Valor de consumo inválido: '{}'", partes[1]);
-            return;
+        if (idsSinCargar != null) {
+            Map<Long, Dispositivo> dispositivos = registroDispositivos.buscarTodosPorId(
+                    idsSinCargar.stream().map(LecturaId::id).toList());
+            for (LecturaId lectura : idsSinCargar) {
+                Dispositivo dispositivo = dispositivos.get(lectura.id());
+                if (dispositivo == null) {
+                    contarError(ResultadoLectura.DISPOSITIVO_DESCONOCIDO);
+                    log.debug("❌ Dispositivo desconocido con id {}", lectura.id());
+                    continue;
+                }
+                aplicables.set(lectura.posicion(), new Lectura(dispositivo, lectura.consumo(), lectura.instante()));
+            }
+        }
+
+        // Quedan huecos de los desconocidos
+        if (sinCargar != null || idsSinCargar != null) {
+            aplicables.removeIf(Objects::isNull);
+        }
+
+        log.debug("⚡ Lote de {} mensajes, {} lecturas aplicables", payloads.size(), aplicables.size());
+        if (aplicables.isEmpty()) return;
+
+        // El histórico guarda todas las lecturas válidas; al motor solo llegan las que cambian algo
+        List<Lectura> alMotor = filtroBandaMuerta == null ? aplicables
+                : filtroBandaMuerta.filtrar(aplicables, System.nanoTime());
+        if (!alMotor.isEmpty()) {
+            ia.procesarLecturas(alMotor);
+            lecturas.add(alMotor.size());
+        }
+        guardarHistorico(aplicables);
+    }
+
+    /**
+     * Interpreta una trama binaria: las lecturas de dispositivos cargados pasan a {@code aplicables}
+     * y las demás reservan allí su posición y se acumulan para buscarlas juntas.
+     *
+     * @return la lista de pendientes de cargar, creada si hacía falta
+     */
+    private List<LecturaId> interpretarTrama(byte[] trama, List<Lectura> aplicables, List<LecturaId> sinCargar) {
+        if (TramaBinaria.validar(trama) != ResultadoLectura.OK) {
+            contarError(ResultadoLectura.TRAMA_INVALIDA);
+            return sinCargar;
+        }
+
+        int lecturas = TramaBinaria.numeroLecturas(trama);
+        for (int i = 0; i < lecturas; i++) {
+            float consumo = TramaBinaria.consumo(trama, i);
+            if (!Float.isFinite(consumo)) {
+                contarError(ResultadoLectura.CONSUMO_INVALIDO);
+                continue;
+            }
+            long id = TramaBinaria.id(trama, i);
+            long instante = TramaBinaria.instante(trama, i);
+            Dispositivo dispositivo = registroDispositivos.buscarCargadoPorId(id);
+            if (dispositivo != null) {
+                aplicables.add(new Lectura(dispositivo, consumo, instante));
+            } else {
+                if (sinCargar == null) sinCargar = new ArrayList<>();
+                sinCargar.add(new LecturaId(aplicables.size(), id, consumo, instante));
+                aplicables.add(null);
+            }
+        }
+        return sinCargar;
+    }
+
+    /**
+     * Entrega las lecturas al histórico sin esperar a que se escriban.
+     */
+    private void guardarHistorico(List<Lectura> lecturas) {
+        if (escritorLecturas != null) {
+            escritorLecturas.registrar(lecturas);
         }
+    }
 
-        // Buscar en la base de datos
-        dispositivoRepository.findByNombre(nombre).ifPresentOrElse(dispositivo -> {
-            dispositivo.setConsumo(consumo);
-            ia.procesarDispositivo(dispositivo);
-        }, () -> log.warn("❌ Dispositivo desconocido '{}'. Debe estar registrado.", nombre));
+    /**
+     * Estadísticas de la etapa de ingesta (todos los carriles), o null si está desactivada.
+     */
+    public PipelineIngesta.Estadisticas getEstadisticasIngesta() {
+        return ingesta == null ? null : ingesta.getEstadisticas();
+    }
+
+    /**
+     * Mensajes rechazados desde el arranque, por motivo.
+     *
+     * @return número de mensajes rechazados por cada código de error
+     */
+    public Map<ResultadoLectura, Long> getErroresLectura() {
+        Map<ResultadoLectura, Long> errores = new EnumMap<>(ResultadoLectura.class);
+        erroresLectura.forEach((resultado, contador) -> errores.put(resultado, contador.sum()));
+        return errores;
+    }
+
+    private void contarError(ResultadoLectura resultado) {
+        erroresLectura.get(resultado).increment();
+    }
+
+    /**
+     * Lectura ya interpretada cuyo dispositivo hay que cargar, con el nombre normalizado y su posición en el lote.
+     */
+    private record LecturaTexto(int posicion, String nombre, double consumo) {
+    }
+
+    /**
+     * Lectura de una trama binaria cuyo dispositivo hay que cargar, con su posición en el lote.
+     */
+    private record LecturaId(int posicion, long id, double consumo, long instante) {
+    }
+
+    /**
+     * Nombre normalizado de la última lectura válida del parser.
+     */
+    private static String nombre(byte[] payload, ParserLectura parser) {
+        return RegistroDispositivos.normalizar(new String(payload, parser.getInicioNombre(),
+                parser.getFinNombre() - parser.getInicioNombre(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Dispositivo al que pertenece un payload, usado para coalescer mensajes pendientes.
+     * Las tramas binarias no se coalescen porque pueden llevar varios dispositivos.
+     */
+    private static String claveDispositivo(byte[] payload) {
+        if (TramaBinaria.esBinaria(payload)) return null;
+        ParserLectura parser = PARSER.get();
+        return parser.interpretar(payload) == ResultadoLectura.OK ? nombre(payload, parser) : null;
+    }
+
+    /**
+     * Hash del dispositivo de un payload para elegir su carril, sin crear cadenas; 0 si no es válido.
+     * En los dos formatos es el del id del dispositivo, para que un dispositivo que informa en texto y en
+     * binario pase por un solo carril; en una trama binaria, el del dispositivo de la primera lectura.
+     * Un nombre que el registro no tiene cargado se reparte por el hash del nombre, así que hasta que se
+     * carga (al arrancar se precargan todos y las altas se registran al momento) sus lecturas de texto y
+     * binarias pueden ir por carriles distintos.
+     */
+    public int hashDispositivo(byte[] payload) {
+        if (TramaBinaria.esBinaria(payload)) {
+            return TramaBinaria.validar(payload) == ResultadoLectura.OK ? TramaBinaria.hashDispositivo(payload, 0) : 0;
+        }
+        ParserLectura parser = PARSER.get();
+        if (parser.interpretar(payload) != ResultadoLectura.OK) return 0;
+        SondaNombre sonda = SONDA.get().apuntar(payload, parser.getInicioNombre(), parser.getFinNombre());
+        Long id = registroDispositivos.idCargado(sonda);
+        return id == null ? sonda.hashNombre() : Long.hashCode(id);
     }
 
 }
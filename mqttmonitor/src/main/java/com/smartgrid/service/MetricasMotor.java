@@ -0,0 +1,168 @@
+package com.smartgrid.service;
+
+import com.smartgrid.logic.AgregadosConsumo;
+import com.smartgrid.logic.CambiosMotorListener;
+import com.smartgrid.logic.ErrorPronostico;
+import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.model.Dispositivo;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Métricas del estado del motor de decisiones: consumo total y de críticos frente al límite global,
+ * dispositivos activos, desconectados por el motor a la espera de volver, alerta y, por zona, consumo,
+ * límite propio, desconexiones automáticas, dispositivos restablecidos y retirados por falta de lecturas.
+ * Con la previsión activa, también el consumo previsto y el error de la previsión, total y por zona,
+ * y los dispositivos desconectados por anticipado.
+ * <p>
+ * Los valores se leen del motor al consultar las métricas, sin coste en el camino de las lecturas.
+ * Las zonas se crean sobre la marcha, así que escucha los cambios del motor y registra las métricas
+ * de cada zona la primera vez que se conecta en ella un dispositivo.
+ */
+public class MetricasMotor implements MeterBinder, CambiosMotorListener {
+
+    private final SmartGridDecisionEngine ia;
+
+    /** Zonas cuyas métricas ya están registradas */
+    private final Set<String> zonas = ConcurrentHashMap.newKeySet();
+
+    private volatile MeterRegistry registroMetricas;
+
+    /**
+     * @param ia motor de decisiones a observar
+     */
+    public MetricasMotor(SmartGridDecisionEngine ia) {
+        this.ia = ia;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registro) {
+        this.registroMetricas = registro;
+
+        Gauge.builder("smartgrid.motor.consumo", ia, SmartGridDecisionEngine::getConsumoTotal)
+                .description("Consumo de todos los dispositivos activos")
+                .baseUnit("watts")
+                .register(registro);
+        Gauge.builder("smartgrid.motor.consumo.criticos", ia, SmartGridDecisionEngine::getConsumoCriticos)
+                .description("Consumo de los dispositivos críticos activos")
+                .baseUnit("watts")
+                .register(registro);
+        Gauge.builder("smartgrid.motor.limite", ia, SmartGridDecisionEngine::getLimiteConsumo)
+                .description("Límite global del alimentador")
+                .baseUnit("watts")
+                .register(registro);
+        Gauge.builder("smartgrid.motor.activos", ia, SmartGridDecisionEngine::getNumeroActivos)
+                .description("Dispositivos activos")
+                .register(registro);
+        Gauge.builder("smartgrid.motor.desconectados", ia, SmartGridDecisionEngine::getNumeroDesconectados)
+                .description("Dispositivos desconectados por el motor que esperan a restablecerse")
+                .register(registro);
+        Gauge.builder("smartgrid.motor.alerta", ia, motor -> motor.isAlertaCriticos() ? 1 : 0)
+                .description("1 si hay alerta por consumo de críticos, global o en alguna zona")
+                .register(registro);
+
+        if (ia.getPronostico().isActivo()) {
+            Gauge.builder("smartgrid.motor.prevision", ia, SmartGridDecisionEngine::getPrevision)
+                    .description("Consumo total previsto a horizonte")
+                    .baseUnit("watts")
+                    .register(registro);
+            registrarError(registro, ia, SmartGridDecisionEngine::getErrorPronostico, "smartgrid.motor.prevision", null);
+        }
+
+        // Zonas que ya existían (p. ej. restauradas de una instantánea) y, a partir de aquí, las nuevas
+        ia.añadirListener(this);
+        for (String zona : ia.getZonas()) {
+            registrarZona(zona);
+        }
+    }
+
+    @Override
+    public void dispositivoActualizado(Dispositivo dispositivo, boolean conectado) {
+        if (!conectado) return;
+
+        String zona = dispositivo.getZona() == null ? AgregadosConsumo.SIN_ZONA : dispositivo.getZona();
+        if (!zonas.contains(zona)) {
+            registrarZona(zona);
+        }
+    }
+
+    @Override
+    public void dispositivoDesconectado(String nombre, String zona, boolean automatico) {
+        // Las desconexiones se cuentan en el propio motor, por zona
+    }
+
+    private void registrarZona(String zona) {
+        if (!zonas.add(zona)) return;
+
+        MeterRegistry registro = registroMetricas;
+        Gauge.builder("smartgrid.zona.consumo", ia, motor -> motor.getConsumoZona(zona))
+                .description("Consumo de los dispositivos activos de la zona")
+                .baseUnit("watts")
+                .tag("zona", zona)
+                .register(registro);
+        FunctionCounter.builder("smartgrid.zona.desconexiones", ia, motor -> motor.getDesconexionesAutomaticas(zona))
+                .description("Dispositivos de la zona desconectados automáticamente por exceso de consumo")
+                .tag("zona", zona)
+                .register(registro);
+        FunctionCounter.builder("smartgrid.zona.restablecidos", ia, motor -> motor.getRestablecidos(zona))
+                .description("Dispositivos de la zona que el motor ha vuelto a conectar al recuperar margen")
+                .tag("zona", zona)
+                .register(registro);
+        FunctionCounter.builder("smartgrid.zona.caducados", ia, motor -> motor.getCaducados(zona))
+                .description("Dispositivos de la zona retirados por llevar demasiado tiempo sin lecturas")
+                .tag("zona", zona)
+                .register(registro);
+
+        if (ia.getPronostico().isActivo()) {
+            Gauge.builder("smartgrid.zona.prevision", ia, motor -> motor.getPrevisionZona(zona))
+                    .description("Consumo de la zona previsto a horizonte")
+                    .baseUnit("watts")
+                    .tag("zona", zona)
+                    .register(registro);
+            registrarError(registro, ia, motor -> motor.getErrorPronosticoZona(zona), "smartgrid.zona.prevision", zona);
+            FunctionCounter.builder("smartgrid.zona.anticipadas", ia, motor -> motor.getAnticipadas(zona))
+                    .description("Dispositivos de la zona desconectados por la previsión antes de superar un límite")
+                    .tag("zona", zona)
+                    .register(registro);
+        }
+
+        // Las zonas sin límite propio solo responden al global
+        if (Double.isFinite(ia.getLimiteZona(zona))) {
+            Gauge.builder("smartgrid.zona.limite", ia, motor -> motor.getLimiteZona(zona))
+                    .description("Límite propio de la zona")
+                    .baseUnit("watts")
+                    .tag("zona", zona)
+                    .register(registro);
+        }
+    }
+
+    /**
+     * Error de una previsión: la suma de errores absolutos y el número de comparaciones como contadores
+     * (su cociente en Prometheus es el error absoluto medio de cada intervalo) y el sesgo acumulado.
+     */
+    private static void registrarError(MeterRegistry registro, SmartGridDecisionEngine ia,
+                                       Function<SmartGridDecisionEngine, ErrorPronostico> error, String prefijo, String zona) {
+        Tags tags = zona == null ? Tags.empty() : Tags.of("zona", zona);
+        FunctionCounter.builder(prefijo + ".error.absoluto", ia, motor -> error.apply(motor).sumaAbsoluta())
+                .description("Suma de los errores absolutos de la previsión frente al consumo real")
+                .baseUnit("watts")
+                .tags(tags)
+                .register(registro);
+        FunctionCounter.builder(prefijo + ".comparaciones", ia, motor -> error.apply(motor).comparaciones())
+                .description("Previsiones comparadas con el consumo real al llegar su instante")
+                .tags(tags)
+                .register(registro);
+        Gauge.builder(prefijo + ".error.sesgo", ia, motor -> error.apply(motor).getSesgo())
+                .description("Error medio de la previsión (real - previsto); positivo si se prevé por debajo")
+                .baseUnit("watts")
+                .tags(tags)
+                .register(registro);
+    }
+}
@@ -0,0 +1,46 @@
+package com.smartgrid.service;
+
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Dimensionado de la etapa de ingesta ({@link PipelineIngesta} y {@link CarrilesIngesta}).
+ * <p>
+ * Se parte de {@link #POR_DEFECTO} o de los valores de la configuración y se cambia cada opción por su nombre:
+ * <pre>
+ * OpcionesIngesta.POR_DEFECTO.conPolitica(PoliticaContrapresion.DESCARTAR_ANTIGUO).conLatencia(timer)
+ * </pre>
+ *
+ * @param capacidad    número máximo de mensajes pendientes (en {@link CarrilesIngesta}, entre todos los carriles)
+ * @param tamañoLote   número máximo de mensajes por lote
+ * @param esperaLoteMs espera máxima para completar un lote
+ * @param politica     qué hacer con el buffer lleno
+ * @param latencia     timer que recibe el tiempo de cada mensaje entre que se encola y se procesa
+ *                     (null para no medirlo)
+ */
+public record OpcionesIngesta(int capacidad, int tamañoLote, long esperaLoteMs, PoliticaContrapresion politica,
+                              Timer latencia) {
+
+    /** Los valores por defecto de mqtt.ingesta.*, sin medir la latencia */
+    public static final OpcionesIngesta POR_DEFECTO = new OpcionesIngesta(65536, 512, 5,
+            PoliticaContrapresion.BLOQUEAR, null);
+
+    public OpcionesIngesta conCapacidad(int capacidad) {
+        return new OpcionesIngesta(capacidad, tamañoLote, esperaLoteMs, politica, latencia);
+    }
+
+    public OpcionesIngesta conTamañoLote(int tamañoLote) {
+        return new OpcionesIngesta(capacidad, tamañoLote, esperaLoteMs, politica, latencia);
+    }
+
+    public OpcionesIngesta conEsperaLoteMs(long esperaLoteMs) {
+        return new OpcionesIngesta(capacidad, tamañoLote, esperaLoteMs, politica, latencia);
+    }
+
+    public OpcionesIngesta conPolitica(PoliticaContrapresion politica) {
+        return new OpcionesIngesta(capacidad, tamañoLote, esperaLoteMs, politica, latencia);
+    }
+
+    public OpcionesIngesta conLatencia(Timer latencia) {
+        return new OpcionesIngesta(capacidad, tamañoLote, esperaLoteMs, politica, latencia);
+    }
+}
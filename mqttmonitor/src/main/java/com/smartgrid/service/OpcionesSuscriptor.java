@@ -0,0 +1,36 @@
+package com.smartgrid.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * Colaboradores opcionales del {@link MQTTSubscriberService}.
+ * <p>
+ * Se parte de {@link #POR_DEFECTO} y se añade cada uno por su nombre:
+ * <pre>
+ * OpcionesSuscriptor.POR_DEFECTO.conHistorico(escritor).conMetricas(registroMetricas)
+ * </pre>
+ *
+ * @param escritorLecturas  histórico de lecturas (null para no guardarlas)
+ * @param filtroBandaMuerta filtro de las lecturas que apenas cambian, ya registrado como listener
+ *                          del motor (null para aplicarlas todas)
+ * @param registroMetricas  registro donde se publican las métricas de la ingesta
+ */
+public record OpcionesSuscriptor(EscritorLecturas escritorLecturas, FiltroBandaMuerta filtroBandaMuerta,
+                                 MeterRegistry registroMetricas) {
+
+    /** Sin histórico ni filtro, con las métricas en el registro global de Micrometer */
+    public static final OpcionesSuscriptor POR_DEFECTO = new OpcionesSuscriptor(null, null, Metrics.globalRegistry);
+
+    public OpcionesSuscriptor conHistorico(EscritorLecturas escritorLecturas) {
+        return new OpcionesSuscriptor(escritorLecturas, filtroBandaMuerta, registroMetricas);
+    }
+
+    public OpcionesSuscriptor conFiltro(FiltroBandaMuerta filtroBandaMuerta) {
+        return new OpcionesSuscriptor(escritorLecturas, filtroBandaMuerta, registroMetricas);
+    }
+
+    public OpcionesSuscriptor conMetricas(MeterRegistry registroMetricas) {
+        return new OpcionesSuscriptor(escritorLecturas, filtroBandaMuerta, registroMetricas);
+    }
+}
@@ -0,0 +1,181 @@
+package com.smartgrid.service;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Intérprete del formato "nombre:consumo" que trabaja directamente sobre el payload en bytes.
+ * <p>
+ * No crea cadenas intermedias: deja el nombre como un rango [inicio, fin) del payload
+ * (ya sin espacios alrededor) y convierte el consumo a double sobre los propios bytes.
+ * Los números de hasta 15 cifras significativas con exponente decimal pequeño, que son
+ * todas las lecturas habituales, se convierten de forma exacta con una sola operación;
+ * el resto recurre a {@link Double#parseDouble(String)}.
+ * <p>
+ * Guarda el resultado de la última lectura, así que cada instancia debe usarla un solo hilo.
+ */
+public final class ParserLectura {
+
+    /** Potencias de diez representables de forma exacta en un double */
+    private static final double[] POTENCIAS_DIEZ = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /** Mayor mantisa que un double representa sin pérdida (2^53) */
+    private static final long MANTISA_EXACTA = 1L << 53;
+
+    private int inicioNombre;
+    private int finNombre;
+    private double consumo;
+
+    /**
+     * Interpreta un payload completo.
+     *
+     * @param payload bytes del mensaje
+     * @return {@link ResultadoLectura#OK} o el motivo del rechazo
+     */
+    public ResultadoLectura interpretar(byte[] payload) {
+        return interpretar(payload, 0, payload.length);
+    }
+
+    /**
+     * Interpreta el rango [desde, hasta) de un buffer.
+     *
+     * @param datos buffer con el mensaje
+     * @param desde primer byte del mensaje
+     * @param hasta posición siguiente al último byte
+     * @return {@link ResultadoLectura#OK} o el motivo del rechazo
+     */
+    public ResultadoLectura interpretar(byte[] datos, int desde, int hasta) {
+        int separador = -1;
+        for (int i = desde; i < hasta; i++) {
+            if (datos[i] == ':') {
+                if (separador >= 0) return ResultadoLectura.VARIOS_SEPARADORES;
+                separador = i;
+            }
+        }
+        if (separador < 0) return ResultadoLectura.SIN_SEPARADOR;
+
+        int inicio = saltarEspacios(datos, desde, separador);
+        int fin = recortarEspacios(datos, inicio, separador);
+        if (inicio == fin) return ResultadoLectura.NOMBRE_VACIO;
+
+        int inicioValor = saltarEspacios(datos, separador + 1, hasta);
+        int finValor = recortarEspacios(datos, inicioValor, hasta);
+        if (inicioValor == finValor) return ResultadoLectura.CONSUMO_VACIO;
+
+        if (!convertirDecimal(datos, inicioValor, finValor)) return ResultadoLectura.CONSUMO_INVALIDO;
+
+        inicioNombre = inicio;
+        finNombre = fin;
+        return ResultadoLectura.OK;
+    }
+
+    /**
+     * Convierte [desde, hasta) con la sintaxis [+-]cifras[.cifras][(e|E)[+-]cifras].
+     */
+    private boolean convertirDecimal(byte[] datos, int desde, int hasta) {
+        int i = desde;
+        boolean negativo = false;
+        if (datos[i] == '+' || datos[i] == '-') {
+            negativo = datos[i] == '-';
+            i++;
+        }
+
+        long mantisa = 0;
+        int cifras = 0;
+        int exponente = 0;
+        boolean hayCifras = false;
+        boolean truncado = false;
+
+        for (; i < hasta && esCifra(datos[i]); i++) {
+            hayCifras = true;
+            if (cifras < 18) {
+                mantisa = mantisa * 10 + (datos[i] - '0');
+                if (mantisa != 0) cifras++;
+            } else {
+                exponente++;
+                truncado |= datos[i] != '0';
+            }
+        }
+        if (i < hasta && datos[i] == '.') {
+            for (i++; i < hasta && esCifra(datos[i]); i++) {
+                hayCifras = true;
+                if (cifras < 18) {
+                    mantisa = mantisa * 10 + (datos[i] - '0');
+                    if (mantisa != 0) cifras++;
+                    exponente--;
+                } else {
+                    truncado |= datos[i] != '0';
+                }
+            }
+        }
+        if (!hayCifras) return false;
+
+        if (i < hasta && (datos[i] == 'e' || datos[i] == 'E')) {
+            i++;
+            boolean exponenteNegativo = false;
+            if (i < hasta && (datos[i] == '+' || datos[i] == '-')) {
+                exponenteNegativo = datos[i] == '-';
+                i++;
+            }
+            if (i == hasta) return false;
+            int valorExponente = 0;
+            for (; i < hasta && esCifra(datos[i]); i++) {
+                if (valorExponente < 10_000) {
+                    valorExponente = valorExponente * 10 + (datos[i] - '0');
+                }
+            }
+            exponente += exponenteNegativo ? -valorExponente : valorExponente;
+        }
+        if (i != hasta) return false;
+
+        double valor;
+        if (mantisa == 0) {
+            valor = 0.0;
+        } else if (!truncado && mantisa < MANTISA_EXACTA && exponente >= -22 && exponente <= 22) {
+            // Mantisa y potencia exactas: una sola operación IEEE da el resultado correctamente redondeado
+            valor = exponente >= 0 ? mantisa * POTENCIAS_DIEZ[exponente] : mantisa / POTENCIAS_DIEZ[-exponente];
+        } else {
+            valor = Math.abs(Double.parseDouble(new String(datos, desde, hasta - desde, StandardCharsets.US_ASCII)));
+        }
+        if (Double.isInfinite(valor)) return false;
+
+        consumo = negativo ? -valor : valor;
+        return true;
+    }
+
+    private static boolean esCifra(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /** Mismo criterio que {@link String#trim()}: espacios y caracteres de control ASCII */
+    private static boolean esEspacio(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    private static int saltarEspacios(byte[] datos, int desde, int hasta) {
+        while (desde < hasta && esEspacio(datos[desde])) desde++;
+        return desde;
+    }
+
+    private static int recortarEspacios(byte[] datos, int desde, int hasta) {
+        while (hasta > desde && esEspacio(datos[hasta - 1])) hasta--;
+        return hasta;
+    }
+
+    /** Primer byte del nombre de la última lectura válida */
+    public int getInicioNombre() {
+        return inicioNombre;
+    }
+
+    /** Posición siguiente al último byte del nombre de la última lectura válida */
+    public int getFinNombre() {
+        return finNombre;
+    }
+
+    /** Consumo de la última lectura válida, en Watts */
+    public double getConsumo() {
+        return consumo;
+    }
+}
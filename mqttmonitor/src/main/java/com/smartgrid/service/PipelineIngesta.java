@@ -0,0 +1,294 @@
+package com.smartgrid.service;
+
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Etapa de ingesta que desacopla el callback MQTT del procesamiento de los mensajes.
+ * <p>
+ * El callback solo deposita el payload en un buffer circular acotado; un hilo trabajador
+ * lo vacía en micro-lotes (hasta {@code tamañoLote} mensajes o {@code esperaLoteMs} de espera)
+ * y entrega cada lote al procesador. Así una base de datos lenta no bloquea al cliente MQTT.
+ * Cuando el buffer se llena se aplica la {@link PoliticaContrapresion} configurada.
+ * <p>
+ * Si se le da un {@link Timer}, registra para cada mensaje el tiempo desde que se encola hasta que
+ * el procesador termina con su lote (espera en el buffer más procesamiento).
+ */
+public class PipelineIngesta {
+
+    private static final Logger log = LoggerFactory.getLogger(PipelineIngesta.class);
+
+    /** Cada cuánto comprueba el trabajador sin mensajes si debe pararse */
+    private static final long ESPERA_INACTIVO_MS = 100;
+
+    /** Lo que se espera a que el trabajador vacíe el buffer al detenerse antes de interrumpirlo */
+    private static final long ESPERA_PARADA_MS = TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * Mensaje pendiente. Con la política de coalescencia, un mensaje posterior del mismo
+     * dispositivo sustituye el payload mientras siga en el buffer, pero se conserva la llegada del primero.
+     */
+    private static final class Pendiente {
+        final String clave;
+        final long llegada;
+        volatile byte[] payload;
+
+        Pendiente(String clave, byte[] payload, long llegada) {
+            this.clave = clave;
+            this.payload = payload;
+            this.llegada = llegada;
+        }
+    }
+
+    /**
+     * Contadores de la etapa en un instante dado.
+     */
+    public record Estadisticas(int profundidad, int capacidad, int profundidadMaxima, long encolados,
+                               long descartados, long coalescidos, long lotes, long procesados) {
+    }
+
+    private final BlockingQueue<Pendiente> buffer;
+    private final int capacidad;
+    private final int tamañoLote;
+    private final long esperaLoteNanos;
+    private final PoliticaContrapresion politica;
+    private final Function<byte[], String> claveDispositivo;
+    private final Consumer<List<byte[]>> procesador;
+    private final String nombre;
+
+    /** Tiempo de cada mensaje desde que se encola hasta que se procesa (null si no se mide) */
+    private final Timer latencia;
+
+    /** Mensajes pendientes por dispositivo, solo con la política de coalescencia */
+    private final Map<String, Pendiente> pendientesPorDispositivo = new ConcurrentHashMap<>();
+
+    private final LongAdder encolados = new LongAdder();
+    private final LongAdder descartados = new LongAdder();
+    private final LongAdder coalescidos = new LongAdder();
+    private final LongAdder lotes = new LongAdder();
+    private final LongAdder procesados = new LongAdder();
+    private volatile int profundidadMaxima;
+
+    private volatile boolean activo;
+    private Thread trabajador;
+
+    /**
+     * @param nombre           nombre del hilo trabajador
+     * @param opciones         capacidad, lotes, política con el buffer lleno y medida de la latencia
+     * @param claveDispositivo extrae el dispositivo de un payload (para coalescer); null si no se puede identificar
+     * @param procesador       recibe cada lote en el hilo trabajador
+     */
+    public PipelineIngesta(String nombre, OpcionesIngesta opciones, Function<byte[], String> claveDispositivo,
+                           Consumer<List<byte[]>> procesador) {
+        this.nombre = nombre;
+        this.latencia = opciones.latencia();
+        this.buffer = new ArrayBlockingQueue<>(opciones.capacidad());
+        this.capacidad = opciones.capacidad();
+        this.tamañoLote = Math.max(1, opciones.tamañoLote());
+        this.esperaLoteNanos = TimeUnit.MILLISECONDS.toNanos(opciones.esperaLoteMs());
+        this.politica = opciones.politica();
+        this.claveDispositivo = claveDispositivo;
+        this.procesador = procesador;
+    }
+
+    /**
+     * Arranca el hilo trabajador.
+     */
+    public synchronized void iniciar() {
+        if (activo) return;
+        activo = true;
+        trabajador = new Thread(this::bucle, nombre);
+        trabajador.setDaemon(true);
+        trabajador.start();
+    }
+
+    /**
+     * Detiene el hilo trabajador tras procesar lo que quede pendiente.
+     * <p>
+     * El trabajador no se interrumpe mientras aplica un lote (motor e histórico): termina el que tenga,
+     * vacía el buffer y sale. Solo si no lo consigue en {@link #ESPERA_PARADA_MS} se le interrumpe.
+     */
+    public synchronized void detener() {
+        if (!activo) return;
+        activo = false;
+        try {
+            trabajador.join(ESPERA_PARADA_MS);
+            if (trabajador.isAlive()) {
+                log.warn("⚠️ El hilo '{}' no ha terminado en {} ms; se interrumpe con {} mensajes pendientes",
+                        nombre, ESPERA_PARADA_MS, buffer.size());
+                trabajador.interrupt();
+                trabajador.join(ESPERA_PARADA_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Deposita un payload en el buffer. Se invoca desde el callback MQTT.
+     *
+     * @param payload contenido del mensaje tal y como llega del broker
+     * @return false si el mensaje se ha descartado
+     */
+    public boolean encolar(byte[] payload) {
+        long llegada = latencia == null ? 0 : System.nanoTime();
+        try {
+            switch (politica) {
+                case DESCARTAR_ANTIGUO -> encolarDescartandoAntiguo(new Pendiente(null, payload, llegada));
+                case COALESCER_POR_DISPOSITIVO -> encolarCoalesciendo(payload, llegada);
+                default -> buffer.put(new Pendiente(null, payload, llegada));
+            }
+            encolados.increment();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            descartados.increment();
+            return false;
+        }
+    }
+
+    private void encolarDescartandoAntiguo(Pendiente pendiente) {
+        while (!buffer.offer(pendiente)) {
+            Pendiente antiguo = buffer.peek();
+            if (antiguo != null && descartar(antiguo)) {
+                descartados.increment();
+            }
+        }
+    }
+
+    /**
+     * Saca del buffer el mensaje más antiguo. Si es el pendiente de su dispositivo, deja de serlo en la misma
+     * operación: otro productor no puede fundir una lectura posterior con un hueco que ya no está en el buffer,
+     * donde se perdería sin contarse.
+     *
+     * @return false si otro hilo lo ha sacado antes
+     */
+    private boolean descartar(Pendiente antiguo) {
+        if (antiguo.clave == null) {
+            return buffer.remove(antiguo);
+        }
+        boolean[] descartado = new boolean[1];
+        pendientesPorDispositivo.compute(antiguo.clave, (k, pendiente) -> {
+            descartado[0] = buffer.remove(antiguo);
+            return descartado[0] && pendiente == antiguo ? null : pendiente;
+        });
+        return descartado[0];
+    }
+
+    /**
+     * Como con {@link PoliticaContrapresion#DESCARTAR_ANTIGUO}, con el buffer lleno se descarta el mensaje
+     * más antiguo: el callback MQTT no se bloquea nunca.
+     */
+    private void encolarCoalesciendo(byte[] payload, long llegada) {
+        String clave = claveDispositivo.apply(payload);
+        if (clave == null) {
+            encolarDescartandoAntiguo(new Pendiente(null, payload, llegada));
+            // Una trama binaria puede llevar lecturas de cualquier dispositivo pendiente: las posteriores
+            // ya no se pueden fundir con un hueco anterior a ella o la trama las pisaría al aplicarse después
+            pendientesPorDispositivo.clear();
+            return;
+        }
+
+        Pendiente[] nuevo = new Pendiente[1];
+        pendientesPorDispositivo.compute(clave, (k, pendiente) -> {
+            if (pendiente != null) {
+                pendiente.payload = payload;
+                return pendiente;
+            }
+            nuevo[0] = new Pendiente(k, payload, llegada);
+            return nuevo[0];
+        });
+
+        if (nuevo[0] == null) {
+            coalescidos.increment();
+        } else {
+            encolarDescartandoAntiguo(nuevo[0]);
+        }
+    }
+
+    private void bucle() {
+        List<Pendiente> pendientes = new ArrayList<>(tamañoLote);
+        while (activo) {
+            try {
+                Pendiente primero = buffer.poll(ESPERA_INACTIVO_MS, TimeUnit.MILLISECONDS);
+                if (primero == null) continue;
+                pendientes.add(primero);
+                int profundidad = buffer.size() + 1;
+                if (profundidad > profundidadMaxima) {
+                    profundidadMaxima = profundidad;
+                }
+                completarLote(pendientes);
+            } catch (InterruptedException e) {
+                // detener() no ha podido esperar más: se procesa lo que quede y se sale
+                activo = false;
+            }
+            procesar(pendientes);
+        }
+        buffer.drainTo(pendientes);
+        procesar(pendientes);
+    }
+
+    private void completarLote(List<Pendiente> pendientes) throws InterruptedException {
+        buffer.drainTo(pendientes, tamañoLote - pendientes.size());
+        long limite = System.nanoTime() + esperaLoteNanos;
+
+        while (pendientes.size() < tamañoLote) {
+            long restante = limite - System.nanoTime();
+            if (restante <= 0) return;
+
+            Pendiente siguiente = buffer.poll(restante, TimeUnit.NANOSECONDS);
+            if (siguiente == null) return;
+            pendientes.add(siguiente);
+            buffer.drainTo(pendientes, tamañoLote - pendientes.size());
+        }
+    }
+
+    private void procesar(List<Pendiente> pendientes) {
+        if (pendientes.isEmpty()) return;
+
+        List<byte[]> lote = new ArrayList<>(pendientes.size());
+        for (Pendiente pendiente : pendientes) {
+            if (pendiente.clave != null) {
+                // A partir de aquí una lectura nueva del dispositivo ocupa su propio hueco
+                pendientesPorDispositivo.remove(pendiente.clave, pendiente);
+            }
+            lote.add(pendiente.payload);
+        }
+
+        try {
+            procesador.accept(lote);
+        } catch (RuntimeException e) {
+            log.error("❌ Error procesando un lote de {} mensajes: {}", lote.size(), e.getMessage(), e);
+        }
+        if (latencia != null) {
+            long fin = System.nanoTime();
+            for (Pendiente pendiente : pendientes) {
+                latencia.record(fin - pendiente.llegada, TimeUnit.NANOSECONDS);
+            }
+        }
+        pendientes.clear();
+        lotes.increment();
+        procesados.add(lote.size());
+    }
+
+    public int getProfundidad() {
+        return buffer.size();
+    }
+
+    public Estadisticas getEstadisticas() {
+        return new Estadisticas(buffer.size(), capacidad, profundidadMaxima, encolados.sum(),
+                descartados.sum(), coalescidos.sum(), lotes.sum(), procesados.sum());
+    }
+}
@@ -0,0 +1,17 @@
+package com.smartgrid.service;
+
+/**
+ * Qué hace la etapa de ingesta cuando llegan mensajes más rápido de lo que se procesan.
+ */
+public enum PoliticaContrapresion {
+    /** El callback MQTT espera a que haya hueco (el broker acaba reteniendo los mensajes) */
+    BLOQUEAR,
+    /** Se descarta el mensaje pendiente más antiguo para dejar sitio al nuevo */
+    DESCARTAR_ANTIGUO,
+    /**
+     * Un mensaje nuevo sustituye al pendiente del mismo dispositivo. Si es de otro dispositivo y no hay hueco,
+     * se descarta el pendiente más antiguo, como en {@link #DESCARTAR_ANTIGUO}. Los mensajes sin dispositivo
+     * único (tramas binarias) no se sustituyen y cierran los huecos pendientes.
+     */
+    COALESCER_POR_DISPOSITIVO
+}
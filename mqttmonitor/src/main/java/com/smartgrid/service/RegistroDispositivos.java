@@ -0,0 +1,549 @@
+package com.smartgrid.service;
+
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.repository.DispositivoRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registro en memoria de los dispositivos dados de alta, delante de {@link DispositivoRepository}.
+ * <p>
+ * Se precarga al arrancar, de forma que en régimen estable la ingesta MQTT no consulta la base de datos:
+ * <ul>
+ *     <li>Las claves son el nombre normalizado (sin espacios y en minúsculas).</li>
+ *     <li>Los nombres desconocidos se recuerdan durante un TTL (caché negativa) para no
+ *     repetir la consulta con cada mensaje de un dispositivo no registrado.</li>
+ *     <li>La capacidad está acotada; al superarla se desaloja con política CLOCK
+ *     (segunda oportunidad para las entradas usadas desde la última pasada).</li>
+ *     <li>Opcionalmente, un acierto sobre una entrada antigua dispara su recarga en segundo plano
+ *     (refresco anticipado) sin bloquear al hilo que consulta.</li>
+ * </ul>
+ * Además de por nombre, el registro se puede consultar directamente con los bytes del payload
+ * mediante {@link #resolver(SondaNombre)}, sin crear cadenas en el camino caliente, y por el id
+ * numérico del dispositivo ({@link #buscarCargadoPorId(long)}) para las tramas binarias.
+ * Las altas y cambios de dispositivos llegan a través de {@link #registrar(Dispositivo)}
+ * y {@link #invalidar(String)}, que invoca {@link RegistroDispositivosListener}.
+ * <p>
+ * Publica en el {@link MeterRegistry} recibido la latencia de las consultas a la base de datos
+ * ({@code smartgrid.registro.consulta}, por tipo), las búsquedas por resultado y el tamaño del registro.
+ */
+public class RegistroDispositivos {
+
+    private static final Logger log = LoggerFactory.getLogger(RegistroDispositivos.class);
+
+    /**
+     * Entrada del registro. Un dispositivo null indica que el nombre no está registrado.
+     * Los refrescos actualizan la entrada en el sitio para no dejar restos en la cola de desalojo.
+     */
+    private static final class Entrada {
+        final String clave;
+        final ClaveNombre claveBytes;
+        volatile Dispositivo dispositivo;
+        volatile long cargadaEn;
+        volatile boolean usada;
+        final AtomicBoolean refrescando = new AtomicBoolean();
+
+        Entrada(String clave, Dispositivo dispositivo, long cargadaEn) {
+            this.clave = clave;
+            this.claveBytes = ClaveNombre.de(clave);
+            this.dispositivo = dispositivo;
+            this.cargadaEn = cargadaEn;
+        }
+    }
+
+    /**
+     * Resultado de {@link #resolver(SondaNombre)}.
+     */
+    public enum Resolucion {
+        /** El dispositivo está registrado; queda en la sonda */
+        ENCONTRADO,
+        /** Se sabe que el nombre no está registrado (caché negativa vigente) */
+        DESCONOCIDO,
+        /** El registro no tiene la respuesta; hay que buscar por nombre */
+        SIN_CARGAR
+    }
+
+    /**
+     * Contadores del registro en un instante dado.
+     */
+    public record Estadisticas(long aciertos, long aciertosNegativos, long fallos,
+                               long desalojos, long recargas, int tamaño) {
+    }
+
+    private final DispositivoRepository dispositivoRepository;
+    private final int maxDispositivos;
+    private final long ttlNegativoNanos;
+    private final long refrescoNanos;
+
+    private final ConcurrentHashMap<String, Entrada> entradas = new ConcurrentHashMap<>();
+    /** Las mismas entradas indexadas por los bytes del nombre; se mantiene dentro de los compute de {@link #entradas} */
+    private final ConcurrentHashMap<ClaveNombre, Entrada> entradasPorBytes = new ConcurrentHashMap<>();
+    /** Las entradas con dispositivo indexadas por su id; se mantiene dentro de los compute de {@link #entradas} */
+    private final ConcurrentHashMap<Long, Entrada> entradasPorId = new ConcurrentHashMap<>();
+    /** Ids que no existen en la base de datos y cuándo se comprobó (caché negativa de las tramas binarias) */
+    private final ConcurrentHashMap<Long, Long> idsDesconocidos = new ConcurrentHashMap<>();
+    private final Queue<Entrada> ordenDesalojo = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder aciertos = new LongAdder();
+    private final LongAdder aciertosNegativos = new LongAdder();
+    private final LongAdder fallos = new LongAdder();
+    private final LongAdder desalojos = new LongAdder();
+    private final LongAdder recargas = new LongAdder();
+
+    /** Latencia de las consultas a la base de datos: por nombre, por lote de nombres y por lote de ids */
+    private final Timer consultasNombre;
+    private final Timer consultasNombres;
+    private final Timer consultasIds;
+
+    /** Ejecutor de los refrescos anticipados, solo se crea si están activados */
+    private final ExecutorService ejecutorRefresco;
+
+    /**
+     * Registro con los valores por defecto de {@link com.smartgrid.config.RegistroConfig}.
+     *
+     * @param dispositivoRepository repositorio de respaldo
+     */
+    public RegistroDispositivos(DispositivoRepository dispositivoRepository) {
+        this(dispositivoRepository, 100_000, 30_000, 0);
+    }
+
+    /**
+     * @param dispositivoRepository repositorio de respaldo
+     * @param maxDispositivos       capacidad máxima del registro
+     * @param ttlNegativoMs         tiempo que se recuerda un nombre desconocido
+     * @param refrescoMs            antigüedad que dispara el refresco anticipado (0 = desactivado)
+     */
+    public RegistroDispositivos(DispositivoRepository dispositivoRepository, int maxDispositivos,
+                                long ttlNegativoMs, long refrescoMs) {
+        this(dispositivoRepository, maxDispositivos, ttlNegativoMs, refrescoMs, Metrics.globalRegistry);
+    }
+
+    /**
+     * @param registroMetricas registro donde se publican las métricas del registro de dispositivos
+     * @see #RegistroDispositivos(DispositivoRepository, int, long, long)
+     */
+    public RegistroDispositivos(DispositivoRepository dispositivoRepository, int maxDispositivos,
+                                long ttlNegativoMs, long refrescoMs, MeterRegistry registroMetricas) {
+        this.dispositivoRepository = dispositivoRepository;
+        this.maxDispositivos = maxDispositivos;
+        this.ttlNegativoNanos = TimeUnit.MILLISECONDS.toNanos(ttlNegativoMs);
+        this.refrescoNanos = TimeUnit.MILLISECONDS.toNanos(refrescoMs);
+        this.ejecutorRefresco = refrescoMs > 0
+                ? Executors.newSingleThreadExecutor(r -> {
+                    Thread hilo = new Thread(r, "registro-dispositivos-refresco");
+                    hilo.setDaemon(true);
+                    return hilo;
+                })
+                : null;
+
+        this.consultasNombre = timerConsulta(registroMetricas, "nombre");
+        this.consultasNombres = timerConsulta(registroMetricas, "nombres");
+        this.consultasIds = timerConsulta(registroMetricas, "ids");
+        contadorBusquedas(registroMetricas, "acierto", aciertos);
+        contadorBusquedas(registroMetricas, "acierto_negativo", aciertosNegativos);
+        contadorBusquedas(registroMetricas, "fallo", fallos);
+        Gauge.builder("smartgrid.registro.tamano", entradas, Map::size)
+                .description("Nombres en el registro, registrados o desconocidos")
+                .register(registroMetricas);
+    }
+
+    private static Timer timerConsulta(MeterRegistry registroMetricas, String tipo) {
+        return Timer.builder("smartgrid.registro.consulta")
+                .description("Latencia de las consultas de dispositivos a la base de datos")
+                .tag("tipo", tipo)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(100_000))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(registroMetricas);
+    }
+
+    private static void contadorBusquedas(MeterRegistry registroMetricas, String resultado, LongAdder contador) {
+        FunctionCounter.builder("smartgrid.registro.busquedas", contador, LongAdder::sum)
+                .description("Búsquedas de dispositivos por resultado")
+                .tag("resultado", resultado)
+                .register(registroMetricas);
+    }
+
+    /**
+     * Carga todos los dispositivos registrados para que la ingesta arranque en caliente.
+     * Si la base de datos no está disponible, el registro se irá llenando bajo demanda.
+     */
+    @PostConstruct
+    public void precargar() {
+        try {
+            int cargados = 0;
+            for (Dispositivo dispositivo : dispositivoRepository.findAll()) {
+                if (cargados >= maxDispositivos) {
+                    log.warn("⚠️ Registro de dispositivos lleno ({}). El resto se cargará bajo demanda.", maxDispositivos);
+                    break;
+                }
+                registrar(dispositivo);
+                cargados++;
+            }
+            log.info("✅ Registro de dispositivos precargado con {} dispositivos", cargados);
+        } catch (RuntimeException e) {
+            log.warn("⚠️ No se pudo precargar el registro de dispositivos: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Busca un dispositivo por nombre, consultando la base de datos solo en caso de fallo.
+     *
+     * @param nombre nombre del dispositivo (se normaliza antes de buscar)
+     * @return Optional con el dispositivo si está registrado
+     */
+    public Optional<Dispositivo> buscar(String nombre) {
+        String clave = normalizar(nombre);
+        long ahora = System.nanoTime();
+
+        Entrada entrada = entradas.get(clave);
+        if (entrada != null) {
+            Dispositivo dispositivo = entrada.dispositivo;
+            if (dispositivo != null) {
+                marcarAcierto(entrada, ahora);
+                return Optional.of(dispositivo);
+            }
+            if (ahora - entrada.cargadaEn < ttlNegativoNanos) {
+                aciertosNegativos.increment();
+                return Optional.empty();
+            }
+        }
+
+        fallos.increment();
+        Optional<Dispositivo> encontrado = consultasNombre.record(() -> dispositivoRepository.findByNombre(clave));
+        guardar(clave, encontrado.orElse(null), ahora);
+        return encontrado;
+    }
+
+    /**
+     * Busca un dispositivo con el nombre tal y como aparece en el payload, sin reservar memoria.
+     * Nunca consulta la base de datos: si el registro no tiene la respuesta devuelve
+     * {@link Resolucion#SIN_CARGAR} y el llamante debe recurrir a {@link #buscarTodos(Collection)}.
+     *
+     * @param sonda sonda apuntada al nombre; si se encuentra, recibe el dispositivo
+     * @return si el dispositivo está registrado, se sabe desconocido o hay que cargarlo
+     */
+    public Resolucion resolver(SondaNombre sonda) {
+        Entrada entrada = entradasPorBytes.get(sonda.clave);
+        if (entrada == null) return Resolucion.SIN_CARGAR;
+
+        long ahora = System.nanoTime();
+        Dispositivo dispositivo = entrada.dispositivo;
+        if (dispositivo != null) {
+            marcarAcierto(entrada, ahora);
+            sonda.dispositivo = dispositivo;
+            return Resolucion.ENCONTRADO;
+        }
+        if (ahora - entrada.cargadaEn < ttlNegativoNanos) {
+            aciertosNegativos.increment();
+            return Resolucion.DESCONOCIDO;
+        }
+        return Resolucion.SIN_CARGAR;
+    }
+
+    /**
+     * Id del dispositivo cargado con el nombre apuntado por la sonda, sin consultar la base de datos ni
+     * contar la búsqueda en las estadísticas. Se usa para repartir la ingesta por dispositivo antes de procesarla.
+     *
+     * @param sonda sonda apuntada al nombre
+     * @return id del dispositivo, o null si el registro no lo tiene cargado
+     */
+    public Long idCargado(SondaNombre sonda) {
+        Entrada entrada = entradasPorBytes.get(sonda.clave);
+        Dispositivo dispositivo = entrada == null ? null : entrada.dispositivo;
+        return dispositivo == null ? null : dispositivo.getId();
+    }
+
+    /**
+     * Busca varios dispositivos a la vez. Los que no están en el registro se resuelven
+     * con una única consulta a la base de datos; los que tampoco existen allí quedan en la caché negativa.
+     *
+     * @param nombres nombres de los dispositivos
+     * @return mapa nombre normalizado -> dispositivo, solo con los registrados
+     */
+    public Map<String, Dispositivo> buscarTodos(Collection<String> nombres) {
+        Map<String, Dispositivo> encontrados = new HashMap<>();
+        Set<String> pendientes = new LinkedHashSet<>();
+        long ahora = System.nanoTime();
+
+        for (String nombre : nombres) {
+            String clave = normalizar(nombre);
+            if (encontrados.containsKey(clave) || pendientes.contains(clave)) continue;
+
+            Entrada entrada = entradas.get(clave);
+            Dispositivo dispositivo = entrada == null ? null : entrada.dispositivo;
+            if (dispositivo != null) {
+                marcarAcierto(entrada, ahora);
+                encontrados.put(clave, dispositivo);
+            } else if (entrada != null && ahora - entrada.cargadaEn < ttlNegativoNanos) {
+                aciertosNegativos.increment();
+            } else {
+                fallos.increment();
+                pendientes.add(clave);
+            }
+        }
+
+        if (!pendientes.isEmpty()) {
+            List<Dispositivo> cargados = consultasNombres.record(() -> dispositivoRepository.findByNombreIn(pendientes));
+            for (Dispositivo dispositivo : cargados) {
+                String clave = normalizar(dispositivo.getNombre());
+                guardar(clave, dispositivo, ahora);
+                encontrados.put(clave, dispositivo);
+            }
+            for (String clave : pendientes) {
+                if (!encontrados.containsKey(clave)) {
+                    guardar(clave, null, ahora);
+                }
+            }
+        }
+        return encontrados;
+    }
+
+    /**
+     * Busca un dispositivo ya cargado por su id, sin consultar nunca la base de datos.
+     *
+     * @param id id del dispositivo
+     * @return el dispositivo, o null si el registro no lo tiene cargado
+     */
+    public Dispositivo buscarCargadoPorId(long id) {
+        Entrada entrada = entradasPorId.get(id);
+        Dispositivo dispositivo = entrada == null ? null : entrada.dispositivo;
+        if (dispositivo == null) return null;
+        marcarAcierto(entrada, System.nanoTime());
+        return dispositivo;
+    }
+
+    /**
+     * Busca varios dispositivos por id. Los que no están cargados se resuelven con una única consulta;
+     * los ids que tampoco existen allí se recuerdan durante el TTL negativo.
+     *
+     * @param ids ids de los dispositivos
+     * @return mapa id -> dispositivo, solo con los registrados
+     */
+    public Map<Long, Dispositivo> buscarTodosPorId(Collection<Long> ids) {
+        Map<Long, Dispositivo> encontrados = new HashMap<>();
+        Set<Long> pendientes = new LinkedHashSet<>();
+        long ahora = System.nanoTime();
+
+        for (Long id : ids) {
+            if (encontrados.containsKey(id) || pendientes.contains(id)) continue;
+
+            Dispositivo dispositivo = buscarCargadoPorId(id);
+            Long desconocidoEn = idsDesconocidos.get(id);
+            if (dispositivo != null) {
+                encontrados.put(id, dispositivo);
+            } else if (desconocidoEn != null && ahora - desconocidoEn < ttlNegativoNanos) {
+                aciertosNegativos.increment();
+            } else {
+                fallos.increment();
+                pendientes.add(id);
+            }
+        }
+
+        if (!pendientes.isEmpty()) {
+            List<Dispositivo> cargados = consultasIds.record(() -> dispositivoRepository.findAllById(pendientes));
+            for (Dispositivo dispositivo : cargados) {
+                guardar(normalizar(dispositivo.getNombre()), dispositivo, ahora);
+                encontrados.put(dispositivo.getId(), dispositivo);
+            }
+            if (idsDesconocidos.size() > maxDispositivos) {
+                idsDesconocidos.clear(); // acota la caché negativa ante ids arbitrarios
+            }
+            for (Long id : pendientes) {
+                if (encontrados.containsKey(id)) {
+                    idsDesconocidos.remove(id);
+                } else {
+                    idsDesconocidos.put(id, ahora);
+                }
+            }
+        }
+        return encontrados;
+    }
+
+    private void marcarAcierto(Entrada entrada, long ahora) {
+        entrada.usada = true;
+        aciertos.increment();
+        if (refrescoNanos > 0 && ahora - entrada.cargadaEn > refrescoNanos) {
+            programarRefresco(entrada);
+        }
+    }
+
+    /**
+     * Da de alta o actualiza un dispositivo en el registro.
+     *
+     * @param dispositivo dispositivo recién guardado
+     */
+    public void registrar(Dispositivo dispositivo) {
+        if (dispositivo.getNombre() == null) return;
+        guardar(normalizar(dispositivo.getNombre()), copiar(dispositivo), System.nanoTime());
+    }
+
+    /**
+     * Olvida un nombre, de modo que la siguiente búsqueda irá a la base de datos.
+     *
+     * @param nombre nombre del dispositivo
+     */
+    public void invalidar(String nombre) {
+        if (nombre == null) return;
+        entradas.computeIfPresent(normalizar(nombre), (k, actual) -> {
+            entradasPorBytes.remove(actual.claveBytes, actual);
+            quitarId(actual, actual.dispositivo);
+            return null;
+        });
+    }
+
+    public Estadisticas getEstadisticas() {
+        return new Estadisticas(aciertos.sum(), aciertosNegativos.sum(), fallos.sum(),
+                desalojos.sum(), recargas.sum(), entradas.size());
+    }
+
+    /**
+     * Guarda el resultado de una carga salvo que ya exista uno más reciente
+     * (por ejemplo, un alta llegada mientras se consultaba la base de datos).
+     */
+    private void guardar(String clave, Dispositivo dispositivo, long cargadaEn) {
+        Entrada[] nueva = new Entrada[1];
+        entradas.compute(clave, (k, actual) -> {
+            if (actual == null) {
+                nueva[0] = new Entrada(k, dispositivo, cargadaEn);
+                entradasPorBytes.put(nueva[0].claveBytes, nueva[0]);
+                ponerId(nueva[0], dispositivo);
+                return nueva[0];
+            }
+            if (actual.cargadaEn <= cargadaEn) {
+                quitarId(actual, actual.dispositivo);
+                actual.dispositivo = dispositivo;
+                actual.cargadaEn = cargadaEn;
+                ponerId(actual, dispositivo);
+            }
+            return actual;
+        });
+
+        if (nueva[0] != null) {
+            ordenDesalojo.offer(nueva[0]);
+            if (entradas.size() > maxDispositivos) {
+                desalojar();
+            }
+        }
+    }
+
+    /**
+     * Desaloja una entrada con política CLOCK. Las entradas negativas caducadas salen primero;
+     * las usadas desde la última pasada reciben una segunda oportunidad.
+     */
+    private void desalojar() {
+        long ahora = System.nanoTime();
+        int intentos = 2 * entradas.size() + 1;
+
+        while (intentos-- > 0) {
+            Entrada candidata = ordenDesalojo.poll();
+            if (candidata == null) return;
+            if (entradas.get(candidata.clave) != candidata) continue; // invalidada o sustituida
+
+            boolean negativaCaducada = candidata.dispositivo == null
+                    && ahora - candidata.cargadaEn >= ttlNegativoNanos;
+            if (candidata.usada && !negativaCaducada && intentos > 0) {
+                candidata.usada = false;
+                ordenDesalojo.offer(candidata);
+                continue;
+            }
+            boolean[] desalojada = new boolean[1];
+            entradas.computeIfPresent(candidata.clave, (k, actual) -> {
+                if (actual != candidata) return actual;
+                entradasPorBytes.remove(actual.claveBytes, actual);
+                quitarId(actual, actual.dispositivo);
+                desalojada[0] = true;
+                return null;
+            });
+            if (desalojada[0]) {
+                desalojos.increment();
+                return;
+            }
+        }
+    }
+
+    private void ponerId(Entrada entrada, Dispositivo dispositivo) {
+        if (dispositivo != null && dispositivo.getId() != null) {
+            entradasPorId.put(dispositivo.getId(), entrada);
+        }
+    }
+
+    private void quitarId(Entrada entrada, Dispositivo dispositivo) {
+        if (dispositivo != null && dispositivo.getId() != null) {
+            entradasPorId.remove(dispositivo.getId(), entrada);
+        }
+    }
+
+    private void programarRefresco(Entrada entrada) {
+        if (!entrada.refrescando.compareAndSet(false, true)) return;
+
+        ejecutorRefresco.execute(() -> {
+            try {
+                long ahora = System.nanoTime();
+                Dispositivo dispositivo = consultasNombre.record(() -> dispositivoRepository.findByNombre(entrada.clave))
+                        .orElse(null);
+                guardar(entrada.clave, dispositivo, ahora);
+                recargas.increment();
+            } catch (RuntimeException e) {
+                log.warn("⚠️ No se pudo refrescar el dispositivo '{}': {}", entrada.clave, e.getMessage());
+            } finally {
+                entrada.refrescando.set(false);
+            }
+        });
+    }
+
+    /**
+     * Libera el hilo de refresco al cerrar el contexto.
+     */
+    public void close() {
+        if (ejecutorRefresco != null) {
+            ejecutorRefresco.shutdownNow();
+        }
+    }
+
+    /**
+     * Normaliza el nombre de un dispositivo tal y como llega en los mensajes MQTT.
+     *
+     * @param nombre nombre recibido
+     * @return nombre sin espacios alrededor y en minúsculas, plegadas igual que al buscar por los bytes
+     * del payload
+     */
+    public static String normalizar(String nombre) {
+        return ClaveNombre.plegar(nombre.trim());
+    }
+
+    /**
+     * Copia desligada del contexto de persistencia, para no compartir entidades gestionadas.
+     */
+    private static Dispositivo copiar(Dispositivo origen) {
+        Dispositivo copia = new Dispositivo();
+        copia.setId(origen.getId());
+        copia.setNombre(origen.getNombre());
+        copia.setZona(origen.getZona());
+        copia.setCriticidad(origen.getCriticidad());
+        return copia;
+    }
+}
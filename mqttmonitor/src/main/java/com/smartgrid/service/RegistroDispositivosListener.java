@@ -0,0 +1,49 @@
+package com.smartgrid.service;
+
+import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.model.CambioDispositivo;
+import com.smartgrid.model.Dispositivo;
+import org.springframework.context.ApplicationListener;
+
+/**
+ * Mantiene {@link RegistroDispositivos} al día con los {@link CambioDispositivo} que publica el modelo
+ * cuando se dan de alta, modifican o eliminan dispositivos, sin esperar a que caduque ninguna entrada.
+ * Los nombres que dejan de existir (borrados o renombrados) se olvidan también en el motor, que así
+ * puede reutilizar su slot.
+ */
+public class RegistroDispositivosListener implements ApplicationListener<CambioDispositivo> {
+
+    private final RegistroDispositivos registro;
+    private final SmartGridDecisionEngine ia;
+
+    public RegistroDispositivosListener(RegistroDispositivos registro, SmartGridDecisionEngine ia) {
+        this.registro = registro;
+        this.ia = ia;
+    }
+
+    @Override
+    public void onApplicationEvent(CambioDispositivo cambio) {
+        Dispositivo dispositivo = cambio.getDispositivo();
+        if (cambio.isEliminado()) {
+            registro.invalidar(dispositivo.getNombre());
+            ia.olvidarDispositivo(dispositivo.getNombre());
+        } else {
+            alGuardar(dispositivo);
+        }
+    }
+
+    private void alGuardar(Dispositivo dispositivo) {
+        Dispositivo anterior = dispositivo.getId() == null ? null : registro.buscarCargadoPorId(dispositivo.getId());
+        registro.registrar(dispositivo);
+        if (anterior == null || anterior.getNombre() == null
+                || anterior.getNombre().equals(dispositivo.getNombre())) {
+            return;
+        }
+        // Renombrado: el nombre anterior ya no corresponde a ningún dispositivo
+        if (dispositivo.getNombre() == null || !RegistroDispositivos.normalizar(anterior.getNombre())
+                .equals(RegistroDispositivos.normalizar(dispositivo.getNombre()))) {
+            registro.invalidar(anterior.getNombre());
+        }
+        ia.olvidarDispositivo(anterior.getNombre());
+    }
+}
@@ -0,0 +1,24 @@
+package com.smartgrid.service;
+
+/**
+ * Resultado de interpretar un mensaje "nombre:consumo" o una trama binaria ({@link TramaBinaria}). Los mensajes rechazados se cuentan
+ * por código en lugar de generar una línea de log por mensaje.
+ */
+public enum ResultadoLectura {
+    /** Lectura válida */
+    OK,
+    /** No hay separador ':' */
+    SIN_SEPARADOR,
+    /** Hay más de un separador ':' */
+    VARIOS_SEPARADORES,
+    /** El nombre del dispositivo está vacío */
+    NOMBRE_VACIO,
+    /** No hay valor de consumo tras el separador */
+    CONSUMO_VACIO,
+    /** El consumo no es un número decimal finito */
+    CONSUMO_INVALIDO,
+    /** El dispositivo no está registrado */
+    DISPOSITIVO_DESCONOCIDO,
+    /** La trama binaria tiene una cabecera, versión o longitud incorrecta */
+    TRAMA_INVALIDA
+}
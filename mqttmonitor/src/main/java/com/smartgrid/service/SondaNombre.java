@@ -0,0 +1,44 @@
+package com.smartgrid.service;
+
+import com.smartgrid.model.Dispositivo;
+
+/**
+ * Búsqueda reutilizable de un dispositivo por el nombre tal y como aparece en el payload,
+ * sin crear objetos por mensaje. Guarda la última búsqueda, así que cada instancia
+ * debe usarla un solo hilo.
+ *
+ * @see RegistroDispositivos#resolver(SondaNombre)
+ */
+public final class SondaNombre {
+
+    final ClaveNombre clave = ClaveNombre.sonda();
+    Dispositivo dispositivo;
+
+    /**
+     * Apunta la sonda al nombre contenido en [desde, hasta) del buffer.
+     *
+     * @param datos buffer con el nombre, ya sin espacios alrededor
+     * @param desde primer byte del nombre
+     * @param hasta posición siguiente al último byte
+     * @return la propia sonda
+     */
+    public SondaNombre apuntar(byte[] datos, int desde, int hasta) {
+        clave.apuntar(datos, desde, hasta);
+        dispositivo = null;
+        return this;
+    }
+
+    /**
+     * Hash del nombre apuntado, igual para todas las variantes de mayúsculas del mismo nombre.
+     */
+    public int hashNombre() {
+        return clave.hashCode();
+    }
+
+    /**
+     * Dispositivo encontrado en la última búsqueda, o null.
+     */
+    public Dispositivo getDispositivo() {
+        return dispositivo;
+    }
+}
@@ -0,0 +1,167 @@
+package com.smartgrid.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Formato binario compacto para las lecturas, alternativo al texto "nombre:consumo".
+ * <p>
+ * Una trama lleva una o varias lecturas identificadas por el id numérico del dispositivo
+ * (el de la tabla {@code dispositivos}), en orden de red (big-endian):
+ * <pre>
+ * cabecera (12 bytes)
+ *   0  1  magia 0xFE (no aparece nunca en UTF-8, así que no se confunde con el texto)
+ *   1  1  versión (1)
+ *   2  2  número de lecturas N (sin signo, al menos 1)
+ *   4  8  instante base en milisegundos desde epoch
+ * lecturas (N x 16 bytes)
+ *   0  8  id del dispositivo
+ *   8  4  consumo en Watts (float IEEE 754)
+ *  12  4  desfase en milisegundos respecto al instante base (con signo)
+ * </pre>
+ * Los campos se leen directamente sobre el payload, sin copiarlo ni crear objetos.
+ */
+public final class TramaBinaria {
+
+    /** Primer byte de toda trama binaria */
+    public static final byte MAGIA = (byte) 0xFE;
+
+    /** Versión del formato que se sabe interpretar */
+    public static final byte VERSION = 1;
+
+    public static final int TAMAÑO_CABECERA = 12;
+    public static final int TAMAÑO_LECTURA = 16;
+
+    /** Número máximo de lecturas por trama (el campo es de 16 bits sin signo) */
+    public static final int MAX_LECTURAS = 0xFFFF;
+
+    private static final VarHandle SHORT = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle FLOAT = MethodHandles.byteArrayViewVarHandle(float[].class, ByteOrder.BIG_ENDIAN);
+
+    private TramaBinaria() {
+    }
+
+    /**
+     * Indica si el payload es una trama binaria (por su primer byte); no comprueba que sea válida.
+     *
+     * @param payload bytes del mensaje
+     */
+    public static boolean esBinaria(byte[] payload) {
+        return payload.length > 0 && payload[0] == MAGIA;
+    }
+
+    /**
+     * Comprueba la cabecera y que la longitud corresponda al número de lecturas.
+     *
+     * @param payload trama recibida
+     * @return {@link ResultadoLectura#OK} o {@link ResultadoLectura#TRAMA_INVALIDA}
+     */
+    public static ResultadoLectura validar(byte[] payload) {
+        if (payload.length < TAMAÑO_CABECERA || payload[0] != MAGIA || payload[1] != VERSION) {
+            return ResultadoLectura.TRAMA_INVALIDA;
+        }
+        int lecturas = numeroLecturas(payload);
+        if (lecturas == 0 || payload.length != TAMAÑO_CABECERA + lecturas * TAMAÑO_LECTURA) {
+            return ResultadoLectura.TRAMA_INVALIDA;
+        }
+        return ResultadoLectura.OK;
+    }
+
+    /**
+     * Número de lecturas declarado en la cabecera.
+     */
+    public static int numeroLecturas(byte[] payload) {
+        return Short.toUnsignedInt((short) SHORT.get(payload, 2));
+    }
+
+    /**
+     * Id del dispositivo de la lectura i.
+     */
+    public static long id(byte[] payload, int i) {
+        return (long) LONG.get(payload, TAMAÑO_CABECERA + i * TAMAÑO_LECTURA);
+    }
+
+    /**
+     * Consumo en Watts de la lectura i.
+     */
+    public static float consumo(byte[] payload, int i) {
+        return (float) FLOAT.get(payload, TAMAÑO_CABECERA + i * TAMAÑO_LECTURA + 8);
+    }
+
+    /**
+     * Instante de la lectura i, en milisegundos desde epoch.
+     */
+    public static long instante(byte[] payload, int i) {
+        long base = (long) LONG.get(payload, 4);
+        return base + (int) INT.get(payload, TAMAÑO_CABECERA + i * TAMAÑO_LECTURA + 12);
+    }
+
+    /**
+     * Hash del dispositivo de la lectura i, para repartir lecturas entre carriles de ingesta.
+     * Es el de su id, el mismo con el que se reparten los mensajes de texto de un dispositivo cargado
+     * (ver {@link MQTTSubscriberService#hashDispositivo(byte[])}).
+     */
+    public static int hashDispositivo(byte[] payload, int i) {
+        return Long.hashCode(id(payload, i));
+    }
+
+    /**
+     * Codifica una trama; el instante base es el de la primera lectura.
+     * Lo usan las pasarelas y las herramientas de prueba.
+     *
+     * @param ids       id de cada dispositivo
+     * @param consumos  consumo de cada lectura en Watts
+     * @param instantes instante de cada lectura en milisegundos desde epoch
+     * @return trama lista para publicar
+     * @throws IllegalArgumentException si los arrays no tienen la misma longitud, están vacíos,
+     *                                  superan {@link #MAX_LECTURAS} o algún instante se aleja demasiado del primero
+     */
+    public static byte[] codificar(long[] ids, float[] consumos, long[] instantes) {
+        int n = ids.length;
+        if (n == 0 || n > MAX_LECTURAS || consumos.length != n || instantes.length != n) {
+            throw new IllegalArgumentException("Una trama lleva entre 1 y " + MAX_LECTURAS
+                    + " lecturas con id, consumo e instante");
+        }
+
+        byte[] trama = new byte[TAMAÑO_CABECERA + n * TAMAÑO_LECTURA];
+        long base = instantes[0];
+        trama[0] = MAGIA;
+        trama[1] = VERSION;
+        SHORT.set(trama, 2, (short) n);
+        LONG.set(trama, 4, base);
+        for (int i = 0; i < n; i++) {
+            long desfase = instantes[i] - base;
+            if (desfase != (int) desfase) {
+                throw new IllegalArgumentException("El instante de la lectura " + i + " se aleja demasiado del primero");
+            }
+            int posicion = TAMAÑO_CABECERA + i * TAMAÑO_LECTURA;
+            LONG.set(trama, posicion, ids[i]);
+            FLOAT.set(trama, posicion + 8, consumos[i]);
+            INT.set(trama, posicion + 12, (int) desfase);
+        }
+        return trama;
+    }
+
+    /**
+     * Copia en una trama nueva solo algunas lecturas de una trama válida, conservando su orden.
+     * Se usa para repartir una trama con varios dispositivos entre carriles de ingesta.
+     *
+     * @param payload  trama válida
+     * @param indices  posiciones de las lecturas a copiar, en orden
+     * @param cantidad número de posiciones usadas de {@code indices}
+     * @return trama con esas lecturas y el mismo instante base
+     */
+    public static byte[] extraer(byte[] payload, int[] indices, int cantidad) {
+        byte[] trama = new byte[TAMAÑO_CABECERA + cantidad * TAMAÑO_LECTURA];
+        System.arraycopy(payload, 0, trama, 0, TAMAÑO_CABECERA);
+        SHORT.set(trama, 2, (short) cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            System.arraycopy(payload, TAMAÑO_CABECERA + indices[i] * TAMAÑO_LECTURA,
+                    trama, TAMAÑO_CABECERA + i * TAMAÑO_LECTURA, TAMAÑO_LECTURA);
+        }
+        return trama;
+    }
+}
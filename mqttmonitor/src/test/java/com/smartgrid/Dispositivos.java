@@ -0,0 +1,44 @@
+package com.smartgrid;
+
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+
+/**
+ * Dispositivos de prueba compartidos por los tests.
+ */
+public final class Dispositivos {
+
+    private Dispositivos() {
+    }
+
+    /**
+     * Dispositivo sin id, como los que llegan por MQTT.
+     *
+     * @param zona null para un dispositivo sin zona
+     */
+    public static Dispositivo dispositivo(String nombre, String zona, NivelCriticidad criticidad, double consumo) {
+        Dispositivo d = new Dispositivo();
+        d.setNombre(nombre);
+        d.setZona(zona);
+        d.setCriticidad(criticidad);
+        d.setConsumo(consumo);
+        return d;
+    }
+
+    /**
+     * Dispositivo sin id ni consumo; el consumo llega después con cada lectura.
+     */
+    public static Dispositivo dispositivo(String nombre, String zona, NivelCriticidad criticidad) {
+        return dispositivo(nombre, zona, criticidad, 0);
+    }
+
+    /**
+     * Dispositivo con id, como los guardados en base de datos.
+     */
+    public static Dispositivo dispositivo(long id, String nombre, String zona, NivelCriticidad criticidad,
+                                          double consumo) {
+        Dispositivo d = dispositivo(nombre, zona, criticidad, consumo);
+        d.setId(id);
+        return d;
+    }
+}
@@ -1,9 +1,28 @@
 package com.smartgrid.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartgrid.logic.Caducidad;
+import com.smartgrid.logic.Histeresis;
+import com.smartgrid.logic.Pronostico;
 import com.smartgrid.logic.SmartGridDecisionEngine;
 import com.smartgrid.repository.DispositivoRepository;
+import com.smartgrid.service.ActuacionDispositivos;
+import com.smartgrid.service.DifusionDashboard;
+import com.smartgrid.service.EscritorLecturas;
+import com.smartgrid.service.EstadisticasConsumo;
+import com.smartgrid.service.FiltroBandaMuerta;
+import com.smartgrid.service.FotoDispositivos;
+import com.smartgrid.service.ImportadorDispositivos;
+import com.smartgrid.service.InstantaneasMotor;
+import com.smartgrid.service.LimiteConcurrencia;
 import com.smartgrid.service.MQTTSubscriberService;
+import com.smartgrid.service.MetricasMotor;
+import com.smartgrid.service.RegistroDispositivos;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 
 import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -13,7 +32,14 @@ public class ConfigTest {
     @Test
     public void testDecisionEngineBean() {
         Config config = new Config();
-        SmartGridDecisionEngine engine = config.decisionEngine();
+        MotorConfig motorConfig = mock(MotorConfig.class);
+        when(motorConfig.getLimiteConsumo()).thenReturn(5000.0);
+        when(motorConfig.getParalelismo()).thenReturn(1);
+        when(motorConfig.getCaducidad()).thenReturn(Caducidad.DESACTIVADA);
+        when(motorConfig.getHisteresis()).thenReturn(Histeresis.DESACTIVADA);
+        when(motorConfig.getPronostico()).thenReturn(Pronostico.DESACTIVADO);
+
+        SmartGridDecisionEngine engine = config.decisionEngine(motorConfig);
 
         assertNotNull(engine, "El bean SmartGridDecisionEngine no debe ser null");
     }
@@ -24,10 +50,212 @@ public class ConfigTest {
 
         MQTTConfig mqttConfig = mock(MQTTConfig.class);
         SmartGridDecisionEngine engine = mock(SmartGridDecisionEngine.class);
-        DispositivoRepository repository = mock(DispositivoRepository.class);
+        RegistroDispositivos registro = mock(RegistroDispositivos.class);
+        EscritorLecturas escritor = mock(EscritorLecturas.class);
+
+        MQTTSubscriberService service = config.mqttSubscriberService(mqttConfig, engine, registro, escritor,
+                mock(BandaMuertaConfig.class), new SimpleMeterRegistry());
+
+        assertNotNull(service, "El bean MQTTSubscriberService no debe ser null");
+    }
 
-        MQTTSubscriberService service = config.mqttSubscriberService(mqttConfig, engine, repository);
+    @Test
+    public void testMQTTSubscriberServiceBeanConBandaMuerta() {
+        Config config = new Config();
+
+        BandaMuertaConfig bandaMuertaConfig = mock(BandaMuertaConfig.class);
+        when(bandaMuertaConfig.isActiva()).thenReturn(true);
+        when(bandaMuertaConfig.getPorcentaje()).thenReturn(2.0);
+        SmartGridDecisionEngine engine = mock(SmartGridDecisionEngine.class);
+        when(engine.getCaducidad()).thenReturn(Caducidad.DESACTIVADA);
+
+        MQTTSubscriberService service = config.mqttSubscriberService(mock(MQTTConfig.class), engine,
+                mock(RegistroDispositivos.class), mock(EscritorLecturas.class), bandaMuertaConfig,
+                new SimpleMeterRegistry());
 
         assertNotNull(service, "El bean MQTTSubscriberService no debe ser null");
+        verify(engine).añadirListener(any(FiltroBandaMuerta.class));
+    }
+
+    @Test
+    public void testActuacionDispositivosBean() throws Exception {
+        Config config = new Config();
+        SimpleMeterRegistry registroMetricas = new SimpleMeterRegistry();
+
+        ActuacionConfig actuacionConfig = mock(ActuacionConfig.class);
+        when(actuacionConfig.getPrefijoTopic()).thenReturn("smartgrid/control/");
+        when(actuacionConfig.getOrdenesPorSegundoZona()).thenReturn(50.0);
+        when(actuacionConfig.getMaxEnVuelo()).thenReturn(1000);
+        when(actuacionConfig.isActiva()).thenReturn(false);
+
+        ActuacionDispositivos actuacion = config.actuacionDispositivos(new SmartGridDecisionEngine(),
+                mock(MQTTConfig.class), actuacionConfig, registroMetricas);
+
+        assertNotNull(actuacion, "El bean ActuacionDispositivos no debe ser null");
+        assertNotNull(registroMetricas.find("smartgrid.actuacion.en-vuelo").gauge());
+        assertEquals(4, registroMetricas.find("smartgrid.actuacion.ordenes").functionCounters().size());
+    }
+
+    @Test
+    public void testRegistroDispositivosBean() {
+        Config config = new Config();
+
+        DispositivoRepository repository = mock(DispositivoRepository.class);
+        RegistroConfig registroConfig = mock(RegistroConfig.class);
+        when(registroConfig.getMaxDispositivos()).thenReturn(10);
+
+        RegistroDispositivos registro = config.registroDispositivos(repository, registroConfig,
+                new SimpleMeterRegistry());
+
+        assertNotNull(registro, "El bean RegistroDispositivos no debe ser null");
+    }
+
+    @Test
+    public void testEscritorLecturasBean() {
+        Config config = new Config();
+
+        HistoricoConfig historicoConfig = mock(HistoricoConfig.class);
+        when(historicoConfig.getCapacidadLotes()).thenReturn(16);
+        when(historicoConfig.getFilasPorEscritura()).thenReturn(100);
+
+        EscritorLecturas escritor = config.escritorLecturas(mock(JdbcTemplate.class), historicoConfig);
+
+        assertNotNull(escritor, "El bean EscritorLecturas no debe ser null");
+    }
+
+    @Test
+    public void testDifusionDashboardBean() {
+        Config config = new Config();
+
+        DashboardConfig dashboardConfig = mock(DashboardConfig.class);
+        when(dashboardConfig.getIntervaloMs()).thenReturn(250L);
+
+        DifusionDashboard difusion = config.difusionDashboard(new SmartGridDecisionEngine(), new ObjectMapper(),
+                dashboardConfig);
+
+        assertNotNull(difusion, "El bean DifusionDashboard no debe ser null");
+        difusion.close();
+    }
+
+    @Test
+    public void testEstadisticasConsumoBean() {
+        Config config = new Config();
+        SimpleMeterRegistry registroMetricas = new SimpleMeterRegistry();
+
+        EstadisticasConfig estadisticasConfig = mock(EstadisticasConfig.class);
+        when(estadisticasConfig.getMaxDispositivos()).thenReturn(100);
+        when(estadisticasConfig.getMuestreoZonasMs()).thenReturn(100L);
+        when(estadisticasConfig.getErrorRelativo()).thenReturn(0.01);
+        when(estadisticasConfig.isActivas()).thenReturn(true);
+
+        EstadisticasConsumo estadisticas = config.estadisticasConsumo(new SmartGridDecisionEngine(),
+                estadisticasConfig, registroMetricas);
+
+        assertNotNull(estadisticas, "El bean EstadisticasConsumo no debe ser null");
+        assertNotNull(registroMetricas.find("smartgrid.estadisticas.dispositivos").gauge());
+        estadisticas.close();
+    }
+
+    @Test
+    public void testFotoDispositivosBean() {
+        Config config = new Config();
+
+        ApiConfig apiConfig = mock(ApiConfig.class);
+        when(apiConfig.getIntervaloFotoMs()).thenReturn(1000L);
+
+        FotoDispositivos foto = config.fotoDispositivos(new SmartGridDecisionEngine(), apiConfig);
+
+        assertNotNull(foto, "El bean FotoDispositivos no debe ser null");
+        assertEquals(0, foto.getPublicaciones(), "La foto se toma con la primera consulta");
+    }
+
+    @Test
+    public void testImportadorDispositivosBean() {
+        Config config = new Config();
+
+        ImportacionConfig importacionConfig = mock(ImportacionConfig.class);
+        when(importacionConfig.getFilasPorLote()).thenReturn(1000);
+        when(importacionConfig.getMaxErrores()).thenReturn(100);
+
+        ImportadorDispositivos importador = config.importadorDispositivos(mock(JdbcTemplate.class),
+                mock(PlatformTransactionManager.class), mock(RegistroDispositivos.class), new ObjectMapper(),
+                importacionConfig);
+
+        assertNotNull(importador, "El bean ImportadorDispositivos no debe ser null");
+    }
+
+    @Test
+    public void testInstantaneasMotorBean() {
+        Config config = new Config();
+
+        InstantaneaConfig instantaneaConfig = mock(InstantaneaConfig.class);
+        when(instantaneaConfig.getDirectorio()).thenReturn("datos");
+        when(instantaneaConfig.isActiva()).thenReturn(false);
+
+        InstantaneasMotor instantaneas = config.instantaneasMotor(new SmartGridDecisionEngine(), instantaneaConfig);
+
+        assertNotNull(instantaneas, "El bean InstantaneasMotor no debe ser null");
+        instantaneas.close();
+    }
+
+    @Test
+    public void testMetricasMotorBean() {
+        Config config = new Config();
+        SimpleMeterRegistry registroMetricas = new SimpleMeterRegistry();
+
+        MetricasMotor metricas = config.metricasMotor(new SmartGridDecisionEngine());
+        metricas.bindTo(registroMetricas);
+
+        assertNotNull(registroMetricas.find("smartgrid.motor.limite").gauge(),
+                "Las métricas del motor deben quedar registradas");
+    }
+
+    @Test
+    public void testLimiteOperadoresBean() {
+        Config config = new Config();
+        WebConfig webConfig = mock(WebConfig.class);
+        when(webConfig.getMaxConcurrentes()).thenReturn(3);
+        when(webConfig.getEsperaMs()).thenReturn(100L);
+        SimpleMeterRegistry registroMetricas = new SimpleMeterRegistry();
+
+        LimiteConcurrencia limite = config.limiteOperadores(webConfig, registroMetricas);
+
+        assertEquals(3, limite.getMaximo());
+        assertNotNull(registroMetricas.find("smartgrid.web.operadores.en-curso").gauge());
+        assertNotNull(registroMetricas.find("smartgrid.web.operadores.rechazadas").functionCounter());
+        assertNotNull(config.limiteOperadoresWeb(limite));
+    }
+
+    @Test
+    public void testSinLimiteDeOperadoresNoHayInterceptor() {
+        Config config = new Config();
+        WebConfig webConfig = mock(WebConfig.class);
+        when(webConfig.getMaxConcurrentes()).thenReturn(0);
+        InterceptorRegistry registry = mock(InterceptorRegistry.class);
+
+        LimiteConcurrencia limite = config.limiteOperadores(webConfig, new SimpleMeterRegistry());
+        config.limiteOperadoresWeb(limite).addInterceptors(registry);
+
+        assertEquals(0, limite.getMaximo());
+        verify(registry, never()).addInterceptor(any());
+    }
+
+    @Test
+    public void testConexionesNecesarias() {
+        MQTTConfig mqttConfig = mock(MQTTConfig.class);
+        when(mqttConfig.getIngestaCapacidad()).thenReturn(65536);
+        when(mqttConfig.getIngestaCarriles()).thenReturn(4);
+        when(mqttConfig.getConexiones()).thenReturn(2);
+        HistoricoConfig historicoConfig = mock(HistoricoConfig.class);
+        when(historicoConfig.isActivo()).thenReturn(true);
+        RegistroConfig registroConfig = mock(RegistroConfig.class);
+
+        // 4 carriles + histórico + consultas puntuales
+        assertEquals(6, Config.conexionesNecesarias(mqttConfig, historicoConfig, registroConfig));
+
+        // Sin etapa de ingesta consultan los propios clientes MQTT
+        when(mqttConfig.getIngestaCapacidad()).thenReturn(0);
+        when(registroConfig.getRefrescoMs()).thenReturn(60_000L);
+        assertEquals(5, Config.conexionesNecesarias(mqttConfig, historicoConfig, registroConfig));
     }
 }
@@ -3,6 +3,8 @@ package com.smartgrid.config;
 import org.junit.jupiter.api.Test;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class MQTTConfigTest {
@@ -19,4 +21,47 @@ public class MQTTConfigTest {
         assertEquals("smartgrid/consumption", config.getTopic());
         assertEquals("smartgrid-client", config.getClientId());
     }
+
+    private static MQTTConfig configConexiones(int conexiones, String topics) {
+        MQTTConfig config = new MQTTConfig();
+        ReflectionTestUtils.setField(config, "topic", "smartgrid/consumption");
+        ReflectionTestUtils.setField(config, "clientId", "smartgrid-client");
+        ReflectionTestUtils.setField(config, "conexiones", conexiones);
+        ReflectionTestUtils.setField(config, "grupoCompartido", "grupo");
+        ReflectionTestUtils.setField(config, "topicsParticionados", topics);
+        return config;
+    }
+
+    @Test
+    public void testUnaConexionUsaElTopicTalCual() {
+        MQTTConfig config = configConexiones(1, "");
+
+        assertEquals(1, config.getConexiones());
+        assertEquals(List.of("smartgrid/consumption"), config.getFiltros(0));
+        assertEquals("smartgrid-client", config.getClientId(0));
+        assertEquals(1, config.getIngestaCarriles());
+    }
+
+    @Test
+    public void testVariasConexionesCompartenElTopic() {
+        MQTTConfig config = configConexiones(4, "");
+
+        assertEquals(4, config.getConexiones());
+        assertEquals(List.of("$share/grupo/smartgrid/consumption"), config.getFiltros(3));
+        assertEquals("smartgrid-client-3", config.getClientId(3));
+        assertEquals(4, config.getIngestaCarriles());
+    }
+
+    @Test
+    public void testFiltrosParticionadosSeRepartenEntreConexiones() {
+        MQTTConfig config = configConexiones(2, " smartgrid/consumption/norte/#, smartgrid/consumption/sur/#,"
+                + "smartgrid/consumption/este/# ");
+
+        assertEquals(2, config.getConexiones());
+        assertEquals(List.of("smartgrid/consumption/norte/#", "smartgrid/consumption/este/#"), config.getFiltros(0));
+        assertEquals(List.of("smartgrid/consumption/sur/#"), config.getFiltros(1));
+
+        // No se abren más conexiones que filtros
+        assertEquals(3, configConexiones(8, "a/#,b/#,c/#").getConexiones());
+    }
 }
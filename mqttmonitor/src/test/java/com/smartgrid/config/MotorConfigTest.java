@@ -0,0 +1,91 @@
+package com.smartgrid.config;
+
+import com.smartgrid.logic.Caducidad;
+import com.smartgrid.logic.Histeresis;
+import com.smartgrid.logic.Pronostico;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MotorConfigTest {
+
+    @Test
+    public void testLimitesZona() {
+        MotorConfig config = new MotorConfig();
+        ReflectionTestUtils.setField(config, "limitesZona", " cocina:2000, garaje : 1500.5 ");
+
+        assertEquals(Map.of("cocina", 2000.0, "garaje", 1500.5), config.getLimitesZona());
+    }
+
+    @Test
+    public void testSinLimitesZona() {
+        MotorConfig config = new MotorConfig();
+        ReflectionTestUtils.setField(config, "limitesZona", "");
+
+        assertTrue(config.getLimitesZona().isEmpty());
+    }
+
+    @Test
+    public void testLimiteZonaInvalido() {
+        MotorConfig config = new MotorConfig();
+        ReflectionTestUtils.setField(config, "limitesZona", "cocina=2000");
+
+        assertThrows(IllegalArgumentException.class, config::getLimitesZona);
+    }
+
+    @Test
+    public void testParalelismoPorDefecto() {
+        MotorConfig config = new MotorConfig();
+        ReflectionTestUtils.setField(config, "paralelismo", 0);
+
+        assertEquals(Runtime.getRuntime().availableProcessors(), config.getParalelismo());
+    }
+
+    @Test
+    public void testCaducidad() {
+        MotorConfig config = new MotorConfig();
+        ReflectionTestUtils.setField(config, "caducidadTtlMs", 60_000L);
+        ReflectionTestUtils.setField(config, "caducidadResolucionMs", 500L);
+        ReflectionTestUtils.setField(config, "caducidadModo", Caducidad.Modo.ATENUAR);
+        ReflectionTestUtils.setField(config, "caducidadFactorAtenuacion", 0.5);
+
+        assertEquals(new Caducidad(60_000, 500, Caducidad.Modo.ATENUAR, 0.5), config.getCaducidad());
+        assertTrue(config.getCaducidad().isActiva());
+
+        ReflectionTestUtils.setField(config, "caducidadFactorAtenuacion", 1.5);
+        assertThrows(IllegalArgumentException.class, config::getCaducidad);
+    }
+
+    @Test
+    public void testHisteresis() {
+        MotorConfig config = new MotorConfig();
+        ReflectionTestUtils.setField(config, "histeresisFraccionRestablecer", 0.9);
+        ReflectionTestUtils.setField(config, "histeresisMinDesconectadoMs", 30_000L);
+        ReflectionTestUtils.setField(config, "histeresisPeriodoMs", 500L);
+
+        assertEquals(new Histeresis(0.9, 30_000, 500), config.getHisteresis());
+        assertTrue(config.getHisteresis().isActiva());
+
+        ReflectionTestUtils.setField(config, "histeresisFraccionRestablecer", 1.2);
+        assertThrows(IllegalArgumentException.class, config::getHisteresis);
+    }
+
+    @Test
+    public void testPronostico() {
+        MotorConfig config = new MotorConfig();
+        ReflectionTestUtils.setField(config, "pronosticoHorizonteMs", 30_000L);
+        ReflectionTestUtils.setField(config, "pronosticoPeriodoMs", 1000L);
+        ReflectionTestUtils.setField(config, "pronosticoAlfa", 0.5);
+        ReflectionTestUtils.setField(config, "pronosticoBeta", 0.1);
+        ReflectionTestUtils.setField(config, "pronosticoAnticipar", true);
+
+        assertEquals(new Pronostico(30_000, 1000, 0.5, 0.1, true), config.getPronostico());
+        assertTrue(config.getPronostico().isActivo());
+
+        ReflectionTestUtils.setField(config, "pronosticoBeta", 0.0);
+        assertThrows(IllegalArgumentException.class, config::getPronostico);
+    }
+}
@@ -1,10 +1,14 @@
 package com.smartgrid.controller;
 
 import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.service.ActuacionDispositivos;
+import com.smartgrid.service.DifusionDashboard;
 import java.util.List;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.ui.Model;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -66,4 +70,34 @@ public class DashboardControllerTest {
         String result = controller.ajustarPotencia("nevera", 8000);
         assertEquals("redirect:/gestion?error=No se pudo ajustar la potencia", result);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testAjustarPotenciaEnviaLaConsigna() {
+        ActuacionDispositivos actuacion = mock(ActuacionDispositivos.class);
+        DashboardController conActuacion = new DashboardController(ia, null, actuacion);
+        when(ia.ajustarPotenciaDispositivo("nevera", 1200)).thenReturn(true);
+        when(ia.ajustarPotenciaDispositivo("nevera", 8000)).thenReturn(false);
+
+        assertEquals("redirect:/gestion", conActuacion.ajustarPotencia("nevera", 1200));
+        verify(actuacion).consigna("nevera", 1200);
+
+        // Si el motor no acepta la potencia pedida, el dispositivo no recibe nada
+        assertEquals("redirect:/gestion?error=No se pudo ajustar la potencia",
+                conActuacion.ajustarPotencia("nevera", 8000));
+        verify(actuacion, never()).consigna("nevera", 8000);
+    }
+
+    @Test
+    public void testStreamDevuelveElEmisorDeLaDifusion() {
+        DifusionDashboard difusion = mock(DifusionDashboard.class);
+        SseEmitter emisor = new SseEmitter();
+        when(difusion.suscribir()).thenReturn(emisor);
+
+        assertSame(emisor, new DashboardController(ia, difusion).stream());
+    }
+
+    @Test
+    public void testStreamSinDifusion() {
+        assertThrows(ResponseStatusException.class, () -> controller.stream());
+    }
+}
@@ -0,0 +1,94 @@
+package com.smartgrid.controller;
+
+import com.smartgrid.config.ApiConfig;
+import com.smartgrid.model.NivelCriticidad;
+import com.smartgrid.service.FotoDispositivos;
+import com.smartgrid.service.FotoDispositivos.Filtro;
+import com.smartgrid.service.FotoDispositivos.Orden;
+import com.smartgrid.service.ImportadorDispositivos;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class DispositivosControllerTest {
+
+    private FotoDispositivos foto;
+    private ImportadorDispositivos importador;
+    private DispositivosController controller;
+
+    @BeforeEach
+    public void setup() {
+        foto = mock(FotoDispositivos.class);
+        ApiConfig apiConfig = mock(ApiConfig.class);
+        when(apiConfig.getPaginaPorDefecto()).thenReturn(100);
+        when(apiConfig.getPaginaMaxima()).thenReturn(500);
+        importador = mock(ImportadorDispositivos.class);
+        controller = new DispositivosController(foto, apiConfig, importador);
+    }
+
+    @Test
+    public void testListar() {
+        FotoDispositivos.Pagina pagina = new FotoDispositivos.Pagina(1, 0, 0, 0, 5000, false, List.of(), null);
+        when(foto.consultar(any(), any(), any(), anyInt(), anyLong())).thenReturn(pagina);
+
+        assertSame(pagina, controller.listar("cocina", NivelCriticidad.BAJA, 10.0, null, "-consumo", "c", null));
+
+        verify(foto).consultar(eq(new Filtro("cocina", NivelCriticidad.BAJA, 10.0, null)), eq(Orden.CONSUMO_DESC),
+                eq("c"), eq(100), anyLong());
+    }
+
+    @Test
+    public void testTamañoDePaginaLimitado() {
+        controller.listar(null, null, null, null, "nombre", null, 10_000);
+
+        verify(foto).consultar(eq(Filtro.TODOS), eq(Orden.NOMBRE), isNull(), eq(500), anyLong());
+    }
+
+    @Test
+    public void testPeticionInvalida() {
+        ResponseStatusException error = assertThrows(ResponseStatusException.class,
+                () -> controller.listar(null, null, null, null, "zona", null, null));
+        assertEquals(HttpStatus.BAD_REQUEST, error.getStatusCode());
+
+        when(foto.consultar(any(), any(), eq("roto"), anyInt(), anyLong()))
+                .thenThrow(new IllegalArgumentException("Cursor inválido: roto"));
+        assertThrows(ResponseStatusException.class,
+                () -> controller.listar(null, null, null, null, "nombre", "roto", null));
+    }
+
+    @Test
+    public void testImportarSegunElTipoDeContenido() {
+        InputStream cuerpo = new ByteArrayInputStream(new byte[0]);
+        ImportadorDispositivos.Resultado resultado = new ImportadorDispositivos.Resultado(0, 0, 0, 0, List.of());
+        when(importador.importar(any(), any())).thenReturn(resultado);
+
+        assertSame(resultado, controller.importar("text/csv; charset=UTF-8", cuerpo));
+        verify(importador).importar(cuerpo, ImportadorDispositivos.Formato.CSV);
+
+        controller.importar("application/x-ndjson", cuerpo);
+        verify(importador).importar(cuerpo, ImportadorDispositivos.Formato.NDJSON);
+    }
+
+    @Test
+    public void testImportarErrores() {
+        InputStream cuerpo = new ByteArrayInputStream(new byte[0]);
+
+        when(importador.importar(any(), any())).thenThrow(new IllegalStateException("en curso"));
+        assertEquals(HttpStatus.CONFLICT, assertThrows(ResponseStatusException.class,
+                () -> controller.importar("text/csv", cuerpo)).getStatusCode());
+
+        reset(importador);
+        when(importador.importar(any(), any())).thenThrow(new IllegalArgumentException("cabecera"));
+        assertEquals(HttpStatus.BAD_REQUEST, assertThrows(ResponseStatusException.class,
+                () -> controller.importar("text/csv", cuerpo)).getStatusCode());
+    }
+}
@@ -0,0 +1,58 @@
+package com.smartgrid.controller;
+
+import com.smartgrid.logic.SerieConsumo;
+import com.smartgrid.service.EstadisticasConsumo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class EstadisticasControllerTest {
+
+    private EstadisticasConsumo estadisticas;
+    private EstadisticasController controller;
+
+    @BeforeEach
+    public void setup() {
+        estadisticas = mock(EstadisticasConsumo.class);
+        controller = new EstadisticasController(estadisticas);
+    }
+
+    @Test
+    public void testDispositivo() {
+        Map<String, SerieConsumo.Ventana> ventanas = Map.of("1s", new SerieConsumo.Ventana(null, null));
+        when(estadisticas.consultarDispositivo(eq("tv"), anyLong())).thenReturn(Optional.of(ventanas));
+
+        EstadisticasController.Respuesta respuesta = controller.dispositivo("tv");
+
+        assertEquals("tv", respuesta.nombre());
+        assertSame(ventanas, respuesta.ventanas());
+    }
+
+    @Test
+    public void testDispositivoSinEstadisticas() {
+        when(estadisticas.consultarDispositivo(eq("tv"), anyLong())).thenReturn(Optional.empty());
+
+        ResponseStatusException error = assertThrows(ResponseStatusException.class,
+                () -> controller.dispositivo("tv"));
+        assertEquals(HttpStatus.NOT_FOUND, error.getStatusCode());
+    }
+
+    @Test
+    public void testZonas() {
+        when(estadisticas.getZonas()).thenReturn(Set.of("cocina"));
+        when(estadisticas.consultarZona(eq("garaje"), anyLong())).thenReturn(Optional.empty());
+
+        assertEquals(Set.of("cocina"), controller.zonas());
+        assertThrows(ResponseStatusException.class, () -> controller.zona("garaje"));
+    }
+}
@@ -0,0 +1,33 @@
+package com.smartgrid.controller;
+
+import com.smartgrid.service.LimiteConcurrencia;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LimiteOperadoresInterceptorTest {
+
+    @Test
+    public void testRechazaConServicioNoDisponibleYDevuelveElPermiso() {
+        LimiteConcurrencia limite = new LimiteConcurrencia(1, 0);
+        LimiteOperadoresInterceptor interceptor = new LimiteOperadoresInterceptor(limite);
+        MockHttpServletRequest primera = new MockHttpServletRequest("GET", "/gestion");
+        MockHttpServletRequest segunda = new MockHttpServletRequest("GET", "/");
+        MockHttpServletResponse rechazada = new MockHttpServletResponse();
+
+        assertTrue(interceptor.preHandle(primera, new MockHttpServletResponse(), null));
+        assertFalse(interceptor.preHandle(segunda, rechazada, null));
+        assertEquals(503, rechazada.getStatus());
+        assertEquals("1", rechazada.getHeader("Retry-After"));
+
+        // Solo la petición que entró devuelve su permiso, y solo una vez
+        interceptor.afterCompletion(segunda, rechazada, null, null);
+        assertEquals(1, limite.getEnCurso());
+        interceptor.afterCompletion(primera, new MockHttpServletResponse(), null, null);
+        interceptor.afterCompletion(primera, new MockHttpServletResponse(), null, null);
+        assertEquals(0, limite.getEnCurso());
+        assertTrue(interceptor.preHandle(segunda, new MockHttpServletResponse(), null));
+    }
+}
@@ -0,0 +1,50 @@
+package com.smartgrid.logic;
+
+import com.smartgrid.model.NivelCriticidad;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AgregadosConsumoTest {
+
+    @Test
+    void testSumarYRestar() {
+        AgregadosConsumo agregados = new AgregadosConsumo();
+
+        agregados.sumar(NivelCriticidad.CRITICA, 2000);
+        agregados.sumar(NivelCriticidad.BAJA, 100);
+        agregados.sumar(null, 50);
+        agregados.restar(NivelCriticidad.CRITICA, 500);
+
+        assertEquals(1650, agregados.getTotal());
+        assertEquals(1500, agregados.getCriticos());
+        assertEquals(1500, agregados.getCriticidad(NivelCriticidad.CRITICA));
+        assertEquals(100, agregados.getCriticidad(NivelCriticidad.BAJA));
+        assertEquals(0, agregados.getCriticidad(NivelCriticidad.MEDIA));
+    }
+
+    @Test
+    void testLosDeltasNoDerivan() {
+        AgregadosConsumo agregados = new AgregadosConsumo();
+        agregados.sumar(NivelCriticidad.BAJA, 1000);
+
+        // Millones de lecturas que suben y bajan el consumo de otro dispositivo hasta dejarlo a cero
+        double anterior = 0;
+        for (int i = 1; i <= 2_000_000; i++) {
+            double consumo = (i % 1000) * 0.1 + 0.03;
+            agregados.restar(NivelCriticidad.MEDIA, anterior);
+            agregados.sumar(NivelCriticidad.MEDIA, consumo);
+            anterior = consumo;
+        }
+        agregados.restar(NivelCriticidad.MEDIA, anterior);
+
+        assertEquals(1000, agregados.getTotal());
+        assertEquals(0, agregados.getCriticidad(NivelCriticidad.MEDIA));
+    }
+
+    @Test
+    void testClaveZona() {
+        assertEquals(AgregadosConsumo.SIN_ZONA, AgregadosConsumo.claveZona(null));
+        assertEquals("sala", AgregadosConsumo.claveZona("sala"));
+    }
+}
@@ -0,0 +1,87 @@
+package com.smartgrid.logic;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BocetoCuantilesTest {
+
+    private static final double ERROR = 0.01;
+
+    @Test
+    void testCuantilesConErrorRelativoAcotado() {
+        BocetoCuantiles boceto = new BocetoCuantiles(ERROR, 2048);
+        for (int i = 1; i <= 10_000; i++) {
+            boceto.añadir(i);
+        }
+
+        assertEquals(10_000, boceto.getTotal());
+        assertEquals(5_000, boceto.cuantil(0.5), 5_000 * ERROR);
+        assertEquals(9_000, boceto.cuantil(0.9), 9_000 * ERROR);
+        assertEquals(9_900, boceto.cuantil(0.99), 9_900 * ERROR);
+        assertEquals(1, boceto.cuantil(0), ERROR);
+    }
+
+    @Test
+    void testVacioDevuelveNaN() {
+        assertTrue(Double.isNaN(new BocetoCuantiles(ERROR, 32).cuantil(0.5)));
+    }
+
+    @Test
+    void testCerosYNegativosCuentanComoCero() {
+        BocetoCuantiles boceto = new BocetoCuantiles(ERROR, 32);
+        boceto.añadir(0);
+        boceto.añadir(-5);
+        boceto.añadir(100);
+
+        assertEquals(0, boceto.cuantil(0.5));
+        assertEquals(100, boceto.cuantil(1), 100 * ERROR);
+        assertEquals(1, boceto.getCubos(), "Los ceros no ocupan cubos");
+    }
+
+    @Test
+    void testFundirEquivaleAAñadirTodo() {
+        Random random = new Random(7);
+        BocetoCuantiles a = new BocetoCuantiles(ERROR, 2048);
+        BocetoCuantiles b = new BocetoCuantiles(ERROR, 2048);
+        BocetoCuantiles todo = new BocetoCuantiles(ERROR, 2048);
+        for (int i = 0; i < 5_000; i++) {
+            double valor = 1 + random.nextDouble() * 3_000;
+            (i % 2 == 0 ? a : b).añadir(valor);
+            todo.añadir(valor);
+        }
+
+        a.fundir(b);
+
+        assertEquals(todo.getTotal(), a.getTotal());
+        for (double q : new double[]{0.1, 0.5, 0.9, 0.99}) {
+            assertEquals(todo.cuantil(q), a.cuantil(q), 1e-9, "Cuantil " + q);
+        }
+        assertThrows(IllegalArgumentException.class, () -> a.fundir(new BocetoCuantiles(0.05, 32)));
+    }
+
+    @Test
+    void testMemoriaAcotadaConservaLosCuantilesAltos() {
+        BocetoCuantiles boceto = new BocetoCuantiles(ERROR, 16);
+        for (int i = 1; i <= 10_000; i++) {
+            boceto.añadir(i);
+        }
+
+        assertEquals(16, boceto.getCubos());
+        assertEquals(10_000, boceto.getTotal());
+        assertEquals(9_990, boceto.cuantil(0.999), 9_990 * ERROR, "Los picos mantienen la precisión");
+    }
+
+    @Test
+    void testLimpiar() {
+        BocetoCuantiles boceto = new BocetoCuantiles(ERROR, 32);
+        boceto.añadir(50);
+        boceto.limpiar();
+
+        assertEquals(0, boceto.getTotal());
+        assertEquals(0, boceto.getCubos());
+        assertTrue(Double.isNaN(boceto.cuantil(0.5)));
+    }
+}
@@ -0,0 +1,50 @@
+package com.smartgrid.logic;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColaDesconexionTest {
+
+    private static final int TV = 0;
+    private static final int HORNO = 1;
+    private static final int LAVADORA = 2;
+
+    @Test
+    void testExtraeEnOrdenDeConsumo() {
+        ColaDesconexion cola = new ColaDesconexion();
+        cola.añadir(TV, 300);
+        cola.añadir(HORNO, 2000);
+        cola.añadir(LAVADORA, 1500);
+
+        assertEquals(HORNO, cola.extraerMayor());
+        assertEquals(LAVADORA, cola.extraerMayor());
+        assertEquals(TV, cola.extraerMayor());
+        assertEquals(-1, cola.extraerMayor());
+    }
+
+    @Test
+    void testActualizarReordena() {
+        ColaDesconexion cola = new ColaDesconexion();
+        cola.añadir(TV, 300);
+        cola.añadir(HORNO, 2000);
+
+        // Nueva lectura del horno: se elimina con el consumo anterior y se añade con el nuevo
+        cola.eliminar(HORNO, 2000);
+        cola.añadir(HORNO, 100);
+
+        assertEquals(2, cola.size());
+        assertEquals(TV, cola.extraerMayor());
+    }
+
+    @Test
+    void testEmpateSeResuelvePorSlot() {
+        ColaDesconexion cola = new ColaDesconexion();
+        cola.añadir(2, 1000);
+        cola.añadir(1, 1000);
+
+        assertEquals(1, cola.extraerMayor());
+        assertEquals(2, cola.extraerMayor());
+        assertEquals(0, cola.size());
+    }
+}
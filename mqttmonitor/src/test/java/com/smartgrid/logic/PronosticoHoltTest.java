@@ -0,0 +1,72 @@
+package com.smartgrid.logic;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PronosticoHoltTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    private static PronosticoHolt pronostico(long horizonteMs) {
+        return new PronosticoHolt(new Pronostico(horizonteMs, 1000, 0.5, 0.3, false));
+    }
+
+    @Test
+    void testSigueUnaRampa() {
+        PronosticoHolt holt = pronostico(10_000);
+        for (int i = 0; i <= 60; i++) {
+            holt.observar(T0 + i * 1000L, 1000 + 100.0 * i);
+        }
+
+        assertEquals(0.1, holt.getTendencia(), 1e-3, "100 W por segundo");
+        assertEquals(7000 + 1000, holt.getPrevision(), 10, "A 10 s la rampa sube 1000 W más");
+    }
+
+    @Test
+    void testSinObservacionesNoHayPrevision() {
+        PronosticoHolt holt = pronostico(10_000);
+
+        assertTrue(Double.isNaN(holt.getPrevision()));
+        assertEquals(0, holt.getTendencia());
+        assertEquals(ErrorPronostico.VACIO, holt.getError());
+    }
+
+    @Test
+    void testComparaCadaPrevisionAlLlegarSuInstante() {
+        PronosticoHolt holt = pronostico(3_000);
+        for (int i = 0; i <= 10; i++) {
+            holt.observar(T0 + i * 1000L, 500);
+        }
+
+        ErrorPronostico error = holt.getError();
+        // Las previsiones de los instantes 0..7 ya han llegado a su objetivo
+        assertEquals(8, error.comparaciones());
+        assertEquals(0, error.getMedioAbsoluto(), 1e-9, "Un consumo constante se prevé sin error");
+    }
+
+    @Test
+    void testElErrorRecogeUnSaltoNoPrevisto() {
+        PronosticoHolt holt = pronostico(1_000);
+        holt.observar(T0, 500);
+        holt.observar(T0 + 1000, 500);
+        holt.observar(T0 + 2000, 800);
+
+        ErrorPronostico error = holt.getError();
+        assertEquals(2, error.comparaciones());
+        assertEquals(150, error.getMedioAbsoluto(), 1e-9);
+        assertEquals(150, error.getSesgo(), 1e-9, "Se ha previsto por debajo");
+    }
+
+    @Test
+    void testIgnoraObservacionesQueNoAvanzan() {
+        PronosticoHolt holt = pronostico(10_000);
+        holt.observar(T0, 500);
+        holt.observar(T0 + 1000, 600);
+        double prevision = holt.getPrevision();
+
+        holt.observar(T0 + 500, 10_000);
+
+        assertEquals(prevision, holt.getPrevision());
+    }
+}
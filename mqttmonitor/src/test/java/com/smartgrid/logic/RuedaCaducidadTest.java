@@ -0,0 +1,65 @@
+package com.smartgrid.logic;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuedaCaducidadTest {
+
+    @Test
+    void testCadaSlotSeEntregaEnElPrimerTicEnQueHaVencido() {
+        RuedaCaducidad rueda = new RuedaCaducidad(5_000, 1_000, 0);
+        rueda.programar(1, 2_500);
+        rueda.programar(2, 3_000);
+        List<Integer> revisados = new ArrayList<>();
+
+        rueda.avanzar(2_000, revisados::add);
+        assertEquals(List.of(), revisados);
+        rueda.avanzar(3_000, revisados::add);
+        assertEquals(List.of(1, 2), revisados);
+        assertEquals(0, rueda.getProgramados());
+    }
+
+    @Test
+    void testUnAvanceLargoRecorreComoMuchoUnaVuelta() {
+        RuedaCaducidad rueda = new RuedaCaducidad(3_000, 1_000, 0);
+        for (int slot = 0; slot < 100; slot++) {
+            rueda.programar(slot, 1_000L * (slot % 7));
+        }
+        List<Integer> revisados = new ArrayList<>();
+
+        rueda.avanzar(1_000_000, revisados::add);
+
+        assertEquals(100, revisados.size());
+        assertEquals(1_000_000, rueda.getAhoraMs());
+    }
+
+    @Test
+    void testLoReprogramadoDuranteLaRevisionEsperaASuTic() {
+        RuedaCaducidad rueda = new RuedaCaducidad(4_000, 1_000, 0);
+        rueda.programar(7, 1_000);
+        List<Integer> revisados = new ArrayList<>();
+
+        rueda.avanzar(1_000, slot -> {
+            revisados.add(slot);
+            rueda.programar(slot, 5_000);
+        });
+        rueda.avanzar(4_000, revisados::add);
+        assertEquals(List.of(7), revisados);
+
+        rueda.avanzar(5_000, revisados::add);
+        assertEquals(List.of(7, 7), revisados);
+    }
+
+    @Test
+    void testElRelojNoRetrocede() {
+        RuedaCaducidad rueda = new RuedaCaducidad(4_000, 1_000, 10_000);
+
+        rueda.avanzar(5_000, slot -> fail("No debe revisar nada"));
+
+        assertEquals(10_000, rueda.getAhoraMs());
+    }
+}
@@ -0,0 +1,108 @@
+package com.smartgrid.logic;
+
+import com.smartgrid.logic.SerieConsumo.Ventana;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SerieConsumoTest {
+
+    // Inicio de un periodo de 15 minutos, para que las ventanas fijas caigan en instantes redondos
+    private static final long T0 = 1_800_000_000_000L - 1_800_000_000_000L % 900_000;
+
+    private final SerieConsumo serie = new SerieConsumo(0.01, 32);
+
+    @Test
+    void testEstadisticasDeLaVentanaDeslizante() {
+        serie.registrar(T0, 100);
+        serie.registrar(T0 + 100, 300);
+        serie.registrar(T0 + 200, 200);
+
+        EstadisticasVentana segundo = serie.consultar(T0 + 300).get("1s").deslizante();
+
+        assertEquals(3, segundo.lecturas());
+        assertEquals(100, segundo.minimo());
+        assertEquals(300, segundo.maximo());
+        assertEquals(200, segundo.media(), 1e-9);
+        assertEquals(200, segundo.p50(), 2);
+        assertEquals(T0 + 300, segundo.hasta());
+        // 100 W durante 100 ms, 300 W durante 100 ms y 200 W durante 100 ms
+        assertEquals((100 * 100 + 300 * 100 + 200 * 100) / 3_600_000.0, segundo.energiaWh(), 1e-12);
+    }
+
+    @Test
+    void testLaVentanaDeslizanteOlvidaLasLecturasAntiguas() {
+        serie.registrar(T0, 100);
+        serie.registrar(T0 + 1_500, 500);
+
+        Map<String, Ventana> ventanas = serie.consultar(T0 + 1_600);
+
+        EstadisticasVentana segundo = ventanas.get("1s").deslizante();
+        assertEquals(1, segundo.lecturas());
+        assertEquals(500, segundo.minimo());
+        assertEquals(2, ventanas.get("1m").deslizante().lecturas());
+    }
+
+    @Test
+    void testVentanaFijaDelUltimoPeriodoCompleto() {
+        serie.registrar(T0 + 100, 100);
+        serie.registrar(T0 + 600, 300);
+        serie.registrar(T0 + 1_200, 50);
+
+        EstadisticasVentana fija = serie.consultar(T0 + 1_300).get("1s").fija();
+
+        assertEquals(T0, fija.desde());
+        assertEquals(T0 + 1_000, fija.hasta());
+        assertEquals(2, fija.lecturas());
+        assertEquals(200, fija.media(), 1e-9);
+        // 100 W de 100 a 600 ms y 300 W de 600 a 1000 ms
+        assertEquals((100 * 500 + 300 * 400) / 3_600_000.0, fija.energiaWh(), 1e-12);
+        assertNull(serie.consultar(T0 + 1_300).get("1m").fija(), "Aún no ha terminado ningún minuto");
+    }
+
+    @Test
+    void testUnConsumoEstableSigueSumandoEnergiaSinLecturas() {
+        serie.registrar(T0, 3_600);
+
+        Map<String, Ventana> ventanas = serie.consultar(T0 + 120_000);
+
+        EstadisticasVentana minuto = ventanas.get("1m").fija();
+        assertEquals(0, minuto.lecturas());
+        assertNull(minuto.media());
+        assertEquals(60, minuto.energiaWh(), 1e-9, "3600 W durante un minuto son 60 Wh");
+        assertEquals(120, ventanas.get("15m").deslizante().energiaWh(), 1e-9);
+    }
+
+    @Test
+    void testDesconectarDejaDeSumarEnergia() {
+        serie.registrar(T0, 3_600);
+        serie.desconectar(T0 + 30_000);
+
+        EstadisticasVentana minuto = serie.consultar(T0 + 60_000).get("1m").fija();
+
+        assertEquals(30, minuto.energiaWh(), 1e-9);
+        assertEquals(0, serie.getConsumo());
+    }
+
+    @Test
+    void testLecturasFueraDeOrdenSeAnotanEnElUltimoInstante() {
+        serie.registrar(T0 + 500, 100);
+        serie.registrar(T0 + 400, 200);
+
+        EstadisticasVentana segundo = serie.consultar(T0 + 500).get("1s").deslizante();
+
+        assertEquals(2, segundo.lecturas());
+        assertEquals(0, segundo.energiaWh(), 1e-12);
+    }
+
+    @Test
+    void testVentanasEnOrdenDePeriodo() {
+        serie.registrar(T0, 1);
+
+        assertEquals(List.of("1s", "1m", "15m"), List.copyOf(serie.consultar(T0).keySet()));
+        assertThrows(IllegalArgumentException.class, () -> new SerieConsumo(0, 32));
+    }
+}
@@ -0,0 +1,169 @@
+package com.smartgrid.logic;
+
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.smartgrid.Dispositivos.dispositivo;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmartGridDecisionEngineCaducidadTest {
+
+    private static final long TTL = 10_000;
+    private static final long TIC = 1_000;
+
+    private SmartGridDecisionEngine engine;
+
+    @AfterEach
+    void tearDown() {
+        engine.close();
+    }
+
+    private static void leer(SmartGridDecisionEngine engine, Dispositivo dispositivo, double consumo) {
+        dispositivo.setConsumo(consumo);
+        engine.procesarDispositivo(dispositivo);
+    }
+
+    @Test
+    void testUnMedidorEnSilencioSeRetiraTrasSuTtl() {
+        engine = new SmartGridDecisionEngine(OpcionesMotor.conLimite(5000)
+                .conCaducidad(new Caducidad(TTL, TIC, Caducidad.Modo.QUITAR, 0)));
+        long inicio = System.currentTimeMillis();
+        engine.caducarInactivos(inicio);
+        Dispositivo nevera = dispositivo("Nevera", "cocina", NivelCriticidad.CRITICA, 0);
+        Dispositivo estufa = dispositivo("Estufa", "salon", NivelCriticidad.BAJA, 0);
+        leer(engine, nevera, 300);
+        leer(engine, estufa, 1500);
+
+        // La nevera sigue enviando; la estufa se queda en silencio
+        for (long t = inicio + TIC; t <= inicio + TTL + 2 * TIC; t += TIC) {
+            engine.caducarInactivos(t);
+            leer(engine, nevera, 300);
+        }
+
+        assertEquals(300, engine.getConsumoTotal());
+        assertEquals(1, engine.getNumeroActivos());
+        assertTrue(engine.buscarActivo("Estufa").isEmpty());
+        assertEquals(1, engine.getCaducados("salon"));
+        assertEquals(0, engine.getDesconexionesAutomaticas("salon"), "Caducar no es desconectar por exceso");
+
+        // La siguiente lectura lo vuelve a dar de alta
+        leer(engine, estufa, 1000);
+        assertEquals(1300, engine.getConsumoTotal());
+    }
+
+    @Test
+    void testLaUltimaLecturaQuedaApuntada() {
+        engine = new SmartGridDecisionEngine(OpcionesMotor.conLimite(5000)
+                .conCaducidad(new Caducidad(TTL, TIC, Caducidad.Modo.QUITAR, 0)));
+        long inicio = System.currentTimeMillis();
+        Dispositivo tv = dispositivo("Tv", null, NivelCriticidad.BAJA, 0);
+
+        engine.caducarInactivos(inicio + 3 * TIC);
+        leer(engine, tv, 100);
+
+        assertEquals(inicio + 3 * TIC, engine.buscarActivo("Tv").orElseThrow().instante());
+    }
+
+    @Test
+    void testModoAtenuarReduceElConsumoHastaRetirarlo() {
+        engine = new SmartGridDecisionEngine(OpcionesMotor.conLimite(5000)
+                .conCaducidad(new Caducidad(TTL, TIC, Caducidad.Modo.ATENUAR, 0.5)));
+        long inicio = System.currentTimeMillis();
+        engine.caducarInactivos(inicio);
+        leer(engine, dispositivo("Horno", "cocina", NivelCriticidad.MEDIA, 0), 4);
+
+        engine.caducarInactivos(inicio + TTL + TIC);
+        assertEquals(2, engine.getConsumoZona("cocina"));
+        engine.caducarInactivos(inicio + 2 * TTL + 2 * TIC);
+        assertEquals(1, engine.getConsumoZona("cocina"));
+        engine.caducarInactivos(inicio + 3 * TTL + 3 * TIC);
+        assertEquals(0, engine.getConsumoZona("cocina"));
+        assertEquals(0, engine.getNumeroActivos());
+        assertEquals(1, engine.getCaducados("cocina"));
+    }
+
+    @Test
+    void testCaducarRestableceLaAlertaYAvisaALosListeners() {
+        engine = new SmartGridDecisionEngine(OpcionesMotor.conLimite(1000)
+                .conCaducidad(new Caducidad(TTL, TIC, Caducidad.Modo.QUITAR, 0)));
+        List<String> caducados = new ArrayList<>();
+        engine.añadirListener(new CambiosMotorListener() {
+            @Override
+            public void dispositivoActualizado(Dispositivo dispositivo, boolean conectado) {
+            }
+
+            @Override
+            public void dispositivoDesconectado(String nombre, String zona, boolean automatico) {
+            }
+
+            @Override
+            public void dispositivoCaducado(String nombre, String zona) {
+                caducados.add(nombre);
+            }
+        });
+        long inicio = System.currentTimeMillis();
+        engine.caducarInactivos(inicio);
+        leer(engine, dispositivo("Bomba", null, NivelCriticidad.CRITICA, 0), 1200);
+        assertTrue(engine.isAlertaCriticos());
+
+        engine.caducarInactivos(inicio + TTL + TIC);
+
+        assertFalse(engine.isAlertaCriticos());
+        assertEquals(List.of("Bomba"), caducados);
+    }
+
+    @Test
+    void testUnDispositivoReconectadoNoSeProgramaDosVeces() {
+        engine = new SmartGridDecisionEngine(OpcionesMotor.conLimite(5000)
+                .conCaducidad(new Caducidad(TTL, TIC, Caducidad.Modo.QUITAR, 0)));
+        Dispositivo lavadora = dispositivo("Lavadora", null, NivelCriticidad.BAJA, 0);
+
+        for (int i = 0; i < 5; i++) {
+            leer(engine, lavadora, 500);
+            engine.desconectarDispositivo("Lavadora");
+        }
+        leer(engine, lavadora, 500);
+
+        assertEquals(1, engine.getProgramadosCaducidad());
+    }
+
+    @Test
+    void testUnDispositivoOlvidadoLiberaSuSlotAlCaducar() {
+        engine = new SmartGridDecisionEngine(OpcionesMotor.conLimite(5000)
+                .conCaducidad(new Caducidad(TTL, TIC, Caducidad.Modo.QUITAR, 0)));
+        long inicio = System.currentTimeMillis();
+        engine.caducarInactivos(inicio);
+        leer(engine, dispositivo("Estufa", "salon", NivelCriticidad.BAJA, 0), 1500);
+
+        engine.olvidarDispositivo("Estufa");
+        assertEquals(1500, engine.getConsumoTotal(), "Sigue contabilizado hasta que caduque");
+        assertEquals(1, engine.getNumeroSlots());
+
+        for (long t = inicio + TIC; t <= inicio + TTL + 2 * TIC; t += TIC) {
+            engine.caducarInactivos(t);
+        }
+        assertEquals(0, engine.getNumeroSlots());
+        assertEquals(0, engine.getProgramadosCaducidad());
+
+        leer(engine, dispositivo("Horno", "cocina", NivelCriticidad.BAJA, 0), 2000);
+        assertEquals(1, engine.getCapacidadSlots(), "El horno reutiliza el slot de la estufa");
+        assertEquals(2000, engine.buscarActivo("Horno").orElseThrow().consumo());
+        assertTrue(engine.buscarActivo("Estufa").isEmpty());
+    }
+
+    @Test
+    void testSinCaducidadLosDispositivosNoCaducan() {
+        engine = new SmartGridDecisionEngine(OpcionesMotor.conLimite(5000));
+        leer(engine, dispositivo("Estufa", null, NivelCriticidad.BAJA, 0), 1500);
+
+        engine.caducarInactivos(System.currentTimeMillis() + 365L * 24 * 3600 * 1000);
+
+        assertEquals(1500, engine.getConsumoTotal());
+        assertEquals(0, engine.buscarActivo("Estufa").orElseThrow().instante());
+    }
+}
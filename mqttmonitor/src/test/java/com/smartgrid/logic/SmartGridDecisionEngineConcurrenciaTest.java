@@ -0,0 +1,150 @@
+package com.smartgrid.logic;
+
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import org.junit.jupiter.api.RepeatedTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.smartgrid.Dispositivos.dispositivo;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Prueba de estrés: varios hilos de ingesta y gestión manual actúan a la vez sobre el motor
+ * y, al terminar, los totales y el índice de desconexión deben cuadrar con los dispositivos activos.
+ */
+class SmartGridDecisionEngineConcurrenciaTest {
+
+    private static final int HILOS = 8;
+    private static final int OPERACIONES_POR_HILO = 20_000;
+    private static final int DISPOSITIVOS = 200;
+    private static final String[] ZONAS = {"cocina", "salon", "garaje", null};
+
+    private static Dispositivo lectura(int indice, double consumo) {
+        return dispositivo("dispositivo" + indice, ZONAS[indice % ZONAS.length],
+                NivelCriticidad.values()[indice % NivelCriticidad.values().length], consumo);
+    }
+
+    @RepeatedTest(3)
+    void testInvariantesConIngestaConcurrente() throws Exception {
+        SmartGridDecisionEngine engine = new SmartGridDecisionEngine();
+        ExecutorService pool = Executors.newFixedThreadPool(HILOS);
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Future<?>> tareas = new ArrayList<>();
+
+        for (int h = 0; h < HILOS; h++) {
+            tareas.add(pool.submit(() -> {
+                salida.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < OPERACIONES_POR_HILO; i++) {
+                    int indice = random.nextInt(DISPOSITIVOS);
+                    int operacion = random.nextInt(100);
+                    if (operacion < 90) {
+                        // Cada lectura llega como una entidad nueva, igual que desde el repositorio
+                        double consumo = indice % 3 == 2 ? random.nextInt(60) : random.nextInt(500);
+                        engine.procesarDispositivo(lectura(indice, consumo));
+                    } else if (operacion < 95) {
+                        engine.desconectarDispositivo("dispositivo" + indice);
+                    } else {
+                        engine.ajustarPotenciaDispositivo("dispositivo" + indice, random.nextInt(30));
+                    }
+                }
+                return null;
+            }));
+        }
+
+        salida.countDown();
+        for (Future<?> tarea : tareas) {
+            tarea.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        comprobarInvariantes(engine);
+    }
+
+    @RepeatedTest(3)
+    void testInvariantesConLimitesPorZonaYLotesParalelos() throws Exception {
+        SmartGridDecisionEngine engine = new SmartGridDecisionEngine(OpcionesMotor.conLimite(5000)
+                .conLimitesZona(Map.of("cocina", 1500.0, "garaje", 800.0)).conParalelismo(4));
+        ExecutorService pool = Executors.newFixedThreadPool(HILOS);
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Future<?>> tareas = new ArrayList<>();
+
+        for (int h = 0; h < HILOS; h++) {
+            tareas.add(pool.submit(() -> {
+                salida.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int l = 0; l < OPERACIONES_POR_HILO / 100; l++) {
+                    List<Lectura> lote = new ArrayList<>(100);
+                    for (int i = 0; i < 100; i++) {
+                        int indice = random.nextInt(DISPOSITIVOS);
+                        double consumo = indice % 3 == 2 ? random.nextInt(60) : random.nextInt(500);
+                        lote.add(new Lectura(lectura(indice, consumo), consumo));
+                    }
+                    engine.procesarLecturas(lote);
+                    engine.desconectarDispositivo("dispositivo" + random.nextInt(DISPOSITIVOS));
+                }
+                return null;
+            }));
+        }
+
+        salida.countDown();
+        for (Future<?> tarea : tareas) {
+            tarea.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        engine.close();
+
+        comprobarInvariantes(engine);
+        for (String zona : new String[]{"cocina", "garaje"}) {
+            if (engine.getConsumoZona(zona) > engine.getLimiteZona(zona)) {
+                assertTrue(engine.isAlertaZona(zona));
+            }
+        }
+    }
+
+    private static void comprobarInvariantes(SmartGridDecisionEngine engine) {
+        List<Dispositivo> activos = engine.getDispositivosActivos();
+        double total = activos.stream().mapToDouble(Dispositivo::getConsumo).sum();
+        double criticos = activos.stream()
+                .filter(d -> d.getCriticidad() == NivelCriticidad.CRITICA)
+                .mapToDouble(Dispositivo::getConsumo)
+                .sum();
+        long noCriticos = activos.stream()
+                .filter(d -> d.getCriticidad() != NivelCriticidad.CRITICA)
+                .count();
+
+        assertEquals(total, engine.getConsumoTotal(), 1e-3);
+        assertEquals(criticos, engine.getConsumoCriticos(), 1e-3);
+        assertEquals(noCriticos, engine.getTamañoColaDesconexion());
+
+        for (String zona : ZONAS) {
+            double consumoZona = activos.stream()
+                    .filter(d -> Objects.equals(d.getZona(), zona))
+                    .mapToDouble(Dispositivo::getConsumo)
+                    .sum();
+            assertEquals(consumoZona, engine.getConsumoZona(zona), 1e-3);
+        }
+        for (NivelCriticidad criticidad : NivelCriticidad.values()) {
+            double consumoCriticidad = activos.stream()
+                    .filter(d -> d.getCriticidad() == criticidad)
+                    .mapToDouble(Dispositivo::getConsumo)
+                    .sum();
+            assertEquals(consumoCriticidad, engine.getConsumoPorCriticidad(criticidad), 1e-3);
+        }
+
+        // Ninguna desconexión se pierde: si se sigue por encima del límite es porque hay alerta
+        if (engine.getConsumoTotal() > engine.getLimiteConsumo()) {
+            assertTrue(engine.isAlertaCriticos());
+        }
+    }
+}
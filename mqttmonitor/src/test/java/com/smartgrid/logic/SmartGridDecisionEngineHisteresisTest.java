@@ -0,0 +1,251 @@
+package com.smartgrid.logic;
+
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.smartgrid.Dispositivos.dispositivo;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmartGridDecisionEngineHisteresisTest {
+
+    private static final long MIN_DESCONECTADO = 60_000;
+
+    private SmartGridDecisionEngine engine;
+
+    @AfterEach
+    void tearDown() {
+        engine.close();
+    }
+
+    private static SmartGridDecisionEngine motor(double limite, Map<String, Double> limitesZona, double fraccion) {
+        return new SmartGridDecisionEngine(OpcionesMotor.conLimite(limite).conLimitesZona(limitesZona)
+                .conHisteresis(new Histeresis(fraccion, MIN_DESCONECTADO, 1000)));
+    }
+
+    private static void leer(SmartGridDecisionEngine engine, Dispositivo dispositivo, double consumo) {
+        dispositivo.setConsumo(consumo);
+        engine.procesarDispositivo(dispositivo);
+    }
+
+    private static long trasMinimo() {
+        return System.currentTimeMillis() + MIN_DESCONECTADO + 1;
+    }
+
+    @Test
+    void testUnDesconectadoNoVuelveConSusLecturas() {
+        engine = motor(1000, Map.of(), 0.8);
+        Dispositivo estufa = dispositivo("Estufa", null, NivelCriticidad.BAJA, 0);
+        leer(engine, dispositivo("Nevera", null, NivelCriticidad.CRITICA, 0), 500);
+        leer(engine, estufa, 600);
+
+        for (int i = 0; i < 10; i++) {
+            leer(engine, estufa, 600);
+        }
+
+        assertEquals(500, engine.getConsumoTotal());
+        assertTrue(engine.buscarActivo("Estufa").isEmpty());
+        assertEquals(1, engine.getDesconexionesAutomaticas(null), "Sin histéresis serían 11 desconexiones");
+        assertEquals(1, engine.getNumeroDesconectados());
+    }
+
+    @Test
+    void testSoloSeRestablecePorDebajoDelUmbral() {
+        engine = motor(1000, Map.of(), 0.8);
+        Dispositivo nevera = dispositivo("Nevera", null, NivelCriticidad.CRITICA, 0);
+        leer(engine, nevera, 500);
+        leer(engine, dispositivo("Estufa", null, NivelCriticidad.BAJA, 0), 600);
+
+        // 500 + 600 cabría en el límite de desconexión si bajara a 400, pero no por debajo de 800
+        engine.restablecerDesconectados(trasMinimo());
+        assertTrue(engine.buscarActivo("Estufa").isEmpty());
+
+        leer(engine, nevera, 100);
+        engine.restablecerDesconectados(trasMinimo());
+
+        assertEquals(600, engine.buscarActivo("Estufa").orElseThrow().consumo());
+        assertEquals(700, engine.getConsumoTotal());
+        assertEquals(1, engine.getRestablecidos(null));
+        assertEquals(0, engine.getNumeroDesconectados());
+    }
+
+    @Test
+    void testRespetaElTiempoMinimoDesconectado() {
+        engine = motor(1000, Map.of(), 0.8);
+        Dispositivo nevera = dispositivo("Nevera", null, NivelCriticidad.CRITICA, 0);
+        leer(engine, nevera, 900);
+        leer(engine, dispositivo("Estufa", null, NivelCriticidad.BAJA, 0), 300);
+        leer(engine, nevera, 100);
+
+        engine.restablecerDesconectados(System.currentTimeMillis());
+        assertTrue(engine.buscarActivo("Estufa").isEmpty());
+
+        engine.restablecerDesconectados(trasMinimo());
+        assertTrue(engine.buscarActivo("Estufa").isPresent());
+    }
+
+    @Test
+    void testPrioridadPorCriticidadYConsumo() {
+        engine = motor(1000, Map.of(), 1.0);
+        Dispositivo base = dispositivo("Base", null, NivelCriticidad.CRITICA, 0);
+        leer(engine, base, 1000);
+        leer(engine, dispositivo("Bomba", null, NivelCriticidad.MEDIA, 0), 200);
+        leer(engine, dispositivo("Luz", null, NivelCriticidad.BAJA, 0), 100);
+        leer(engine, dispositivo("Secadora", null, NivelCriticidad.BAJA, 0), 300);
+        assertEquals(3, engine.getNumeroDesconectados());
+
+        // Caben 450W: primero la media y después la baja de mayor consumo que quepa
+        leer(engine, base, 550);
+        engine.restablecerDesconectados(trasMinimo());
+
+        assertTrue(engine.buscarActivo("Bomba").isPresent());
+        assertTrue(engine.buscarActivo("Luz").isPresent());
+        assertTrue(engine.buscarActivo("Secadora").isEmpty());
+        assertEquals(850, engine.getConsumoTotal());
+
+        leer(engine, base, 250);
+        engine.restablecerDesconectados(trasMinimo());
+        assertTrue(engine.buscarActivo("Secadora").isPresent());
+        assertEquals(850, engine.getConsumoTotal());
+    }
+
+    @Test
+    void testRespetaElUmbralDeSuZonaConSuUltimaLectura() {
+        engine = motor(10_000, Map.of("garaje", 1000.0), 0.8);
+        Dispositivo coche = dispositivo("Coche", "garaje", NivelCriticidad.BAJA, 0);
+        leer(engine, coche, 900);
+        leer(engine, dispositivo("Taladro", "garaje", NivelCriticidad.MEDIA, 0), 300);
+        assertTrue(engine.buscarActivo("Coche").isEmpty());
+
+        engine.desconectarDispositivo("Taladro");
+        engine.restablecerDesconectados(trasMinimo());
+        assertTrue(engine.buscarActivo("Coche").isEmpty(), "900W no cabe por debajo de 800W en la zona");
+
+        leer(engine, coche, 700);
+        engine.restablecerDesconectados(trasMinimo());
+        assertEquals(700, engine.getConsumoZona("garaje"));
+        assertEquals(1, engine.getRestablecidos("garaje"));
+    }
+
+    @Test
+    void testRestablecerAvisaComoUnaConexion() {
+        engine = motor(1000, Map.of(), 0.8);
+        List<String> conectados = new ArrayList<>();
+        Dispositivo nevera = dispositivo("Nevera", null, NivelCriticidad.CRITICA, 0);
+        leer(engine, nevera, 900);
+        leer(engine, dispositivo("Estufa", null, NivelCriticidad.BAJA, 0), 300);
+        engine.añadirListener(new CambiosMotorListener() {
+            @Override
+            public void dispositivoActualizado(Dispositivo dispositivo, boolean conectado) {
+                if (conectado) conectados.add(dispositivo.getNombre());
+            }
+
+            @Override
+            public void dispositivoDesconectado(String nombre, String zona, boolean automatico) {
+            }
+        });
+
+        leer(engine, nevera, 100);
+        engine.restablecerDesconectados(trasMinimo());
+
+        assertEquals(List.of("Estufa"), conectados);
+    }
+
+    @Test
+    void testRestablecerSeDistingueDeUnaLectura() {
+        engine = motor(1000, Map.of(), 0.8);
+        List<String> avisos = new ArrayList<>();
+        Dispositivo nevera = dispositivo("Nevera", null, NivelCriticidad.CRITICA, 0);
+        leer(engine, nevera, 900);
+        leer(engine, dispositivo("Estufa", null, NivelCriticidad.BAJA, 0), 300);
+        engine.añadirListener(new CambiosMotorListener() {
+            @Override
+            public void dispositivoActualizado(Dispositivo dispositivo, boolean conectado) {
+                if (conectado) avisos.add("conectado " + dispositivo.getNombre());
+            }
+
+            @Override
+            public void dispositivoRestablecido(Dispositivo dispositivo) {
+                avisos.add("restablecido " + dispositivo.getNombre() + " " + dispositivo.getConsumo());
+            }
+
+            @Override
+            public void dispositivoDesconectado(String nombre, String zona, boolean automatico) {
+            }
+        });
+
+        leer(engine, nevera, 100);
+        engine.restablecerDesconectados(trasMinimo());
+        leer(engine, dispositivo("Lampara", null, NivelCriticidad.BAJA, 0), 50);
+
+        assertEquals(List.of("restablecido Estufa 300.0", "conectado Lampara"), avisos);
+    }
+
+    @Test
+    void testDesconectarAManoDejaDeEsperar() {
+        engine = motor(1000, Map.of(), 0.8);
+        Dispositivo estufa = dispositivo("Estufa", null, NivelCriticidad.BAJA, 0);
+        leer(engine, dispositivo("Nevera", null, NivelCriticidad.CRITICA, 0), 900);
+        leer(engine, estufa, 300);
+
+        engine.desconectarDispositivo("Estufa");
+        assertEquals(0, engine.getNumeroDesconectados());
+
+        // Como cualquier dispositivo desconectado a mano, vuelve con su siguiente lectura
+        leer(engine, estufa, 50);
+        assertEquals(950, engine.getConsumoTotal());
+    }
+
+    @Test
+    void testUnDispositivoOlvidadoDejaDeEsperarYLiberaSuSlot() {
+        engine = motor(1000, Map.of(), 0.8);
+        leer(engine, dispositivo("Nevera", null, NivelCriticidad.CRITICA, 0), 500);
+        leer(engine, dispositivo("Estufa", null, NivelCriticidad.BAJA, 0), 600);
+        assertEquals(1, engine.getNumeroDesconectados());
+
+        engine.olvidarDispositivo("Estufa");
+
+        assertEquals(0, engine.getNumeroDesconectados());
+        assertTrue(engine.buscarDesconectado("Estufa").isEmpty());
+        assertEquals(1, engine.getNumeroSlots());
+        // Aunque vuelva a haber margen, no se restablece un dispositivo que ya no existe
+        leer(engine, dispositivo("Nevera", null, NivelCriticidad.CRITICA, 0), 100);
+        engine.restablecerDesconectados(trasMinimo());
+        assertEquals(100, engine.getConsumoTotal());
+    }
+
+    @Test
+    void testDesconectarAManoUnDispositivoDesconocido() {
+        engine = motor(1000, Map.of(), 0.8);
+
+        assertDoesNotThrow(() -> engine.desconectarDispositivo("noexiste"));
+        assertEquals(0, engine.getNumeroDesconectados());
+        assertEquals(0, engine.getNumeroActivos());
+    }
+
+    @Test
+    void testUnDesconectadoSinLecturasCaduca() {
+        engine = new SmartGridDecisionEngine(OpcionesMotor.conLimite(1000)
+                .conCaducidad(new Caducidad(10_000, 1_000, Caducidad.Modo.QUITAR, 0))
+                .conHisteresis(new Histeresis(0.8, 0, 1000)));
+        long inicio = System.currentTimeMillis();
+        engine.caducarInactivos(inicio);
+        Dispositivo nevera = dispositivo("Nevera", null, NivelCriticidad.CRITICA, 0);
+        leer(engine, nevera, 900);
+        leer(engine, dispositivo("Estufa", null, NivelCriticidad.BAJA, 0), 300);
+        assertEquals(1, engine.getNumeroDesconectados());
+
+        for (long t = inicio + 1_000; t <= inicio + 12_000; t += 1_000) {
+            engine.caducarInactivos(t);
+            leer(engine, nevera, 900);
+        }
+
+        assertEquals(0, engine.getNumeroDesconectados());
+        assertEquals(1, engine.getProgramadosCaducidad(), "Solo queda programada la nevera");
+    }
+}
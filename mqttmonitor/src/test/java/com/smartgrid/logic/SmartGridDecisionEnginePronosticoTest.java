@@ -0,0 +1,133 @@
+package com.smartgrid.logic;
+
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static com.smartgrid.Dispositivos.dispositivo;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmartGridDecisionEnginePronosticoTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+    private static final long HORIZONTE = 10_000;
+
+    private SmartGridDecisionEngine engine;
+
+    @AfterEach
+    void tearDown() {
+        engine.close();
+    }
+
+    private static SmartGridDecisionEngine motor(double limite, Map<String, Double> limitesZona, boolean anticipar) {
+        return new SmartGridDecisionEngine(OpcionesMotor.conLimite(limite).conLimitesZona(limitesZona)
+                .conPronostico(new Pronostico(HORIZONTE, 1000, 0.5, 0.5, anticipar)));
+    }
+
+    private static void leer(SmartGridDecisionEngine engine, Dispositivo dispositivo, double consumo) {
+        dispositivo.setConsumo(consumo);
+        engine.procesarDispositivo(dispositivo);
+    }
+
+    /**
+     * Nevera crítica fija (300 W), secador fijo (50 W) y una estufa que sube 100 W por segundo, con
+     * una observación de la previsión por segundo. Devuelve la estufa.
+     */
+    private Dispositivo rampa(String zona, int segundos) {
+        Dispositivo nevera = dispositivo("Nevera", zona, NivelCriticidad.CRITICA);
+        Dispositivo secador = dispositivo("Secador", zona, NivelCriticidad.MEDIA);
+        Dispositivo estufa = dispositivo("Estufa", zona, NivelCriticidad.BAJA);
+        leer(engine, nevera, 300);
+        leer(engine, secador, 50);
+        for (int i = 0; i < segundos; i++) {
+            if (engine.buscarActivo("Estufa").isPresent() || i == 0) {
+                leer(engine, estufa, 100 * (i + 1));
+            }
+            engine.pronosticar(T0 + i * 1000L);
+        }
+        return estufa;
+    }
+
+    @Test
+    void testAnticipaElLimiteGlobal() {
+        engine = motor(1000, Map.of(), true);
+
+        // A los 2 s: 650 W y subiendo; con la tendencia estimada se superarían los 1000 W antes de 10 s
+        rampa(null, 3);
+
+        assertTrue(engine.buscarActivo("Estufa").isEmpty(), "Se desconecta antes de superar el límite");
+        assertEquals(350, engine.getConsumoTotal());
+        assertEquals(1, engine.getAnticipadas(null));
+        assertEquals(1, engine.getDesconexionesAutomaticas(null));
+        assertFalse(engine.isAlertaCriticos());
+    }
+
+    @Test
+    void testSinAnticiparSoloPreve() {
+        engine = motor(1000, Map.of(), false);
+
+        rampa(null, 3);
+
+        assertEquals(300, engine.buscarActivo("Estufa").orElseThrow().consumo());
+        assertEquals(0, engine.getAnticipadas(null));
+        assertTrue(engine.getPrevision() > engine.getLimiteConsumo(), "La previsión ya supera el límite");
+        assertEquals(engine.getPrevision(), engine.getPrevisionZona(null));
+    }
+
+    @Test
+    void testAnticipaElLimiteDeLaZona() {
+        engine = motor(100_000, Map.of("garaje", 1000.0), true);
+
+        rampa("garaje", 3);
+
+        assertTrue(engine.buscarActivo("Estufa").isEmpty());
+        assertEquals(1, engine.getAnticipadas("garaje"));
+        assertFalse(engine.isAlertaZona("garaje"));
+    }
+
+    @Test
+    void testNoAnticipaSiSoloLosCriticosSuperarian() {
+        engine = motor(1000, Map.of(), true);
+        Dispositivo horno = dispositivo("Horno", null, NivelCriticidad.CRITICA);
+        leer(engine, dispositivo("Lampara", null, NivelCriticidad.BAJA), 50);
+
+        for (int i = 0; i < 3; i++) {
+            leer(engine, horno, 300 + 100 * i);
+            engine.pronosticar(T0 + i * 1000L);
+        }
+
+        assertTrue(engine.buscarActivo("Lampara").isPresent(), "Desconectarla no evitaría la sobrecarga");
+        assertFalse(engine.isAlertaCriticos(), "La alerta depende solo del consumo real");
+    }
+
+    @Test
+    void testErrorDeLasPrevisiones() {
+        engine = motor(100_000, Map.of(), false);
+        leer(engine, dispositivo("Nevera", "cocina", NivelCriticidad.CRITICA), 300);
+
+        for (int i = 0; i <= 15; i++) {
+            engine.pronosticar(T0 + i * 1000L);
+        }
+
+        // Las previsiones de 0 a 5 s ya han llegado a su instante
+        assertEquals(6, engine.getErrorPronostico().comparaciones());
+        assertEquals(0, engine.getErrorPronostico().getMedioAbsoluto(), 1e-9);
+        assertEquals(6, engine.getErrorPronosticoZona("cocina").comparaciones());
+        assertEquals(ErrorPronostico.VACIO, engine.getErrorPronosticoZona("garaje"));
+    }
+
+    @Test
+    void testSinPrevisionNoHaceNada() {
+        engine = new SmartGridDecisionEngine();
+        leer(engine, dispositivo("Estufa", null, NivelCriticidad.BAJA), 4000);
+
+        engine.pronosticar(T0);
+
+        assertTrue(Double.isNaN(engine.getPrevision()));
+        assertEquals(ErrorPronostico.VACIO, engine.getErrorPronostico());
+        assertFalse(engine.getPronostico().isActivo());
+    }
+}
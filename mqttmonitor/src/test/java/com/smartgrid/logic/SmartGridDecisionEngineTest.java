@@ -1,9 +1,16 @@
 package com.smartgrid.logic;
 
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
 import com.smartgrid.model.Dispositivo;
 import com.smartgrid.model.NivelCriticidad;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -98,4 +105,196 @@ class SmartGridDecisionEngineTest {
 
         assertTrue(engine.getDispositivosActivos().isEmpty());
     }
+
+    @Test
+    void testDispositivosOlvidadosLiberanSuSlot() {
+        // Altas y bajas continuas: los slots de los dispositivos borrados se reutilizan
+        for (int i = 0; i < 100; i++) {
+            Dispositivo d = new Dispositivo();
+            d.setNombre("Temporal" + i);
+            d.setCriticidad(NivelCriticidad.BAJA);
+            d.setConsumo(100);
+            engine.procesarDispositivo(d);
+            engine.olvidarDispositivo("Temporal" + i);
+            engine.desconectarDispositivo("Temporal" + i);
+        }
+
+        assertEquals(0, engine.getNumeroSlots());
+        assertEquals(1, engine.getCapacidadSlots());
+        assertEquals(0, engine.getConsumoTotal());
+        assertTrue(engine.buscarActivo("Temporal0").isEmpty());
+    }
+
+    @Test
+    void testAgregadosSeActualizanPorDelta() {
+        Dispositivo horno = new Dispositivo();
+        horno.setNombre("Horno");
+        horno.setZona("cocina");
+        horno.setCriticidad(NivelCriticidad.MEDIA);
+        horno.setConsumo(1200);
+
+        Dispositivo nevera = new Dispositivo();
+        nevera.setNombre("Nevera");
+        nevera.setZona("cocina");
+        nevera.setCriticidad(NivelCriticidad.CRITICA);
+        nevera.setConsumo(300);
+
+        engine.procesarDispositivo(horno);
+        engine.procesarDispositivo(nevera);
+
+        // Nueva lectura sobre la misma instancia: solo debe contar la diferencia
+        horno.setConsumo(800);
+        engine.procesarDispositivo(horno);
+
+        assertEquals(1100, engine.getConsumoTotal());
+        assertEquals(300, engine.getConsumoCriticos());
+        assertEquals(1100, engine.getConsumoZona("cocina"));
+        assertEquals(800, engine.getConsumoPorCriticidad(NivelCriticidad.MEDIA));
+
+        engine.desconectarDispositivo("Horno");
+
+        assertEquals(300, engine.getConsumoTotal());
+        assertEquals(0, engine.getConsumoPorCriticidad(NivelCriticidad.MEDIA));
+    }
+
+    @Test
+    void testAgregadosTrasDesconexionAutomatica() {
+        for (int i = 1; i <= 6; i++) {
+            Dispositivo d = new Dispositivo();
+            d.setNombre("Dispositivo" + i);
+            d.setCriticidad(NivelCriticidad.BAJA);
+            d.setConsumo(1000);
+            engine.procesarDispositivo(d);
+        }
+
+        double suma = engine.getDispositivosActivos().stream()
+                .mapToDouble(Dispositivo::getConsumo)
+                .sum();
+
+        assertEquals(suma, engine.getConsumoTotal());
+        assertEquals(suma, engine.getConsumoZona(null));
+    }
+
+    @Test
+    void testDesconectaPrimeroElMayorConsumidor() {
+        Dispositivo tv = new Dispositivo();
+        tv.setNombre("TV");
+        tv.setCriticidad(NivelCriticidad.BAJA);
+        tv.setConsumo(500);
+
+        Dispositivo horno = new Dispositivo();
+        horno.setNombre("Horno");
+        horno.setCriticidad(NivelCriticidad.MEDIA);
+        horno.setConsumo(3000);
+
+        Dispositivo nevera = new Dispositivo();
+        nevera.setNombre("Nevera");
+        nevera.setCriticidad(NivelCriticidad.CRITICA);
+        nevera.setConsumo(4000);
+
+        engine.procesarDispositivo(tv);
+        engine.procesarDispositivo(horno);
+        engine.procesarDispositivo(nevera);
+
+        assertFalse(engine.isAlertaCriticos());
+        assertEquals(4500, engine.getConsumoTotal());
+        assertTrue(engine.getDispositivosActivos().stream().noneMatch(d -> d.getNombre().equals("Horno")));
+    }
+
+    @Test
+    void testProcesarLecturasAplicaElLoteYEvaluaUnaVez() {
+        Dispositivo horno = new Dispositivo();
+        horno.setNombre("Horno");
+        horno.setCriticidad(NivelCriticidad.MEDIA);
+
+        Dispositivo nevera = new Dispositivo();
+        nevera.setNombre("Nevera");
+        nevera.setCriticidad(NivelCriticidad.CRITICA);
+
+        // Dos lecturas de la misma instancia en el lote: prevalece la última
+        engine.procesarLecturas(List.of(
+                new Lectura(horno, 4000),
+                new Lectura(nevera, 2000),
+                new Lectura(horno, 3500)));
+
+        assertEquals(2000, engine.getConsumoTotal());
+        assertEquals(1, engine.getDispositivosActivos().size());
+        assertFalse(engine.isAlertaCriticos());
+    }
+
+    @Test
+    void testListenerRecibeAltasLecturasYDesconexiones() {
+        List<String> avisos = new ArrayList<>();
+        engine.añadirListener(new CambiosMotorListener() {
+            @Override
+            public void dispositivoActualizado(Dispositivo dispositivo, boolean conectado) {
+                avisos.add((conectado ? "alta " : "lectura ") + dispositivo.getNombre());
+            }
+
+            @Override
+            public void dispositivoDesconectado(String nombre, String zona, boolean automatico) {
+                avisos.add((automatico ? "desconexión automática " : "desconexión manual ") + nombre);
+            }
+        });
+
+        Dispositivo tv = new Dispositivo();
+        tv.setNombre("TV");
+        tv.setZona("salon");
+        tv.setCriticidad(NivelCriticidad.BAJA);
+        Dispositivo horno = new Dispositivo();
+        horno.setNombre("Horno");
+        horno.setZona("cocina");
+        horno.setCriticidad(NivelCriticidad.MEDIA);
+
+        engine.procesarLecturas(List.of(new Lectura(tv, 100)));
+        engine.procesarLecturas(List.of(new Lectura(tv, 200)));
+        // Cambiar de zona no es una desconexión
+        tv.setZona("dormitorio");
+        engine.procesarLecturas(List.of(new Lectura(tv, 300)));
+        engine.procesarLecturas(List.of(new Lectura(horno, 6000)));
+        engine.desconectarDispositivo("TV");
+
+        assertEquals(List.of("alta TV", "lectura TV", "lectura TV", "alta Horno",
+                "desconexión automática Horno", "desconexión manual TV"), avisos);
+        assertTrue(engine.buscarActivo("TV").isEmpty());
+    }
+
+    @Test
+    void testBuscarActivoDevuelveElConsumoContabilizado() {
+        Dispositivo nevera = new Dispositivo();
+        nevera.setNombre("Nevera");
+        nevera.setCriticidad(NivelCriticidad.CRITICA);
+
+        engine.procesarLecturas(List.of(new Lectura(nevera, 150)));
+
+        assertEquals(150, engine.buscarActivo("Nevera").orElseThrow().consumo());
+        assertTrue(engine.buscarActivo("Horno").isEmpty());
+    }
+
+    @Test
+    void testLaAlertaSoloSeRegistraAlCambiar() {
+        ch.qos.logback.classic.Logger logger =
+                (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(SmartGridDecisionEngine.class);
+        ListAppender<ILoggingEvent> eventos = new ListAppender<>();
+        eventos.start();
+        logger.addAppender(eventos);
+        try {
+            Dispositivo bomba = new Dispositivo();
+            bomba.setNombre("Bomba");
+            bomba.setCriticidad(NivelCriticidad.CRITICA);
+
+            // Alerta sostenida: muchas lecturas por encima del límite, un único aviso
+            for (int i = 0; i < 10; i++) {
+                engine.procesarLecturas(List.of(new Lectura(bomba, 6000 + i)));
+            }
+            engine.procesarLecturas(List.of(new Lectura(bomba, 1000)));
+
+            assertEquals(3, eventos.list.stream().filter(e -> e.getLevel() == Level.ERROR).count());
+            assertEquals(1, eventos.list.stream().filter(e -> e.getLevel() == Level.WARN).count());
+            assertTrue(eventos.list.stream().noneMatch(e -> e.getFormattedMessage().contains("{:")));
+            assertFalse(engine.isAlertaCriticos());
+        } finally {
+            logger.detachAppender(eventos);
+        }
+    }
 }
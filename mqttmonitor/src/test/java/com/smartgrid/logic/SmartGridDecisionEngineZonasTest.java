@@ -0,0 +1,177 @@
+package com.smartgrid.logic;
+
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.smartgrid.Dispositivos.dispositivo;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmartGridDecisionEngineZonasTest {
+
+    private SmartGridDecisionEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        engine = new SmartGridDecisionEngine(OpcionesMotor.conLimite(5000)
+                .conLimitesZona(Map.of("cocina", 2000.0, "garaje", 1000.0)).conParalelismo(4));
+    }
+
+    @AfterEach
+    void tearDown() {
+        engine.close();
+    }
+
+    private boolean activo(String nombre) {
+        return engine.getDispositivosActivos().stream().anyMatch(d -> d.getNombre().equals(nombre));
+    }
+
+    @Test
+    void testLimiteDeZonaSoloDesconectaEnLaZona() {
+        engine.procesarDispositivo(dispositivo("Estufa", "salon", NivelCriticidad.BAJA, 1500));
+        engine.procesarDispositivo(dispositivo("Horno", "cocina", NivelCriticidad.MEDIA, 1200));
+        engine.procesarDispositivo(dispositivo("Microondas", "cocina", NivelCriticidad.BAJA, 1000));
+
+        // La cocina supera sus 2000W aunque el total (2700W) está por debajo del global
+        assertFalse(activo("Horno"));
+        assertTrue(activo("Microondas"));
+        assertTrue(activo("Estufa"));
+        assertEquals(1000, engine.getConsumoZona("cocina"));
+        assertEquals(2500, engine.getConsumoTotal());
+        assertFalse(engine.isAlertaCriticos());
+    }
+
+    @Test
+    void testLasDesconexionesAvisanConSuZona() {
+        List<String> avisos = new ArrayList<>();
+        engine.añadirListener(new CambiosMotorListener() {
+            @Override
+            public void dispositivoActualizado(Dispositivo dispositivo, boolean conectado) {
+            }
+
+            @Override
+            public void dispositivoDesconectado(String nombre, String zona, boolean automatico) {
+                avisos.add(nombre + "@" + zona);
+            }
+        });
+
+        engine.procesarDispositivo(dispositivo("Horno", "cocina", NivelCriticidad.MEDIA, 1200));
+        engine.procesarDispositivo(dispositivo("Microondas", "cocina", NivelCriticidad.BAJA, 1000));
+        engine.procesarDispositivo(dispositivo("Lampara", null, NivelCriticidad.BAJA, 100));
+        engine.desconectarDispositivo("Lampara");
+
+        assertEquals(List.of("Horno@cocina", "Lampara@" + AgregadosConsumo.SIN_ZONA), avisos);
+    }
+
+    @Test
+    void testAlertaDeZonaConCriticos() {
+        engine.procesarDispositivo(dispositivo("Bomba", "garaje", NivelCriticidad.CRITICA, 1500));
+        engine.procesarDispositivo(dispositivo("Lampara", "salon", NivelCriticidad.BAJA, 100));
+
+        assertTrue(engine.isAlertaZona("garaje"));
+        assertFalse(engine.isAlertaZona("salon"));
+        assertTrue(engine.isAlertaCriticos());
+
+        assertTrue(engine.ajustarPotenciaDispositivo("Bomba", 800));
+        assertFalse(engine.isAlertaZona("garaje"));
+        assertFalse(engine.isAlertaCriticos());
+    }
+
+    @Test
+    void testAjusteQueNoCabeEnLaZonaFalla() {
+        engine.procesarDispositivo(dispositivo("Bomba", "garaje", NivelCriticidad.CRITICA, 1500));
+
+        assertFalse(engine.ajustarPotenciaDispositivo("Bomba", 1200));
+        assertTrue(engine.isAlertaZona("garaje"));
+        assertEquals(1500, engine.getConsumoZona("garaje"));
+    }
+
+    @Test
+    void testAjusteQueSuperaLaZonaDesconectaSusNoCriticos() {
+        engine.procesarDispositivo(dispositivo("Bomba", "garaje", NivelCriticidad.CRITICA, 500));
+        engine.procesarDispositivo(dispositivo("Lampara", "garaje", NivelCriticidad.BAJA, 300));
+
+        // La bomba cabe sola en los 1000W del garaje: se mantiene el ajuste y sale la lámpara
+        assertTrue(engine.ajustarPotenciaDispositivo("Bomba", 900));
+        assertFalse(activo("Lampara"));
+        assertEquals(900, engine.getConsumoZona("garaje"));
+        assertFalse(engine.isAlertaZona("garaje"));
+    }
+
+    @Test
+    void testAjusteQueNoCabeNoSeAplica() {
+        engine.procesarDispositivo(dispositivo("Bomba", "garaje", NivelCriticidad.CRITICA, 500));
+        engine.procesarDispositivo(dispositivo("Lampara", "garaje", NivelCriticidad.BAJA, 300));
+        engine.procesarDispositivo(dispositivo("Servidor", null, NivelCriticidad.CRITICA, 4200));
+
+        // En la zona no cabe, y en el global tampoco: ni se aplica ni se desconecta nada
+        assertFalse(engine.ajustarPotenciaDispositivo("Bomba", 1100));
+        assertFalse(engine.ajustarPotenciaDispositivo("Bomba", 900));
+        assertTrue(activo("Lampara"));
+        assertEquals(800, engine.getConsumoZona("garaje"));
+        assertEquals(5000, engine.getConsumoTotal());
+        assertFalse(engine.isAlertaCriticos());
+    }
+
+    @Test
+    void testLimiteGlobalDesconectaElMayorDeCualquierZona() {
+        engine.procesarDispositivo(dispositivo("Horno", "cocina", NivelCriticidad.MEDIA, 1800));
+        engine.procesarDispositivo(dispositivo("Estufa", "salon", NivelCriticidad.BAJA, 2500));
+        engine.procesarDispositivo(dispositivo("Tele", "salon", NivelCriticidad.BAJA, 400));
+        engine.procesarDispositivo(dispositivo("Servidor", null, NivelCriticidad.CRITICA, 1000));
+
+        // 5700W > 5000W: sale la estufa, el mayor no crítico de todas las zonas
+        assertFalse(activo("Estufa"));
+        assertEquals(3200, engine.getConsumoTotal());
+        assertEquals(1000, engine.getConsumoZona(null));
+        assertFalse(engine.isAlertaCriticos());
+    }
+
+    @Test
+    void testCambioDeZonaMueveElDispositivo() {
+        Dispositivo tele = dispositivo("Tele", "salon", NivelCriticidad.BAJA, 300);
+        engine.procesarDispositivo(tele);
+
+        tele.setZona("cocina");
+        tele.setConsumo(350);
+        engine.procesarDispositivo(tele);
+
+        assertEquals(0, engine.getConsumoZona("salon"));
+        assertEquals(350, engine.getConsumoZona("cocina"));
+        assertEquals(1, engine.getDispositivosActivos().size());
+
+        engine.desconectarDispositivo("Tele");
+        assertEquals(0, engine.getConsumoTotal());
+        assertEquals(0, engine.getTamañoColaDesconexion());
+    }
+
+    @Test
+    void testLoteConVariasZonasEnParalelo() {
+        String[] zonas = {"salon", "dormitorio", "oficina", null};
+        List<Dispositivo> flota = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            flota.add(dispositivo("d" + i, zonas[i % zonas.length], NivelCriticidad.BAJA, 0));
+        }
+
+        List<Lectura> lote = new ArrayList<>();
+        for (int vuelta = 1; vuelta <= 3; vuelta++) {
+            for (Dispositivo d : flota) {
+                lote.add(new Lectura(d, vuelta * 10));
+            }
+        }
+        engine.procesarLecturas(lote);
+
+        // Prevalece la última lectura de cada dispositivo: 100 x 30W
+        assertEquals(3000, engine.getConsumoTotal(), 1e-9);
+        assertEquals(750, engine.getConsumoZona("salon"), 1e-9);
+        assertEquals(100, engine.getDispositivosActivos().size());
+        assertEquals(Double.POSITIVE_INFINITY, engine.getLimiteZona("salon"));
+        assertEquals(2000, engine.getLimiteZona("cocina"));
+    }
+}
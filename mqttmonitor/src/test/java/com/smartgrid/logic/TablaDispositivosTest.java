@@ -0,0 +1,116 @@
+package com.smartgrid.logic;
+
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.smartgrid.Dispositivos.dispositivo;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TablaDispositivosTest {
+
+    @Test
+    void testSlotEstableYReutilizado() {
+        TablaDispositivos tabla = new TablaDispositivos();
+
+        int lavadora = tabla.slot("lavadora");
+        int horno = tabla.slot("horno");
+
+        assertNotEquals(lavadora, horno);
+        assertEquals(lavadora, tabla.slot("lavadora"));
+        assertEquals(horno, tabla.buscarSlot("horno"));
+        assertEquals(-1, tabla.buscarSlot("tv"));
+        assertEquals(2, tabla.getNumeroSlots());
+    }
+
+    @Test
+    void testActivarYDesactivar() {
+        TablaDispositivos tabla = new TablaDispositivos();
+        Dispositivo servidor = dispositivo("servidor", null, NivelCriticidad.CRITICA);
+        Dispositivo lampara = dispositivo("lampara", null, null);
+        int s1 = tabla.slot("servidor");
+        int s2 = tabla.slot("lampara");
+
+        tabla.activar(s1, 0, servidor, 2000);
+        tabla.activar(s2, 0, lampara, 60);
+        tabla.activar(s2, 0, lampara, 40);
+
+        assertEquals(2, tabla.getNumeroActivos());
+        assertEquals(NivelCriticidad.CRITICA, tabla.getCriticidad(s1));
+        assertNull(tabla.getCriticidad(s2));
+        assertEquals(40, tabla.getConsumo(s2));
+        assertEquals(new Lectura(servidor, 2000), tabla.getActivo(s1));
+
+        tabla.desactivar(s1);
+        tabla.desactivar(s1);
+
+        assertEquals(1, tabla.getNumeroActivos());
+        assertNull(tabla.getActivo(s1));
+        assertNull(tabla.getEntidad(s1));
+        assertNull(tabla.getParticion(s1));
+    }
+
+    @Test
+    void testSlotOlvidadoSeLiberaAlRetirarloYSeReutiliza() {
+        TablaDispositivos tabla = new TablaDispositivos();
+        Dispositivo lampara = dispositivo("lampara", null, NivelCriticidad.BAJA);
+        int slot = tabla.slot("lampara");
+        tabla.activar(slot, 0, lampara, 60);
+
+        // Mientras esté activo conserva su slot
+        tabla.olvidar(slot);
+        assertEquals(slot, tabla.buscarSlot("lampara"));
+        assertTrue(tabla.esDe(slot, "lampara"));
+
+        tabla.desactivar(slot);
+        assertTrue(tabla.liberarSiOlvidado(slot));
+
+        assertEquals(-1, tabla.buscarSlot("lampara"));
+        assertFalse(tabla.esDe(slot, "lampara"));
+        assertEquals(slot, tabla.slot("horno"));
+        assertTrue(tabla.esDe(slot, "horno"));
+        assertEquals(0, tabla.getConsumo(slot));
+        assertNull(tabla.getCriticidad(slot));
+        assertEquals(1, tabla.getNumeroSlots());
+        assertEquals(1, tabla.getCapacidadSlots());
+    }
+
+    @Test
+    void testUnaLecturaTrasOlvidarCancelaLaLiberacion() {
+        TablaDispositivos tabla = new TablaDispositivos();
+        Dispositivo lampara = dispositivo("lampara", null, NivelCriticidad.BAJA);
+        int slot = tabla.slot("lampara");
+        tabla.activar(slot, 0, lampara, 60);
+
+        tabla.olvidar(slot);
+        tabla.activar(slot, 0, lampara, 40);
+        tabla.desactivar(slot);
+
+        assertFalse(tabla.liberarSiOlvidado(slot));
+        assertEquals(slot, tabla.buscarSlot("lampara"));
+    }
+
+    @Test
+    void testCreceSinPerderDatosYListaLosActivos() {
+        TablaDispositivos tabla = new TablaDispositivos();
+        int total = 10_000; // más de dos páginas
+        for (int i = 0; i < total; i++) {
+            int slot = tabla.slot("d" + i);
+            tabla.activar(slot, 0, dispositivo("d" + i, null, NivelCriticidad.BAJA), i);
+        }
+        for (int i = 0; i < total; i += 2) {
+            tabla.desactivar(tabla.buscarSlot("d" + i));
+        }
+
+        List<Dispositivo> activos = new ArrayList<>();
+        tabla.añadirActivos(activos);
+
+        assertEquals(total / 2, activos.size());
+        assertEquals(total / 2, tabla.getNumeroActivos());
+        assertTrue(activos.stream().allMatch(d -> Integer.parseInt(d.getNombre().substring(1)) % 2 == 1));
+        assertEquals(9_999, tabla.getConsumo(tabla.buscarSlot("d9999")));
+    }
+}
@@ -0,0 +1,268 @@
+package com.smartgrid.service;
+
+import com.smartgrid.logic.Histeresis;
+import com.smartgrid.logic.OpcionesMotor;
+import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.smartgrid.Dispositivos.dispositivo;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ActuacionDispositivosTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+    private static final Pattern ID = Pattern.compile("\"id\":(\\d+)");
+
+    /**
+     * Publicador en memoria; sin conexión rechaza las publicaciones como el cliente MQTT.
+     */
+    private static final class Publicaciones implements ActuacionDispositivos.Publicador {
+        final List<String> topics = new ArrayList<>();
+        final List<String> mensajes = new ArrayList<>();
+        boolean sinConexion;
+
+        @Override
+        public void publicar(String topic, byte[] mensaje) throws MqttException {
+            if (sinConexion) throw new MqttException(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED);
+            topics.add(topic);
+            mensajes.add(new String(mensaje, StandardCharsets.UTF_8));
+        }
+
+        long id(int publicacion) {
+            Matcher matcher = ID.matcher(mensajes.get(publicacion));
+            assertTrue(matcher.find());
+            return Long.parseLong(matcher.group(1));
+        }
+    }
+
+    private SmartGridDecisionEngine engine;
+    private Publicaciones publicaciones;
+    private ActuacionDispositivos actuacion;
+
+    @BeforeEach
+    void setUp() {
+        engine = new SmartGridDecisionEngine(OpcionesMotor.conLimite(100_000));
+        publicaciones = new Publicaciones();
+
+        // Intervalo muy largo: las rondas de envío se hacen a mano en cada test
+        actuacion = new ActuacionDispositivos(engine, "smartgrid/control/", 2, 100, 1000, 2, 3_600_000);
+        actuacion.iniciar(publicaciones);
+    }
+
+    @AfterEach
+    void tearDown() {
+        actuacion.close();
+    }
+
+    @Test
+    void testDesconexionSinRestablecimientoPorLectura() {
+        engine.procesarDispositivo(dispositivo("cocina-horno", "cocina", NivelCriticidad.BAJA, 100));
+        actuacion.despachar(T0);
+        assertTrue(publicaciones.mensajes.isEmpty(), "Una lectura normal no genera órdenes");
+
+        engine.desconectarDispositivo("cocina-horno");
+        actuacion.despachar(T0);
+        assertEquals(List.of("smartgrid/control/cocina-horno"), publicaciones.topics);
+        assertEquals("{\"id\":1,\"orden\":\"DESCONECTAR\"}", publicaciones.mensajes.get(0));
+
+        // Sin histéresis el motor lo vuelve a contar con su siguiente lectura, pero eso no deshace la orden
+        engine.procesarDispositivo(dispositivo("cocina-horno", "cocina", NivelCriticidad.BAJA, 100));
+        actuacion.despachar(T0 + 100);
+        assertEquals(1, publicaciones.mensajes.size());
+        assertEquals(0, actuacion.getEstadisticas().pendientes());
+    }
+
+    @Test
+    void testRestablecimientoDelMotor() {
+        SmartGridDecisionEngine conHisteresis = new SmartGridDecisionEngine(OpcionesMotor.conLimite(1000)
+                .conHisteresis(new Histeresis(0.8, 0, 1000)));
+        ActuacionDispositivos actuacionHisteresis = new ActuacionDispositivos(conHisteresis, "smartgrid/control/", 2,
+                100, 1000, 2, 3_600_000);
+        actuacionHisteresis.iniciar(publicaciones);
+        try {
+            Dispositivo nevera = dispositivo("cocina-nevera", "cocina", NivelCriticidad.BAJA, 100);
+            nevera.setCriticidad(NivelCriticidad.CRITICA);
+            nevera.setConsumo(900);
+            conHisteresis.procesarDispositivo(nevera);
+            Dispositivo horno = dispositivo("cocina-horno", "cocina", NivelCriticidad.BAJA, 100);
+            horno.setConsumo(300);
+            conHisteresis.procesarDispositivo(horno);
+            actuacionHisteresis.despachar(T0);
+            assertEquals("{\"id\":1,\"orden\":\"DESCONECTAR\"}", publicaciones.mensajes.get(0));
+
+            // Baja la nevera: el motor lo restablece y el dispositivo debe saberlo
+            nevera.setConsumo(100);
+            conHisteresis.procesarDispositivo(nevera);
+            conHisteresis.restablecerDesconectados(System.currentTimeMillis());
+            actuacionHisteresis.despachar(T0 + 1000);
+            assertEquals("{\"id\":2,\"orden\":\"RESTABLECER\"}", publicaciones.mensajes.get(1));
+            assertEquals(1, actuacionHisteresis.getEstadisticas().enVuelo(),
+                    "El restablecimiento sustituye a la desconexión");
+
+            actuacionHisteresis.confirmar(2);
+            ActuacionDispositivos.Estadisticas estadisticas = actuacionHisteresis.getEstadisticas();
+            assertEquals(0, estadisticas.enVuelo());
+            assertEquals(2, estadisticas.enviadas());
+            assertEquals(1, estadisticas.confirmadas());
+        } finally {
+            actuacionHisteresis.close();
+            conHisteresis.close();
+        }
+    }
+
+    @Test
+    void testLaUltimaOrdenSinEnviarGana() {
+        actuacion.consigna("cocina-horno", 1500);
+        actuacion.consigna("cocina-horno", 800);
+        assertEquals(1, actuacion.getEstadisticas().pendientes());
+
+        actuacion.despachar(T0);
+
+        assertEquals(List.of("{\"id\":2,\"orden\":\"CONSIGNA\",\"potencia\":800.0}"), publicaciones.mensajes);
+        assertEquals(0, actuacion.getEstadisticas().pendientes());
+    }
+
+    /**
+     * Los dispositivos confirman todo lo que han recibido.
+     */
+    private void confirmarTodo() {
+        for (int i = 0; i < publicaciones.mensajes.size(); i++) {
+            actuacion.confirmar(publicaciones.id(i));
+        }
+    }
+
+    @Test
+    void testLimiteDeOrdenesPorZona() {
+        // La zona de cada orden es la que tiene el dispositivo en el motor
+        for (int i = 0; i < 5; i++) {
+            engine.procesarDispositivo(dispositivo("cocina-d" + i, "cocina", NivelCriticidad.BAJA, 100));
+            actuacion.consigna("cocina-d" + i, 100);
+        }
+        engine.procesarDispositivo(dispositivo("salon-tv", "salon", NivelCriticidad.BAJA, 100));
+        actuacion.consigna("salon-tv", 100);
+
+        actuacion.despachar(T0);
+        assertEquals(List.of("smartgrid/control/cocina-d0", "smartgrid/control/cocina-d1", "smartgrid/control/salon-tv"),
+                publicaciones.topics, "Dos por segundo en cocina; salón tiene su propia cubeta");
+        assertEquals(3, actuacion.getEstadisticas().pendientes());
+
+        confirmarTodo();
+        actuacion.despachar(T0 + 500);
+        assertEquals("smartgrid/control/cocina-d2", publicaciones.topics.get(3));
+        confirmarTodo();
+        actuacion.despachar(T0 + 1000);
+        confirmarTodo();
+        actuacion.despachar(T0 + 1500);
+        assertEquals(6, publicaciones.topics.size());
+        assertEquals(0, actuacion.getEstadisticas().pendientes());
+    }
+
+    @Test
+    void testLasDesconexionesUsanLaZonaDelMotor() {
+        for (int i = 0; i < 3; i++) {
+            engine.procesarDispositivo(dispositivo("cocina-d" + i, "cocina", NivelCriticidad.BAJA, 100));
+            engine.desconectarDispositivo("cocina-d" + i);
+        }
+        engine.procesarDispositivo(dispositivo("salon-tv", "salon", NivelCriticidad.BAJA, 100));
+        engine.desconectarDispositivo("salon-tv");
+
+        actuacion.despachar(T0);
+
+        assertEquals(List.of("smartgrid/control/cocina-d0", "smartgrid/control/cocina-d1", "smartgrid/control/salon-tv"),
+                publicaciones.topics, "Cada desconexión va a la cubeta de la zona en la que estaba");
+    }
+
+    @Test
+    void testReintentosSinConfirmacion() {
+        actuacion.consigna("cocina-horno", 1500);
+        actuacion.despachar(T0);
+        actuacion.despachar(T0 + 999);
+        assertEquals(1, publicaciones.mensajes.size());
+
+        actuacion.despachar(T0 + 1000);
+        actuacion.despachar(T0 + 2000);
+        assertEquals(3, publicaciones.mensajes.size());
+        assertEquals(publicaciones.mensajes.get(0), publicaciones.mensajes.get(2), "Se reenvía con el mismo id");
+
+        actuacion.despachar(T0 + 3000);
+        ActuacionDispositivos.Estadisticas estadisticas = actuacion.getEstadisticas();
+        assertEquals(3, publicaciones.mensajes.size());
+        assertEquals(2, estadisticas.reintentos());
+        assertEquals(1, estadisticas.fallidas());
+        assertEquals(0, estadisticas.enVuelo());
+    }
+
+    @Test
+    void testConfirmarEvitaElReintento() {
+        actuacion.consigna("cocina-horno", 1500);
+        actuacion.despachar(T0);
+        actuacion.confirmar(publicaciones.id(0));
+        actuacion.confirmar(publicaciones.id(0)); // duplicada: QoS 1 puede entregarla dos veces
+
+        actuacion.despachar(T0 + 5000);
+
+        assertEquals(1, publicaciones.mensajes.size());
+        assertEquals(1, actuacion.getEstadisticas().confirmadas());
+    }
+
+    @Test
+    void testUnaOrdenNuevaSustituyeALaQueEstabaEnVuelo() {
+        actuacion.consigna("cocina-horno", 1500);
+        actuacion.despachar(T0);
+        actuacion.consigna("cocina-horno", 800);
+        actuacion.despachar(T0 + 500);
+
+        actuacion.confirmar(publicaciones.id(0));
+        assertEquals(0, actuacion.getEstadisticas().confirmadas(), "La confirmación de la orden sustituida no cuenta");
+
+        actuacion.despachar(T0 + 1000); // vence la primera: no se reenvía
+        assertEquals(2, publicaciones.mensajes.size());
+        assertEquals(0, actuacion.getEstadisticas().reintentos());
+    }
+
+    @Test
+    void testSinConexionLasOrdenesEsperan() {
+        publicaciones.sinConexion = true;
+        actuacion.consigna("cocina-horno", 1500);
+        actuacion.despachar(T0);
+        assertEquals(1, actuacion.getEstadisticas().pendientes());
+
+        publicaciones.sinConexion = false;
+        actuacion.despachar(T0 + 1000);
+        assertEquals(1, publicaciones.mensajes.size());
+        assertEquals(0, actuacion.getEstadisticas().pendientes());
+    }
+
+    @Test
+    void testDesconexionMasivaSoloAnota() {
+        for (int i = 0; i < 5000; i++) {
+            engine.procesarDispositivo(dispositivo("cocina-d" + i, "cocina", NivelCriticidad.BAJA, 100));
+        }
+        for (int i = 0; i < 5000; i++) {
+            engine.desconectarDispositivo("cocina-d" + i);
+        }
+
+        assertTrue(publicaciones.mensajes.isEmpty(), "El motor no publica nada: solo anota las órdenes");
+        assertEquals(5000, actuacion.getEstadisticas().pendientes());
+    }
+
+    @Test
+    void testSinIniciarNoAnotaOrdenes() {
+        ActuacionDispositivos parado = new ActuacionDispositivos(engine, "smartgrid/control/", 2, 100, 1000, 2, 50);
+
+        parado.consigna("cocina-horno", 1500);
+
+        assertEquals(0, parado.getEstadisticas().pendientes());
+    }
+}
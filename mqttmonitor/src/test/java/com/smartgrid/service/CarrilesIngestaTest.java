@@ -0,0 +1,192 @@
+package com.smartgrid.service;
+
+import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import com.smartgrid.repository.DispositivoRepository;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.smartgrid.Dispositivos.dispositivo;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CarrilesIngestaTest {
+
+    private static byte[] bytes(String texto) {
+        return texto.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Servicio cuyo registro tiene cargados los dispositivos indicados, para repartir por su id.
+     */
+    private static MQTTSubscriberService servicio(Dispositivo... cargados) {
+        DispositivoRepository repositorio = mock(DispositivoRepository.class);
+        when(repositorio.findAll()).thenReturn(List.of(cargados));
+        RegistroDispositivos registro = new RegistroDispositivos(repositorio);
+        registro.precargar();
+        return new MQTTSubscriberService(null, new SmartGridDecisionEngine(), registro);
+    }
+
+    private static String nombre(byte[] payload) {
+        String texto = new String(payload, StandardCharsets.UTF_8);
+        return texto.substring(0, texto.indexOf(':'));
+    }
+
+    @Test
+    void testMismoDispositivoSiempreEnElMismoCarril() {
+        CarrilesIngesta carriles = new CarrilesIngesta(8,
+                new OpcionesIngesta(1024, 16, 0, PoliticaContrapresion.BLOQUEAR, null),
+                p -> null, servicio()::hashDispositivo, lote -> { });
+
+        int carril = carriles.carril(bytes("lavadora:100"));
+        assertEquals(carril, carriles.carril(bytes("lavadora:2500.5")));
+        assertEquals(carril, carriles.carril(bytes(" LavaDora : 7")));
+        assertEquals(0, carriles.carril(bytes("mensaje_erroneo")));
+
+        // Con muchos dispositivos se usan todos los carriles
+        Set<Integer> usados = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < 1000; i++) {
+            usados.add(carriles.carril(bytes("dispositivo" + i + ":1")));
+        }
+        assertEquals(8, usados.size());
+    }
+
+    @Test
+    void testTextoYBinarioDeUnDispositivoVanPorElMismoCarril() {
+        MQTTSubscriberService servicio = servicio(
+                dispositivo(7, "lavadora", null, NivelCriticidad.MEDIA, 0),
+                dispositivo(8, "horno", null, NivelCriticidad.BAJA, 0));
+        CarrilesIngesta carriles = new CarrilesIngesta(8,
+                new OpcionesIngesta(1024, 16, 0, PoliticaContrapresion.BLOQUEAR, null),
+                p -> null, servicio::hashDispositivo, lote -> { });
+
+        for (long id : new long[]{7, 8}) {
+            String nombre = id == 7 ? " LavaDora " : "horno";
+            byte[] trama = TramaBinaria.codificar(new long[]{id}, new float[]{100}, new long[]{1_700_000_000_000L});
+            assertEquals(carriles.carril(trama), carriles.carril(bytes(nombre + ":100")), nombre);
+        }
+    }
+
+    @Test
+    void testConservaElOrdenPorDispositivoEntreCarrilesParalelos() throws Exception {
+        int dispositivos = 50;
+        int lecturas = 200;
+        Map<String, List<Integer>> recibidas = new ConcurrentHashMap<>();
+        Set<String> hilos = ConcurrentHashMap.newKeySet();
+        CountDownLatch fin = new CountDownLatch(dispositivos * lecturas);
+
+        CarrilesIngesta carriles = new CarrilesIngesta(4,
+                new OpcionesIngesta(100_000, 32, 1, PoliticaContrapresion.BLOQUEAR, null),
+                p -> null, servicio()::hashDispositivo, lote -> {
+                    hilos.add(Thread.currentThread().getName());
+                    for (byte[] payload : lote) {
+                        String texto = new String(payload, StandardCharsets.UTF_8);
+                        int valor = Integer.parseInt(texto.substring(texto.indexOf(':') + 1));
+                        // Cada dispositivo lo procesa un solo carril, así que su lista no se comparte entre hilos
+                        recibidas.computeIfAbsent(nombre(payload), d -> new ArrayList<>()).add(valor);
+                        fin.countDown();
+                    }
+                });
+        carriles.iniciar();
+
+        for (int i = 0; i < lecturas; i++) {
+            for (int d = 0; d < dispositivos; d++) {
+                carriles.encolar(bytes("d" + d + ":" + i));
+            }
+        }
+
+        assertTrue(fin.await(10, TimeUnit.SECONDS));
+        carriles.detener();
+
+        for (List<Integer> valores : recibidas.values()) {
+            for (int i = 0; i < lecturas; i++) {
+                assertEquals(i, valores.get(i));
+            }
+        }
+        assertTrue(hilos.size() > 1, "Los carriles deben procesarse en hilos distintos");
+        assertEquals(dispositivos * lecturas, carriles.getEstadisticas().procesados());
+        assertEquals(4, carriles.getEstadisticasCarriles().size());
+    }
+
+    @Test
+    void testTramaBinariaSeRepartePorDispositivo() throws Exception {
+        Map<Long, List<Float>> recibidas = new ConcurrentHashMap<>();
+        CountDownLatch fin = new CountDownLatch(2 * 20);
+        CarrilesIngesta referencia = new CarrilesIngesta(4,
+                new OpcionesIngesta(1024, 16, 0, PoliticaContrapresion.BLOQUEAR, null),
+                p -> null, servicio()::hashDispositivo, lote -> { });
+
+        CarrilesIngesta carriles = new CarrilesIngesta(4,
+                new OpcionesIngesta(1024, 16, 0, PoliticaContrapresion.BLOQUEAR, null),
+                p -> null, servicio()::hashDispositivo, lote -> {
+                    for (byte[] trama : lote) {
+                        for (int i = 0; i < TramaBinaria.numeroLecturas(trama); i++) {
+                            long id = TramaBinaria.id(trama, i);
+                            // Cada parte de la trama solo lleva lecturas de su carril
+                            assertEquals(carrilDe(referencia, trama, 0), carrilDe(referencia, trama, i));
+                            recibidas.computeIfAbsent(id, k -> new ArrayList<>()).add(TramaBinaria.consumo(trama, i));
+                            fin.countDown();
+                        }
+                    }
+                });
+        carriles.iniciar();
+
+        // Dos tramas con lecturas intercaladas de 20 dispositivos
+        for (int t = 0; t < 2; t++) {
+            long[] ids = new long[20];
+            float[] consumos = new float[20];
+            long[] instantes = new long[20];
+            for (int i = 0; i < 20; i++) {
+                ids[i] = i;
+                consumos[i] = t;
+                instantes[i] = 1_700_000_000_000L + t;
+            }
+            carriles.encolar(TramaBinaria.codificar(ids, consumos, instantes));
+        }
+
+        assertTrue(fin.await(10, TimeUnit.SECONDS));
+        carriles.detener();
+
+        assertEquals(20, recibidas.size());
+        for (List<Float> consumos : recibidas.values()) {
+            assertEquals(List.of(0f, 1f), consumos);
+        }
+    }
+
+    @Test
+    void testCoalescerTextoYBinarioDeUnDispositivoConservaLaUltimaLectura() {
+        DispositivoRepository repositorio = mock(DispositivoRepository.class);
+        when(repositorio.findAll()).thenReturn(List.of(dispositivo(7, "lavadora", null, NivelCriticidad.MEDIA, 0)));
+        RegistroDispositivos registro = new RegistroDispositivos(repositorio);
+        registro.precargar();
+        SmartGridDecisionEngine motor = new SmartGridDecisionEngine();
+        MQTTSubscriberService servicio = new MQTTSubscriberService(null, motor, registro);
+        CarrilesIngesta carriles = new CarrilesIngesta(1,
+                new OpcionesIngesta(1024, 16, 0, PoliticaContrapresion.COALESCER_POR_DISPOSITIVO, null),
+                p -> TramaBinaria.esBinaria(p) ? null : nombre(p), servicio::hashDispositivo, servicio::procesarLote);
+
+        // Sin trabajador arrancado: texto, trama binaria y texto del mismo dispositivo esperan juntos en el buffer
+        carriles.encolar(bytes("lavadora:100"));
+        carriles.encolar(TramaBinaria.codificar(new long[]{7}, new float[]{200}, new long[]{1_700_000_000_000L}));
+        carriles.encolar(bytes("lavadora:300"));
+
+        carriles.iniciar();
+        carriles.detener();
+
+        assertEquals(0, carriles.getEstadisticas().coalescidos());
+        assertEquals(300, motor.buscarActivo("lavadora").orElseThrow().consumo());
+    }
+
+    private static int carrilDe(CarrilesIngesta carriles, byte[] trama, int i) {
+        return carriles.carril(TramaBinaria.extraer(trama, new int[]{i}, 1));
+    }
+}
@@ -0,0 +1,123 @@
+package com.smartgrid.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartgrid.logic.Lectura;
+import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import com.smartgrid.service.DifusionDashboard.CambioDispositivo;
+import com.smartgrid.service.DifusionDashboard.Delta;
+import com.smartgrid.service.DifusionDashboard.TipoCambio;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static com.smartgrid.Dispositivos.dispositivo;
+import static org.junit.jupiter.api.Assertions.*;
+
+class DifusionDashboardTest {
+
+    private SmartGridDecisionEngine engine;
+    private DifusionDashboard difusion;
+
+    @BeforeEach
+    void setUp() {
+        engine = new SmartGridDecisionEngine();
+        // Intervalo muy largo: los deltas se preparan a mano en cada test
+        difusion = new DifusionDashboard(engine, new ObjectMapper(), 3_600_000, 0);
+        difusion.iniciar();
+    }
+
+    @AfterEach
+    void tearDown() {
+        difusion.close();
+    }
+
+    private static Map<String, CambioDispositivo> porNombre(Delta delta) {
+        return delta.cambios().stream().collect(Collectors.toMap(CambioDispositivo::nombre, c -> c));
+    }
+
+    @Test
+    void testSinSuscriptoresNoPreparaDeltas() {
+        engine.procesarLecturas(List.of(new Lectura(dispositivo("tv", "salon", NivelCriticidad.BAJA), 100)));
+
+        assertNull(difusion.prepararDelta());
+        assertEquals(0, difusion.getSuscriptores());
+    }
+
+    @Test
+    void testAgrupaLosCambiosDeCadaDispositivoPorIntervalo() {
+        Dispositivo tv = dispositivo("tv", "salon", NivelCriticidad.BAJA);
+        Dispositivo nevera = dispositivo("nevera", "salon", NivelCriticidad.CRITICA);
+        engine.procesarLecturas(List.of(new Lectura(nevera, 500)));
+        difusion.suscribir();
+        assertEquals(1, difusion.getSuscriptores());
+        difusion.prepararDelta();
+
+        // Varias lecturas del mismo dispositivo en el intervalo: un solo cambio con el último consumo
+        engine.procesarLecturas(List.of(new Lectura(tv, 100)));
+        engine.procesarLecturas(List.of(new Lectura(tv, 200), new Lectura(nevera, 600)));
+        engine.procesarLecturas(List.of(new Lectura(tv, 300)));
+
+        Delta delta = difusion.prepararDelta();
+        Map<String, CambioDispositivo> cambios = porNombre(delta);
+        assertEquals(2, cambios.size());
+        assertEquals(TipoCambio.CONECTADO, cambios.get("tv").tipo());
+        assertEquals(300.0, cambios.get("tv").consumo());
+        assertEquals(TipoCambio.ACTUALIZADO, cambios.get("nevera").tipo());
+        assertEquals(900.0, delta.resumen().consumoTotal());
+
+        // Sin cambios ni variación del resumen no se envía nada
+        assertNull(difusion.prepararDelta());
+    }
+
+    @Test
+    void testInformaDeDesconexionesAutomaticasYManuales() {
+        difusion.suscribir();
+
+        Dispositivo horno = dispositivo("horno", "salon", NivelCriticidad.MEDIA);
+        Dispositivo tv = dispositivo("tv", "salon", NivelCriticidad.BAJA);
+        engine.procesarLecturas(List.of(new Lectura(tv, 100)));
+        difusion.prepararDelta();
+
+        // El horno supera el límite global (5000W) y el motor lo desconecta
+        engine.procesarLecturas(List.of(new Lectura(horno, 6000)));
+        engine.desconectarDispositivo("tv");
+
+        Map<String, CambioDispositivo> cambios = porNombre(difusion.prepararDelta());
+        assertEquals(TipoCambio.DESCONECTADO_AUTOMATICO, cambios.get("horno").tipo());
+        assertNull(cambios.get("horno").consumo());
+        assertEquals(TipoCambio.DESCONECTADO_MANUAL, cambios.get("tv").tipo());
+    }
+
+    @Test
+    void testDifundirEnviaFueraDelMonitorSinPerderConexiones() throws InterruptedException {
+        difusion.suscribir();
+        difusion.suscribir();
+
+        for (int i = 1; i <= 3; i++) {
+            engine.procesarLecturas(List.of(new Lectura(dispositivo("tv", "salon", NivelCriticidad.BAJA), 100 * i)));
+            difusion.difundir();
+            // Cada envío termina antes del siguiente delta: ninguna conexión se queda atrás
+            Thread.sleep(50);
+        }
+
+        assertEquals(2, difusion.getSuscriptores());
+        assertNull(difusion.prepararDelta(), "Los cambios ya se han difundido");
+    }
+
+    @Test
+    void testCloseDejaDeObservarElMotor() {
+        difusion.suscribir();
+        difusion.close();
+
+        engine.procesarLecturas(List.of(new Lectura(dispositivo("tv", "salon", NivelCriticidad.BAJA), 100)));
+
+        assertEquals(0, difusion.getSuscriptores());
+        assertNull(difusion.prepararDelta());
+    }
+}
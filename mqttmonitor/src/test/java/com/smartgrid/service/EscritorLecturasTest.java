@@ -0,0 +1,122 @@
+package com.smartgrid.service;
+
+import com.smartgrid.logic.Lectura;
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.smartgrid.Dispositivos.dispositivo;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class EscritorLecturasTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private EscritorLecturas escritor;
+
+    @AfterEach
+    void tearDown() {
+        if (escritor != null) {
+            escritor.close();
+        }
+    }
+
+    @Test
+    void testRegistrar_SinIniciarNoGuardaNada() {
+        escritor = new EscritorLecturas(jdbcTemplate, 4, 10, 0);
+
+        assertFalse(escritor.registrar(
+                List.of(new Lectura(dispositivo(1, "tv", "salon", NivelCriticidad.MEDIA, 0), 100))));
+
+        verifyNoInteractions(jdbcTemplate);
+        assertEquals(0, escritor.getEstadisticas().recibidas());
+    }
+
+    @Test
+    void testClose_EscribeLasFilasPendientesEnUnLoteJdbc() throws Exception {
+        escritor = new EscritorLecturas(jdbcTemplate, 4, 1000, 60_000);
+        escritor.iniciar();
+
+        Dispositivo tv = dispositivo(1, "tv", "salon", NivelCriticidad.MEDIA, 0);
+        Dispositivo horno = dispositivo(2, "horno", "cocina", NivelCriticidad.MEDIA, 0);
+        assertTrue(escritor.registrar(List.of(new Lectura(tv, 100), new Lectura(horno, 2000))));
+        escritor.close();
+
+        ArgumentCaptor<BatchPreparedStatementSetter> captor = ArgumentCaptor.forClass(BatchPreparedStatementSetter.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(eq(EscritorLecturas.INSERTAR), captor.capture());
+
+        BatchPreparedStatementSetter filas = captor.getValue();
+        assertEquals(2, filas.getBatchSize());
+
+        PreparedStatement ps = mock(PreparedStatement.class);
+        filas.setValues(ps, 1);
+        verify(ps).setLong(1, 2L);
+        verify(ps).setString(2, "horno");
+        verify(ps).setString(3, "cocina");
+        verify(ps).setDouble(4, 2000);
+        verify(ps).setTimestamp(eq(5), any());
+
+        EscritorLecturas.Estadisticas estadisticas = escritor.getEstadisticas();
+        assertEquals(2, estadisticas.escritas());
+        assertEquals(1, estadisticas.escrituras());
+    }
+
+    @Test
+    void testEscribir_PartePorFilasPorEscritura() {
+        escritor = new EscritorLecturas(jdbcTemplate, 4, 2, 0);
+        escritor.iniciar();
+
+        Dispositivo tv = dispositivo(1, "tv", "salon", NivelCriticidad.MEDIA, 0);
+        escritor.registrar(List.of(new Lectura(tv, 1), new Lectura(tv, 2), new Lectura(tv, 3)));
+        escritor.close();
+
+        verify(jdbcTemplate, times(2)).batchUpdate(eq(EscritorLecturas.INSERTAR), any(BatchPreparedStatementSetter.class));
+        assertEquals(3, escritor.getEstadisticas().escritas());
+    }
+
+    @Test
+    void testRegistrar_ColaLlenaDescartaSinBloquear() throws Exception {
+        CountDownLatch escribiendo = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        when(jdbcTemplate.batchUpdate(anyString(), any(BatchPreparedStatementSetter.class))).thenAnswer(inv -> {
+            escribiendo.countDown();
+            // Como un driver en plena escritura, la interrupción de close() no corta la espera
+            boolean interrumpido = false;
+            while (true) {
+                try {
+                    liberar.await(5, TimeUnit.SECONDS);
+                    break;
+                } catch (InterruptedException e) {
+                    interrumpido = true;
+                }
+            }
+            if (interrumpido) Thread.currentThread().interrupt();
+            return new int[0];
+        });
+
+        escritor = new EscritorLecturas(jdbcTemplate, 1, 1, 0);
+        escritor.iniciar();
+
+        Dispositivo tv = dispositivo(1, "tv", "salon", NivelCriticidad.MEDIA, 0);
+        assertTrue(escritor.registrar(List.of(new Lectura(tv, 1))));
+        assertTrue(escribiendo.await(5, TimeUnit.SECONDS));
+
+        // El hilo escritor está ocupado: cabe un lote en la cola y el siguiente se descarta
+        assertTrue(escritor.registrar(List.of(new Lectura(tv, 2))));
+        assertFalse(escritor.registrar(List.of(new Lectura(tv, 3), new Lectura(tv, 4))));
+        assertEquals(2, escritor.getEstadisticas().descartadas());
+
+        liberar.countDown();
+        escritor.close();
+        assertEquals(2, escritor.getEstadisticas().escritas());
+    }
+}
@@ -0,0 +1,96 @@
+package com.smartgrid.service;
+
+import com.smartgrid.logic.EstadisticasVentana;
+import com.smartgrid.logic.Lectura;
+import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static com.smartgrid.Dispositivos.dispositivo;
+import static org.junit.jupiter.api.Assertions.*;
+
+class EstadisticasConsumoTest {
+
+    private SmartGridDecisionEngine engine;
+    private EstadisticasConsumo estadisticas;
+
+    @BeforeEach
+    void setUp() {
+        engine = new SmartGridDecisionEngine();
+        // Muestreo muy largo: las zonas se muestrean a mano en cada test
+        estadisticas = new EstadisticasConsumo(engine, 2, 3_600_000, 0.01);
+        estadisticas.iniciar();
+    }
+
+    @AfterEach
+    void tearDown() {
+        estadisticas.close();
+    }
+
+    @Test
+    void testAnotaLasLecturasDelMotor() {
+        engine.procesarLecturas(List.of(new Lectura(dispositivo("tv", "salon", NivelCriticidad.BAJA), 100)));
+        engine.procesarLecturas(List.of(new Lectura(dispositivo("tv", "salon", NivelCriticidad.BAJA), 300)));
+
+        EstadisticasVentana minuto = estadisticas.consultarDispositivo("tv", System.currentTimeMillis())
+                .orElseThrow().get("1m").deslizante();
+
+        assertEquals(2, minuto.lecturas());
+        assertEquals(100, minuto.minimo());
+        assertEquals(300, minuto.maximo());
+        assertTrue(estadisticas.consultarDispositivo("nevera", System.currentTimeMillis()).isEmpty());
+    }
+
+    @Test
+    void testLimitaLosDispositivosSeguidos() {
+        engine.procesarLecturas(List.of(new Lectura(dispositivo("tv", "salon", NivelCriticidad.BAJA), 100),
+                new Lectura(dispositivo("horno", "cocina", NivelCriticidad.BAJA), 100),
+                new Lectura(dispositivo("lavadora", "cocina", NivelCriticidad.BAJA), 100)));
+
+        assertEquals(2, estadisticas.getNumeroDispositivos());
+        assertEquals(1, estadisticas.getSinSeguimiento());
+    }
+
+    @Test
+    void testDesconectarDejaElConsumoACero() {
+        engine.procesarLecturas(List.of(new Lectura(dispositivo("tv", "salon", NivelCriticidad.BAJA), 100)));
+        engine.desconectarDispositivo("tv");
+
+        long ahora = System.currentTimeMillis();
+        double energia = estadisticas.consultarDispositivo("tv", ahora).orElseThrow().get("15m").deslizante()
+                .energiaWh();
+
+        assertEquals(energia, estadisticas.consultarDispositivo("tv", ahora + 60_000).orElseThrow().get("15m")
+                .deslizante().energiaWh(), 1e-12, "Desconectado no suma energía");
+    }
+
+    @Test
+    void testMuestreaElConsumoDeLasZonas() {
+        engine.procesarLecturas(List.of(new Lectura(dispositivo("tv", "salon", NivelCriticidad.BAJA), 100),
+                new Lectura(dispositivo("horno", "cocina", NivelCriticidad.BAJA), 2_000)));
+
+        long ahora = System.currentTimeMillis();
+        estadisticas.muestrearZonas(ahora);
+
+        assertEquals(Set.of("salon", "cocina"), estadisticas.getZonas());
+        EstadisticasVentana cocina = estadisticas.consultarZona("cocina", ahora).orElseThrow().get("1s")
+                .deslizante();
+        assertEquals(1, cocina.lecturas());
+        assertEquals(2_000, cocina.maximo());
+        assertTrue(estadisticas.consultarZona("garaje", ahora).isEmpty());
+    }
+
+    @Test
+    void testCloseDejaDeObservarElMotor() {
+        estadisticas.close();
+        engine.procesarLecturas(List.of(new Lectura(dispositivo("tv", "salon", NivelCriticidad.BAJA), 100)));
+
+        assertEquals(0, estadisticas.getNumeroDispositivos());
+    }
+}
@@ -0,0 +1,102 @@
+package com.smartgrid.service;
+
+import com.smartgrid.logic.Lectura;
+import com.smartgrid.logic.OpcionesMotor;
+import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.smartgrid.Dispositivos.dispositivo;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FiltroBandaMuertaTest {
+
+    @Test
+    void testSoloPasanLasLecturasFueraDeLaBanda() {
+        FiltroBandaMuerta filtro = new FiltroBandaMuerta(10, 5, 0);
+        Dispositivo lavadora = dispositivo("lavadora", null, NivelCriticidad.MEDIA);
+
+        assertTrue(filtro.admitir(lavadora, 1000, 0), "La primera lectura siempre pasa");
+        assertFalse(filtro.admitir(lavadora, 1000, 1));
+        assertFalse(filtro.admitir(lavadora, 1049, 2), "5 % de 1000 = 50W de banda");
+        assertTrue(filtro.admitir(lavadora, 1051, 3));
+
+        // Con valores bajos manda el umbral absoluto
+        assertTrue(filtro.admitir(lavadora, 20, 4));
+        assertFalse(filtro.admitir(lavadora, 29, 5));
+        assertTrue(filtro.admitir(lavadora, 31, 6));
+        assertEquals(3, filtro.getDentroDeBanda());
+    }
+
+    @Test
+    void testLaLecturaSeAplicaAlCaducarLaReferencia() {
+        FiltroBandaMuerta filtro = new FiltroBandaMuerta(100, 0, 1000);
+        Dispositivo lavadora = dispositivo("lavadora", null, NivelCriticidad.MEDIA);
+        long segundo = TimeUnit.SECONDS.toNanos(1);
+
+        assertTrue(filtro.admitir(lavadora, 500, 0));
+        assertFalse(filtro.admitir(lavadora, 500, segundo - 1));
+        assertTrue(filtro.admitir(lavadora, 500, segundo));
+        assertFalse(filtro.admitir(lavadora, 500, segundo + 1), "La antigüedad cuenta desde la última aplicada");
+    }
+
+    @Test
+    void testDispositivoActualizadoEnElRegistroPasaSiempre() {
+        FiltroBandaMuerta filtro = new FiltroBandaMuerta(100, 0, 0);
+        Dispositivo lavadora = dispositivo("lavadora", null, NivelCriticidad.MEDIA);
+        Dispositivo movida = dispositivo("lavadora", null, NivelCriticidad.MEDIA);
+        movida.setZona("norte");
+
+        assertTrue(filtro.admitir(lavadora, 500, 0));
+        assertTrue(filtro.admitir(movida, 500, 1), "Una instancia nueva del registro puede traer otra zona");
+        assertFalse(filtro.admitir(movida, 500, 2));
+    }
+
+    @Test
+    void testEnUnLoteQuedaLaUltimaLecturaDeCadaDispositivo() {
+        FiltroBandaMuerta filtro = new FiltroBandaMuerta(0, 0, 0);
+        Dispositivo lavadora = dispositivo("lavadora", null, NivelCriticidad.MEDIA);
+        Dispositivo tv = dispositivo("tv", null, NivelCriticidad.BAJA);
+
+        List<Lectura> admitidas = filtro.filtrar(List.of(
+                new Lectura(lavadora, 100),
+                new Lectura(tv, 50),
+                new Lectura(lavadora, 200),
+                new Lectura(tv, 60)), 0);
+
+        assertEquals(List.of(new Lectura(lavadora, 200), new Lectura(tv, 60)), admitidas);
+        assertEquals(2, filtro.getCoalescidas());
+
+        // Sin umbrales solo se filtran las repeticiones exactas
+        assertEquals(List.of(new Lectura(tv, 61)),
+                filtro.filtrar(List.of(new Lectura(lavadora, 200), new Lectura(tv, 61)), 1));
+        assertEquals(1, filtro.getDentroDeBanda());
+    }
+
+    @Test
+    void testUnDispositivoDesconectadoVuelveConSuSiguienteLectura() {
+        SmartGridDecisionEngine motor = new SmartGridDecisionEngine(OpcionesMotor.conLimite(1000));
+        FiltroBandaMuerta filtro = new FiltroBandaMuerta(50, 0, 0);
+        motor.añadirListener(filtro);
+        Dispositivo nevera = dispositivo("nevera", null, NivelCriticidad.CRITICA);
+        Dispositivo lavadora = dispositivo("lavadora", null, NivelCriticidad.BAJA);
+
+        motor.procesarLecturas(filtro.filtrar(List.of(new Lectura(nevera, 600), new Lectura(lavadora, 300)), 0));
+        motor.desconectarDispositivo("lavadora");
+        assertEquals(600, motor.getConsumoTotal());
+
+        // Misma lectura que la última aplicada: sin el listener se quedaría fuera del motor
+        motor.procesarLecturas(filtro.filtrar(List.of(new Lectura(lavadora, 300)), 1));
+        assertEquals(900, motor.getConsumoTotal());
+
+        // Tras un ajuste de potencia manual, la siguiente lectura del medidor vuelve a mandar
+        assertTrue(motor.ajustarPotenciaDispositivo("nevera", 200));
+        motor.procesarLecturas(filtro.filtrar(List.of(new Lectura(nevera, 600)), 2));
+        assertEquals(900, motor.getConsumoTotal());
+        motor.close();
+    }
+}
@@ -0,0 +1,198 @@
+package com.smartgrid.service;
+
+import com.smartgrid.logic.Lectura;
+import com.smartgrid.logic.OpcionesMotor;
+import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import com.smartgrid.service.FotoDispositivos.EstadoDispositivo;
+import com.smartgrid.service.FotoDispositivos.Filtro;
+import com.smartgrid.service.FotoDispositivos.Orden;
+import com.smartgrid.service.FotoDispositivos.Pagina;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.smartgrid.Dispositivos.dispositivo;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FotoDispositivosTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    private SmartGridDecisionEngine engine;
+    private FotoDispositivos foto;
+
+    @BeforeEach
+    void setUp() {
+        engine = new SmartGridDecisionEngine(OpcionesMotor.conLimite(100_000));
+        foto = new FotoDispositivos(engine, 1000);
+    }
+
+    private void flota(int n) {
+        List<Lectura> lecturas = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            lecturas.add(new Lectura(dispositivo(String.format("d%03d", i), i % 2 == 0 ? "cocina" : null,
+                    i % 3 == 0 ? NivelCriticidad.CRITICA : NivelCriticidad.BAJA), (i * 37) % 100));
+        }
+        engine.procesarLecturas(lecturas);
+    }
+
+    private static List<String> nombres(Pagina pagina) {
+        return pagina.dispositivos().stream().map(EstadoDispositivo::nombre).toList();
+    }
+
+    /**
+     * Recorre todas las páginas siguiendo el cursor.
+     */
+    private List<EstadoDispositivo> todas(Filtro filtro, Orden orden, int tamaño) {
+        List<EstadoDispositivo> todos = new ArrayList<>();
+        String cursor = null;
+        do {
+            Pagina pagina = foto.consultar(filtro, orden, cursor, tamaño, T0);
+            assertTrue(pagina.dispositivos().size() <= tamaño);
+            todos.addAll(pagina.dispositivos());
+            cursor = pagina.siguiente();
+        } while (cursor != null);
+        return todos;
+    }
+
+    @Test
+    void testPaginasPorNombre() {
+        flota(25);
+
+        Pagina primera = foto.consultar(Filtro.TODOS, Orden.NOMBRE, null, 10, T0);
+
+        assertEquals(List.of("d000", "d001", "d002", "d003", "d004", "d005", "d006", "d007", "d008", "d009"),
+                nombres(primera));
+        assertEquals(25, primera.activos());
+        assertNotNull(primera.siguiente());
+        assertEquals("d010", foto.consultar(Filtro.TODOS, Orden.NOMBRE, primera.siguiente(), 10, T0)
+                .dispositivos().get(0).nombre());
+        assertEquals(25, todas(Filtro.TODOS, Orden.NOMBRE, 10).size());
+    }
+
+    @Test
+    void testOrdenesCompletosSinRepetidos() {
+        flota(50);
+
+        for (Orden orden : Orden.values()) {
+            List<EstadoDispositivo> todos = todas(Filtro.TODOS, orden, 7);
+            assertEquals(50, todos.size(), orden.name());
+            assertEquals(50, todos.stream().map(EstadoDispositivo::nombre).distinct().count(), orden.name());
+        }
+
+        List<EstadoDispositivo> porConsumo = todas(Filtro.TODOS, Orden.CONSUMO_DESC, 7);
+        for (int i = 1; i < porConsumo.size(); i++) {
+            assertTrue(porConsumo.get(i - 1).consumo() >= porConsumo.get(i).consumo());
+        }
+        assertEquals("d049", todas(Filtro.TODOS, Orden.NOMBRE_DESC, 7).get(0).nombre());
+    }
+
+    @Test
+    void testFiltros() {
+        flota(30);
+
+        List<EstadoDispositivo> cocinaCriticos = todas(new Filtro("cocina", NivelCriticidad.CRITICA, null, null),
+                Orden.NOMBRE, 3);
+        assertEquals(List.of("d000", "d006", "d012", "d018", "d024"),
+                cocinaCriticos.stream().map(EstadoDispositivo::nombre).toList());
+
+        List<EstadoDispositivo> sinZona = todas(new Filtro("sin_zona", null, null, null), Orden.NOMBRE, 100);
+        assertEquals(15, sinZona.size());
+        assertTrue(sinZona.stream().allMatch(estado -> estado.zona() == null));
+
+        List<EstadoDispositivo> rango = todas(new Filtro(null, null, 20.0, 40.0), Orden.CONSUMO, 100);
+        assertFalse(rango.isEmpty());
+        assertTrue(rango.stream().allMatch(estado -> estado.consumo() >= 20 && estado.consumo() <= 40));
+    }
+
+    @Test
+    void testLasPaginasFiltradasNuncaLleganVacias() {
+        flota(60);
+
+        // Cada página filtrada trae algo y la última no anuncia otra
+        for (Orden orden : Orden.values()) {
+            for (Filtro filtro : List.of(new Filtro("cocina", NivelCriticidad.CRITICA, null, null),
+                    new Filtro(null, NivelCriticidad.CRITICA, 10.0, 60.0),
+                    new Filtro("sin_zona", null, null, 50.0))) {
+                List<EstadoDispositivo> todos = new ArrayList<>();
+                String cursor = null;
+                do {
+                    Pagina pagina = foto.consultar(filtro, orden, cursor, 4, T0);
+                    assertFalse(pagina.dispositivos().isEmpty(), orden + " " + filtro);
+                    todos.addAll(pagina.dispositivos());
+                    cursor = pagina.siguiente();
+                } while (cursor != null);
+                assertTrue(todos.stream().allMatch(filtro::admite), orden + " " + filtro);
+                assertEquals(todos.size(), todos.stream().map(EstadoDispositivo::nombre).distinct().count());
+            }
+        }
+
+        Pagina cocina = foto.consultar(new Filtro("cocina", null, null, null), Orden.NOMBRE, null, 100, T0);
+        assertEquals(30, cocina.dispositivos().size());
+        assertEquals(60, cocina.activos());
+        assertNull(cocina.siguiente());
+        assertTrue(foto.consultar(new Filtro("garaje", null, null, null), Orden.CONSUMO, null, 10, T0)
+                .dispositivos().isEmpty());
+    }
+
+    @Test
+    void testLaFotoSeRenuevaComoMuchoUnaVezPorIntervalo() {
+        flota(5);
+        Pagina antes = foto.consultar(Filtro.TODOS, Orden.NOMBRE, null, 100, T0);
+        engine.procesarDispositivo(nuevo("z999"));
+
+        Pagina igual = foto.consultar(Filtro.TODOS, Orden.NOMBRE, null, 100, T0 + 999);
+        assertEquals(antes.version(), igual.version());
+        assertEquals(5, igual.activos(), "Dentro del intervalo se sirve la misma foto");
+
+        Pagina nueva = foto.consultar(Filtro.TODOS, Orden.NOMBRE, null, 100, T0 + 1000);
+        assertEquals(antes.version() + 1, nueva.version());
+        assertEquals(6, nueva.activos());
+        assertEquals(2, foto.getPublicaciones());
+    }
+
+    @Test
+    void testElCursorSigueValiendoEnUnaFotoNueva() {
+        flota(10);
+        Pagina primera = foto.consultar(Filtro.TODOS, Orden.NOMBRE, null, 5, T0);
+        engine.desconectarDispositivo("d005");
+
+        Pagina segunda = foto.consultar(Filtro.TODOS, Orden.NOMBRE, primera.siguiente(), 5, T0 + 5_000);
+
+        assertEquals(List.of("d006", "d007", "d008", "d009"), nombres(segunda));
+        assertNull(segunda.siguiente());
+    }
+
+    @Test
+    void testResumenDeLaFoto() {
+        engine.procesarDispositivo(nuevo("a", 300));
+        engine.procesarDispositivo(nuevo("b", 200));
+
+        Pagina pagina = foto.consultar(Filtro.TODOS, Orden.NOMBRE, null, 1, T0);
+
+        assertEquals(500, pagina.consumoTotal());
+        assertEquals(100_000, pagina.limite());
+        assertFalse(pagina.alertaCriticos());
+        assertEquals(T0, pagina.instanteMs());
+    }
+
+    @Test
+    void testCursorYOrdenInvalidos() {
+        assertThrows(IllegalArgumentException.class,
+                () -> foto.consultar(Filtro.TODOS, Orden.NOMBRE, "no-es-un-cursor", 10, T0));
+        assertThrows(IllegalArgumentException.class, () -> Orden.de("zona"));
+        assertEquals(Orden.CONSUMO_DESC, Orden.de("-consumo"));
+    }
+
+    private static Dispositivo nuevo(String nombre) {
+        return nuevo(nombre, 10);
+    }
+
+    private static Dispositivo nuevo(String nombre, double consumo) {
+        return dispositivo(nombre, null, NivelCriticidad.MEDIA, consumo);
+    }
+}
@@ -0,0 +1,212 @@
+package com.smartgrid.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import com.smartgrid.repository.DispositivoRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ImportadorDispositivosTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final DispositivoRepository repository = mock(DispositivoRepository.class);
+    /** Dispositivos que ya están en la base de datos: nombre -> id */
+    private final Map<String, Long> existentes = new HashMap<>();
+    private final AtomicLong secuencia = new AtomicLong(100);
+
+    private RegistroDispositivos registro;
+
+    @BeforeEach
+    void setUp() {
+        registro = new RegistroDispositivos(repository, 1000, 30_000, 0, new SimpleMeterRegistry());
+
+        when(jdbcTemplate.queryForList(eq(ImportadorDispositivos.RESERVAR_IDS), eq(Long.class), anyInt()))
+                .thenAnswer(invocacion -> {
+                    int cuantos = invocacion.getArgument(2);
+                    return LongStream.range(0, cuantos).map(i -> secuencia.incrementAndGet()).boxed().toList();
+                });
+        doAnswer(invocacion -> {
+            RowCallbackHandler filas = invocacion.getArgument(1);
+            Object[] argumentos = invocacion.getArguments();
+            for (int i = 2; i < argumentos.length; i++) {
+                Long id = existentes.get((String) argumentos[i]);
+                if (id == null) continue;
+                ResultSet resultado = mock(ResultSet.class);
+                when(resultado.getString("nombre")).thenReturn((String) argumentos[i]);
+                when(resultado.getLong("id")).thenReturn(id);
+                filas.processRow(resultado);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+    }
+
+    private ImportadorDispositivos importador(int filasPorLote, int maxErrores) {
+        return new ImportadorDispositivos(jdbcTemplate, TransactionOperations.withoutTransaction(), registro,
+                new ObjectMapper(), filasPorLote, maxErrores);
+    }
+
+    private static InputStream texto(String contenido) {
+        return new ByteArrayInputStream(contenido.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private List<BatchPreparedStatementSetter> lotes(String sql) {
+        ArgumentCaptor<BatchPreparedStatementSetter> captor = ArgumentCaptor.forClass(BatchPreparedStatementSetter.class);
+        verify(jdbcTemplate, atLeast(0)).batchUpdate(eq(sql), captor.capture());
+        return captor.getAllValues();
+    }
+
+    @Test
+    void testCsv_InsertaConIdsReservadosYActualizaElRegistro() throws Exception {
+        ImportadorDispositivos.Resultado resultado = importador(1000, 10).importar(texto("""
+                criticidad,nombre,zona
+                BAJA, Horno ,cocina
+                critica,nevera,
+                """), ImportadorDispositivos.Formato.CSV);
+
+        assertEquals(new ImportadorDispositivos.Resultado(2, 2, 0, 0, List.of()), resultado);
+
+        List<BatchPreparedStatementSetter> inserciones = lotes(ImportadorDispositivos.INSERTAR);
+        assertEquals(1, inserciones.size());
+        assertEquals(2, inserciones.get(0).getBatchSize());
+        PreparedStatement ps = mock(PreparedStatement.class);
+        inserciones.get(0).setValues(ps, 1);
+        verify(ps).setLong(1, 102L);
+        verify(ps).setString(2, "nevera");
+        verify(ps).setNull(3, Types.VARCHAR);
+        verify(ps).setInt(4, NivelCriticidad.CRITICA.ordinal());
+
+        // La ingesta los encuentra sin ir a la base de datos
+        Dispositivo horno = registro.buscar("HORNO").orElseThrow();
+        assertEquals(101L, horno.getId());
+        assertEquals("cocina", horno.getZona());
+        assertEquals(NivelCriticidad.BAJA, horno.getCriticidad());
+        assertEquals("nevera", registro.buscarCargadoPorId(102).getNombre());
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void testNdjson_ActualizaLosExistentes() throws Exception {
+        existentes.put("horno", 7L);
+
+        ImportadorDispositivos.Resultado resultado = importador(1000, 10).importar(texto("""
+                {"nombre":"horno","zona":"cocina","criticidad":"MEDIA"}
+                {"nombre":"tv","criticidad":"BAJA"}
+                """), ImportadorDispositivos.Formato.NDJSON);
+
+        assertEquals(1, resultado.insertadas());
+        assertEquals(1, resultado.actualizadas());
+
+        List<BatchPreparedStatementSetter> actualizaciones = lotes(ImportadorDispositivos.ACTUALIZAR);
+        assertEquals(1, actualizaciones.get(0).getBatchSize());
+        PreparedStatement ps = mock(PreparedStatement.class);
+        actualizaciones.get(0).setValues(ps, 0);
+        verify(ps).setString(1, "cocina");
+        verify(ps).setInt(2, NivelCriticidad.MEDIA.ordinal());
+        verify(ps).setString(3, "horno");
+
+        assertEquals(7L, registro.buscarCargadoPorId(7).getId());
+        assertEquals(NivelCriticidad.MEDIA, registro.buscar("horno").orElseThrow().getCriticidad());
+        assertEquals(101L, registro.buscar("tv").orElseThrow().getId());
+    }
+
+    @Test
+    void testEscribePorLotesYGanaLaUltimaFilaRepetida() throws Exception {
+        ImportadorDispositivos.Resultado resultado = importador(2, 10).importar(texto("""
+                nombre,criticidad
+                a,BAJA
+                b,BAJA
+                c,BAJA
+                c,CRITICA
+                d,MEDIA
+                """), ImportadorDispositivos.Formato.CSV);
+
+        assertEquals(5, resultado.leidas());
+        assertEquals(4, resultado.insertadas());
+        verify(jdbcTemplate, times(2)).queryForList(eq(ImportadorDispositivos.RESERVAR_IDS), eq(Long.class), eq(2));
+        assertEquals(2, lotes(ImportadorDispositivos.INSERTAR).size());
+        assertEquals(NivelCriticidad.CRITICA, registro.buscar("c").orElseThrow().getCriticidad());
+    }
+
+    @Test
+    void testFilasInvalidasSeCuentanSinDetenerLaImportacion() throws Exception {
+        ImportadorDispositivos.Resultado resultado = importador(1000, 2).importar(texto("""
+                {"nombre":"a","criticidad":"BAJA"}
+                no es json
+                {"nombre":"b","criticidad":"ALTISIMA"}
+
+                {"criticidad":"BAJA"}
+                {"nombre":"c","criticidad":"MEDIA"}
+                """), ImportadorDispositivos.Formato.NDJSON);
+
+        assertEquals(5, resultado.leidas());
+        assertEquals(2, resultado.insertadas());
+        assertEquals(3, resultado.rechazadas());
+        assertEquals(List.of("Línea 2: JSON inválido", "Línea 3: Criticidad desconocida: ALTISIMA"),
+                resultado.errores());
+    }
+
+    @Test
+    void testCabeceraSinColumnasObligatorias() {
+        assertThrows(IllegalArgumentException.class, () -> importador(1000, 10)
+                .importar(texto("nombre,zona\nhorno,cocina\n"), ImportadorDispositivos.Formato.CSV));
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    void testSepararCsvConComillas() {
+        assertEquals(List.of("horno, grande", "coc\"ina", ""),
+                ImportadorDispositivos.separarCsv("\"horno, grande\",\"coc\"\"ina\","));
+        assertEquals(Map.of("nombre", 0, "criticidad", 1), ImportadorDispositivos.cabecera("\uFEFFNombre,Criticidad"));
+    }
+
+    @Test
+    void testSoloUnaImportacionALaVez() throws Exception {
+        ImportadorDispositivos importador = importador(1000, 10);
+        PipedOutputStream escritura = new PipedOutputStream();
+        PipedInputStream lectura = new PipedInputStream(escritura);
+        escritura.write("nombre,criticidad\na,BAJA\n".getBytes(StandardCharsets.UTF_8));
+        escritura.flush();
+
+        CompletableFuture<ImportadorDispositivos.Resultado> primera = CompletableFuture.supplyAsync(
+                () -> importador.importar(lectura, ImportadorDispositivos.Formato.CSV));
+        while (lectura.available() > 0) {
+            Thread.sleep(1);
+        }
+
+        assertThrows(IllegalStateException.class,
+                () -> importador.importar(texto("nombre,criticidad\n"), ImportadorDispositivos.Formato.CSV));
+
+        escritura.close();
+        assertEquals(1, primera.get(5, TimeUnit.SECONDS).insertadas());
+    }
+}
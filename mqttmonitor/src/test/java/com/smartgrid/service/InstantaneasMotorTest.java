@@ -0,0 +1,172 @@
+package com.smartgrid.service;
+
+import com.smartgrid.logic.Histeresis;
+import com.smartgrid.logic.OpcionesMotor;
+import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import static com.smartgrid.Dispositivos.dispositivo;
+import static org.junit.jupiter.api.Assertions.*;
+
+class InstantaneasMotorTest {
+
+    @TempDir
+    Path directorio;
+
+    private static SmartGridDecisionEngine motor() {
+        return new SmartGridDecisionEngine(OpcionesMotor.conLimite(5000).conLimitesZona(Map.of("cocina", 3000.0)));
+    }
+
+    private InstantaneasMotor instantaneas(SmartGridDecisionEngine ia, long antiguedadMaximaMs) {
+        // Intervalos largos: las escrituras se lanzan a mano
+        return new InstantaneasMotor(ia, directorio, 3_600_000, 3_600_000, antiguedadMaximaMs);
+    }
+
+    @Test
+    void testRestauraInstantaneaYRegistroDeCambios() {
+        SmartGridDecisionEngine original = motor();
+        original.procesarDispositivo(dispositivo(1, "servidor", null, NivelCriticidad.CRITICA, 1500));
+        original.procesarDispositivo(dispositivo(2, "horno", "cocina", NivelCriticidad.BAJA, 2000));
+        original.procesarDispositivo(dispositivo(3, "nevera", "cocina", NivelCriticidad.MEDIA, 150));
+
+        InstantaneasMotor guardadas = instantaneas(original, 60_000);
+        guardadas.iniciar();
+
+        // Cambios posteriores a la instantánea, que solo quedan en el registro
+        original.procesarDispositivo(dispositivo(2, "horno", "cocina", NivelCriticidad.BAJA, 800));
+        original.desconectarDispositivo("nevera");
+        original.procesarDispositivo(dispositivo(4, "tv", "salon", null, 120));
+        guardadas.volcarRegistro();
+
+        // Arranque tras una caída: sin close(), solo con lo ya escrito
+        SmartGridDecisionEngine restaurado = motor();
+        assertEquals(3, instantaneas(restaurado, 60_000).restaurar());
+
+        assertEquals(original.getConsumoTotal(), restaurado.getConsumoTotal());
+        assertEquals(original.getConsumoCriticos(), restaurado.getConsumoCriticos());
+        assertEquals(800, restaurado.getConsumoZona("cocina"));
+        assertEquals(800, restaurado.buscarActivo("horno").orElseThrow().consumo());
+        assertEquals(2L, restaurado.buscarActivo("horno").orElseThrow().dispositivo().getId());
+        assertTrue(restaurado.buscarActivo("nevera").isEmpty());
+        assertNull(restaurado.buscarActivo("tv").orElseThrow().dispositivo().getCriticidad());
+
+        guardadas.close();
+        assertEquals(2, guardadas.getEstadisticas().instantaneas());
+    }
+
+    @Test
+    void testCierreGuardaInstantaneaFinal() {
+        SmartGridDecisionEngine original = motor();
+        InstantaneasMotor guardadas = instantaneas(original, 60_000);
+        guardadas.iniciar();
+        original.procesarDispositivo(dispositivo(1, "lavadora", "lavadero", NivelCriticidad.MEDIA, 900));
+        guardadas.close();
+
+        SmartGridDecisionEngine restaurado = motor();
+        assertEquals(1, instantaneas(restaurado, 60_000).restaurar());
+        assertEquals(900, restaurado.getConsumoTotal());
+    }
+
+    @Test
+    void testIgnoraCambioIncompletoAlFinalDelRegistro() throws Exception {
+        SmartGridDecisionEngine original = motor();
+        InstantaneasMotor guardadas = instantaneas(original, 60_000);
+        guardadas.iniciar();
+        original.procesarDispositivo(dispositivo(1, "horno", "cocina", NivelCriticidad.BAJA, 1000));
+        guardadas.volcarRegistro();
+        original.procesarDispositivo(dispositivo(2, "tv", "salon", NivelCriticidad.BAJA, 100));
+        guardadas.volcarRegistro();
+
+        // Se corta la última escritura a medias
+        Path registro = directorio.resolve(InstantaneasMotor.FICHERO_REGISTRO);
+        try (FileChannel canal = FileChannel.open(registro, StandardOpenOption.WRITE)) {
+            canal.truncate(canal.size() - 3);
+        }
+
+        SmartGridDecisionEngine restaurado = motor();
+        assertEquals(1, instantaneas(restaurado, 60_000).restaurar());
+        assertEquals(1000, restaurado.getConsumoTotal());
+    }
+
+    @Test
+    void testDescartaEstadoAntiguoOInexistente() {
+        assertEquals(0, instantaneas(motor(), 60_000).restaurar());
+
+        SmartGridDecisionEngine original = motor();
+        original.procesarDispositivo(dispositivo(1, "horno", "cocina", NivelCriticidad.BAJA, 1000));
+        instantaneas(original, 60_000).guardarInstantanea();
+        assertTrue(Files.exists(directorio.resolve(InstantaneasMotor.FICHERO_INSTANTANEA)));
+
+        SmartGridDecisionEngine restaurado = motor();
+        assertEquals(0, instantaneas(restaurado, -1).restaurar());
+        assertEquals(0, restaurado.getConsumoTotal());
+    }
+
+    @Test
+    void testRegistroDeOtraGeneracionNoSeAplica() throws Exception {
+        SmartGridDecisionEngine original = motor();
+        InstantaneasMotor guardadas = instantaneas(original, 60_000);
+        guardadas.iniciar();
+        original.procesarDispositivo(dispositivo(1, "horno", "cocina", NivelCriticidad.BAJA, 1000));
+        guardadas.volcarRegistro();
+        Path registro = directorio.resolve(InstantaneasMotor.FICHERO_REGISTRO);
+        byte[] registroAnterior = Files.readAllBytes(registro);
+
+        // Nueva instantánea y, como tras una caída a mitad de rotación, el registro de la generación anterior
+        original.procesarDispositivo(dispositivo(1, "horno", "cocina", NivelCriticidad.BAJA, 500));
+        guardadas.guardarInstantanea();
+        Files.write(registro, registroAnterior);
+
+        SmartGridDecisionEngine restaurado = motor();
+        assertEquals(1, instantaneas(restaurado, 60_000).restaurar());
+        assertEquals(500, restaurado.getConsumoTotal());
+        guardadas.close();
+    }
+
+    @Test
+    void testUnDesconectadoSigueEsperandoTrasReiniciar() {
+        long minDesconectado = 60_000;
+        SmartGridDecisionEngine original = new SmartGridDecisionEngine(OpcionesMotor.conLimite(1000)
+                .conHisteresis(new Histeresis(0.8, minDesconectado, 1000)));
+        InstantaneasMotor guardadas = instantaneas(original, 60_000);
+        guardadas.iniciar();
+        Dispositivo nevera = dispositivo(1, "nevera", null, NivelCriticidad.CRITICA, 900);
+        Dispositivo estufa = dispositivo(2, "estufa", null, NivelCriticidad.BAJA, 300);
+        original.procesarDispositivo(nevera);
+        original.procesarDispositivo(estufa);
+        long desconectado = original.buscarDesconectado("estufa").orElseThrow().desconectadoMs();
+        guardadas.volcarRegistro();
+
+        // Tanto desde el registro de cambios como desde una instantánea completa
+        for (int arranque = 0; arranque < 2; arranque++) {
+            SmartGridDecisionEngine restaurado = new SmartGridDecisionEngine(OpcionesMotor.conLimite(1000)
+                    .conHisteresis(new Histeresis(0.8, minDesconectado, 1000)));
+            assertEquals(1, instantaneas(restaurado, 60_000).restaurar());
+            assertEquals(1, restaurado.getNumeroDesconectados());
+            assertEquals(desconectado, restaurado.buscarDesconectado("estufa").orElseThrow().desconectadoMs());
+
+            // Su siguiente lectura no lo vuelve a conectar, y con margen espera a cumplir su tiempo mínimo
+            restaurado.procesarDispositivo(dispositivo(2, "estufa", null, NivelCriticidad.BAJA, 300));
+            restaurado.procesarDispositivo(dispositivo(1, "nevera", null, NivelCriticidad.CRITICA, 100));
+            assertTrue(restaurado.buscarActivo("estufa").isEmpty());
+            restaurado.restablecerDesconectados(desconectado + minDesconectado - 1);
+            assertTrue(restaurado.buscarActivo("estufa").isEmpty());
+
+            restaurado.restablecerDesconectados(desconectado + minDesconectado);
+            assertEquals(300, restaurado.buscarActivo("estufa").orElseThrow().consumo());
+            restaurado.close();
+
+            guardadas.guardarInstantanea();
+        }
+        guardadas.close();
+    }
+}
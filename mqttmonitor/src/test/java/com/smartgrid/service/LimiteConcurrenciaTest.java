@@ -0,0 +1,51 @@
+package com.smartgrid.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LimiteConcurrenciaTest {
+
+    @Test
+    void testSinLimiteSiempreEntra() {
+        LimiteConcurrencia limite = new LimiteConcurrencia(0, 0);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limite.entrar());
+        }
+        assertEquals(0, limite.getRechazadas());
+    }
+
+    @Test
+    void testRechazaLoQueNoCabeYLiberaAlSalir() {
+        LimiteConcurrencia limite = new LimiteConcurrencia(2, 0);
+
+        assertTrue(limite.entrar());
+        assertTrue(limite.entrar());
+        assertEquals(2, limite.getEnCurso());
+        assertFalse(limite.entrar());
+        assertEquals(1, limite.getRechazadas());
+
+        limite.salir();
+        assertTrue(limite.entrar());
+    }
+
+    @Test
+    void testEsperaAQueQuedeSitio() throws InterruptedException {
+        LimiteConcurrencia limite = new LimiteConcurrencia(1, 5_000);
+        assertTrue(limite.entrar());
+
+        Thread operador = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            limite.salir();
+        });
+        operador.start();
+
+        assertTrue(limite.entrar());
+        operador.join();
+        assertEquals(0, limite.getRechazadas());
+    }
+}
@@ -1,14 +1,19 @@
 package com.smartgrid.service;
 
+import com.smartgrid.logic.Lectura;
 import com.smartgrid.logic.SmartGridDecisionEngine;
 import com.smartgrid.model.Dispositivo;
 import com.smartgrid.model.NivelCriticidad;
 import com.smartgrid.repository.DispositivoRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Optional;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.*;
 
 class MQTTSubscriberServiceTest {
@@ -34,14 +39,28 @@ class MQTTSubscriberServiceTest {
 
         service.procesarMensaje("lavadora:2100");
 
-        verify(mockIa, times(1)).procesarDispositivo(d);
+        verify(mockIa, times(1)).procesarLecturas(List.of(new Lectura(d, 2100)));
+        assertEquals(0, d.getConsumo(), "La entidad compartida no se modifica");
+    }
+
+    @Test
+    void testProcesaMensajeEnBytes_NombreNoAscii() {
+        Dispositivo d = new Dispositivo();
+        d.setNombre("calefacción");
+        d.setCriticidad(NivelCriticidad.MEDIA);
+
+        when(mockRepo.findByNombre("calefacción")).thenReturn(Optional.of(d));
+
+        service.procesarMensaje("calefacción:1200".getBytes(StandardCharsets.UTF_8));
+
+        verify(mockIa, times(1)).procesarLecturas(List.of(new Lectura(d, 1200)));
     }
 
     @Test
     void testProcesaMensajeInvalido_NoProcesa() {
         service.procesarMensaje("mensaje_erroneo");
 
-        verify(mockIa, never()).procesarDispositivo(any());
+        verify(mockIa, never()).procesarLecturas(any());
     }
 
     @Test
@@ -50,6 +69,143 @@ class MQTTSubscriberServiceTest {
 
         service.procesarMensaje("tv:1500");
 
-        verify(mockIa, never()).procesarDispositivo(any());
+        verify(mockIa, never()).procesarLecturas(any());
+    }
+
+    @Test
+    void testProcesaLote_ResuelveDeUnaVezYAplicaEnUnaPasada() {
+        Dispositivo lavadora = new Dispositivo();
+        lavadora.setNombre("lavadora");
+        lavadora.setCriticidad(NivelCriticidad.MEDIA);
+
+        when(mockRepo.findByNombreIn(any())).thenReturn(List.of(lavadora));
+
+        service.procesarLote(List.of(
+                "lavadora:2100".getBytes(StandardCharsets.UTF_8),
+                "mensaje_erroneo".getBytes(StandardCharsets.UTF_8),
+                "tv:1500".getBytes(StandardCharsets.UTF_8),
+                "Lavadora:1800".getBytes(StandardCharsets.UTF_8)));
+
+        verify(mockRepo, times(1)).findByNombreIn(any());
+        verify(mockRepo, never()).findByNombre(any());
+        verify(mockIa, times(1)).procesarLecturas(List.of(
+                new Lectura(lavadora, 2100),
+                new Lectura(lavadora, 1800)));
+    }
+
+    @Test
+    void testProcesaLote_DispositivosCargadosSinConsultarYErroresTipados() {
+        Dispositivo lavadora = new Dispositivo();
+        lavadora.setNombre("lavadora");
+        lavadora.setCriticidad(NivelCriticidad.MEDIA);
+        when(mockRepo.findByNombreIn(any())).thenReturn(List.of(lavadora));
+
+        service.procesarLote(List.of("lavadora:1".getBytes(StandardCharsets.UTF_8)));
+        service.procesarLote(List.of(
+                " LAVADORA : 2100.5 ".getBytes(StandardCharsets.UTF_8),
+                "lavadora".getBytes(StandardCharsets.UTF_8),
+                "lavadora:1:2".getBytes(StandardCharsets.UTF_8),
+                "lavadora:abc".getBytes(StandardCharsets.UTF_8),
+                "tv:1500".getBytes(StandardCharsets.UTF_8),
+                "tv:1500".getBytes(StandardCharsets.UTF_8)));
+
+        // 'lavadora' ya está cargado; solo 'tv' (desconocido) se consulta, y una vez
+        verify(mockRepo, times(2)).findByNombreIn(any());
+        verify(mockIa).procesarLecturas(List.of(new Lectura(lavadora, 2100.5)));
+
+        assertEquals(1L, service.getErroresLectura().get(ResultadoLectura.SIN_SEPARADOR));
+        assertEquals(1L, service.getErroresLectura().get(ResultadoLectura.VARIOS_SEPARADORES));
+        assertEquals(1L, service.getErroresLectura().get(ResultadoLectura.CONSUMO_INVALIDO));
+        assertEquals(2L, service.getErroresLectura().get(ResultadoLectura.DISPOSITIVO_DESCONOCIDO));
+    }
+
+    @Test
+    void testProcesaLote_TramaBinariaConVariasLecturas() {
+        Dispositivo lavadora = new Dispositivo();
+        lavadora.setId(1L);
+        lavadora.setNombre("lavadora");
+        lavadora.setCriticidad(NivelCriticidad.MEDIA);
+        when(mockRepo.findAllById(any())).thenReturn(List.of(lavadora));
+
+        byte[] trama = TramaBinaria.codificar(
+                new long[]{1L, 9L, 1L},
+                new float[]{2100f, 50f, Float.NaN},
+                new long[]{1_700_000_000_000L, 1_700_000_000_500L, 1_700_000_001_000L});
+        service.procesarLote(List.of(trama, new byte[]{TramaBinaria.MAGIA, 7}));
+
+        verify(mockRepo, times(1)).findAllById(any());
+        verify(mockRepo, never()).findByNombreIn(any());
+        verify(mockIa).procesarLecturas(List.of(new Lectura(lavadora, 2100, 1_700_000_000_000L)));
+
+        assertEquals(1L, service.getErroresLectura().get(ResultadoLectura.TRAMA_INVALIDA));
+        assertEquals(1L, service.getErroresLectura().get(ResultadoLectura.CONSUMO_INVALIDO));
+        assertEquals(1L, service.getErroresLectura().get(ResultadoLectura.DISPOSITIVO_DESCONOCIDO));
+    }
+
+    @Test
+    void testProcesaLote_AplicaEnOrdenDeLlegadaEntreFormatos() {
+        Dispositivo lavadora = new Dispositivo();
+        lavadora.setId(1L);
+        lavadora.setNombre("lavadora");
+        lavadora.setCriticidad(NivelCriticidad.MEDIA);
+        when(mockRepo.findByNombreIn(any())).thenReturn(List.of(lavadora));
+        when(mockRepo.findAllById(any())).thenReturn(List.of(lavadora));
+
+        // Sin cargar en ninguno de los dos formatos: cada lectura conserva su posición en el lote
+        service.procesarLote(List.of(
+                TramaBinaria.codificar(new long[]{1L}, new float[]{100f}, new long[]{1_700_000_000_000L}),
+                "lavadora:200".getBytes(StandardCharsets.UTF_8),
+                "tv:50".getBytes(StandardCharsets.UTF_8),
+                TramaBinaria.codificar(new long[]{1L}, new float[]{300f}, new long[]{1_700_000_001_000L})));
+
+        verify(mockIa).procesarLecturas(List.of(
+                new Lectura(lavadora, 100, 1_700_000_000_000L),
+                new Lectura(lavadora, 200),
+                new Lectura(lavadora, 300, 1_700_000_001_000L)));
+    }
+
+    @Test
+    void testProcesaLote_PublicaMetricas() {
+        SimpleMeterRegistry registroMetricas = new SimpleMeterRegistry();
+        MQTTSubscriberService conMetricas = new MQTTSubscriberService(null, mockIa,
+                new RegistroDispositivos(mockRepo), OpcionesSuscriptor.POR_DEFECTO.conMetricas(registroMetricas));
+        Dispositivo lavadora = new Dispositivo();
+        lavadora.setNombre("lavadora");
+        lavadora.setCriticidad(NivelCriticidad.MEDIA);
+        when(mockRepo.findByNombreIn(any())).thenReturn(List.of(lavadora));
+
+        conMetricas.procesarLote(List.of(
+                "lavadora:2100".getBytes(StandardCharsets.UTF_8),
+                "tv:50".getBytes(StandardCharsets.UTF_8),
+                "roto".getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(3, registroMetricas.get("smartgrid.ingesta.mensajes").functionCounter().count());
+        assertEquals(1, registroMetricas.get("smartgrid.ingesta.lecturas").functionCounter().count());
+        assertEquals(1, registroMetricas.get("smartgrid.ingesta.rechazados")
+                .tag("motivo", "DISPOSITIVO_DESCONOCIDO").functionCounter().count());
+        assertEquals(1, registroMetricas.get("smartgrid.ingesta.rechazados")
+                .tag("motivo", "SIN_SEPARADOR").functionCounter().count());
+        assertEquals(0, registroMetricas.get("smartgrid.ingesta.profundidad").gauge().value());
+    }
+
+    @Test
+    void testProcesaLote_ConBandaMuertaSoloAplicaLoQueCambiaYGuardaTodo() {
+        EscritorLecturas escritor = mock(EscritorLecturas.class);
+        MQTTSubscriberService conFiltro = new MQTTSubscriberService(null, mockIa, new RegistroDispositivos(mockRepo),
+                new OpcionesSuscriptor(escritor, new FiltroBandaMuerta(10, 0, 0), new SimpleMeterRegistry()));
+        Dispositivo lavadora = new Dispositivo();
+        lavadora.setNombre("lavadora");
+        lavadora.setCriticidad(NivelCriticidad.MEDIA);
+        when(mockRepo.findByNombreIn(any())).thenReturn(List.of(lavadora));
+
+        conFiltro.procesarLote(List.of("lavadora:2100".getBytes(StandardCharsets.UTF_8)));
+        conFiltro.procesarLote(List.of(
+                "lavadora:2105".getBytes(StandardCharsets.UTF_8),
+                "lavadora:2104".getBytes(StandardCharsets.UTF_8)));
+        conFiltro.procesarLote(List.of("lavadora:2150".getBytes(StandardCharsets.UTF_8)));
+
+        verify(mockIa, times(2)).procesarLecturas(any());
+        verify(mockIa).procesarLecturas(List.of(new Lectura(lavadora, 2150)));
+        verify(escritor, times(3)).registrar(any());
     }
 }
@@ -0,0 +1,100 @@
+package com.smartgrid.service;
+
+import com.smartgrid.logic.AgregadosConsumo;
+import com.smartgrid.logic.Caducidad;
+import com.smartgrid.logic.OpcionesMotor;
+import com.smartgrid.logic.Pronostico;
+import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.model.NivelCriticidad;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static com.smartgrid.Dispositivos.dispositivo;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricasMotorTest {
+
+    private SmartGridDecisionEngine engine;
+    private SimpleMeterRegistry registroMetricas;
+
+    @BeforeEach
+    void setUp() {
+        engine = new SmartGridDecisionEngine(OpcionesMotor.conLimite(5000).conLimitesZona(Map.of("garaje", 1000.0)));
+        registroMetricas = new SimpleMeterRegistry();
+    }
+
+    private double gauge(String nombre) {
+        return registroMetricas.get(nombre).gauge().value();
+    }
+
+    @Test
+    void testConsumoFrenteAlLimite() {
+        new MetricasMotor(engine).bindTo(registroMetricas);
+
+        engine.procesarDispositivo(dispositivo("nevera", "cocina", NivelCriticidad.CRITICA, 300));
+        engine.procesarDispositivo(dispositivo("tv", null, NivelCriticidad.BAJA, 200));
+
+        assertEquals(500, gauge("smartgrid.motor.consumo"));
+        assertEquals(300, gauge("smartgrid.motor.consumo.criticos"));
+        assertEquals(5000, gauge("smartgrid.motor.limite"));
+        assertEquals(2, gauge("smartgrid.motor.activos"));
+        assertEquals(0, gauge("smartgrid.motor.alerta"));
+        assertEquals(300, registroMetricas.get("smartgrid.zona.consumo").tag("zona", "cocina").gauge().value());
+        assertEquals(200, registroMetricas.get("smartgrid.zona.consumo")
+                .tag("zona", AgregadosConsumo.SIN_ZONA).gauge().value());
+        // Solo las zonas con límite propio lo publican
+        assertNull(registroMetricas.find("smartgrid.zona.limite").tag("zona", "cocina").gauge());
+    }
+
+    @Test
+    void testDesconexionesPorZona() {
+        // La zona ya existe antes de vincular las métricas (p. ej. restaurada al arrancar)
+        engine.procesarDispositivo(dispositivo("coche", "garaje", NivelCriticidad.BAJA, 800));
+        new MetricasMotor(engine).bindTo(registroMetricas);
+
+        engine.procesarDispositivo(dispositivo("taladro", "garaje", NivelCriticidad.MEDIA, 600));
+
+        assertEquals(1000, registroMetricas.get("smartgrid.zona.limite").tag("zona", "garaje").gauge().value());
+        assertEquals(1, registroMetricas.get("smartgrid.zona.desconexiones").tag("zona", "garaje")
+                .functionCounter().count());
+    }
+
+    @Test
+    void testCaducadosPorZona() {
+        SmartGridDecisionEngine conCaducidad = new SmartGridDecisionEngine(OpcionesMotor.conLimite(5000)
+                .conCaducidad(new Caducidad(10_000, 1_000, Caducidad.Modo.QUITAR, 0)));
+        new MetricasMotor(conCaducidad).bindTo(registroMetricas);
+        long inicio = System.currentTimeMillis();
+        conCaducidad.caducarInactivos(inicio);
+        conCaducidad.procesarDispositivo(dispositivo("estufa", "salon", NivelCriticidad.BAJA, 1500));
+
+        conCaducidad.caducarInactivos(inicio + 11_000);
+
+        assertEquals(1, registroMetricas.get("smartgrid.zona.caducados").tag("zona", "salon")
+                .functionCounter().count());
+        conCaducidad.close();
+    }
+
+    @Test
+    void testPrevisionPorZona() {
+        SmartGridDecisionEngine conPrevision = new SmartGridDecisionEngine(OpcionesMotor.conLimite(5000)
+                .conPronostico(new Pronostico(1_000, 1_000, 0.5, 0.1, false)));
+        new MetricasMotor(conPrevision).bindTo(registroMetricas);
+        conPrevision.procesarDispositivo(dispositivo("estufa", "salon", NivelCriticidad.BAJA, 1500));
+
+        long inicio = System.currentTimeMillis();
+        for (int i = 0; i < 3; i++) {
+            conPrevision.pronosticar(inicio + i * 1_000L);
+        }
+
+        assertEquals(1500, gauge("smartgrid.motor.prevision"), 1e-9);
+        assertEquals(1500, registroMetricas.get("smartgrid.zona.prevision").tag("zona", "salon").gauge().value(), 1e-9);
+        assertEquals(2, registroMetricas.get("smartgrid.motor.prevision.comparaciones").functionCounter().count());
+        assertEquals(0, registroMetricas.get("smartgrid.zona.prevision.error.absoluto").tag("zona", "salon")
+                .functionCounter().count());
+        conPrevision.close();
+    }
+}
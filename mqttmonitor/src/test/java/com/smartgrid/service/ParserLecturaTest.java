@@ -0,0 +1,86 @@
+package com.smartgrid.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParserLecturaTest {
+
+    private final ParserLectura parser = new ParserLectura();
+
+    private ResultadoLectura interpretar(String payload) {
+        return parser.interpretar(payload.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String nombre(String payload) {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        assertEquals(ResultadoLectura.OK, parser.interpretar(bytes));
+        return new String(bytes, parser.getInicioNombre(), parser.getFinNombre() - parser.getInicioNombre(),
+                StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void testLecturaValida() {
+        assertEquals(ResultadoLectura.OK, interpretar("lavadora:2100"));
+        assertEquals(2100.0, parser.getConsumo());
+        assertEquals(0, parser.getInicioNombre());
+        assertEquals(8, parser.getFinNombre());
+    }
+
+    @Test
+    void testRecortaEspaciosComoTrim() {
+        assertEquals("Lavadora Grande", nombre("\t Lavadora Grande \r\n: 12.5 \n"));
+        assertEquals(12.5, parser.getConsumo());
+        assertEquals("frigorífico", nombre("frigorífico:3"));
+    }
+
+    @Test
+    void testErroresTipados() {
+        assertEquals(ResultadoLectura.SIN_SEPARADOR, interpretar("mensaje_erroneo"));
+        assertEquals(ResultadoLectura.VARIOS_SEPARADORES, interpretar("a:1:2"));
+        assertEquals(ResultadoLectura.NOMBRE_VACIO, interpretar("  :12"));
+        assertEquals(ResultadoLectura.CONSUMO_VACIO, interpretar("lavadora: "));
+        assertEquals(ResultadoLectura.CONSUMO_INVALIDO, interpretar("lavadora:abc"));
+        assertEquals(ResultadoLectura.CONSUMO_INVALIDO, interpretar("lavadora:12abc"));
+        assertEquals(ResultadoLectura.CONSUMO_INVALIDO, interpretar("lavadora:."));
+        assertEquals(ResultadoLectura.CONSUMO_INVALIDO, interpretar("lavadora:1e"));
+        assertEquals(ResultadoLectura.CONSUMO_INVALIDO, interpretar("lavadora:NaN"));
+        assertEquals(ResultadoLectura.CONSUMO_INVALIDO, interpretar("lavadora:1e400"));
+    }
+
+    @Test
+    void testFormatosDecimales() {
+        String[] valores = {"0", "-0", "+5", "-12.75", ".5", "5.", "0.005", "1e3", "2.5E-3", "123456789.123456",
+                "12345678901234567890123", "0.1234567890123456789", "1.7976931348623157E308", "4.9e-324"};
+        for (String valor : valores) {
+            assertEquals(ResultadoLectura.OK, interpretar("d:" + valor), valor);
+            assertEquals(Double.parseDouble(valor), parser.getConsumo(), valor);
+        }
+    }
+
+    @Test
+    void testCoincideConParseDouble() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 100_000; i++) {
+            String valor = switch (i % 3) {
+                case 0 -> Double.toString(random.nextDouble() * 10_000);
+                case 1 -> String.format("%.2f", random.nextDouble() * 5_000).replace(',', '.');
+                default -> Long.toString(random.nextLong(1_000_000));
+            };
+            assertEquals(ResultadoLectura.OK, interpretar("d:" + valor), valor);
+            assertEquals(Double.parseDouble(valor), parser.getConsumo(), valor);
+        }
+    }
+
+    @Test
+    void testRangoDentroDeUnBuffer() {
+        byte[] buffer = "xxlavadora:7yy".getBytes(StandardCharsets.UTF_8);
+        assertEquals(ResultadoLectura.OK, parser.interpretar(buffer, 2, 12));
+        assertEquals(7.0, parser.getConsumo());
+        assertEquals(2, parser.getInicioNombre());
+        assertEquals(10, parser.getFinNombre());
+    }
+}
@@ -0,0 +1,221 @@
+package com.smartgrid.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PipelineIngestaTest {
+
+    private static byte[] bytes(String texto) {
+        return texto.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String clave(byte[] payload) {
+        String texto = new String(payload, StandardCharsets.UTF_8);
+        int separador = texto.indexOf(':');
+        return separador < 0 ? null : texto.substring(0, separador);
+    }
+
+    @Test
+    void testProcesaEnLotesYConservaElOrden() throws Exception {
+        List<String> recibidos = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> tamaños = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch fin = new CountDownLatch(100);
+
+        PipelineIngesta pipeline = new PipelineIngesta("mqtt-ingesta",
+                new OpcionesIngesta(1000, 10, 50, PoliticaContrapresion.BLOQUEAR, null),
+                PipelineIngestaTest::clave, lote -> {
+                    tamaños.add(lote.size());
+                    lote.forEach(p -> {
+                        recibidos.add(new String(p, StandardCharsets.UTF_8));
+                        fin.countDown();
+                    });
+                });
+        pipeline.iniciar();
+
+        for (int i = 0; i < 100; i++) {
+            pipeline.encolar(bytes("d:" + i));
+        }
+
+        assertTrue(fin.await(5, TimeUnit.SECONDS));
+        pipeline.detener();
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals("d:" + i, recibidos.get(i));
+        }
+        assertTrue(tamaños.stream().allMatch(t -> t <= 10));
+        assertEquals(100, pipeline.getEstadisticas().procesados());
+    }
+
+    @Test
+    void testDescartarAntiguoConBufferLleno() {
+        List<String> recibidos = new ArrayList<>();
+        PipelineIngesta pipeline = new PipelineIngesta("mqtt-ingesta",
+                new OpcionesIngesta(2, 10, 0, PoliticaContrapresion.DESCARTAR_ANTIGUO, null),
+                PipelineIngestaTest::clave, lote -> lote.forEach(p -> recibidos.add(new String(p, StandardCharsets.UTF_8))));
+
+        // Sin trabajador arrancado el buffer se llena
+        pipeline.encolar(bytes("a:1"));
+        pipeline.encolar(bytes("b:1"));
+        pipeline.encolar(bytes("c:1"));
+
+        assertEquals(2, pipeline.getProfundidad());
+        assertEquals(1, pipeline.getEstadisticas().descartados());
+
+        pipeline.iniciar();
+        pipeline.detener();
+        assertEquals(List.of("b:1", "c:1"), recibidos);
+    }
+
+    @Test
+    void testCoalescerPorDispositivo() {
+        List<String> recibidos = new ArrayList<>();
+        PipelineIngesta pipeline = new PipelineIngesta("mqtt-ingesta",
+                new OpcionesIngesta(10, 10, 0, PoliticaContrapresion.COALESCER_POR_DISPOSITIVO, null),
+                PipelineIngestaTest::clave, lote -> lote.forEach(p -> recibidos.add(new String(p, StandardCharsets.UTF_8))));
+
+        pipeline.encolar(bytes("horno:100"));
+        pipeline.encolar(bytes("tv:50"));
+        pipeline.encolar(bytes("horno:300"));
+
+        assertEquals(2, pipeline.getProfundidad());
+        assertEquals(1, pipeline.getEstadisticas().coalescidos());
+
+        pipeline.iniciar();
+        pipeline.detener();
+        assertEquals(List.of("horno:300", "tv:50"), recibidos);
+    }
+
+    @Test
+    void testCoalescerConBufferLlenoDescartaElMasAntiguo() {
+        List<String> recibidos = new ArrayList<>();
+        PipelineIngesta pipeline = new PipelineIngesta("mqtt-ingesta",
+                new OpcionesIngesta(2, 10, 0, PoliticaContrapresion.COALESCER_POR_DISPOSITIVO, null),
+                PipelineIngestaTest::clave, lote -> lote.forEach(p -> recibidos.add(new String(p, StandardCharsets.UTF_8))));
+
+        // Sin trabajador arrancado el buffer se llena y el callback no debe quedarse esperando
+        pipeline.encolar(bytes("a:1"));
+        pipeline.encolar(bytes("b:1"));
+        pipeline.encolar(bytes("c:1"));
+        // El hueco de "a" ya se descartó: su nueva lectura ocupa uno propio
+        pipeline.encolar(bytes("a:2"));
+
+        assertEquals(2, pipeline.getProfundidad());
+        assertEquals(2, pipeline.getEstadisticas().descartados());
+        assertEquals(0, pipeline.getEstadisticas().coalescidos());
+
+        pipeline.iniciar();
+        pipeline.detener();
+        assertEquals(List.of("c:1", "a:2"), recibidos);
+    }
+
+    @Test
+    void testCoalescerConDosProductoresYBufferLleno() throws Exception {
+        List<String> recibidos = new ArrayList<>();
+        PipelineIngesta pipeline = new PipelineIngesta("mqtt-ingesta",
+                new OpcionesIngesta(4, 10, 0, PoliticaContrapresion.COALESCER_POR_DISPOSITIVO, null),
+                PipelineIngestaTest::clave, lote -> lote.forEach(p -> recibidos.add(new String(p, StandardCharsets.UTF_8))));
+
+        // Sin trabajador arrancado el buffer está siempre lleno: cada productor descarta huecos del otro
+        // mientras el otro funde lecturas en ellos
+        int mensajes = 20_000;
+        int dispositivos = 6;
+        Map<String, String> ultimas = new ConcurrentHashMap<>();
+        CountDownLatch salida = new CountDownLatch(1);
+        List<Thread> productores = new ArrayList<>();
+        for (String productor : List.of("p1", "p2")) {
+            productores.add(new Thread(() -> {
+                try {
+                    salida.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < mensajes; i++) {
+                    String payload = productor + "-" + (i % dispositivos) + ":" + i;
+                    pipeline.encolar(bytes(payload));
+                    ultimas.put(clave(bytes(payload)), payload);
+                }
+            }));
+        }
+        productores.forEach(Thread::start);
+        salida.countDown();
+        for (Thread productor : productores) {
+            productor.join(10_000);
+        }
+
+        pipeline.iniciar();
+        pipeline.detener();
+
+        // Cada hueco se descarta o se procesa una sola vez, y el que llega al final lleva la última lectura
+        PipelineIngesta.Estadisticas estadisticas = pipeline.getEstadisticas();
+        assertEquals(2L * mensajes, estadisticas.encolados());
+        assertEquals(estadisticas.encolados() - estadisticas.coalescidos(),
+                estadisticas.descartados() + estadisticas.procesados());
+        assertEquals(4, recibidos.size());
+        assertEquals(4, recibidos.stream().map(p -> clave(bytes(p))).distinct().count());
+        for (String payload : recibidos) {
+            assertEquals(ultimas.get(clave(bytes(payload))), payload);
+        }
+    }
+
+    @Test
+    void testDetenerNoInterrumpeElLoteEnCurso() throws Exception {
+        CountDownLatch procesando = new CountDownLatch(1);
+        List<Boolean> interrumpido = Collections.synchronizedList(new ArrayList<>());
+        List<String> recibidos = Collections.synchronizedList(new ArrayList<>());
+        PipelineIngesta pipeline = new PipelineIngesta("mqtt-ingesta",
+                new OpcionesIngesta(10, 1, 0, PoliticaContrapresion.BLOQUEAR, null),
+                PipelineIngestaTest::clave, lote -> {
+                    procesando.countDown();
+                    try {
+                        Thread.sleep(200);
+                        interrumpido.add(false);
+                    } catch (InterruptedException e) {
+                        interrumpido.add(true);
+                    }
+                    lote.forEach(p -> recibidos.add(new String(p, StandardCharsets.UTF_8)));
+                });
+        pipeline.iniciar();
+        pipeline.encolar(bytes("a:1"));
+        pipeline.encolar(bytes("b:1"));
+
+        assertTrue(procesando.await(5, TimeUnit.SECONDS));
+        pipeline.detener();
+
+        assertEquals(List.of(false, false), interrumpido);
+        assertEquals(List.of("a:1", "b:1"), recibidos);
+    }
+
+    @Test
+    void testBloquearEsperaHueco() throws Exception {
+        CountDownLatch procesado = new CountDownLatch(3);
+        PipelineIngesta pipeline = new PipelineIngesta("mqtt-ingesta",
+                new OpcionesIngesta(1, 1, 0, PoliticaContrapresion.BLOQUEAR, null),
+                PipelineIngestaTest::clave, lote -> lote.forEach(p -> procesado.countDown()));
+        pipeline.encolar(bytes("a:1"));
+
+        Thread productor = new Thread(() -> {
+            pipeline.encolar(bytes("b:1"));
+            pipeline.encolar(bytes("c:1"));
+        });
+        productor.start();
+        productor.join(200);
+        assertTrue(productor.isAlive(), "Con el buffer lleno el productor debe esperar");
+
+        pipeline.iniciar();
+        assertTrue(procesado.await(5, TimeUnit.SECONDS));
+        productor.join(1000);
+        pipeline.detener();
+
+        assertEquals(0, pipeline.getEstadisticas().descartados());
+    }
+}
@@ -0,0 +1,72 @@
+package com.smartgrid.service;
+
+import com.smartgrid.logic.SmartGridDecisionEngine;
+import com.smartgrid.model.CambioDispositivo;
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import com.smartgrid.repository.DispositivoRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static com.smartgrid.Dispositivos.dispositivo;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class RegistroDispositivosListenerTest {
+
+    private final DispositivoRepository repositorio = mock(DispositivoRepository.class);
+    private final RegistroDispositivos registro = new RegistroDispositivos(repositorio);
+    private final SmartGridDecisionEngine ia = mock(SmartGridDecisionEngine.class);
+    private final RegistroDispositivosListener listener = new RegistroDispositivosListener(registro, ia);
+
+    private void guardado(Dispositivo dispositivo) {
+        listener.onApplicationEvent(new CambioDispositivo(this, dispositivo, false));
+    }
+
+    @Test
+    void testAltaYBajaSinConsultarLaBaseDeDatos() {
+        guardado(dispositivo(7, "lavadora", null, NivelCriticidad.BAJA, 0));
+        assertEquals(7L, registro.buscar("lavadora").orElseThrow().getId());
+
+        listener.onApplicationEvent(
+                new CambioDispositivo(this, dispositivo(7, "lavadora", null, NivelCriticidad.BAJA, 0), true));
+
+        verify(ia).olvidarDispositivo("lavadora");
+        verifyNoInteractions(repositorio);
+        when(repositorio.findByNombre("lavadora")).thenReturn(Optional.empty());
+        assertTrue(registro.buscar("lavadora").isEmpty());
+    }
+
+    @Test
+    void testRenombrarOlvidaElNombreAnterior() {
+        guardado(dispositivo(7, "lavadora", null, NivelCriticidad.BAJA, 0));
+        guardado(dispositivo(7, "secadora", null, NivelCriticidad.BAJA, 0));
+
+        verify(ia).olvidarDispositivo("lavadora");
+        assertEquals(7L, registro.buscar("secadora").orElseThrow().getId());
+        assertEquals("secadora", registro.buscarCargadoPorId(7).getNombre());
+        when(repositorio.findByNombre("lavadora")).thenReturn(Optional.empty());
+        assertTrue(registro.buscar("lavadora").isEmpty());
+    }
+
+    @Test
+    void testCambiarSoloMayusculasConservaLaEntrada() {
+        guardado(dispositivo(7, "lavadora", null, NivelCriticidad.BAJA, 0));
+        guardado(dispositivo(7, "Lavadora", null, NivelCriticidad.BAJA, 0));
+
+        // El motor guarda el nombre tal cual, el registro lo normaliza
+        verify(ia).olvidarDispositivo("lavadora");
+        assertEquals("Lavadora", registro.buscar("lavadora").orElseThrow().getNombre());
+        verifyNoInteractions(repositorio);
+    }
+
+    @Test
+    void testGuardarSinCambiarElNombreNoOlvidaNada() {
+        guardado(dispositivo(7, "lavadora", null, NivelCriticidad.BAJA, 0));
+        guardado(dispositivo(7, "lavadora", "cocina", NivelCriticidad.MEDIA, 0));
+
+        verify(ia, never()).olvidarDispositivo(any());
+        assertEquals("cocina", registro.buscar("lavadora").orElseThrow().getZona());
+    }
+}
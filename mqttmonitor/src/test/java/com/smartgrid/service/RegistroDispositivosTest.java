@@ -0,0 +1,245 @@
+package com.smartgrid.service;
+
+import com.smartgrid.model.Dispositivo;
+import com.smartgrid.model.NivelCriticidad;
+import com.smartgrid.repository.DispositivoRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static com.smartgrid.Dispositivos.dispositivo;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class RegistroDispositivosTest {
+
+    private DispositivoRepository mockRepo;
+
+    @BeforeEach
+    void setUp() {
+        mockRepo = mock(DispositivoRepository.class);
+    }
+
+    @Test
+    void testPrecargaEvitaConsultas() {
+        when(mockRepo.findAll()).thenReturn(List.of(dispositivo("lavadora", null, NivelCriticidad.BAJA),
+                dispositivo("horno", null, NivelCriticidad.BAJA)));
+        RegistroDispositivos registro = new RegistroDispositivos(mockRepo);
+        registro.precargar();
+
+        assertTrue(registro.buscar("  Lavadora ").isPresent());
+        assertTrue(registro.buscar("horno").isPresent());
+
+        verify(mockRepo, never()).findByNombre(any());
+        assertEquals(2, registro.getEstadisticas().aciertos());
+    }
+
+    @Test
+    void testFalloConsultaUnaSolaVez() {
+        when(mockRepo.findByNombre("tv")).thenReturn(Optional.of(dispositivo("tv", null, NivelCriticidad.BAJA)));
+        RegistroDispositivos registro = new RegistroDispositivos(mockRepo);
+
+        registro.buscar("tv");
+        registro.buscar("TV");
+
+        verify(mockRepo, times(1)).findByNombre("tv");
+        assertEquals(1, registro.getEstadisticas().fallos());
+        assertEquals(1, registro.getEstadisticas().aciertos());
+    }
+
+    @Test
+    void testCacheNegativa() {
+        when(mockRepo.findByNombre("tostadora")).thenReturn(Optional.empty());
+        RegistroDispositivos registro = new RegistroDispositivos(mockRepo, 10, 60_000, 0);
+
+        assertTrue(registro.buscar("tostadora").isEmpty());
+        assertTrue(registro.buscar("tostadora").isEmpty());
+
+        verify(mockRepo, times(1)).findByNombre("tostadora");
+        assertEquals(1, registro.getEstadisticas().aciertosNegativos());
+    }
+
+    @Test
+    void testCacheNegativaCaduca() {
+        when(mockRepo.findByNombre("tostadora")).thenReturn(Optional.empty());
+        RegistroDispositivos registro = new RegistroDispositivos(mockRepo, 10, 0, 0);
+
+        registro.buscar("tostadora");
+        registro.buscar("tostadora");
+
+        verify(mockRepo, times(2)).findByNombre("tostadora");
+    }
+
+    @Test
+    void testRegistrarSustituyeEntradaNegativa() {
+        when(mockRepo.findByNombre("tostadora")).thenReturn(Optional.empty());
+        RegistroDispositivos registro = new RegistroDispositivos(mockRepo, 10, 60_000, 0);
+
+        registro.buscar("tostadora");
+        registro.registrar(dispositivo("tostadora", null, NivelCriticidad.BAJA));
+
+        assertTrue(registro.buscar("tostadora").isPresent());
+        verify(mockRepo, times(1)).findByNombre("tostadora");
+    }
+
+    @Test
+    void testInvalidar() {
+        when(mockRepo.findByNombre("tv")).thenReturn(Optional.empty());
+        RegistroDispositivos registro = new RegistroDispositivos(mockRepo);
+        registro.registrar(dispositivo("tv", null, NivelCriticidad.BAJA));
+
+        registro.invalidar("TV");
+
+        assertTrue(registro.buscar("tv").isEmpty());
+        verify(mockRepo).findByNombre("tv");
+    }
+
+    @Test
+    void testCapacidadAcotadaConSegundaOportunidad() {
+        RegistroDispositivos registro = new RegistroDispositivos(mockRepo, 2, 60_000, 0);
+        registro.registrar(dispositivo("a", null, NivelCriticidad.BAJA));
+        registro.registrar(dispositivo("b", null, NivelCriticidad.BAJA));
+        registro.buscar("a"); // 'a' recibe segunda oportunidad
+
+        registro.registrar(dispositivo("c", null, NivelCriticidad.BAJA));
+
+        assertEquals(2, registro.getEstadisticas().tamaño());
+        assertEquals(1, registro.getEstadisticas().desalojos());
+        assertTrue(registro.buscar("a").isPresent());
+        verify(mockRepo, never()).findByNombre("a");
+    }
+
+    @Test
+    void testRefrescoAnticipado() throws Exception {
+        when(mockRepo.findByNombre("tv")).thenReturn(Optional.of(dispositivo("tv", null, NivelCriticidad.BAJA)));
+        RegistroDispositivos registro = new RegistroDispositivos(mockRepo, 10, 60_000, 1);
+        registro.registrar(dispositivo("tv", null, NivelCriticidad.BAJA));
+        Thread.sleep(5);
+
+        // El acierto se sirve al momento y la recarga ocurre en segundo plano
+        assertTrue(registro.buscar("tv").isPresent());
+
+        verify(mockRepo, timeout(2000)).findByNombre("tv");
+        registro.close();
+    }
+
+    @Test
+    void testResolverPorBytesSinConsultar() {
+        when(mockRepo.findByNombre("tostadora")).thenReturn(Optional.empty());
+        RegistroDispositivos registro = new RegistroDispositivos(mockRepo, 10, 60_000, 0);
+        registro.registrar(dispositivo("lavadora", null, NivelCriticidad.BAJA));
+        registro.buscar("tostadora");
+
+        byte[] payload = "  LavaDora :2100".getBytes(StandardCharsets.UTF_8);
+        SondaNombre sonda = new SondaNombre().apuntar(payload, 2, 10);
+        assertEquals(RegistroDispositivos.Resolucion.ENCONTRADO, registro.resolver(sonda));
+        assertEquals("lavadora", sonda.getDispositivo().getNombre());
+
+        byte[] desconocido = "tostadora:5".getBytes(StandardCharsets.UTF_8);
+        assertEquals(RegistroDispositivos.Resolucion.DESCONOCIDO, registro.resolver(sonda.apuntar(desconocido, 0, 9)));
+        assertNull(sonda.getDispositivo());
+
+        byte[] sinCargar = "horno:5".getBytes(StandardCharsets.UTF_8);
+        assertEquals(RegistroDispositivos.Resolucion.SIN_CARGAR, registro.resolver(sonda.apuntar(sinCargar, 0, 5)));
+        verify(mockRepo, never()).findByNombre("horno");
+    }
+
+    @Test
+    void testResolverPorBytesTrasInvalidarYDesalojar() {
+        RegistroDispositivos registro = new RegistroDispositivos(mockRepo, 1, 60_000, 0);
+        registro.registrar(dispositivo("a", null, NivelCriticidad.BAJA));
+        registro.invalidar("a");
+
+        SondaNombre sonda = new SondaNombre().apuntar(new byte[]{'a'}, 0, 1);
+        assertEquals(RegistroDispositivos.Resolucion.SIN_CARGAR, registro.resolver(sonda));
+
+        registro.registrar(dispositivo("a", null, NivelCriticidad.BAJA));
+        registro.registrar(dispositivo("b", null, NivelCriticidad.BAJA));
+        assertEquals(RegistroDispositivos.Resolucion.SIN_CARGAR, registro.resolver(sonda));
+        assertEquals(RegistroDispositivos.Resolucion.ENCONTRADO,
+                registro.resolver(new SondaNombre().apuntar(new byte[]{'B'}, 0, 1)));
+    }
+
+    @Test
+    void testNombresYBytesSePlieganIgualConCualquierIdioma() {
+        Locale anterior = Locale.getDefault();
+        Locale.setDefault(Locale.forLanguageTag("tr"));
+        try {
+            // Con el turco, "I".toLowerCase() sería la i sin punto y el nombre no coincidiría con sus bytes
+            assertEquals("bomba_i", RegistroDispositivos.normalizar(" BOMBA_I "));
+
+            RegistroDispositivos registro = new RegistroDispositivos(mockRepo, 10, 60_000, 0);
+            registro.registrar(dispositivo("BOMBA_I", null, NivelCriticidad.BAJA));
+            registro.registrar(dispositivo("CALEFACCIÓN", null, NivelCriticidad.BAJA));
+
+            for (String nombre : List.of("bomba_i", "Bomba_I", "calefacción", "CALEFACCIÓN", "Calefacción")) {
+                byte[] payload = (nombre + ":5").getBytes(StandardCharsets.UTF_8);
+                SondaNombre sonda = new SondaNombre().apuntar(payload, 0, payload.length - 2);
+                assertEquals(RegistroDispositivos.Resolucion.ENCONTRADO, registro.resolver(sonda), nombre);
+                assertEquals(RegistroDispositivos.normalizar(nombre),
+                        RegistroDispositivos.normalizar(sonda.getDispositivo().getNombre()));
+            }
+            // Todas las variantes de un nombre van al mismo carril
+            byte[] minusculas = "calefacción".getBytes(StandardCharsets.UTF_8);
+            byte[] mayusculas = "CALEFACCIÓN".getBytes(StandardCharsets.UTF_8);
+            assertEquals(new SondaNombre().apuntar(minusculas, 0, minusculas.length).hashNombre(),
+                    new SondaNombre().apuntar(mayusculas, 0, mayusculas.length).hashNombre());
+            verifyNoInteractions(mockRepo);
+        } finally {
+            Locale.setDefault(anterior);
+        }
+    }
+
+    @Test
+    void testBuscarCargadoPorIdSinConsultar() {
+        RegistroDispositivos registro = new RegistroDispositivos(mockRepo);
+        registro.registrar(dispositivo(7L, "lavadora", null, NivelCriticidad.BAJA, 0));
+
+        assertEquals("lavadora", registro.buscarCargadoPorId(7L).getNombre());
+        assertNull(registro.buscarCargadoPorId(8L));
+
+        registro.invalidar("lavadora");
+        assertNull(registro.buscarCargadoPorId(7L));
+        verifyNoInteractions(mockRepo);
+    }
+
+    @Test
+    void testBuscarTodosPorIdUnaConsultaYCacheNegativa() {
+        when(mockRepo.findAllById(any())).thenReturn(List.of(dispositivo(2L, "horno", null, NivelCriticidad.BAJA, 0)));
+        RegistroDispositivos registro = new RegistroDispositivos(mockRepo, 10, 60_000, 0);
+        registro.registrar(dispositivo(1L, "lavadora", null, NivelCriticidad.BAJA, 0));
+
+        Map<Long, Dispositivo> encontrados = registro.buscarTodosPorId(List.of(1L, 2L, 3L, 2L));
+        assertEquals(Set.of(1L, 2L), encontrados.keySet());
+        verify(mockRepo, times(1)).findAllById(Set.of(2L, 3L));
+
+        // El 2 queda cargado y el 3 se recuerda como desconocido
+        assertEquals(Set.of(2L), registro.buscarTodosPorId(List.of(2L, 3L)).keySet());
+        verify(mockRepo, times(1)).findAllById(any());
+        assertEquals("horno", registro.buscar("horno").orElseThrow().getNombre());
+    }
+
+    @Test
+    void testMideConsultasABaseDeDatos() {
+        SimpleMeterRegistry registroMetricas = new SimpleMeterRegistry();
+        when(mockRepo.findByNombre("tv")).thenReturn(Optional.of(dispositivo("tv", null, NivelCriticidad.BAJA)));
+        RegistroDispositivos registro = new RegistroDispositivos(mockRepo, 10, 60_000, 0, registroMetricas);
+
+        registro.buscar("tv");
+        registro.buscar("tv");
+        registro.buscarTodos(List.of("horno"));
+
+        assertEquals(1, registroMetricas.get("smartgrid.registro.consulta").tag("tipo", "nombre").timer().count());
+        assertEquals(1, registroMetricas.get("smartgrid.registro.consulta").tag("tipo", "nombres").timer().count());
+        assertEquals(1, registroMetricas.get("smartgrid.registro.busquedas").tag("resultado", "acierto")
+                .functionCounter().count());
+        assertEquals(2, registroMetricas.get("smartgrid.registro.tamano").gauge().value());
+    }
+}
@@ -0,0 +1,75 @@
+package com.smartgrid.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TramaBinariaTest {
+
+    private static final long INSTANTE = 1_700_000_000_000L;
+
+    @Test
+    void testCodificarYLeer() {
+        byte[] trama = TramaBinaria.codificar(
+                new long[]{42L, -1L},
+                new float[]{2100.5f, 0f},
+                new long[]{INSTANTE, INSTANTE - 250});
+
+        assertTrue(TramaBinaria.esBinaria(trama));
+        assertEquals(ResultadoLectura.OK, TramaBinaria.validar(trama));
+        assertEquals(TramaBinaria.TAMAÑO_CABECERA + 2 * TramaBinaria.TAMAÑO_LECTURA, trama.length);
+        assertEquals(2, TramaBinaria.numeroLecturas(trama));
+        assertEquals(42L, TramaBinaria.id(trama, 0));
+        assertEquals(2100.5f, TramaBinaria.consumo(trama, 0));
+        assertEquals(INSTANTE, TramaBinaria.instante(trama, 0));
+        assertEquals(-1L, TramaBinaria.id(trama, 1));
+        assertEquals(INSTANTE - 250, TramaBinaria.instante(trama, 1));
+    }
+
+    @Test
+    void testValidarRechazaTramasMalFormadas() {
+        byte[] trama = TramaBinaria.codificar(new long[]{1L}, new float[]{1f}, new long[]{INSTANTE});
+
+        assertFalse(TramaBinaria.esBinaria("lavadora:2100".getBytes()));
+        assertEquals(ResultadoLectura.TRAMA_INVALIDA, TramaBinaria.validar(Arrays.copyOf(trama, trama.length - 1)));
+        assertEquals(ResultadoLectura.TRAMA_INVALIDA, TramaBinaria.validar(Arrays.copyOf(trama, trama.length + 16)));
+
+        byte[] otraVersion = trama.clone();
+        otraVersion[1] = 2;
+        assertEquals(ResultadoLectura.TRAMA_INVALIDA, TramaBinaria.validar(otraVersion));
+
+        byte[] vacia = Arrays.copyOf(trama, TramaBinaria.TAMAÑO_CABECERA);
+        vacia[3] = 0;
+        assertEquals(ResultadoLectura.TRAMA_INVALIDA, TramaBinaria.validar(vacia));
+    }
+
+    @Test
+    void testExtraerConservaOrdenEInstantes() {
+        byte[] trama = TramaBinaria.codificar(
+                new long[]{1L, 2L, 3L},
+                new float[]{10f, 20f, 30f},
+                new long[]{INSTANTE, INSTANTE + 1, INSTANTE + 2});
+
+        byte[] parte = TramaBinaria.extraer(trama, new int[]{2, 0, 1}, 2);
+
+        assertEquals(ResultadoLectura.OK, TramaBinaria.validar(parte));
+        assertEquals(2, TramaBinaria.numeroLecturas(parte));
+        assertEquals(3L, TramaBinaria.id(parte, 0));
+        assertEquals(INSTANTE + 2, TramaBinaria.instante(parte, 0));
+        assertEquals(1L, TramaBinaria.id(parte, 1));
+        assertEquals(10f, TramaBinaria.consumo(parte, 1));
+    }
+
+    @Test
+    void testCodificarRechazaArraysIncoherentes() {
+        assertThrows(IllegalArgumentException.class,
+                () -> TramaBinaria.codificar(new long[0], new float[0], new long[0]));
+        assertThrows(IllegalArgumentException.class,
+                () -> TramaBinaria.codificar(new long[]{1L}, new float[]{1f, 2f}, new long[]{INSTANTE}));
+        assertThrows(IllegalArgumentException.class,
+                () -> TramaBinaria.codificar(new long[]{1L, 2L}, new float[]{1f, 2f},
+                        new long[]{INSTANTE, INSTANTE + Integer.MAX_VALUE + 1L}));
+    }
+}